@@ -0,0 +1,184 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.engine.PatientObjectCreator;
+import org.erasmusmc.jerboa.modifiers.FixedCohortDefinition;
+import org.erasmusmc.jerboa.modifiers.PopulationDefinition;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.OutputManager;
+import org.erasmusmc.jerboa.utilities.PatientUtilities;
+import org.erasmusmc.jerboa.utilities.dataSimulator.PopulationGenerator;
+
+/**
+ * This class prepares the static state of the application the way a unit test does,
+ * so that the engine can be driven from a benchmark without the GUI, a workspace
+ * or a script. The output of the modules is kept in memory.
+ */
+public class BenchmarkEnvironment {
+
+	//the period of the generated population, which is also the study period of the cohort
+	public static final String STUDY_START = "20000101";
+	public static final String STUDY_END = "20180101";
+
+	//the workspace holding the synthetic input files and the patient object files
+	private File workspace;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor setting up the application in a new temporary workspace.
+	 * @throws IOException - if the temporary workspace cannot be created
+	 */
+	public BenchmarkEnvironment() throws IOException{
+		workspace = Files.createTempDirectory("jerboa-benchmark").toFile();
+
+		Jerboa.inConsoleMode = true;
+		Jerboa.unitTest = true;
+
+		PropertiesManager.listProperties = new HashMap<String, String>();
+		PropertiesManager.listProperties.put("lastWorkspace", workspace.getPath());
+		PropertiesManager.listProperties.put("lastRun", "benchmark");
+		PropertiesManager.listProperties.put("runIndex", "1");
+
+		Jerboa.setOutputManager(new OutputManager());
+		FilePaths.updatePaths(workspace.getPath() + "/", "benchmark/");
+	}
+
+	/**
+	 * Generates a population as input files in the workspace and registers
+	 * them as the input file set of the application.
+	 * @param patients - the number of patients
+	 * @param seed - the seed of the population generator
+	 * @return - the input file set of the written files
+	 * @throws IOException - if the population could not be generated
+	 */
+	public InputFileSet registerInputFiles(int patients, long seed) throws IOException{
+		PopulationGenerator generator = new PopulationGenerator.Builder()
+				.folder(new File(workspace, "data").getPath())
+				.patients(patients)
+				.seed(seed)
+				.studyStart(STUDY_START)
+				.studyEnd(STUDY_END)
+				.build();
+		generator.generate();
+		InputFileSet inputFileSet = new InputFileSet(Arrays.asList(generator.getPatientsFile(),
+				generator.getEventsFile(), generator.getPrescriptionsFile(), generator.getMeasurementsFile()));
+		Jerboa.setInputFileSet(inputFileSet);
+		InputFileUtilities.getDateFormatInDebug(inputFileSet);
+
+		return inputFileSet;
+	}
+
+	/**
+	 * Generates a population as input files in the workspace, creates the
+	 * patient object files from them and loads all the patients in memory.
+	 * @param patients - the number of patients
+	 * @param seed - the seed of the population generator
+	 * @return - the patients with their events, prescriptions and measurements
+	 * @throws IOException - if the population could not be generated
+	 */
+	public List<Patient> loadPatients(int patients, long seed) throws IOException{
+		new PatientObjectCreator(registerInputFiles(patients, seed), true, null);
+
+		List<Patient> loaded = new ArrayList<Patient>(patients);
+		PatientUtilities patientUtilities = new PatientUtilities(FilePaths.PATIENTS_PATH);
+		for (String patientFile : patientUtilities.patientFiles)
+			loaded.addAll(patientUtilities.loadPatientsFromFile(patientFile, true, true, true));
+
+		return loaded;
+	}
+
+	/**
+	 * Returns the event types found in the history of the patients.
+	 * @param patients - the patients to be searched
+	 * @return - the sorted event types
+	 */
+	public static Set<String> getEventTypes(List<Patient> patients){
+		Set<String> eventTypes = new TreeSet<String>();
+		for (Patient patient : patients)
+			for (Event event : patient.getEvents())
+				eventTypes.add(event.getType());
+
+		return eventTypes;
+	}
+
+	/**
+	 * Runs copies of the patients through a population definition with a one year
+	 * run in period and a fixed cohort spanning the whole population time, as
+	 * the modules of a study script expect them.
+	 * @param patients - the patients to be processed
+	 * @return - the processed copies of the patients
+	 */
+	public List<Patient> selectCohort(List<Patient> patients){
+		PopulationDefinition populationDefinition = new PopulationDefinition();
+		populationDefinition.runInPeriod.add("365");
+		populationDefinition.childInclusionPeriod = 365;
+		populationDefinition.studyStart = STUDY_START;
+		populationDefinition.studyEnd = STUDY_END;
+		populationDefinition.minAge = 0;
+		populationDefinition.maxAge = 999;
+
+		FixedCohortDefinition cohortDefinition = new FixedCohortDefinition();
+		cohortDefinition.cohortStartDate = "";
+		cohortDefinition.cohortEndDate = "";
+
+		if (!populationDefinition.init() || !cohortDefinition.init())
+			throw new IllegalStateException("The study population could not be defined");
+
+		List<Patient> cohort = new ArrayList<Patient>(patients.size());
+		for (Patient patient : patients)
+			cohort.add(cohortDefinition.process(populationDefinition.process(new Patient(patient))));
+
+		return cohort;
+	}
+
+	/**
+	 * Removes the workspace and all the files created in it.
+	 */
+	public void close(){
+		FileUtils.deleteQuietly(workspace);
+	}
+
+	//GETTERS
+	public File getWorkspace() {
+		return workspace;
+	}
+
+}
@@ -0,0 +1,110 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.modules.CaseControl;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the case control module on a cohort that is selected once.
+ * The cases are collected during the processing and the controls are matched
+ * during the post processing, which is where most of the time is spent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CaseControlBenchmark {
+
+	//one of the less frequent event types of the generated population
+	private static final String EVENT_OF_INTEREST = "MI";
+
+	@Param({"10000"})
+	public int patients;
+
+	@Param({"1"})
+	public long seed;
+
+	@Param({"4"})
+	public int controlsPerCase;
+
+	private BenchmarkEnvironment environment;
+	private List<Patient> cohort;
+
+	@Setup
+	public void setUp() throws IOException{
+		environment = new BenchmarkEnvironment();
+		cohort = environment.selectCohort(environment.loadPatients(patients, seed));
+	}
+
+	@TearDown
+	public void tearDown(){
+		environment.close();
+	}
+
+	@Benchmark
+	public CaseControl matching(){
+		CaseControl caseControl = new CaseControl();
+		caseControl.setOutputFileNamesInDebug(environment.getWorkspace().getPath() + "/");
+		caseControl.eventsOfInterest.add(EVENT_OF_INTEREST);
+		caseControl.controlsPerCase = controlsPerCase;
+		caseControl.matchOnGender = true;
+		caseControl.maxDifferenceBetweenBirthDates = 365;
+		caseControl.maxDifferenceInTimeInCohort = "-1";
+		caseControl.matchOnDrugCount = "";
+		caseControl.matchOnExternalCaseSetId = "";
+		caseControl.matchOnATCClass = "";
+		if (!caseControl.init())
+			throw new IllegalStateException("The case control module could not be initialized");
+
+		List<Patient> processed = new ArrayList<Patient>(cohort.size());
+		for (Patient patient : cohort)
+			processed.add(caseControl.process(new Patient(patient)));
+		for (Patient patient : processed)
+			caseControl.postProcess(patient);
+		caseControl.calcStats();
+		caseControl.outputResults();
+
+		return caseControl;
+	}
+
+}
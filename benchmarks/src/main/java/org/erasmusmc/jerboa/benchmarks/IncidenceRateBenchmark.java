@@ -0,0 +1,109 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.modules.IncidenceRate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks an incidence rate study from end to end: the population and
+ * cohort definition of the patients, the counting of the patient time and events per
+ * calendar year and age group, and the calculation and output of the rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class IncidenceRateBenchmark {
+
+	@Param({"10000"})
+	public int patients;
+
+	@Param({"1"})
+	public long seed;
+
+	@Param({"YEAR"})
+	public String timeDivision;
+
+	private BenchmarkEnvironment environment;
+	private List<Patient> population;
+	private Set<String> eventTypes;
+
+	@Setup
+	public void setUp() throws IOException{
+		environment = new BenchmarkEnvironment();
+		population = environment.loadPatients(patients, seed);
+		eventTypes = BenchmarkEnvironment.getEventTypes(population);
+	}
+
+	@TearDown
+	public void tearDown(){
+		environment.close();
+	}
+
+	@Benchmark
+	public IncidenceRate run(){
+		List<Patient> cohort = environment.selectCohort(population);
+
+		IncidenceRate incidenceRate = new IncidenceRate();
+		incidenceRate.setOutputFileNamesInDebug(environment.getWorkspace().getPath() + "/");
+		for (String eventType : eventTypes)
+			incidenceRate.eventsOfInterest.add(eventType);
+		for (int age = 0; age < 85; age += 5)
+			incidenceRate.ageGroups.add(age + ";" + (age + 5) + ";" + String.format("%02d-%02d", age, age + 4));
+		incidenceRate.ageGroups.add("85;999;85-");
+		incidenceRate.timeDivision = timeDivision;
+		incidenceRate.ageAt = "COHORT START";
+		incidenceRate.perNYears = 100000;
+		incidenceRate.minSubjectsPerRow = 0;
+		if (!incidenceRate.init())
+			throw new IllegalStateException("The incidence rate module could not be initialized");
+
+		for (Patient patient : cohort)
+			incidenceRate.process(patient);
+		incidenceRate.calcStats();
+		incidenceRate.outputResults();
+
+		return incidenceRate;
+	}
+
+}
@@ -0,0 +1,132 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
+import org.erasmusmc.jerboa.utilities.MultiKeyBag;
+import org.erasmusmc.jerboa.utilities.Wildcard;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class benchmarks the multi key bag the way the modules use it: the keys
+ * are gender, event type and age at the event, and the counts and statistics
+ * are retrieved per gender and event type with wild cards.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiKeyBagBenchmark {
+
+	@Param({"10000"})
+	public int patients;
+
+	@Param({"1"})
+	public long seed;
+
+	private BenchmarkEnvironment environment;
+
+	//the keys added to the bag
+	private List<ExtendedMultiKey> keys;
+
+	//the filled bag and the sub keys retrieved from it
+	private MultiKeyBag bag;
+	private List<ExtendedMultiKey> subKeys;
+
+	@Setup
+	public void setUp() throws IOException{
+		environment = new BenchmarkEnvironment();
+		List<Patient> population = environment.loadPatients(patients, seed);
+		keys = new ArrayList<ExtendedMultiKey>();
+		for (Patient patient : population){
+			for (Event event : patient.getEvents())
+				keys.add(new ExtendedMultiKey(patient.gender, event.getType(),
+						(int)((event.getDate() - patient.birthDate) / DateUtilities.daysPerYear)));
+		}
+
+		bag = fill();
+
+		subKeys = new ArrayList<ExtendedMultiKey>();
+		for (String eventType : BenchmarkEnvironment.getEventTypes(population)){
+			subKeys.add(new ExtendedMultiKey(Wildcard.BYTE(), eventType, Wildcard.INTEGER()));
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		environment.close();
+	}
+
+	@Benchmark
+	public MultiKeyBag add(){
+		return fill();
+	}
+
+	@Benchmark
+	public void getCount(Blackhole blackhole){
+		for (ExtendedMultiKey subKey : subKeys)
+			blackhole.consume(bag.getCount(subKey));
+		blackhole.consume(bag.getCount(new ExtendedMultiKey(Wildcard.BYTE(), Wildcard.STRING(), Wildcard.INTEGER())));
+	}
+
+	@Benchmark
+	public void getHistogramStats(Blackhole blackhole){
+		for (ExtendedMultiKey subKey : subKeys)
+			blackhole.consume(bag.getHistogramStats(subKey));
+	}
+
+	/**
+	 * Creates a bag holding all the keys.
+	 * @return - the filled bag
+	 */
+	private MultiKeyBag fill(){
+		MultiKeyBag bag = new MultiKeyBag();
+		for (ExtendedMultiKey key : keys)
+			bag.add(key);
+
+		return bag;
+	}
+
+}
@@ -0,0 +1,116 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.text.StrMatcher;
+import org.erasmusmc.jerboa.dataClasses.Episode;
+import org.erasmusmc.jerboa.engine.InputFile;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.StringUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class benchmarks the parsing of the input lines and of their dates,
+ * which is done for every record of every input file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+	@Param({"10000"})
+	public int patients;
+
+	@Param({"1"})
+	public long seed;
+
+	private BenchmarkEnvironment environment;
+
+	//the input lines and their dates
+	private List<String> lines;
+	private List<String> dates;
+
+	//the generator writes all the input files with the same delimiter and date format
+	private StrMatcher delimiter;
+	private byte dateFormat;
+
+	@Setup
+	public void setUp() throws IOException{
+		environment = new BenchmarkEnvironment();
+		InputFileSet inputFileSet = environment.registerInputFiles(patients, seed);
+		delimiter = inputFileSet.getEventsFile().getDelimiter();
+		dateFormat = inputFileSet.getEventsFile().getDateFormat();
+
+		lines = new ArrayList<String>();
+		dates = new ArrayList<String>();
+		for (InputFile inputFile : new InputFile[] {inputFileSet.getEventsFile(), inputFileSet.getPrescriptionsFile()}){
+			List<String> fileLines = FileUtils.readLines(new File(inputFile.getName()), "UTF-8");
+			int dateColumn = inputFile.getDataOrder()[Episode.COLUMN_DATE];
+			for (String line : fileLines.subList(1, fileLines.size())){
+				lines.add(line);
+				dates.add(StringUtilities.splitLine(line, delimiter)[dateColumn].trim());
+			}
+		}
+	}
+
+	@TearDown
+	public void tearDown(){
+		environment.close();
+	}
+
+	@Benchmark
+	public void splitLine(Blackhole blackhole){
+		for (String line : lines)
+			blackhole.consume(StringUtilities.splitLine(line, delimiter));
+	}
+
+	@Benchmark
+	public void dateToDays(Blackhole blackhole){
+		for (String date : dates)
+			blackhole.consume(DateUtilities.dateToDays(date, dateFormat));
+	}
+
+}
@@ -0,0 +1,94 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.engine.PatientObjectCreator;
+import org.erasmusmc.jerboa.utilities.PatientUtilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * This class benchmarks the two ends of the patient object files: their creation
+ * from the sorted input files of a generated population and their loading back
+ * into patient objects.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class PatientLoadingBenchmark {
+
+	@Param({"10000"})
+	public int patients;
+
+	@Param({"1"})
+	public long seed;
+
+	private BenchmarkEnvironment environment;
+	private InputFileSet inputFileSet;
+
+	@Setup
+	public void setUp() throws IOException{
+		environment = new BenchmarkEnvironment();
+		inputFileSet = environment.registerInputFiles(patients, seed);
+
+		//the patient object files to be loaded
+		new PatientObjectCreator(inputFileSet, true, null);
+	}
+
+	@TearDown
+	public void tearDown(){
+		environment.close();
+	}
+
+	@Benchmark
+	public void loadPatients(){
+		new PatientObjectCreator(inputFileSet, true, null);
+	}
+
+	@Benchmark
+	public void loadPatientsFromFile(Blackhole blackhole){
+		PatientUtilities patientUtilities = new PatientUtilities(FilePaths.PATIENTS_PATH);
+		for (String patientFile : patientUtilities.patientFiles)
+			blackhole.consume(patientUtilities.loadPatientsFromFile(patientFile, true, true, true));
+	}
+
+}
@@ -197,6 +197,10 @@ public class Jerboa{
 		return resultSet;
 	}
 
+	public static void setResultSet(ResultSet resultSet) {
+		Jerboa.resultSet = resultSet;
+	}
+
 	public static void setOutputManager(OutputManager outputManager) {
 		Jerboa.outputManager = outputManager;
 	}
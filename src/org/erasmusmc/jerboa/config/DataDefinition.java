@@ -148,6 +148,10 @@ public class DataDefinition {
 	public static final short PRESCRIPTION_FLAG = 2;
 	public static final short MEASUREMENT_FLAG = 3;
 
+	//binary patient object file header ("JPOF" followed by the format version)
+	public static final int PATIENT_OBJECT_FILE_MAGIC = 0x4A504F46;
+	public static final byte PATIENT_OBJECT_FILE_VERSION = 1;
+
 	//patient gender
 	public static final byte FEMALE_GENDER = 0;
 	public static final byte MALE_GENDER = 1;
@@ -79,6 +79,26 @@ public class Parameters {
  	 * data is appended to the same file. If the value is passed, a new POF file is created.
  	 */
 	public static final int MAX_POF_SIZE = 30; //in MB
+
+	/**
+	 * The maximum amount of memory to be allocated to the rows held in memory
+	 * while sorting an input file. If the file is larger, it is sorted in runs
+	 * on disk which are merged afterwards.
+	 */
+	public static final int SORT_MEMORY = 256; //in MB
+
+	//OUTPUT RELATED
+	/**
+	 * If true, the output buffers of the modules are written to file by a background
+	 * thread, so that the processing does not wait for the disk.
+	 */
+	public static final boolean ASYNC_OUTPUT = true;
+
+	/**
+	 * The maximum number of output buffers waiting to be written by the background thread.
+	 * If reached, the processing waits until the writer catches up.
+	 */
+	public static final int OUTPUT_QUEUE_SIZE = 32;
 	
 
 	//formatting
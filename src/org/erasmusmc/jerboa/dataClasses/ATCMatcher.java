@@ -0,0 +1,198 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.dataClasses;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.collections.bidimap.DualHashBidiMap;
+import org.apache.commons.lang3.StringUtils;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+
+/**
+ * This class matches the ATC code of prescriptions against a list of ATC groups, e.g. "A10E",
+ * as Prescription.startsWith() does: the ATC code should start with one of the groups, ignoring case,
+ * or, if the group starts with "_", it is a generated ATC code and the ATC code should be equal to the group.
+ * The outcome is computed once for each ATC code in the prescription look-up table, so that matching
+ * a prescription is a look-up on its compressed ATC code. Codes added to the look-up table
+ * afterwards are matched when first seen.
+ *
+ * @see org.erasmusmc.jerboa.dataClasses.Prescription#startsWith(String)
+ */
+public class ATCMatcher {
+
+	//the matchers of single ATC groups used by Prescription.startsWith()
+	private static final ConcurrentHashMap<String, ATCMatcher> groupMatchers = new ConcurrentHashMap<String, ATCMatcher>();
+
+	//the upper case groups
+	private final String[] prefixes;
+	private final String[] generated;
+
+	//the outcome per index in the look-up table
+	private volatile Table table = new Table(null, new BitSet(), 0);
+
+	/**
+	 * Constructor compiling a list of ATC groups.
+	 * @param groups - the (higher level) ATC codes
+	 */
+	public ATCMatcher(List<String> groups) {
+		int nbGenerated = 0;
+		for (String group : groups)
+			if (group.substring(0, 1).equals("_"))
+				nbGenerated++;
+
+		prefixes = new String[groups.size() - nbGenerated];
+		generated = new String[nbGenerated];
+		int p = 0, g = 0;
+		for (String group : groups) {
+			if (group.substring(0, 1).equals("_"))
+				generated[g++] = StringUtils.upperCase(group);
+			else
+				prefixes[p++] = StringUtils.upperCase(group);
+		}
+	}
+
+	/**
+	 * Constructor compiling an array of ATC groups.
+	 * @param groups - the (higher level) ATC codes
+	 */
+	public ATCMatcher(String... groups) {
+		this(Arrays.asList(groups));
+	}
+
+	/**
+	 * Returns the matcher of a single ATC group. It is compiled on first use and shared afterwards.
+	 * @param group - the (higher level) ATC code
+	 * @return - the matcher of group
+	 */
+	public static ATCMatcher of(String group) {
+		ATCMatcher matcher = groupMatchers.get(group);
+		if (matcher == null) {
+			matcher = new ATCMatcher(group);
+			ATCMatcher previous = groupMatchers.putIfAbsent(group, matcher);
+			if (previous != null)
+				matcher = previous;
+		}
+		return matcher;
+	}
+
+	/**
+	 * Discards the matchers of single ATC groups, e.g. when the look-up tables are reloaded,
+	 * so that they do not keep the outcome for the previous prescription look-up table.
+	 */
+	public static void clearGroupMatchers() {
+		groupMatchers.clear();
+	}
+
+	/**
+	 * Checks if the ATC code of prescription is in one of the groups.
+	 * @param prescription - the prescription to be checked
+	 * @return - true if the prescription is part of one of the groups; false otherwise
+	 */
+	public boolean matches(Prescription prescription) {
+		return matches(prescription.type);
+	}
+
+	/**
+	 * Checks if the ATC code at index atc of the prescription look-up table is in one of the groups.
+	 * @param atc - the compressed ATC code
+	 * @return - true if the ATC code is part of one of the groups; false otherwise
+	 */
+	public boolean matches(int atc) {
+		if (atc < 0)
+			return false;
+		Table current = table;
+		DualHashBidiMap lookup = InputFileUtilities.getPrescriptionAtcs();
+		if ((current.lookup != lookup) || (atc >= current.size))
+			current = extend(lookup, atc);
+		return (atc < current.size) && current.matches.get(atc);
+	}
+
+	/**
+	 * Checks if an ATC code is in one of the groups.
+	 * @param atc - the uncompressed ATC code
+	 * @return - true if the ATC code is part of one of the groups; false otherwise
+	 */
+	public boolean matches(String atc) {
+		String upperCaseATC = StringUtils.upperCase(atc);
+		if (upperCaseATC == null)
+			return false;
+		for (String group : generated)
+			if (upperCaseATC.equals(group))
+				return true;
+		for (String group : prefixes)
+			if (upperCaseATC.startsWith(group))
+				return true;
+
+		return false;
+	}
+
+	/**
+	 * Computes the outcome for the ATC codes added to the look-up table since the last call,
+	 * or for the whole table if the look-up table was replaced.
+	 * Codes that are not yet in the look-up table are not covered. The look-up table is locked
+	 * while it is read, as codes may be added to it by other threads.
+	 * @param lookup - the prescription look-up table
+	 * @param atc - the compressed ATC code that should be covered
+	 * @return - the extended table
+	 */
+	private synchronized Table extend(DualHashBidiMap lookup, int atc) {
+		Table current = table;
+		if ((current.lookup == lookup) && (atc < current.size))
+			return current;
+
+		int from = current.lookup == lookup ? current.size : 0;
+		int size;
+		BitSet matches;
+		synchronized (lookup) {
+			size = lookup.size();
+			matches = from == 0 ? new BitSet(size) : (BitSet)current.matches.clone();
+			for (int index = from; index < size; index++) {
+				if (matches((String)lookup.get(index)))
+					matches.set(index);
+			}
+		}
+		table = new Table(lookup, matches, size);
+
+		return table;
+	}
+
+	//NESTED CLASSES
+	/**
+	 * The outcome of the matching for the first size indexes of a look-up table.
+	 */
+	private static class Table {
+		private final DualHashBidiMap lookup;
+		private final BitSet matches;
+		private final int size;
+
+		public Table(DualHashBidiMap lookup, BitSet matches, int size) {
+			this.lookup = lookup;
+			this.matches = matches;
+			this.size = size;
+		}
+	}
+
+}
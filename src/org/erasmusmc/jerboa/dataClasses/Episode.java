@@ -41,6 +41,7 @@ import org.erasmusmc.jerboa.engine.InputFile;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedData;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 
 /**
  * This is a generic class that defines the attributes of an episode in the history of a patient.
@@ -114,21 +115,21 @@ public abstract class Episode implements Comparable<Episode> {
 	 * Different behavior depending on the source of data (sorted or unsorted input file).
 	 * If the file is sorted, the order of the data columns is used and the object attributes are compressed.
 	 * Used in the PatientObjectCreator class.
-	 * @param attributes - a line from the input file
+	 * @param columns - the tokenizer holding a line from the input file
 	 * @param inputFile - the input file containing all details about formatting (e.g., data order, date format)
 	 */
-	public Episode(int type, String[] attributes, InputFile inputFile){
+	public Episode(int type, LineTokenizer columns, InputFile inputFile){
 
 		this.episodeType = type;
-		this.patientID = attributes[inputFile.getDataOrder()[COLUMN_PATIENT_ID]].trim();
-		this.date = DateUtilities.dateToDays(attributes[inputFile.getDataOrder()[COLUMN_DATE]].trim(), inputFile.getDateFormat());
+		this.patientID = columns.getTrimmed(inputFile.getDataOrder()[COLUMN_PATIENT_ID]);
+		this.date = columns.getDays(inputFile.getDataOrder()[COLUMN_DATE], inputFile.getDateFormat());
 		this.subset = inputFile.getSubsetIndex() != -1 ?
-				attributes[inputFile.getSubsetIndex()].trim() : DataDefinition.DEFAULT_SUBSET_ID;
+				columns.getTrimmed(inputFile.getSubsetIndex()) : DataDefinition.DEFAULT_SUBSET_ID;
 
 		//extended data
 		this.extended = new ExtendedData(getTypeOfEpisode());
 		if (inputFile.hasExtendedData()){
-			this.extended.setData(this.extended.setExtendedAttributesFromInputFile(attributes));
+			this.extended.readFromInputFile(columns);
 		}
 	}
 
@@ -147,7 +148,30 @@ public abstract class Episode implements Comparable<Episode> {
 		//extended data
 		if (this.extended == null)
 			this.extended = new ExtendedData(getTypeOfEpisode());
-		this.extended.setData(this.extended.setExtendedAttributesFromPOF(attributes));
+		this.extended.readFromPOF(attributes);
+	}
+
+	/**
+	 * Constructor of an episode object from a binary patient object file.
+	 * The subset and patient ID are the ones of the patient owning the episode.
+	 * Used in the PatientObjectReader class.
+	 * @param episodeType - the type of episode
+	 * @param subset - the subset of the owning patient
+	 * @param patientID - the ID of the owning patient
+	 * @param type - the compressed type of the episode
+	 * @param date - the date of the episode in days
+	 * @param extendedData - the compressed extended data as {@literal <ext_col_index, mapped_val>}
+	 */
+	public Episode(int episodeType, String subset, String patientID, int type, int date, HashMap<Integer, Integer> extendedData){
+		this.episodeType = episodeType;
+		this.subset = subset;
+		this.patientID = patientID;
+		this.type = type;
+		this.date = date;
+
+		//extended data
+		this.extended = new ExtendedData(getTypeOfEpisode());
+		this.extended.setData(extendedData);
 	}
 
 	//TO STRING METHODS
@@ -358,6 +382,19 @@ public abstract class Episode implements Comparable<Episode> {
 				(includeEndDate ? this.date <= endDate : this.date < endDate));
 	}
 
+	/**
+	 * Makes this episode reference the patient ID and subset of the patient it belongs to,
+	 * so the episodes of a patient do not each hold their own copy of these strings.
+	 * A value is only replaced if it equals the one of the patient.
+	 * @param patient - the patient owning this episode
+	 */
+	public void shareIDs(Patient patient){
+		if (patientID != null && patientID.equals(patient.ID))
+			this.patientID = patient.ID;
+		if (subset != null && subset.equals(patient.subset))
+			this.subset = patient.subset;
+	}
+
 	//GETTERS AND SETTERS
 	public String getPatientID() {
 		return patientID;
@@ -0,0 +1,410 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.dataClasses;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an index on the history of a patient. For a type of event or measurement,
+ * or an ATC group of prescriptions, it keeps the positions of the matching episodes
+ * in the history lists sorted by date, so window queries can be answered by binary search
+ * instead of scanning the whole history for every index date.
+ * The postings are built lazily on first use of a key. The index is only valid as long as
+ * the history lists of the patient are not changed; use Patient.getEpisodeIndex() to retrieve it.
+ *
+ * @see org.erasmusmc.jerboa.dataClasses.Patient#getEpisodeIndex()
+ */
+public class EpisodeIndex {
+
+	//the history lists this index was built on and their sizes at that time
+	private List<Event> events;
+	private List<Prescription> prescriptions;
+	private List<Measurement> measurements;
+	private int eventsSize;
+	private int prescriptionsSize;
+	private int measurementsSize;
+
+	//the postings per key; null until first used
+	private Map<String, Posting> eventsByType;
+	private Map<String, Posting> eventsByUpperCaseType;
+	private Map<String, Posting> prescriptionsByATCGroup;
+	private Map<String, Posting> measurementsByUpperCaseType;
+
+	//whether the history lists are sorted by date; null until first checked
+	private Boolean eventsSorted;
+	private Boolean prescriptionsSorted;
+	private Boolean measurementsSorted;
+
+	//an empty posting returned for keys that do not occur
+	private static final Posting EMPTY = new Posting();
+
+	/**
+	 * Constructor building an index on the history of patient.
+	 * @param patient - the patient whose history is to be indexed
+	 */
+	public EpisodeIndex(Patient patient) {
+		this.events = patient.events;
+		this.prescriptions = patient.prescriptions;
+		this.measurements = patient.measurements;
+		this.eventsSize = events == null ? 0 : events.size();
+		this.prescriptionsSize = prescriptions == null ? 0 : prescriptions.size();
+		this.measurementsSize = measurements == null ? 0 : measurements.size();
+	}
+
+	/**
+	 * Checks if this index still reflects the history of patient, that is
+	 * if the history lists were not replaced and did not change in size.
+	 * @param patient - the patient this index was built for
+	 * @return - true if the index can be used; false otherwise
+	 */
+	public boolean isValidFor(Patient patient) {
+		return (events == patient.events) && (eventsSize == (events == null ? 0 : events.size())) &&
+				(prescriptions == patient.prescriptions) && (prescriptionsSize == (prescriptions == null ? 0 : prescriptions.size())) &&
+				(measurements == patient.measurements) && (measurementsSize == (measurements == null ? 0 : measurements.size()));
+	}
+
+	/**
+	 * Returns the events of which the type equals type.
+	 * @param type - the event type
+	 * @return - the posting of the events; the positions refer to patient.getEvents()
+	 */
+	public Posting getEvents(String type) {
+		if (eventsByType == null) {
+			eventsByType = new HashMap<String, Posting>();
+			for (int position = 0; position < eventsSize; position++) {
+				Event event = events.get(position);
+				add(eventsByType, event.getType(), position, event.getDate());
+			}
+			sort(eventsByType);
+		}
+		Posting posting = eventsByType.get(type);
+		return posting == null ? EMPTY : posting;
+	}
+
+	/**
+	 * Returns the events of which the type equals type ignoring case, as Event.inList() does.
+	 * @param type - the event type
+	 * @return - the posting of the events; the positions refer to patient.getEvents()
+	 */
+	public Posting getEventsIgnoreCase(String type) {
+		if (eventsByUpperCaseType == null) {
+			eventsByUpperCaseType = new HashMap<String, Posting>();
+			for (int position = 0; position < eventsSize; position++) {
+				Event event = events.get(position);
+				add(eventsByUpperCaseType, event.getType().toUpperCase(), position, event.getDate());
+			}
+			sort(eventsByUpperCaseType);
+		}
+		Posting posting = eventsByUpperCaseType.get(type.toUpperCase());
+		return posting == null ? EMPTY : posting;
+	}
+
+	/**
+	 * Returns the prescriptions of which the ATC code is in atcGroup, as Prescription.startsWith() does.
+	 * @param atcGroup - the (higher level) ATC code
+	 * @return - the posting of the prescriptions by start date; the positions refer to patient.getPrescriptions()
+	 */
+	public Posting getPrescriptions(String atcGroup) {
+		if (prescriptionsByATCGroup == null) {
+			prescriptionsByATCGroup = new HashMap<String, Posting>();
+		}
+		String key = atcGroup.toUpperCase();
+		Posting posting = prescriptionsByATCGroup.get(key);
+		if (posting == null) {
+			posting = new Posting();
+			for (int position = 0; position < prescriptionsSize; position++) {
+				Prescription prescription = prescriptions.get(position);
+				if (prescription.startsWith(atcGroup)) {
+					posting.add(position, prescription.getDate());
+				}
+			}
+			posting.sort();
+			prescriptionsByATCGroup.put(key, posting);
+		}
+		return posting;
+	}
+
+	/**
+	 * Returns the measurements of which the type equals type ignoring case, as Measurement.inList() does.
+	 * @param type - the measurement type
+	 * @return - the posting of the measurements; the positions refer to patient.getMeasurements()
+	 */
+	public Posting getMeasurementsIgnoreCase(String type) {
+		if (measurementsByUpperCaseType == null) {
+			measurementsByUpperCaseType = new HashMap<String, Posting>();
+			for (int position = 0; position < measurementsSize; position++) {
+				Measurement measurement = measurements.get(position);
+				add(measurementsByUpperCaseType, measurement.getType().toUpperCase(), position, measurement.getDate());
+			}
+			sort(measurementsByUpperCaseType);
+		}
+		Posting posting = measurementsByUpperCaseType.get(type.toUpperCase());
+		return posting == null ? EMPTY : posting;
+	}
+
+	/**
+	 * Returns the position of the first event in the window of which the type is in types
+	 * ignoring case, as Event.inList() does. This is the first match in list order only if
+	 * the events are sorted by date.
+	 * @param types - the event types
+	 * @param fromDate - the start of the window (inclusive)
+	 * @param toDate - the end of the window (inclusive)
+	 * @return - the position in patient.getEvents(); -1 if there is none
+	 */
+	public int firstEvent(List<String> types, long fromDate, long toDate) {
+		int first = -1;
+		for (String type : types) {
+			Posting posting = getEventsIgnoreCase(type);
+			int i = posting.first(fromDate, toDate);
+			if ((i != -1) && ((first == -1) || (posting.getPosition(i) < first))) {
+				first = posting.getPosition(i);
+			}
+		}
+		return first;
+	}
+
+	/**
+	 * Returns the position of the last event in the window of which the type is in types
+	 * ignoring case, as Event.inList() does. This is the last match in list order only if
+	 * the events are sorted by date.
+	 * @param types - the event types
+	 * @param fromDate - the start of the window (inclusive)
+	 * @param toDate - the end of the window (inclusive)
+	 * @return - the position in patient.getEvents(); -1 if there is none
+	 */
+	public int lastEvent(List<String> types, long fromDate, long toDate) {
+		int last = -1;
+		for (String type : types) {
+			Posting posting = getEventsIgnoreCase(type);
+			int i = posting.last(fromDate, toDate);
+			if ((i != -1) && (posting.getPosition(i) > last)) {
+				last = posting.getPosition(i);
+			}
+		}
+		return last;
+	}
+
+	/**
+	 * Checks if the events of the patient are sorted by date.
+	 * @return - true if the events are sorted; false otherwise
+	 */
+	public boolean areEventsSorted() {
+		if (eventsSorted == null) {
+			eventsSorted = isSorted(events, eventsSize);
+		}
+		return eventsSorted;
+	}
+
+	/**
+	 * Checks if the prescriptions of the patient are sorted by (start) date.
+	 * @return - true if the prescriptions are sorted; false otherwise
+	 */
+	public boolean arePrescriptionsSorted() {
+		if (prescriptionsSorted == null) {
+			prescriptionsSorted = isSorted(prescriptions, prescriptionsSize);
+		}
+		return prescriptionsSorted;
+	}
+
+	/**
+	 * Checks if the measurements of the patient are sorted by date.
+	 * @return - true if the measurements are sorted; false otherwise
+	 */
+	public boolean areMeasurementsSorted() {
+		if (measurementsSorted == null) {
+			measurementsSorted = isSorted(measurements, measurementsSize);
+		}
+		return measurementsSorted;
+	}
+
+	private static boolean isSorted(List<? extends Episode> episodes, int size) {
+		for (int position = 1; position < size; position++) {
+			if (episodes.get(position).getDate() < episodes.get(position - 1).getDate()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void add(Map<String, Posting> postings, String key, int position, int date) {
+		Posting posting = postings.get(key);
+		if (posting == null) {
+			posting = new Posting();
+			postings.put(key, posting);
+		}
+		posting.add(position, date);
+	}
+
+	private static void sort(Map<String, Posting> postings) {
+		for (Posting posting : postings.values()) {
+			posting.sort();
+		}
+	}
+
+
+	/**
+	 * The positions of the episodes matching a key, sorted by date and by position
+	 * within the same date. All date bounds are inclusive.
+	 */
+	public static class Posting {
+
+		private int[] positions = new int[4];
+		private int[] dates = new int[4];
+		private int size = 0;
+
+		private void add(int position, int date) {
+			if (size == positions.length) {
+				positions = Arrays.copyOf(positions, size * 2);
+				dates = Arrays.copyOf(dates, size * 2);
+			}
+			positions[size] = position;
+			dates[size] = date;
+			size++;
+		}
+
+		//the episodes are added in list order, so only unsorted lists need sorting
+		private void sort() {
+			boolean sorted = true;
+			for (int i = 1; sorted && (i < size); i++) {
+				sorted = dates[i - 1] <= dates[i];
+			}
+			if (!sorted) {
+				List<long[]> pairs = new ArrayList<long[]>();
+				for (int i = 0; i < size; i++) {
+					pairs.add(new long[] { dates[i], positions[i] });
+				}
+				Collections.sort(pairs, new Comparator<long[]>() {
+					@Override
+					public int compare(long[] pair1, long[] pair2) {
+						return pair1[0] != pair2[0] ? Long.compare(pair1[0], pair2[0]) : Long.compare(pair1[1], pair2[1]);
+					}
+				});
+				for (int i = 0; i < size; i++) {
+					dates[i] = (int) pairs.get(i)[0];
+					positions[i] = (int) pairs.get(i)[1];
+				}
+			}
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public int getPosition(int i) {
+			return positions[i];
+		}
+
+		public int getDate(int i) {
+			return dates[i];
+		}
+
+		/**
+		 * Returns the index of the first episode on or after date.
+		 * @param date - the date
+		 * @return - the index; size() if there is none
+		 */
+		public int lowerBound(long date) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (dates[middle] < date) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the index of the first episode after date.
+		 * @param date - the date
+		 * @return - the index; size() if there is none
+		 */
+		public int upperBound(long date) {
+			int low = 0;
+			int high = size;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (dates[middle] <= date) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+		/**
+		 * Returns the number of episodes in the window.
+		 * @param fromDate - the start of the window
+		 * @param toDate - the end of the window
+		 * @return - the number of episodes
+		 */
+		public int count(long fromDate, long toDate) {
+			return fromDate > toDate ? 0 : Math.max(0, upperBound(toDate) - lowerBound(fromDate));
+		}
+
+		/**
+		 * Checks if there is an episode in the window.
+		 * @param fromDate - the start of the window
+		 * @param toDate - the end of the window
+		 * @return - true if there is an episode; false otherwise
+		 */
+		public boolean exists(long fromDate, long toDate) {
+			return first(fromDate, toDate) != -1;
+		}
+
+		/**
+		 * Returns the index of the first (nearest after fromDate) episode in the window.
+		 * @param fromDate - the start of the window
+		 * @param toDate - the end of the window
+		 * @return - the index; -1 if there is none
+		 */
+		public int first(long fromDate, long toDate) {
+			int i = lowerBound(fromDate);
+			return ((i < size) && (dates[i] <= toDate)) ? i : -1;
+		}
+
+		/**
+		 * Returns the index of the last (nearest before toDate) episode in the window.
+		 * @param fromDate - the start of the window
+		 * @param toDate - the end of the window
+		 * @return - the index; -1 if there is none
+		 */
+		public int last(long fromDate, long toDate) {
+			int i = upperBound(toDate) - 1;
+			return ((i >= 0) && (dates[i] >= fromDate)) ? i : -1;
+		}
+	}
+
+}
@@ -32,6 +32,7 @@ package org.erasmusmc.jerboa.dataClasses;
  * $Date:: 2013-11-20 14:32#$:  Date and time (CET) of last commit						  *
  ******************************************************************************************/
 
+import java.util.HashMap;
 import java.util.List;
 
 import org.erasmusmc.jerboa.Jerboa;
@@ -39,6 +40,7 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.engine.InputFile;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 
 /**
  * This is an event object. It should contain the ID of the patient, a date, and a type.
@@ -70,12 +72,12 @@ public class Event extends Episode{
 	 * Constructor of a event object from an input file line.
 	 * Different behavior depending on the source of data (sorted or unsorted file).
 	 * Used in the PatientObjectCreator class.
-	 * @param attributes - a line from the events input file
+	 * @param columns - the tokenizer holding a line from the events input file
 	 * @param eventsFile - the events input file containing all details about formatting (e.g., data order, date format)
 	 */
-	public Event(String[] attributes, InputFile eventsFile){
-		super(Episode.EPISODE_TYPE_EVENT, attributes, eventsFile);
-		String type = attributes[eventsFile.getDataOrder()[COLUMN_TYPE]].trim().toUpperCase();
+	public Event(LineTokenizer columns, InputFile eventsFile){
+		super(Episode.EPISODE_TYPE_EVENT, columns, eventsFile);
+		String type = columns.getTrimmed(eventsFile.getDataOrder()[COLUMN_TYPE]).toUpperCase();
 		InputFileUtilities.addToList(InputFileUtilities.getEventTypes(), type);
 		this.type = getIndex(InputFileUtilities.getEventTypes(), type);
 	}
@@ -89,6 +91,19 @@ public class Event extends Episode{
 		super(Episode.EPISODE_TYPE_EVENT, attributes);
 	}
 
+	/**
+	 * Constructor of an event object from a binary patient object file.
+	 * Used in the PatientObjectReader class.
+	 * @param subset - the subset of the owning patient
+	 * @param patientID - the ID of the owning patient
+	 * @param type - the compressed event type
+	 * @param date - the event date in days
+	 * @param extendedData - the compressed extended data of the event
+	 */
+	public Event(String subset, String patientID, int type, int date, HashMap<Integer, Integer> extendedData){
+		super(Episode.EPISODE_TYPE_EVENT, subset, patientID, type, date, extendedData);
+	}
+
 	/**
 	 * Default toString returns uncompressed version of the Event object.
 	 * @return - a character string representation of this event.
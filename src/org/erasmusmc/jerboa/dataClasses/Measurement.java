@@ -33,6 +33,7 @@
 package org.erasmusmc.jerboa.dataClasses;
 
 import java.security.InvalidParameterException;
+import java.util.HashMap;
 import java.util.List;
 
 import org.erasmusmc.jerboa.Jerboa;
@@ -40,6 +41,7 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.engine.InputFile;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 
 /**
  * This is a measurement object. It should contain the ID of the patient, a date, a type and a value.
@@ -78,16 +80,16 @@ public class Measurement extends Episode{
 	 * Each attribute of the object is brought to a compressed form,
 	 * making use of conversion methods and/or look-up tables.
 	 * Used in the PatientObjectCreator class.
-	 * @param attributes - a line from the measurement input file
+	 * @param columns - the tokenizer holding a line from the measurement input file
 	 * @param measurementsFile - the measurement input file containing all formatting details (e.g., data order, date format)
 	 */
-	public Measurement(String[] attributes, InputFile measurementsFile){
-		super(Episode.EPISODE_TYPE_MEASUREMENT, attributes, measurementsFile);
+	public Measurement(LineTokenizer columns, InputFile measurementsFile){
+		super(Episode.EPISODE_TYPE_MEASUREMENT, columns, measurementsFile);
 
-		String type = attributes[measurementsFile.getDataOrder()[COLUMN_TYPE]].trim().toUpperCase();
+		String type = columns.getTrimmed(measurementsFile.getDataOrder()[COLUMN_TYPE]).toUpperCase();
 		InputFileUtilities.addToList(InputFileUtilities.getMeasurementTypes(), type);
 		this.type = getIndex(InputFileUtilities.getMeasurementTypes(), type);
-		String value = attributes[measurementsFile.getDataOrder()[COLUMN_VALUE]].trim().toUpperCase();
+		String value = columns.getTrimmed(measurementsFile.getDataOrder()[COLUMN_VALUE]).toUpperCase();
 		this.value = value.equals("") || value.equals("\"\"") ? NO_DATA :
 			InputFileUtilities.addToList(InputFileUtilities.getMeasurementValues(), value);
 	}
@@ -102,6 +104,21 @@ public class Measurement extends Episode{
 		this.value = Integer.valueOf(attributes[COLUMN_VALUE+SUBSET_OFFSET]);
 	}
 
+	/**
+	 * Constructor of a measurement object from a binary patient object file.
+	 * Used in the PatientObjectReader class.
+	 * @param subset - the subset of the owning patient
+	 * @param patientID - the ID of the owning patient
+	 * @param type - the compressed measurement type
+	 * @param date - the measurement date in days
+	 * @param value - the compressed measurement value
+	 * @param extendedData - the compressed extended data of the measurement
+	 */
+	public Measurement(String subset, String patientID, int type, int date, int value, HashMap<Integer, Integer> extendedData){
+		super(Episode.EPISODE_TYPE_MEASUREMENT, subset, patientID, type, date, extendedData);
+		this.value = value;
+	}
+
 	/**
 	 * Return the character string representation of the compressed version
 	 * of this Measurement object to be written to a patient object file (.pof).
@@ -250,6 +267,15 @@ public class Measurement extends Episode{
 		this.value = getIndex(InputFileUtilities.getMeasurementValues(), value);
 	}
 
+	/**
+	 * Returns the compressed form of this measurement's value.
+	 * @return - the index of the measurement value in the look-up table
+	 * or NO_DATA (i.e., -1) if the value is empty
+	 */
+	public int getValueCompressed() {
+		return value;
+	}
+
 	//EXTENDED DATA
 	/**
 	 * Flag to check if the measurement unit exists or not (as an extended column)
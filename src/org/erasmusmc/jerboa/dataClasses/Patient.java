@@ -45,6 +45,7 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.engine.InputFile;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedData;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 import org.erasmusmc.jerboa.utilities.inputChecking.AttributeChecker;
 
 /**
@@ -99,6 +100,12 @@ public class Patient implements Comparable<Patient>,Cloneable{
 
 	private int anonymizedPatientID;
 
+	//index on the patient history by type and date; built on first use
+	private EpisodeIndex episodeIndex;
+
+	//columnar view on the history lists; built on first use
+	private PatientHistory history;
+
 	/**
 	 * Retrieves and sets the indexes of all eventual
 	 * extended data columns for this patient. This is
@@ -134,6 +141,20 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	 * @param patient - the patient to process
 	 */
 	public Patient(Patient patient){
+		this(patient, true, true, true);
+	}
+
+	/**
+	 * Constructor initializing a patient object with a copy of an input patient object
+	 * and only the parts of its history that are requested. The history that is not
+	 * requested is left empty, as when loading a patient object file without it.
+	 * Used to provide each module with its own copy of a patient during a shared scan.
+	 * @param patient - the patient to process
+	 * @param withEvents - true if the events should be copied; false otherwise
+	 * @param withPrescriptions - true if the prescriptions should be copied; false otherwise
+	 * @param withMeasurements - true if the measurements should be copied; false otherwise
+	 */
+	public Patient(Patient patient, boolean withEvents, boolean withPrescriptions, boolean withMeasurements){
 
 		//copy patient details
 		this.ID = patient.ID;
@@ -146,7 +167,10 @@ public class Patient implements Comparable<Patient>,Cloneable{
 		this.extended = new ExtendedData(patient.extended);
 
 		//copy patient history
-		if (patient.getEvents() != null) {
+		if (!withEvents) {
+			this.events = new ArrayList<Event>();
+		}
+		else if (patient.getEvents() != null) {
 			this.events = new ArrayList<Event>();
 			for (Event event : patient.getEvents())
 				this.events.add(new Event(event));
@@ -155,7 +179,10 @@ public class Patient implements Comparable<Patient>,Cloneable{
 			this.events = null;
 		}
 
-		if (patient.getPrescriptions() != null) {
+		if (!withPrescriptions) {
+			this.prescriptions = new ArrayList<Prescription>();
+		}
+		else if (patient.getPrescriptions() != null) {
 			this.prescriptions = new ArrayList<Prescription>();
 			for (Prescription prescription : patient.getPrescriptions())
 				this.prescriptions.add(new Prescription(prescription));
@@ -164,7 +191,10 @@ public class Patient implements Comparable<Patient>,Cloneable{
 			this.prescriptions = null;
 		}
 
-		if (patient.getMeasurements() != null) {
+		if (!withMeasurements) {
+			this.measurements = new ArrayList<Measurement>();
+		}
+		else if (patient.getMeasurements() != null) {
 			this.measurements = new ArrayList<Measurement>();
 			for (Measurement measurement : patient.getMeasurements())
 				this.measurements.add(new Measurement(measurement));
@@ -173,7 +203,10 @@ public class Patient implements Comparable<Patient>,Cloneable{
 			this.measurements = null;
 		}
 
-		if (patient.getOriginalPrescriptions() != null) {
+		if (!withPrescriptions) {
+			this.originalPrescriptions = new ArrayList<Prescription>();
+		}
+		else if (patient.getOriginalPrescriptions() != null) {
 			this.originalPrescriptions = new ArrayList<Prescription>();
 			for (Prescription prescription : patient.getPrescriptions())
 				this.originalPrescriptions.add(new Prescription(prescription));
@@ -233,25 +266,25 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	 * Each attribute of the object is brought to a compressed form,
 	 * making use of conversion methods and/or look-up tables.
 	 * Used in the PatientObjectCreator class.
-	 * @param attributes - a line from the patient input file
+	 * @param columns - the tokenizer holding a line from the patient input file
 	 * @param patientsFile - the patient input file containing all formatting details (e.g., data order, date format)
 	 */
-	public Patient(String [] attributes, InputFile patientsFile){
+	public Patient(LineTokenizer columns, InputFile patientsFile){
 
-		this.ID =  attributes[patientsFile.getDataOrder()[Patient.COLUMN_PATIENT_ID]];
-		this.gender = AttributeChecker.checkGender(attributes[patientsFile.getDataOrder()[Patient.COLUMN_GENDER]].trim());
-		this.birthDate = DateUtilities.dateToDays(attributes[patientsFile.getDataOrder()[Patient.COLUMN_BIRTHDATE]].trim(), patientsFile.getDateFormat());
-		this.startDate = DateUtilities.dateToDays(attributes[patientsFile.getDataOrder()[Patient.COLUMN_START_DATE]].trim(), patientsFile.getDateFormat());
-		this.endDate = DateUtilities.dateToDays(attributes[patientsFile.getDataOrder()[Patient.COLUMN_END_DATE]].trim(), patientsFile.getDateFormat());
+		this.ID =  columns.getString(patientsFile.getDataOrder()[Patient.COLUMN_PATIENT_ID]);
+		this.gender = AttributeChecker.checkGender(columns.getTrimmed(patientsFile.getDataOrder()[Patient.COLUMN_GENDER]));
+		this.birthDate = columns.getDays(patientsFile.getDataOrder()[Patient.COLUMN_BIRTHDATE], patientsFile.getDateFormat());
+		this.startDate = columns.getDays(patientsFile.getDataOrder()[Patient.COLUMN_START_DATE], patientsFile.getDateFormat());
+		this.endDate = columns.getDays(patientsFile.getDataOrder()[Patient.COLUMN_END_DATE], patientsFile.getDateFormat());
 
 		//extended data
 		if (this.extended == null)
 			this.extended = new ExtendedData(DataDefinition.PATIENT);
 		if (patientsFile.hasExtendedData()){
-			this.extended.setData(this.extended.setExtendedAttributesFromInputFile(attributes));
+			this.extended.readFromInputFile(columns);
 		}
 
-		this.subset = patientsFile.getSubsetIndex() != -1 ? attributes[patientsFile.getSubsetIndex()].trim() : DataDefinition.DEFAULT_SUBSET_ID;
+		this.subset = patientsFile.getSubsetIndex() != -1 ? columns.getTrimmed(patientsFile.getSubsetIndex()) : DataDefinition.DEFAULT_SUBSET_ID;
 
 		this.events = new ArrayList<Event>();
 		this.prescriptions = new ArrayList<Prescription>();
@@ -280,7 +313,42 @@ public class Patient implements Comparable<Patient>,Cloneable{
 		//extended data
 		if (this.extended == null)
 			this.extended = new ExtendedData(DataDefinition.PATIENT);
-		this.extended.setData(this.extended.setExtendedAttributesFromPOF(attributes));
+		this.extended.readFromPOF(attributes);
+
+		this.events = new ArrayList<Event>();
+		this.prescriptions = new ArrayList<Prescription>();
+		this.measurements = new ArrayList<Measurement>();
+		this.originalPrescriptions = new ArrayList<Prescription>();
+		this.cohorts = new ArrayList<Cohort>();
+
+		setModifierDefaults();
+		setExtendedDataIndexes();
+	}
+
+	/**
+	 * Constructor of a patient object from a binary patient object file.
+	 * Used in the PatientObjectReader class.
+	 * @param subset - the subset of the patient
+	 * @param ID - the patient identifier
+	 * @param birthDate - the birth date in days
+	 * @param gender - the gender of the patient as defined in DataDefinition
+	 * @param startDate - the patient start date in days
+	 * @param endDate - the patient end date in days
+	 * @param extendedData - the compressed extended data of the patient
+	 */
+	public Patient(String subset, String ID, int birthDate, byte gender, int startDate, int endDate, HashMap<Integer, Integer> extendedData){
+
+		this.subset = subset;
+		this.ID = ID;
+		this.gender = gender;
+		this.birthDate = birthDate;
+		this.startDate = startDate;
+		this.endDate = endDate;
+
+		//extended data
+		if (this.extended == null)
+			this.extended = new ExtendedData(DataDefinition.PATIENT);
+		this.extended.setData(extendedData);
 
 		this.events = new ArrayList<Event>();
 		this.prescriptions = new ArrayList<Prescription>();
@@ -396,7 +464,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 		if (hasExtended()){
 			s.appendln("Extended");
 			s.appendln("---------------");
-			for (Integer extendedColumn : this.extended.getData().keySet())
+			for (Integer extendedColumn : this.extended.getKeySet())
 				s.appendln(this.extended.getAttributeName(extendedColumn)+"\t\t"+
 						this.extended.getAttributeAsString(extendedColumn));
 			s.appendln("");
@@ -540,7 +608,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	protected String toStringExtendedDataCompressed(){
 		String s = "";
 		for (Integer extColumnIndex : this.extended.getKeySet())
-			s+= ","+this.extended.getData().get(extColumnIndex);
+			s+= ","+this.extended.get(extColumnIndex);
 		return s;
 	}
 
@@ -1027,6 +1095,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	 */
 	public void sortMeasurements(){
 		Collections.sort(this.measurements);
+		clearCaches();
 	}
 
 	/**
@@ -1034,6 +1103,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	 */
 	public void sortEvents(){
 		Collections.sort(this.events);
+		clearCaches();
 	}
 
 	/**
@@ -1041,6 +1111,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	 */
 	public void sortPrescriptions(){
 		Collections.sort(this.prescriptions);
+		clearCaches();
 	}
 
 	/**
@@ -1209,6 +1280,57 @@ public class Patient implements Comparable<Patient>,Cloneable{
 		return days - this.startDate >= 0;
 	}
 
+	/**
+	 * Returns the index on the history of this patient, which answers window queries
+	 * on events, prescriptions and measurements of a type by binary search.
+	 * The index is built on first use and rebuilt when a history list was replaced
+	 * or changed in size. Call clearEpisodeIndex() after changing episodes in place.
+	 * @return - the index on the history of this patient
+	 */
+	public EpisodeIndex getEpisodeIndex(){
+		if ((episodeIndex == null) || (!episodeIndex.isValidFor(this)))
+			episodeIndex = new EpisodeIndex(this);
+		return episodeIndex;
+	}
+
+	/**
+	 * Discards the index on the history of this patient.
+	 * It will be rebuilt on the next call of getEpisodeIndex().
+	 */
+	public void clearEpisodeIndex(){
+		this.episodeIndex = null;
+	}
+
+	/**
+	 * Returns a columnar view on the history of this patient, which holds the dates,
+	 * compressed types, durations and values of the episodes in primitive arrays.
+	 * The view is built on first use and rebuilt when a history list was replaced
+	 * or changed in size. Call clearHistory() after changing episodes in place.
+	 * @return - the columnar view on the history of this patient
+	 */
+	public PatientHistory getHistory(){
+		if ((history == null) || (!history.isValidFor(this)))
+			history = new PatientHistory(this);
+		return history;
+	}
+
+	/**
+	 * Discards the columnar view on the history of this patient.
+	 * It will be rebuilt on the next call of getHistory().
+	 */
+	public void clearHistory(){
+		this.history = null;
+	}
+
+	/**
+	 * Discards all the views built on the history of this patient.
+	 * To be called whenever the history may have been changed in place.
+	 */
+	public void clearCaches(){
+		clearEpisodeIndex();
+		clearHistory();
+	}
+
 	//GETTERS AND SETTERS FOR OBJECT ATTRIBUTES
 	public List<Event> getEvents() {
 		return events;
@@ -1240,14 +1362,17 @@ public class Patient implements Comparable<Patient>,Cloneable{
 
 	public void setEvents(List<Event> events) {
 		this.events = events;
+		clearCaches();
 	}
 
 	public void setPrescriptions(List<Prescription> prescriptions) {
 		this.prescriptions = prescriptions;
+		clearCaches();
 	}
 
 	public void setMeasurements(List<Measurement> measurements) {
 		this.measurements = measurements;
+		clearCaches();
 	}
 
 	public void setOriginalPrescriptions(List<Prescription> prescriptions) {
@@ -1283,8 +1408,7 @@ public class Patient implements Comparable<Patient>,Cloneable{
 	}
 
 	public boolean hasExtended(){
-		return this.extended != null && this.extended.getData() != null
-				&& this.extended.getData().size() > 0;
+		return this.extended != null && this.extended.size() > 0;
 	}
 
 	public String getAnonymizedPatientId() {
@@ -0,0 +1,275 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.dataClasses;
+
+import java.util.List;
+
+/**
+ * This class is a columnar view on the history of a patient. The dates, compressed types,
+ * durations and compressed values of the events, prescriptions and measurements are kept
+ * in parallel arrays, so modules scanning the history of a patient can go through
+ * contiguous primitives and only retrieve the episode objects they actually use.
+ * The columns of each history list are built on first use. The positions refer to the
+ * history lists of the patient and the episode objects are still available through
+ * getEvent(), getPrescription() and getMeasurement(), for instance to read extended data
+ * or to modify them. The view is only valid as long as the history lists of the patient
+ * are not changed; use Patient.getHistory() to retrieve it.
+ *
+ * @see org.erasmusmc.jerboa.dataClasses.Patient#getHistory()
+ */
+public class PatientHistory {
+
+	//the history lists this view was built on and their sizes at that time
+	private List<Event> events;
+	private List<Prescription> prescriptions;
+	private List<Measurement> measurements;
+	private int eventsSize;
+	private int prescriptionsSize;
+	private int measurementsSize;
+
+	//the columns of the events; null until first used
+	private int[] eventDates;
+	private int[] eventTypes;
+	private boolean eventsSorted;
+
+	//the columns of the prescriptions; null until first used
+	private int[] prescriptionDates;
+	private int[] prescriptionTypes;
+	private int[] prescriptionDurations;
+
+	//the columns of the measurements; null until first used
+	private int[] measurementDates;
+	private int[] measurementTypes;
+	private int[] measurementValues;
+
+	//flag for no data, as in Episode
+	private static final int NO_DATA = -1;
+
+	/**
+	 * Constructor building a view on the history of patient.
+	 * @param patient - the patient whose history is to be viewed
+	 */
+	public PatientHistory(Patient patient) {
+		this.events = patient.events;
+		this.prescriptions = patient.prescriptions;
+		this.measurements = patient.measurements;
+		this.eventsSize = events == null ? 0 : events.size();
+		this.prescriptionsSize = prescriptions == null ? 0 : prescriptions.size();
+		this.measurementsSize = measurements == null ? 0 : measurements.size();
+	}
+
+	/**
+	 * Checks if this view still reflects the history of patient, that is
+	 * if the history lists were not replaced and did not change in size.
+	 * @param patient - the patient this view was built for
+	 * @return - true if the view can be used; false otherwise
+	 */
+	public boolean isValidFor(Patient patient) {
+		return (events == patient.events) && (eventsSize == (events == null ? 0 : events.size())) &&
+				(prescriptions == patient.prescriptions) && (prescriptionsSize == (prescriptions == null ? 0 : prescriptions.size())) &&
+				(measurements == patient.measurements) && (measurementsSize == (measurements == null ? 0 : measurements.size()));
+	}
+
+	//EVENTS
+	public int getEventCount() {
+		return eventsSize;
+	}
+
+	public int getEventDate(int position) {
+		if (eventDates == null)
+			buildEvents();
+		return eventDates[position];
+	}
+
+	/**
+	 * Returns the compressed type of an event, that is its index in InputFileUtilities.getEventTypes().
+	 * @param position - the position of the event in patient.getEvents()
+	 * @return - the compressed event type
+	 */
+	public int getEventType(int position) {
+		if (eventTypes == null)
+			buildEvents();
+		return eventTypes[position];
+	}
+
+	public Event getEvent(int position) {
+		return events.get(position);
+	}
+
+	/**
+	 * Returns the position of the first event on or after date by a binary search on the
+	 * event dates. The events have to be sorted by date, which can be checked with areEventsSorted().
+	 * @param date - the date in days
+	 * @return - the position of the first event on or after date; getEventCount() if there is none
+	 */
+	public int getFirstEventFrom(int date) {
+		if (eventDates == null)
+			buildEvents();
+		int low = 0;
+		int high = eventsSize;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (eventDates[middle] < date)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+
+	/**
+	 * Checks if the events of the patient are sorted by date.
+	 * @return - true if the events are sorted; false otherwise
+	 */
+	public boolean areEventsSorted() {
+		if (eventDates == null)
+			buildEvents();
+		return eventsSorted;
+	}
+
+	//PRESCRIPTIONS
+	public int getPrescriptionCount() {
+		return prescriptionsSize;
+	}
+
+	public int getPrescriptionDate(int position) {
+		if (prescriptionDates == null)
+			buildPrescriptions();
+		return prescriptionDates[position];
+	}
+
+	/**
+	 * Returns the compressed ATC code of a prescription, that is its index in InputFileUtilities.getPrescriptionAtcs().
+	 * @param position - the position of the prescription in patient.getPrescriptions()
+	 * @return - the compressed ATC code
+	 */
+	public int getPrescriptionType(int position) {
+		if (prescriptionTypes == null)
+			buildPrescriptions();
+		return prescriptionTypes[position];
+	}
+
+	public int getPrescriptionDuration(int position) {
+		if (prescriptionDurations == null)
+			buildPrescriptions();
+		return prescriptionDurations[position];
+	}
+
+	/**
+	 * Returns the end date of a prescription, as Prescription.getEndDate() does.
+	 * @param position - the position of the prescription in patient.getPrescriptions()
+	 * @return - the end date of the prescription
+	 */
+	public int getPrescriptionEndDate(int position) {
+		int duration = getPrescriptionDuration(position);
+		return getPrescriptionDate(position) + (duration != NO_DATA ? duration : 0);
+	}
+
+	public Prescription getPrescription(int position) {
+		return prescriptions.get(position);
+	}
+
+	//MEASUREMENTS
+	public int getMeasurementCount() {
+		return measurementsSize;
+	}
+
+	public int getMeasurementDate(int position) {
+		if (measurementDates == null)
+			buildMeasurements();
+		return measurementDates[position];
+	}
+
+	/**
+	 * Returns the compressed type of a measurement, that is its index in InputFileUtilities.getMeasurementTypes().
+	 * @param position - the position of the measurement in patient.getMeasurements()
+	 * @return - the compressed measurement type
+	 */
+	public int getMeasurementType(int position) {
+		if (measurementTypes == null)
+			buildMeasurements();
+		return measurementTypes[position];
+	}
+
+	/**
+	 * Returns the compressed value of a measurement, that is its index in InputFileUtilities.getMeasurementValues().
+	 * @param position - the position of the measurement in patient.getMeasurements()
+	 * @return - the compressed measurement value
+	 */
+	public int getMeasurementValue(int position) {
+		if (measurementValues == null)
+			buildMeasurements();
+		return measurementValues[position];
+	}
+
+	public Measurement getMeasurement(int position) {
+		return measurements.get(position);
+	}
+
+	private void buildEvents() {
+		int[] dates = new int[eventsSize];
+		int[] types = new int[eventsSize];
+		boolean sorted = true;
+		for (int position = 0; position < eventsSize; position++) {
+			Event event = events.get(position);
+			dates[position] = event.date;
+			types[position] = event.type;
+			if ((position > 0) && (dates[position] < dates[position - 1]))
+				sorted = false;
+		}
+		eventsSorted = sorted;
+		eventTypes = types;
+		eventDates = dates;
+	}
+
+	private void buildPrescriptions() {
+		int[] dates = new int[prescriptionsSize];
+		int[] types = new int[prescriptionsSize];
+		int[] durations = new int[prescriptionsSize];
+		for (int position = 0; position < prescriptionsSize; position++) {
+			Prescription prescription = prescriptions.get(position);
+			dates[position] = prescription.date;
+			types[position] = prescription.type;
+			durations[position] = prescription.getDuration();
+		}
+		prescriptionTypes = types;
+		prescriptionDurations = durations;
+		prescriptionDates = dates;
+	}
+
+	private void buildMeasurements() {
+		int[] dates = new int[measurementsSize];
+		int[] types = new int[measurementsSize];
+		int[] values = new int[measurementsSize];
+		for (int position = 0; position < measurementsSize; position++) {
+			Measurement measurement = measurements.get(position);
+			dates[position] = measurement.date;
+			types[position] = measurement.type;
+			values[position] = measurement.getValueCompressed();
+		}
+		measurementTypes = types;
+		measurementValues = values;
+		measurementDates = dates;
+	}
+
+}
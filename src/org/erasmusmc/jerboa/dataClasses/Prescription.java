@@ -35,6 +35,7 @@ package org.erasmusmc.jerboa.dataClasses;
  ******************************************************************************************/
 
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 import org.apache.commons.lang3.StringUtils;
@@ -43,6 +44,7 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.engine.InputFile;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 
 /**
  * This is a prescription object. It should contain the ID of the patient, a date, a valid type (ATC) and a duration.
@@ -103,17 +105,21 @@ public class Prescription extends Episode{
 	 * Each attribute of the object is brought to a compressed form,
 	 * making use of conversion methods and/or look-up tables.
 	 * Used in the PatientObjectCreator class.
-	 * @param attributes - a line from the prescription input file 
+	 * @param columns - the tokenizer holding a line from the prescription input file 
 	 * @param prescriptionsFile - the prescriptions input file containing all formatting details (e.g., data order, date format)
 	 */
-	public Prescription(String [] attributes, InputFile prescriptionsFile){
-		super(Episode.EPISODE_TYPE_PRESCRIPTION, attributes, prescriptionsFile);
+	public Prescription(LineTokenizer columns, InputFile prescriptionsFile){
+		super(Episode.EPISODE_TYPE_PRESCRIPTION, columns, prescriptionsFile);
 		
-		String atc = attributes[prescriptionsFile.getDataOrder()[COLUMN_TYPE]].trim().toUpperCase();
+		String atc = columns.getTrimmed(prescriptionsFile.getDataOrder()[COLUMN_TYPE]).toUpperCase();
 		InputFileUtilities.addToList(InputFileUtilities.getPrescriptionAtcs(), atc);
 		this.type = getIndex(InputFileUtilities.getPrescriptionAtcs(), atc);
-		this.duration = attributes[prescriptionsFile.getDataOrder()[Prescription.COLUMN_DURATION]].trim().equals("") ?
-				0 : (int)Double.parseDouble(attributes[prescriptionsFile.getDataOrder()[Prescription.COLUMN_DURATION]].trim());
+		int durationColumn = prescriptionsFile.getDataOrder()[Prescription.COLUMN_DURATION];
+		if (columns.isEmpty(durationColumn))
+			this.duration = 0;
+		else
+			this.duration = columns.isInt(durationColumn) ? columns.getInt(durationColumn) :
+				(int)Double.parseDouble(columns.getTrimmed(durationColumn));
 
 		this.combinationStartDate = this.date;
 	}
@@ -130,6 +136,23 @@ public class Prescription extends Episode{
 				NO_DATA : Integer.valueOf(attributes[COLUMN_DURATION + SUBSET_OFFSET]);
 		this.combinationStartDate = this.date;
 	}
+
+	/**
+	 * Constructor of a prescription object from a binary patient object file.
+	 * Used in the PatientObjectReader class.
+	 * @param subset - the subset of the owning patient
+	 * @param patientID - the ID of the owning patient
+	 * @param type - the compressed ATC code
+	 * @param date - the prescription date in days
+	 * @param duration - the prescription duration in days
+	 * @param extendedData - the compressed extended data of the prescription
+	 */
+	public Prescription(String subset, String patientID, int type, int date, int duration, HashMap<Integer, Integer> extendedData){
+		super(Episode.EPISODE_TYPE_PRESCRIPTION, subset, patientID, type, date, extendedData);
+
+		this.duration = duration;
+		this.combinationStartDate = this.date;
+	}
 	
 	//COMPARATORS
 	/**
@@ -888,11 +911,21 @@ public class Prescription extends Episode{
 	 * Checks if this ATC is in a certain group, e.g. "A10E"
 	 * If the group starts with "_" it is a generated ATC code and then the ATC code
 	 * of the prescription should be equal to the group.
+	 * The group is compiled once into a matcher on the ATC look-up table.
 	 * @param group - string containing the higher level ATC code
 	 * @return - true is this prescription is part of this ATC group; false otherwise
 	 */
 	public boolean startsWith(String group){
-		return group.substring(0, 1).equals("_") ? StringUtils.upperCase(this.getATC()).equals(StringUtils.upperCase(group)) : StringUtils.startsWith(StringUtils.upperCase(this.getATC()),StringUtils.upperCase(group));
+		return ATCMatcher.of(group).matches(this);
+	}
+
+	/**
+	 * Checks if this ATC is in one of the ATC groups compiled in matcher.
+	 * @param matcher - the compiled ATC groups
+	 * @return - true is this prescription is part of one of the ATC groups; false otherwise
+	 */
+	public boolean startsWith(ATCMatcher matcher){
+		return matcher.matches(this);
 	}
 
 	/**
@@ -22,6 +22,9 @@
 
 package org.erasmusmc.jerboa.encryption;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -31,10 +34,10 @@ import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.security.Key;
 import java.security.interfaces.RSAKey;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherInputStream;
-import javax.crypto.CipherOutputStream;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
@@ -45,11 +48,20 @@ import org.erasmusmc.jerboa.config.FilePaths;
  * Class for encrypting and decrypting a stream of data.
  * It makes use of RSA key pairs.
  *
+ * The encrypted file starts with a random AES key encrypted with the public RSA key,
+ * followed by the data encrypted in authenticated frames (see EncryptedFrameOutputStream).
+ * The AES key is followed by FRAMED_FORMAT before the RSA encryption. Files written by
+ * previous versions hold only the AES key and the data encrypted as one AES stream;
+ * these can still be decrypted.
+ *
  * @author MM
  *
  */
 public class Encrypt {
 
+	/** Marker following the AES key in files encrypted in authenticated frames. */
+	private static final byte[] FRAMED_FORMAT = {'G', 'C', 'M', '1'};
+
 	/**
 	 * Get a stream to write an encrypted output file using a given public key.
 	 * @param outputFilename - The file name of the encrypted output file.
@@ -64,13 +76,24 @@ public class Encrypt {
 	 */
 	public OutputStream getEncryptedStream(String outputFilename, String publicKeyName) {
 		Key publicKey = null;
-		CipherOutputStream encryptedStream = null;
 
 		if (publicKeyName.equals("EU-ADR"))
 			publicKey = loadKey(Encrypt.class.getResourceAsStream(FilePaths.ENCRYPTION_EU_ADR));
 		else if (publicKeyName.equals("PUBLIC"))
 			publicKey = loadKey(Encrypt.class.getResourceAsStream(FilePaths.ENCRYPTION_PUBLIC));
 
+		return getEncryptedStream(outputFilename, publicKey);
+	}
+
+	/**
+	 * Get a stream to write an encrypted output file using a given public key.
+	 * @param outputFilename - The file name of the encrypted output file.
+	 * @param publicKey      - The public RSA key that is used for the encryption.
+	 * @return               - The stream that can be used to write the encrypted file; null if not possible.
+	 */
+	public OutputStream getEncryptedStream(String outputFilename, Key publicKey) {
+		OutputStream encryptedStream = null;
+
 		try {
 			//Step 1: generate random symmetric key (AES algorithm):
 			KeyGenerator kgen = KeyGenerator.getInstance("AES");
@@ -84,13 +107,12 @@ public class Encrypt {
 			//Step 3: Open file stream:
 			FileOutputStream file = new FileOutputStream(outputFilename);
 
-			//Step 4: Encode symmetric key using encoding cipher, and write to file:
-			file.write(rsaCipher.doFinal(aesKey.getEncoded()));
+			//Step 4: Encode symmetric key and format using encoding cipher, and write to file:
+			rsaCipher.update(aesKey.getEncoded());
+			file.write(rsaCipher.doFinal(FRAMED_FORMAT));
 
-			//Step 5: Open encrypted stream using symmetric key (AES algorithm):
-			Cipher cipher = Cipher.getInstance("AES");
-			cipher.init(Cipher.ENCRYPT_MODE, aesKey);
-			encryptedStream = new CipherOutputStream(file, cipher);
+			//Step 5: Open encrypted stream using symmetric key (AES-GCM frames):
+			encryptedStream = new EncryptedFrameOutputStream(new BufferedOutputStream(file, 1 << 16), aesKey);
 		} catch (Exception e){
 			e.printStackTrace();
 		}
@@ -105,29 +127,51 @@ public class Encrypt {
 	 * @return               - The decrypted stream to be read from the encrypted file.
 	 */
 	public InputStream getDecryptedStream(String source, String privateKeyFile){
-		CipherInputStream decryptedStream = null;
-
+		// Step 1: Get the private key from file
+		Key privateKey = null;
 		try {
-			// Step 1: Get the private key from file
-			Key privateKey = loadKey(privateKeyFile);
+			privateKey = loadKey(privateKeyFile);
+		} catch (Exception e){
+			e.printStackTrace();
+		}
 
+		return privateKey != null ? getDecryptedStream(source, privateKey) : null;
+	}
+
+	/**
+	 * Get a stream to read from an encrypted file using a given private key.
+	 * Files in the format of previous versions are decrypted as well.
+	 * @param source     - The name of the encrypted file.
+	 * @param privateKey - The private RSA key.
+	 * @return           - The decrypted stream to be read from the encrypted file; null if not possible.
+	 */
+	public InputStream getDecryptedStream(String source, Key privateKey){
+		InputStream decryptedStream = null;
+
+		try {
 			// Step 2: Generate cipher using private key (RSA algorithm):
 			Cipher rsaCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
 			rsaCipher.init(Cipher.DECRYPT_MODE, privateKey);
 
 			// Step 3: open file:
-			FileInputStream textFileStream = new FileInputStream(source);
+			DataInputStream textFileStream = new DataInputStream(new BufferedInputStream(new FileInputStream(source), 1 << 16));
 
 			// Step 4: read encrypted symmetric key, and decrypt using private key:
 			int keySize = ((RSAKey)privateKey).getModulus().bitLength();
 			byte[] encKey = new byte[keySize/8];
-			textFileStream.read(encKey);
-			Key aesKey = new SecretKeySpec(rsaCipher.doFinal(encKey), "AES");
-
-			// Step 5: create decryption stream (AES algorithm):
-			Cipher aesCipher = Cipher.getInstance("AES");
-			aesCipher.init(Cipher.DECRYPT_MODE, aesKey);
-			decryptedStream = new CipherInputStream(textFileStream, aesCipher);
+			textFileStream.readFully(encKey);
+			byte[] keyData = rsaCipher.doFinal(encKey);
+
+			// Step 5: create decryption stream (AES-GCM frames or AES algorithm for the previous format):
+			int keyLength = keyData.length - FRAMED_FORMAT.length;
+			if (isAESKeyLength(keyLength) && Arrays.equals(Arrays.copyOfRange(keyData, keyLength, keyData.length), FRAMED_FORMAT)){
+				SecretKey aesKey = new SecretKeySpec(keyData, 0, keyLength, "AES");
+				decryptedStream = new EncryptedFrameInputStream(textFileStream, aesKey);
+			}else{
+				Cipher aesCipher = Cipher.getInstance("AES");
+				aesCipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(keyData, "AES"));
+				decryptedStream = new CipherInputStream(textFileStream, aesCipher);
+			}
 		} catch (Exception e){
 			e.printStackTrace();
 		}
@@ -135,6 +179,15 @@ public class Encrypt {
 		return decryptedStream;
 	}
 
+	/**
+	 * Checks if length is a valid length in bytes of an AES key.
+	 * @param length - the key length in bytes
+	 * @return - true if it is the length of a 128, 192 or 256 bits key
+	 */
+	private static boolean isAESKeyLength(int length) {
+		return (length == 16) || (length == 24) || (length == 32);
+	}
+
 	/**
 	 * Loads a public encryption key from fileName.
 	 * @param filename - the name of the file containing the encryption key
@@ -0,0 +1,145 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.encryption;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Input stream decrypting the authenticated frames written by an EncryptedFrameOutputStream.
+ * The frames are decrypted one at a time, so only one frame of data is held in memory.
+ * An IOException is thrown if a frame fails the authentication or if the stream ends
+ * before the last frame.
+ *
+ * @see EncryptedFrameOutputStream
+ */
+public class EncryptedFrameInputStream extends InputStream {
+
+	private DataInputStream in;
+	private Cipher cipher;
+	private SecretKey key;
+
+	private byte[] encrypted;
+	private byte[] buffer;
+	private int position;
+	private int count;
+	private long frames;
+	private boolean lastFrame;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the stream the frames are read from and the symmetric key.
+	 * @param in - the stream holding the encrypted frames
+	 * @param key - the AES key used for the encryption
+	 * @throws GeneralSecurityException - if AES-GCM is not available
+	 */
+	public EncryptedFrameInputStream(InputStream in, SecretKey key) throws GeneralSecurityException {
+		this.in = new DataInputStream(in);
+		this.key = key;
+		this.cipher = Cipher.getInstance(EncryptedFrameOutputStream.CIPHER);
+		this.encrypted = new byte[EncryptedFrameOutputStream.FRAME_SIZE + EncryptedFrameOutputStream.TAG_LENGTH];
+		this.buffer = new byte[EncryptedFrameOutputStream.FRAME_SIZE];
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!fill())
+			return -1;
+		return buffer[position++] & 0xFF;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, count - position);
+		System.arraycopy(buffer, position, b, off, n);
+		position += n;
+		return n;
+	}
+
+	@Override
+	public int available() throws IOException {
+		return count - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	/**
+	 * Makes sure there is decrypted data available, reading the next frames if needed.
+	 * @return - true if there is data available; false if the last frame was read
+	 * @throws IOException - if a frame cannot be read or fails the authentication
+	 */
+	private boolean fill() throws IOException {
+		while (position == count){
+			if (lastFrame)
+				return false;
+			readFrame();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads and decrypts the next frame.
+	 * @throws IOException - if the frame cannot be read or fails the authentication
+	 */
+	private void readFrame() throws IOException {
+		int header;
+		try{
+			header = in.readInt();
+		}catch (EOFException e){
+			throw new IOException("The encrypted stream is truncated", e);
+		}
+		int length = header & ~EncryptedFrameOutputStream.LAST_FRAME;
+		if (length > EncryptedFrameOutputStream.FRAME_SIZE)
+			throw new IOException("The encrypted stream is corrupt");
+		try{
+			in.readFully(encrypted, 0, length + EncryptedFrameOutputStream.TAG_LENGTH);
+		}catch (EOFException e){
+			throw new IOException("The encrypted stream is truncated", e);
+		}
+		try{
+			cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(EncryptedFrameOutputStream.TAG_LENGTH * 8,
+					EncryptedFrameOutputStream.nonce(frames++)));
+			cipher.updateAAD(EncryptedFrameOutputStream.headerBytes(header));
+			count = cipher.doFinal(encrypted, 0, length + EncryptedFrameOutputStream.TAG_LENGTH, buffer, 0);
+		}catch (GeneralSecurityException e){
+			throw new IOException("The encrypted stream is corrupt", e);
+		}
+		position = 0;
+		lastFrame = (header & EncryptedFrameOutputStream.LAST_FRAME) != 0;
+	}
+
+}
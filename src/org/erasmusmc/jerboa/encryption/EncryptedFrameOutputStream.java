@@ -0,0 +1,166 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.encryption;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Output stream encrypting the data written to it in authenticated frames (AES-GCM).
+ * Each frame holds at most FRAME_SIZE bytes of data and consists of a header with
+ * the length of the data and a flag marking the last frame, followed by the encrypted
+ * data and its authentication tag. The nonce of a frame is its sequence number and the
+ * header is authenticated along with the data, so that frames that are modified, reordered,
+ * removed or truncated are detected when decrypting. The key should be used for one stream only.
+ *
+ * @see EncryptedFrameInputStream
+ */
+public class EncryptedFrameOutputStream extends OutputStream {
+
+	/** The maximum number of data bytes in a frame. */
+	public static final int FRAME_SIZE = 64 * 1024;
+
+	//frame format
+	static final String CIPHER = "AES/GCM/NoPadding";
+	static final int TAG_LENGTH = 16; //in bytes
+	static final int NONCE_LENGTH = 12; //in bytes
+	static final int LAST_FRAME = 0x80000000;
+
+	private DataOutputStream out;
+	private Cipher cipher;
+	private SecretKey key;
+
+	private byte[] buffer;
+	private int count;
+	private byte[] encrypted;
+	private long frames;
+	private boolean closed;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the stream the frames are written to and the symmetric key.
+	 * @param out - the stream receiving the encrypted frames
+	 * @param key - the AES key used for the encryption
+	 * @throws GeneralSecurityException - if AES-GCM is not available
+	 */
+	public EncryptedFrameOutputStream(OutputStream out, SecretKey key) throws GeneralSecurityException {
+		this.out = new DataOutputStream(out);
+		this.key = key;
+		this.cipher = Cipher.getInstance(CIPHER);
+		this.buffer = new byte[FRAME_SIZE];
+		this.encrypted = new byte[FRAME_SIZE + TAG_LENGTH];
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		if (count == FRAME_SIZE)
+			writeFrame(false);
+		buffer[count++] = (byte)b;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		while (len > 0){
+			if (count == FRAME_SIZE)
+				writeFrame(false);
+			int n = Math.min(len, FRAME_SIZE - count);
+			System.arraycopy(b, off, buffer, count, n);
+			count += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Flushes the underlying stream. The data of an incomplete frame stays
+	 * buffered until the frame is full or the stream is closed.
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/**
+	 * Writes the last frame and closes the underlying stream.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		try{
+			writeFrame(true);
+		}finally{
+			out.close();
+		}
+	}
+
+	/**
+	 * Encrypts the buffered data and writes it as a frame.
+	 * @param last - true if this is the last frame of the stream
+	 * @throws IOException - if the encryption fails or the frame cannot be written
+	 */
+	private void writeFrame(boolean last) throws IOException {
+		int header = count | (last ? LAST_FRAME : 0);
+		try{
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce(frames++)));
+			cipher.updateAAD(headerBytes(header));
+			int length = cipher.doFinal(buffer, 0, count, encrypted, 0);
+			out.writeInt(header);
+			out.write(encrypted, 0, length);
+		}catch (GeneralSecurityException e){
+			throw new IOException("Unable to encrypt the data", e);
+		}
+		count = 0;
+	}
+
+	/**
+	 * Returns the nonce of a frame, which is its sequence number.
+	 * @param frame - the sequence number of the frame
+	 * @return - the nonce of the frame
+	 */
+	static byte[] nonce(long frame){
+		byte[] nonce = new byte[NONCE_LENGTH];
+		for (int i = NONCE_LENGTH - 1; i >= NONCE_LENGTH - 8; i--){
+			nonce[i] = (byte)frame;
+			frame >>>= 8;
+		}
+		return nonce;
+	}
+
+	/**
+	 * Returns the header of a frame as it is written to the stream.
+	 * @param header - the length of the frame data and the last frame flag
+	 * @return - the header as big endian bytes
+	 */
+	static byte[] headerBytes(int header){
+		return new byte[] {(byte)(header >>> 24), (byte)(header >>> 16), (byte)(header >>> 8), (byte)header};
+	}
+
+}
@@ -115,7 +115,7 @@ public class InputFile{
 		this.header = file.getHeader();
 		this.size = file.getSize();
 		this.dates = file.getDates();
-		this.checksum = file.getChecksum();
+		this.checksum = file.checksum;
 		this.eol = file.getEol();
 		this.delimiter = file.getDelimiter();
 		this.dateFormat = file.getDateFormat() != DateUtilities.DATE_INVALID ? file.getDateFormat() : null;
@@ -395,8 +395,12 @@ public class InputFile{
 		this.size = size;
 	}
 	public String getChecksum() {
-		return checksum == null ?
-			FileUtilities.checksumMD5(this.name) : checksum;
+		if (checksum == null)
+			checksum = FileUtilities.checksumMD5(this.name);
+		return checksum;
+	}
+	public void setChecksum(String checksum) {
+		this.checksum = checksum;
 	}
 	public short[] getDataOrder() {
 		return dataOrder;
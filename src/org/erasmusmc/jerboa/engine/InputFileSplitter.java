@@ -38,15 +38,26 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.text.StrBuilder;
-import org.apache.commons.lang3.text.StrTokenizer;
 import org.erasmusmc.jerboa.Jerboa;
 import org.erasmusmc.jerboa.utilities.FileUtilities;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 import org.erasmusmc.jerboa.utilities.Logging;
 import org.erasmusmc.jerboa.utilities.Progress;
 
@@ -60,6 +71,9 @@ import org.erasmusmc.jerboa.config.Parameters;
  * The number of subsets is determined by the total size of the input files used in the processing.
  * It creates a folder structure which will hold records from the initial data grouped together based on a specified criteria.
  * The data that is fed to the subsets is subsequently compressed based on look-up tables created during input checking.
+ * The splitting is pipelined: for each input file a reader thread reads blocks of lines, a pool of parser threads
+ * extracts the patient identifiers and assigns the lines to subsets, and writer threads append the data to the subset files.
+ * The order of the lines in each subset file is the same as in the input file. The input files are split concurrently.
  *
  * @author MG
  *
@@ -77,13 +91,12 @@ public class InputFileSplitter {
 	private InputFileSet inputSet;						// the set of input files
 	private InputFile inputFile;						// the input file that is currently processed
 
-	//output buffer
-	private BufferedWriter out; 						// the writer used to output data to file
-
-	//buckets for the data
-	private List<StrBuilder> subsetData;      			// the list of buffers that will contain data from the input file
-
-	private int sizeOfsubsetData;						// keeps track of the total size that the subsetData list has
+	//pipeline
+	private int threads;								// the number of parser threads shared by the input files
+	private static final int LINES_PER_BLOCK = 10000;	// the maximum number of lines read at once by the reader thread
+	private static final int QUEUE_CAPACITY = 4;		// the number of blocks waiting per parser or writer thread
+	private Semaphore blocksInMemory;					// the permits for the blocks read and not yet written, shared by the input files
+	private long blockSize;								// the maximum number of characters of a block
 
 	//progress
 	private Progress progress;
@@ -103,6 +116,7 @@ public class InputFileSplitter {
 				Parameters.MAX_SPLIT_SIZE : Jerboa.getScriptParser().getSplitChunkSize();
 
 		this.nbSubsets = setSplitNumber(inputSet.getSelectedFiles());
+		this.threads = Jerboa.getScriptParser().getNumberOfThreads();
 
 		//create folder to hold the splitting structure
 		File file = new File(FilePaths.SPLIT_PATH);
@@ -116,8 +130,6 @@ public class InputFileSplitter {
 			Logging.add("Unable to retrieve folder names for input sorting", Logging.ERROR);
 		}
 
-		this.sizeOfsubsetData = 0;
-
 		progress = new Progress();
 	}
 
@@ -135,27 +147,6 @@ public class InputFileSplitter {
 		return nbSubsets;
 	}
 
-	/**
-	 * Feeds an input line from a file to the right subset.
-	 * @param subset - the subset in which the data from line is assigned to
-	 * @param line - the actual data from a line in the patients file
-	 */
-	public void addToSubset(int subset, String line){
-		if (line != null){
-			//add line
-			if (subsetData.get(subset) == null)
-				subsetData.set(subset, new StrBuilder());
-			subsetData.get(subset).appendln(line);
-			sizeOfsubsetData += line.length(); //a char is encoded on 2 bytes
-
-			//check if maximum allowed memory for this list is reached
-			if ((sizeOfsubsetData / FileUtilities.ONE_MB) >= chunkSize){
-				flushAll();
-				sizeOfsubsetData = 0;
-			}
-		}
-	}
-
 	/**
 	 * Computes a hash value from the patient ID in order to divide the input files into subsets.
 	 * This is used when the input files are not sorted. The number of subsets is predetermined based on
@@ -182,110 +173,469 @@ public class InputFileSplitter {
 	 * @throws IOException - if the file cannot be read
 	 */
 	public void split(InputFile inputFile) throws IOException{
-		if (inputFile != null && !inputFile.isEmpty()){
-			this.inputFile = inputFile;
-			Logging.add("\t\tSorting "+FilenameUtils.getName(inputFile.getName())+" file");
-			//initialize progress
-			String fileName = FilePaths.SUBSET_FILES[inputFile.getType()];
-			progress = new Progress();
-			progress.init(inputFile.getSize(), "Sorting the "+FilenameUtils.getName(fileName)+" file");
-			int eol = inputFile.getEol().length();
-			//initialize hash for input file subset
-			if (inputFile.getType() == DataDefinition.PATIENTS_FILE)
-				patientSubsetIDs = new HashMap<String, Integer>();
-			//initialize buffers for data
-			subsetData = new ArrayList<StrBuilder>();
-			for (int i = 0; i< subsetNames.size(); i++)
-				subsetData.add(i, new StrBuilder());
-			//open input file
-			try{
-				BufferedReader br = FileUtilities.openFile(inputFile.getName());
-				StrTokenizer strLine = new StrTokenizer(br.readLine(), inputFile.getDelimiter()); //header
-				strLine.setIgnoreEmptyTokens(false);
-				progress.update(strLine.getContent().length()+eol);
-				String[] columns = null;
-
-				//go through line by line
-				strLine.reset(br.readLine());
-				while (strLine.getContent() != null){
-					progress.update(strLine.getContent().length()+eol);
-					columns = strLine.getTokenArray();
-					//add line to right buffer
-					addToSubset(subset(columns[inputFile.getPatientIDIndex()]), strLine.getContent());
-					//keep track of the input subset (if present in the input file)
-					if (inputFile.getType() == DataDefinition.PATIENTS_FILE && inputFile.getSubsetIndex() != -1)
-						addElementToCounterHash(columns[inputFile.getSubsetIndex()], patientSubsetIDs);
-					progress.show();
-
-					strLine.reset(br.readLine());
+		split(Collections.singletonList(inputFile));
+	}
+
+	/**
+	 * Splits the input files concurrently into subsets. Each input file has its own
+	 * reader and writer threads, while the parser threads are shared among the files.
+	 * @param inputFiles - the input files to be split into subsets
+	 * @throws IOException - if a file cannot be read or a subset file cannot be written
+	 */
+	public void split(List<InputFile> inputFiles) throws IOException{
+
+		//retrieve the files with data
+		List<InputFile> files = new ArrayList<InputFile>();
+		long totalSize = 0;
+		for (InputFile file : inputFiles){
+			if (file != null && !file.isEmpty()){
+				files.add(file);
+				totalSize += file.getSize();
+				Logging.add("\t\tSorting "+FilenameUtils.getName(file.getName())+" file");
+				//initialize hash for input file subset
+				if (file.getType() == DataDefinition.PATIENTS_FILE)
+					patientSubsetIDs = new HashMap<String, Integer>();
+			}
+		}
+		if (files.size() == 0)
+			return;
+
+		//initialize progress
+		progress = new Progress();
+		progress.init(totalSize, files.size() == 1 ?
+				"Sorting the "+FilenameUtils.getName(FilePaths.SUBSET_FILES[files.get(0).getType()])+" file" :
+				"Sorting the input files");
+
+		//half of the split chunk size is used by the blocks in memory and half by the buffers of the subset files,
+		//counting two bytes per character and the data of a block being held both as lines and per subset
+		int maxBlocks = QUEUE_CAPACITY * threads;
+		blocksInMemory = new Semaphore(maxBlocks);
+		blockSize = Math.max(FileUtilities.ONE_MB / 16, (long)(chunkSize * FileUtilities.ONE_MB / (8 * maxBlocks)));
+		int bufferSize = (int)Math.min(Integer.MAX_VALUE / 2,
+				Math.max(FileUtilities.ONE_MB / 16, (long)(chunkSize * FileUtilities.ONE_MB / (4 * files.size() * nbSubsets))));
+
+		ExecutorService parsers = Executors.newFixedThreadPool(threads, new SplitterThreadFactory("parser"));
+		ExecutorService splitters = Executors.newFixedThreadPool(files.size(), new SplitterThreadFactory("reader"));
+		try{
+			//launch the splitting of each file
+			List<Future<Void>> splits = new ArrayList<Future<Void>>();
+			for (InputFile file : files)
+				splits.add(splitters.submit(new FileSplit(file, parsers, bufferSize)));
+
+			//wait for all files to be split
+			IOException error = null;
+			for (int i = 0; i < splits.size(); i++){
+				try{
+					splits.get(i).get();
+				}catch(ExecutionException e){
+					Logging.add("Error while splitting the input file "+files.get(i).getName()+".", Logging.ERROR);
+					Logging.outputStackTrace(e.getCause());
+					if (error == null)
+						error = new IOException("Error while splitting the input file "+files.get(i).getName()+".", e.getCause());
+				}
+			}
+			progress.close();
+			if (error != null)
+				throw error;
+
+			this.inputFile = files.get(files.size() - 1);
+
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("The splitting of the input files was interrupted.", e);
+		}finally{
+			parsers.shutdownNow();
+			splitters.shutdownNow();
+		}
+	}
+
+	/**
+	 * Updates the progress of the splitting. The progress
+	 * is shared by the input files being split concurrently.
+	 * @param bytes - the number of bytes processed since the last update
+	 */
+	private void updateProgress(long bytes){
+		synchronized(progress){
+			progress.update(bytes);
+			progress.show();
+		}
+	}
+
+	/**
+	 * The splitting of one input file. The lines are read in blocks by the calling thread
+	 * and parsed by the shared parser threads. The parsed blocks are passed in their order
+	 * to the writer threads, each of them appending the data of a group of subsets.
+	 * The number of blocks read and not yet written is bounded for all input files together.
+	 */
+	private class FileSplit implements Callable<Void>{
+
+		private InputFile file;
+		private ExecutorService parsers;
+		private int bufferSize;
+
+		//the parsed blocks waiting to be passed to the writers, in the order of the input file
+		private BlockingQueue<Future<ParsedBlock>> parsedBlocks;
+
+		//the writers and their queues
+		private SubsetWriter[] writers;
+
+		public FileSplit(InputFile file, ExecutorService parsers, int bufferSize){
+			this.file = file;
+			this.parsers = parsers;
+			this.bufferSize = bufferSize;
+			this.parsedBlocks = new ArrayBlockingQueue<Future<ParsedBlock>>(QUEUE_CAPACITY * threads);
+		}
+
+		@Override
+		public Void call() throws Exception{
+
+			//launch the writers
+			writers = new SubsetWriter[Math.max(1, Math.min(threads, nbSubsets))];
+			List<Thread> writerThreads = new ArrayList<Thread>();
+			for (int i = 0; i < writers.length; i++){
+				writers[i] = new SubsetWriter(FilePaths.SUBSET_FILES[file.getType()], bufferSize);
+				Thread thread = new Thread(writers[i], "Jerboa splitter writer");
+				thread.setDaemon(true);
+				thread.start();
+				writerThreads.add(thread);
+			}
+
+			//launch the dispatcher passing the parsed blocks to the writers
+			Thread dispatcher = new Thread(new Runnable(){
+				public void run(){
+					dispatch();
 				}
+			}, "Jerboa splitter dispatcher");
+			dispatcher.setDaemon(true);
+			dispatcher.start();
+
+			Exception error = null;
+			try{
+				read();
+			}catch(Exception e){
+				error = e;
+			}finally{
+				//signal the end of the file
+				parsedBlocks.put(new EndOfFile());
+				dispatcher.join();
+				for (Thread thread : writerThreads)
+					thread.join();
+			}
+
+			//report the first error
+			if (error != null)
+				throw error;
+			for (SubsetWriter writer : writers)
+				if (writer.error != null)
+					throw writer.error;
+
+			return null;
+		}
 
-				progress.close();
-				//free memory
+		/**
+		 * Reads the input file in blocks of lines and submits them to the parsers.
+		 * Blocks if too many blocks are held in memory.
+		 * @throws IOException - if the file cannot be read
+		 * @throws InterruptedException - if interrupted while waiting for the parsers or writers
+		 */
+		private void read() throws IOException, InterruptedException{
+			BufferedReader br = FileUtilities.openFile(file.getName());
+			try{
+				int eol = file.getEol().length();
+				String header = br.readLine();
+				if (header != null)
+					updateProgress(header.length() + eol);
+
+				List<String> block = new ArrayList<String>();
+				long size = 0;
+				String line;
+				while ((line = br.readLine()) != null && !hasFailed()){
+					block.add(line);
+					size += line.length() + eol;
+					if (block.size() == LINES_PER_BLOCK || size >= blockSize){
+						submit(block);
+						block = new ArrayList<String>();
+						size = 0;
+					}
+				}
+				if (block.size() > 0)
+					submit(block);
+			}finally{
 				br.close();
-				br = null;
-				flushAll();
+			}
+		}
 
-			}catch(IOException e){
-				Logging.add("Error while openning the input file "+inputFile.getName()+".", Logging.ERROR);
-				throw new IOException("Error while openning the input file "+inputFile.getName()+".");
+		/**
+		 * Submits a block of lines to the parsers once there is room for it in memory.
+		 * The permit is released when all the data of the block is written.
+		 * @param lines - the lines of the block
+		 * @throws InterruptedException - if interrupted while waiting for memory or for the writers
+		 */
+		private void submit(List<String> lines) throws InterruptedException{
+			blocksInMemory.acquire();
+			try{
+				parsedBlocks.put(parsers.submit(new BlockParser(file, lines)));
+			}catch(InterruptedException e){
+				blocksInMemory.release();
+				throw e;
+			}
+		}
+
+		/**
+		 * Takes the parsed blocks in the order of the input file and passes
+		 * the data of each subset to the writer responsible for it.
+		 */
+		private void dispatch(){
+			try{
+				Future<ParsedBlock> next;
+				while (!((next = parsedBlocks.take()) instanceof EndOfFile)){
+					//keep taking the blocks after an error so that the reader is not blocked
+					if (hasFailed()){
+						blocksInMemory.release();
+						continue;
+					}
+					try{
+						ParsedBlock block = next.get();
+						for (int s = 0; s < block.subsetData.length; s++)
+							if (block.subsetData[s] != null)
+								block.pending++;
+						for (int s = 0; s < block.subsetData.length; s++)
+							if (block.subsetData[s] != null)
+								writers[s % writers.length].queue.put(new SubsetData(s, block.subsetData[s], block));
+						if (block.subsetIDs != null)
+							synchronized(patientSubsetIDs){
+								for (String subsetID : block.subsetIDs)
+									addElementToCounterHash(subsetID, patientSubsetIDs);
+							}
+						updateProgress(block.size);
+					}catch(ExecutionException e){
+						blocksInMemory.release();
+						writers[0].error = e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+					}
+				}
+			}catch(InterruptedException e){
+				writers[0].error = e;
+				Thread.currentThread().interrupt();
+			}finally{
+				//signal the end of the data to the writers
+				for (SubsetWriter writer : writers){
+					try{
+						writer.queue.put(SubsetData.END);
+					}catch(InterruptedException e){
+						Thread.currentThread().interrupt();
+					}
+				}
 			}
 		}
+
+		/**
+		 * Checks if one of the writers failed, in which case reading can stop.
+		 * @return - true if an error occurred while parsing or writing; false otherwise
+		 */
+		private boolean hasFailed(){
+			for (SubsetWriter writer : writers)
+				if (writer.error != null)
+					return true;
+			return false;
+		}
 	}
 
 	/**
-	 * Adds an element to a hash map that is used for counting.
-	 * The method checks if the element is present in the hash map and increases its value by one.
-	 * If not present in the table; the element is added with a key equal to one.
-	 * @param element - the element to be added in the hash map
-	 * @param hash - the hash map in which the element should be added
+	 * Assigns the lines of a block to their subsets based on the patient identifier.
 	 */
-	public static void addElementToCounterHash(String element, HashMap<String, Integer> hash){
-		hash.put(element, hash.get(element) == null ? 1 : hash.get(element)+1);
+	private class BlockParser implements Callable<ParsedBlock>{
+
+		private InputFile file;
+		private List<String> lines;
+
+		public BlockParser(InputFile file, List<String> lines){
+			this.file = file;
+			this.lines = lines;
+		}
+
+		@Override
+		public ParsedBlock call(){
+			ParsedBlock block = new ParsedBlock();
+			int eol = file.getEol().length();
+			int patientIDIndex = file.getPatientIDIndex();
+			int subsetIndex = file.getType() == DataDefinition.PATIENTS_FILE ? file.getSubsetIndex() : -1;
+			if (subsetIndex != -1)
+				block.subsetIDs = new ArrayList<String>(lines.size());
+
+			//only the patient ID and subset columns are turned into strings
+			LineTokenizer tokenizer = new LineTokenizer(file.getDelimiter());
+			for (String line : lines){
+				block.size += line.length() + eol;
+				tokenizer.reset(line);
+				int subset = subset(patientIDIndex < tokenizer.size() ? tokenizer.getString(patientIDIndex) : "");
+				if (block.subsetData[subset] == null)
+					block.subsetData[subset] = new StrBuilder();
+				block.subsetData[subset].appendln(line);
+				//keep track of the input subset (if present in the input file)
+				if (subsetIndex != -1)
+					block.subsetIDs.add(subsetIndex < tokenizer.size() ? tokenizer.getString(subsetIndex) : "");
+			}
+
+			return block;
+		}
 	}
 
 	/**
-	 * Appends data from a subset to the designated folder and clears the buffer.
-	 * It can deal with different input file types.
-	 * @param subset - the designated subset
+	 * The lines of a block grouped per subset.
 	 */
-	private void outputSubset(int subset){
-		try{
-			String outputFile = FilePaths.SPLIT_PATH+(subset)+"/"+FilePaths.SUBSET_FILES[inputFile.getType()];
-			out = new BufferedWriter(new FileWriter(outputFile,true));
-			out.append(subsetData.get(subsetNames.get(subset)).toString());
-			out.flush();
-			out.close();
-		}catch (Exception e){
-			Logging.add("Unable to append subset data to file "+subset+"/"+FilePaths.SUBSET_FILES[inputFile.getType()], Logging.ERROR);
+	private class ParsedBlock{
+		private StrBuilder[] subsetData = new StrBuilder[nbSubsets];
+		private List<String> subsetIDs;
+		private long size;
+
+		//the number of subsets of which the data is not yet written
+		private int pending;
+
+		/**
+		 * Marks the data of one subset as written and releases the
+		 * memory permit of the block once all its data is written.
+		 */
+		private void written(){
+			boolean done;
+			synchronized(this){
+				done = --pending == 0;
+			}
+			if (done)
+				blocksInMemory.release();
 		}
-		subsetData.set(subsetNames.get(subset), new StrBuilder());
 	}
 
 	/**
-	 * Makes sure that all data remaining in the buffers is output to their designated folder.
-	 * It checks through all the lists and empties their content in the right subset folder.
+	 * Marks the end of an input file in the queue of parsed blocks.
 	 */
-	public void flushAll(){
-
-		if ((subsetNames != null && subsetNames.size() > 0) &&
-				(subsetData != null && subsetData.size() > 0)){
-			//retrieve folder names
-			for (int s: subsetNames){
-				if (subsetData.get(subsetNames.get(s)) != null){
-					StrBuilder data = subsetData.get(subsetNames.get(s));
-					if (data.length() > 0){
-						outputSubset(s);
-						//clear buffer
-						subsetData.set(subsetNames.get(s), new StrBuilder());
-					}
+	private static class EndOfFile extends FutureTask<ParsedBlock>{
+		public EndOfFile(){
+			super(new Callable<ParsedBlock>(){
+				public ParsedBlock call(){
+					return null;
 				}
+			});
+		}
+	}
+
+	/**
+	 * The data of a subset to be appended to its file.
+	 */
+	private static class SubsetData{
+		private static final SubsetData END = new SubsetData(-1, null, null);
+
+		private int subset;
+		private StrBuilder data;
+		private ParsedBlock block;
+
+		public SubsetData(int subset, StrBuilder data, ParsedBlock block){
+			this.subset = subset;
+			this.data = data;
+			this.block = block;
+		}
+	}
+
+	/**
+	 * Appends the data of a group of subsets to their files. The file of each subset
+	 * is opened once, with a buffer of its own, and closed when the input file is done.
+	 */
+	private class SubsetWriter implements Runnable{
+
+		private String fileName;
+		private int bufferSize;
+		private BlockingQueue<SubsetData> queue = new ArrayBlockingQueue<SubsetData>(QUEUE_CAPACITY * nbSubsets);
+		private HashMap<Integer, BufferedWriter> outputs = new HashMap<Integer, BufferedWriter>();
+		private volatile Exception error;
+
+		public SubsetWriter(String fileName, int bufferSize){
+			this.fileName = fileName;
+			this.bufferSize = bufferSize;
+		}
+
+		@Override
+		public void run(){
+			SubsetData next;
+			try{
+				//keep taking the data after an error so that the dispatcher is not blocked
+				while ((next = queue.take()) != SubsetData.END){
+					if (error == null)
+						output(next.subset, next.data);
+					next.block.written();
+				}
+			}catch(InterruptedException e){
+				error = e;
+				Thread.currentThread().interrupt();
+			}finally{
+				for (Integer subset : outputs.keySet())
+					close(subset);
+				outputs.clear();
+			}
+		}
+
+		/**
+		 * Appends the data of a subset to its file and keeps the first error, if any.
+		 * @param subset - the designated subset
+		 * @param data - the data of the subset
+		 */
+		private void output(int subset, StrBuilder data){
+			try{
+				BufferedWriter out = outputs.get(subset);
+				if (out == null)
+					outputs.put(subset, out = new BufferedWriter(new FileWriter(
+							FilePaths.SPLIT_PATH+subsetNames.get(subset)+"/"+fileName, true), bufferSize));
+				out.append(data);
+			}catch(IOException e){
+				Logging.add("Unable to append subset data to file "+subset+"/"+fileName, Logging.ERROR);
+				if (error == null)
+					error = e;
 			}
+		}
 
-			System.gc(); //explicti call to the garbage collector (just in case)
+		/**
+		 * Flushes and closes the file of a subset and keeps the first error, if any.
+		 * @param subset - the designated subset
+		 */
+		private void close(int subset){
+			try{
+				outputs.get(subset).close();
+			}catch(IOException e){
+				Logging.add("Unable to append subset data to file "+subset+"/"+fileName, Logging.ERROR);
+				if (error == null)
+					error = e;
+			}
 		}
 	}
 
+	/**
+	 * Creates the daemon threads used for the splitting.
+	 */
+	private static class SplitterThreadFactory implements ThreadFactory{
+
+		private String name;
+
+		public SplitterThreadFactory(String name){
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable){
+			Thread thread = new Thread(runnable, "Jerboa splitter "+name);
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	/**
+	 * Adds an element to a hash map that is used for counting.
+	 * The method checks if the element is present in the hash map and increases its value by one.
+	 * If not present in the table; the element is added with a key equal to one.
+	 * @param element - the element to be added in the hash map
+	 * @param hash - the hash map in which the element should be added
+	 */
+	public static void addElementToCounterHash(String element, HashMap<String, Integer> hash){
+		hash.put(element, hash.get(element) == null ? 1 : hash.get(element)+1);
+	}
+
 	/**
 	 * Creates the folder and file structure for splitting the input files.
 	 * It creates a folder for each subset that is to be created from the input data
@@ -37,9 +37,17 @@ import java.util.BitSet;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.io.FilenameUtils;
 import org.erasmusmc.jerboa.Jerboa;
@@ -48,6 +56,7 @@ import org.erasmusmc.jerboa.config.Parameters;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.ScriptParser.Settings;
 import org.erasmusmc.jerboa.utilities.Logging;
+import org.erasmusmc.jerboa.utilities.OutputManager.DeferredWrite;
 import org.erasmusmc.jerboa.utilities.PatientUtilities;
 import org.erasmusmc.jerboa.utilities.Progress;
 import org.erasmusmc.jerboa.utilities.TimeUtilities;
@@ -73,6 +82,9 @@ public abstract class Module extends Worker{
 	//flag if patients should be shuffled
 	private boolean shufflePatients = false;
 
+	//flag if the patients are fed by a shared scan, which reports the progress for all its modules
+	private boolean inSharedScan = false;
+
 	//module modifiers
 	protected boolean noModifiers;
 	private List<Modifier> modifiers;
@@ -109,6 +121,15 @@ public abstract class Module extends Worker{
 	 * Let the module do its task.
 	 */
 	public void runModule(){
+		if (startModule())
+			processPatients();
+	}
+
+	/**
+	 * Initializes this module and its modifiers and checks their parameters.
+	 * @return - true if the module is active and ready to process the patients; false otherwise
+	 */
+	boolean startModule(){
 
 		//start the module
 		if (isActive()){
@@ -116,7 +137,7 @@ public abstract class Module extends Worker{
 					init() && checkParameters()){
 				if (Jerboa.isInDebugMode)
 					showParameterSettings();
-				processPatients();
+				return true;
 			}else{
 				Logging.add("Unable to initialize module "+
 					this.title, Logging.ERROR);
@@ -128,6 +149,8 @@ public abstract class Module extends Worker{
 			Logging.add("Note: the module "+this.getTitle()+" is not active", Logging.HINT);
 			Logging.addNewLine();
 		}
+
+		return false;
 	}
 
 	/**
@@ -135,52 +158,33 @@ public abstract class Module extends Worker{
 	 * and gathers descriptive statistics of the input data in order to generate a summary table.
 	 */
 	private void processPatients() {
-		inPostProcessing = false;
-
-		//feed-back
-		timer = new Timer();
-		progress = new Progress();
 
 		PatientUtilities pu = new PatientUtilities(FilePaths.PATIENTS_PATH);
 		pu.withProgress = false;
 
-		//start counter
-		timer.start();
-		progress.init(Stats.nbPatients, title);
-
-		Logging.addWithTimeStamp(title+" started");
-
-		Jerboa.getResultSet().setDelimiter(delimiterResultSet);
-		Jerboa.getResultSet().setMissingValue(missingValueResultSet);
-		Jerboa.getResultSet().setOnlyInCohort(resultSetOnlyInCohort);
+		startProcessing();
 
 		//process all patients
 		int anonymizedPatientID = 0;
 		Map<String, Integer> anonymizedPatientIDs = new HashMap<String, Integer>();
-		for (String file : pu.patientFiles){
-			patients = pu.loadPatientsFromFile(file, withEvents(),
-					withPrescriptions(), withMeasurements());
-			while (patients.size() > 0){
-				//apply modifiers if necessary and process patient
-				Patient p = patients.get(0);
-				anonymizedPatientIDs.put(p.getPatientID(), anonymizedPatientID);
-				p.setAnonymizedPatientId(anonymizedPatientID);
-				process(noModifiers ? p : applyModifiers(p, inPostProcessing));
-				progress.update();
-				patients.remove(0);
-				anonymizedPatientID++;
+		int threads = Jerboa.getScriptParser() != null ? Jerboa.getScriptParser().getNumberOfThreads() : 1;
+		if (!(threads > 1 && pu.patientFiles.size() > 1 &&
+				processPatientsInParallel(pu, Math.min(threads, pu.patientFiles.size()), anonymizedPatientIDs))){
+			for (String file : pu.patientFiles){
+				Iterator<Patient> iterator = pu.iteratePatientsFromFile(file, withEvents(),
+						withPrescriptions(), withMeasurements());
+				while (iterator.hasNext()){
+					//apply modifiers if necessary and process patient
+					Patient p = iterator.next();
+					anonymizedPatientIDs.put(p.getPatientID(), anonymizedPatientID);
+					p.setAnonymizedPatientId(anonymizedPatientID);
+					processPatient(p);
+					anonymizedPatientID++;
+				}
 			}
 		}
 
-		//make sure the progress bar is closed
-		progress.close();
-
-		if (postProcessingNeeded) {
-			inPostProcessing = true;
-
-			progress.init(Stats.nbPatients, title+" post processing");
-
-			Logging.addWithTimeStamp(title+" post processing started");
+		if (startPostProcessing()) {
 
 			//shuffle the patient files when needed
 			if (shufflePatients) {
@@ -189,27 +193,135 @@ public abstract class Module extends Worker{
 
 			//post process all patients
 			for (String file : pu.patientFiles){
-				patients = pu.loadPatientsFromFile(file, withEvents(),
-						withPrescriptions(), withMeasurements());
+				Iterator<Patient> iterator;
 
 				//shuffle the patients when needed
 				if (shufflePatients) {
+					patients = pu.loadPatientsFromFile(file, withEvents(),
+							withPrescriptions(), withMeasurements());
 					Collections.shuffle(patients);
+					iterator = patients.iterator();
+				}
+				else {
+					iterator = pu.iteratePatientsFromFile(file, withEvents(),
+							withPrescriptions(), withMeasurements());
 				}
 
-				while (patients.size() > 0){
-					Patient p = patients.get(0);
+				while (iterator.hasNext()){
+					Patient p = iterator.next();
 					p.setAnonymizedPatientId(anonymizedPatientIDs.get(p.getPatientID()));
-					postProcess(noModifiers ? p : applyModifiers(p, inPostProcessing));
-					progress.update();
-					patients.remove(0);
+					postProcessPatient(p);
 				}
+				patients = null;
 			}
+		}
 
-			//make sure the progress bar is closed
-			progress.close();
+		finishProcessing();
+	}
+
+	/**
+	 * Starts the timer and the progress of this module and
+	 * sets the result set properties before processing the patients.
+	 */
+	void startProcessing(){
+		startProcessing(false);
+	}
+
+	/**
+	 * Starts the timer and the progress of this module and
+	 * sets the result set properties before processing the patients.
+	 * @param inSharedScan - true if the patients are fed by a shared scan, which
+	 * logs the start and the execution time of all its modules at once; false otherwise
+	 */
+	void startProcessing(boolean inSharedScan){
+		inPostProcessing = false;
+		this.inSharedScan = inSharedScan;
+
+		//feed-back
+		timer = new Timer();
+		progress = new Progress();
+
+		//start counter
+		timer.start();
+		progress.init(Stats.nbPatients, title);
+
+		if (!inSharedScan)
+			Logging.addWithTimeStamp(title+" started");
+
+		Jerboa.getResultSet().setDelimiter(delimiterResultSet);
+		Jerboa.getResultSet().setMissingValue(missingValueResultSet);
+		Jerboa.getResultSet().setOnlyInCohort(resultSetOnlyInCohort);
+	}
+
+	/**
+	 * Applies the modifiers (if any) on patient and processes it.
+	 * @param patient - the patient to be processed
+	 */
+	void processPatient(Patient patient){
+		processPatient(patient, noModifiers ? null : modifiers, this);
+		progress.update();
+	}
+
+	/**
+	 * Applies the modifiers (if any) on patient and processes it with module.
+	 * Used by both the sequential and the parallel processing of the patients,
+	 * the latter passing the copies of the workers of its partition.
+	 * @param patient - the patient to be processed
+	 * @param modifiers - the modifiers to be applied; null if none
+	 * @param module - the module processing the patient
+	 * @return - the patient after being processed by the module
+	 */
+	private Patient processPatient(Patient patient, List<? extends Worker> modifiers, Worker module){
+		patient = applyModifiers(patient, modifiers, inPostProcessing);
+		if (patient != null)
+			patient.clearCaches();
+		return module.process(patient);
+	}
+
+	/**
+	 * Closes the progress of the patient processing and starts
+	 * the post processing if this module needs it.
+	 * @return - true if the patients should be post processed; false otherwise
+	 */
+	boolean startPostProcessing(){
+
+		//make sure the progress bar is closed
+		progress.close();
+
+		if (postProcessingNeeded) {
+			inPostProcessing = true;
+
+			progress.init(Stats.nbPatients, title+" post processing");
+
+			if (!inSharedScan)
+				Logging.addWithTimeStamp(title+" post processing started");
 		}
 
+		return postProcessingNeeded;
+	}
+
+	/**
+	 * Applies the modifiers (if any) on patient and post processes it.
+	 * @param patient - the patient to be post processed
+	 */
+	void postProcessPatient(Patient patient){
+		patient = noModifiers ? patient : applyModifiers(patient, inPostProcessing);
+		if (patient != null)
+			patient.clearCaches();
+		postProcess(patient);
+		progress.update();
+	}
+
+	/**
+	 * Outputs the results of this module and its modifiers once all patients
+	 * were processed and displays the execution time.
+	 */
+	void finishProcessing(){
+
+		//make sure the progress bar is closed
+		if (postProcessingNeeded)
+			progress.close();
+
 		//output
 		outputModifierResults();
 		outputWorkerResults();
@@ -221,13 +333,172 @@ public abstract class Module extends Worker{
 
 		//display execution timers
 		timer.stop();
-		timer.displayTotal(title+" done in: ");
+		if (!inSharedScan)
+			timer.displayTotal(title+" done in: ");
 
 		finish();
 		clearMemory();
 
 	}
 
+	/**
+	 * Processes the patients using several threads. Each thread processes a contiguous
+	 * partition of the patient object files with its own copy of the module and modifiers,
+	 * unless they are thread-safe. The output of each patient object file is committed in
+	 * the order of the files and the results of the partitions are merged in the same order,
+	 * so that the output is the same as when the patients are processed sequentially.
+	 * @param pu - the patient utilities holding the list of patient object files
+	 * @param threads - the number of threads to be used
+	 * @param anonymizedPatientIDs - the map to be filled with the anonymized patient IDs
+	 * @return - true if the patients were processed; false if this module or one of
+	 * its modifiers does not support parallel processing or the result set is used
+	 */
+	private boolean processPatientsInParallel(final PatientUtilities pu, int threads,
+			Map<String, Integer> anonymizedPatientIDs){
+
+		//the result set is filled in the order of the patients and is not thread-safe
+		if (resultSetActive)
+			return false;
+
+		//create the workers of each partition with the module last
+		final List<List<Worker>> partitions = new ArrayList<List<Worker>>();
+		for (int t = 0; t < threads; t++){
+			List<Worker> partition = new ArrayList<Worker>();
+			if (!noModifiers && modifiers != null)
+				for (Modifier f : modifiers)
+					if (f.isActive())
+						partition.add(f.isThreadSafe() ? f : f.createPartition());
+			partition.add(isThreadSafe() ? this : createPartition());
+			if (partition.contains(null)){
+				if (Jerboa.isInDebugMode)
+					Logging.add("The module "+title+" does not support parallel processing", Logging.HINT);
+				return false;
+			}
+			partitions.add(partition);
+		}
+
+		Logging.add("Processing the patients using "+threads+" threads");
+
+		final List<String> files = pu.patientFiles;
+		final List<CompletableFuture<Void>> committed = new ArrayList<CompletableFuture<Void>>();
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, "Jerboa worker");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try{
+			//count the patients per file to assign the anonymized patient IDs
+			List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+			for (final String file : files)
+				counts.add(executor.submit(new Callable<Integer>(){
+					public Integer call(){
+						return PatientUtilities.countPatients(file);
+					}
+				}));
+			final int[] offsets = new int[files.size()];
+			for (int i = 1; i < files.size(); i++)
+				offsets[i] = offsets[i - 1] + counts.get(i - 1).get();
+
+			//process each partition of the files
+			final List<CompletableFuture<List<DeferredWrite>>> outputs = new ArrayList<CompletableFuture<List<DeferredWrite>>>();
+			final List<Map<String, Integer>> partitionIDs = new ArrayList<Map<String, Integer>>();
+			for (int i = 0; i < files.size(); i++){
+				outputs.add(new CompletableFuture<List<DeferredWrite>>());
+				partitionIDs.add(new HashMap<String, Integer>());
+				committed.add(new CompletableFuture<Void>());
+			}
+			for (int t = 0; t < threads; t++){
+				final List<Worker> partition = partitions.get(t);
+				final int first = t * files.size() / threads;
+				final int last = (t + 1) * files.size() / threads;
+				executor.execute(new Runnable(){
+					public void run(){
+						PatientUtilities loader = new PatientUtilities();
+						for (int i = first; i < last; i++){
+							try{
+								Jerboa.getOutputManager().deferOutput(i > 0 ? committed.get(i - 1) : null);
+								int anonymizedPatientID = offsets[i];
+								Iterator<Patient> iterator = loader.iteratePatientsFromFile(files.get(i), withEvents(),
+										withPrescriptions(), withMeasurements());
+								while (iterator.hasNext()){
+									Patient p = iterator.next();
+									partitionIDs.get(i).put(p.getPatientID(), anonymizedPatientID);
+									p.setAnonymizedPatientId(anonymizedPatientID);
+									processPatient(p, partition.subList(0, partition.size() - 1),
+											partition.get(partition.size() - 1));
+									anonymizedPatientID++;
+								}
+								outputs.get(i).complete(Jerboa.getOutputManager().getDeferredOutput());
+							}catch(Throwable e){
+								Jerboa.getOutputManager().getDeferredOutput();
+								outputs.get(i).completeExceptionally(e);
+							}
+						}
+					}
+				});
+			}
+
+			//commit the output in the order of the files
+			for (int i = 0; i < files.size(); i++){
+				Jerboa.getOutputManager().commit(outputs.get(i).get());
+				committed.get(i).complete(null);
+				anonymizedPatientIDs.putAll(partitionIDs.get(i));
+				progress.update(partitionIDs.get(i).size());
+			}
+
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			Logging.add("The parallel processing of the module "+title+" was interrupted", Logging.ERROR);
+			Jerboa.stop(true);
+			return true;
+		}catch(ExecutionException e){
+			Logging.add("Error while processing the patients in the module "+title, Logging.ERROR);
+			Logging.outputStackTrace(e.getCause());
+			Jerboa.stop(true);
+			return true;
+		}finally{
+			//release the threads still waiting for the output of a partition that failed
+			for (CompletableFuture<Void> commit : committed)
+				commit.complete(null);
+			executor.shutdownNow();
+		}
+
+		//merge the results of the partitions in order
+		for (List<Worker> partition : partitions){
+			int index = 0;
+			if (!noModifiers && modifiers != null)
+				for (Modifier f : modifiers)
+					if (f.isActive()){
+						if (partition.get(index) != f)
+							f.mergePartition(partition.get(index));
+						index++;
+					}
+			if (partition.get(index) != this)
+				mergePartition(partition.get(index));
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if this module can run at the same time as other modules of the work flow.
+	 * This is not the case if the module uses the result set, which is shared by all modules,
+	 * or if the module or one of its active modifiers changes data shared with other workers.
+	 * @return - true if this module can run concurrently with other modules; false otherwise
+	 */
+	public boolean canRunConcurrently(){
+		if (resultSetActive || changesSharedData())
+			return false;
+		if (!noModifiers && modifiers != null)
+			for (Modifier f : modifiers)
+				if (f.isActive() && f.changesSharedData())
+					return false;
+		return true;
+	}
+
 	/**
 	 * Method to be overridden when post processing is needed.
 	 * @param patient - the patient to process
@@ -277,11 +548,25 @@ public abstract class Module extends Worker{
 	 * @return - the patient after being processed by the modifiers.
 	 */
 	private Patient applyModifiers(Patient patient, boolean inPostProcessing){
+		return applyModifiers(patient, modifiers, inPostProcessing);
+	}
+
+	/**
+	 * Will apply the modifiers in the list on patient, in the order of the list.
+	 * @param patient - the patient on which the modifiers are to be applied
+	 * @param modifiers - the modifiers to be applied or their copies for a partition of the patients
+	 * @param inPostProcessing - flag specifying if we are in the post processing.
+	 * @return - the patient after being processed by the modifiers.
+	 */
+	private static Patient applyModifiers(Patient patient, List<? extends Worker> modifiers, boolean inPostProcessing){
 		if (modifiers != null && modifiers.size() > 0)
-			for (Modifier f : modifiers) {
+			for (Worker f : modifiers) {
 				f.inPostProcessing = inPostProcessing;
-				if (f.isActive())
+				if (f.isActive()) {
+					if (patient != null)
+						patient.clearCaches();
 					patient = f.process(patient);
+				}
 			}
 		return patient;
 	}
@@ -401,6 +686,14 @@ public abstract class Module extends Worker{
 		this.postProcessingNeeded = needed;
 	}
 
+	public boolean isPostProcessingNeeded() {
+		return postProcessingNeeded;
+	}
+
+	public boolean isShufflePatients() {
+		return shufflePatients;
+	}
+
 	/**
 	 * Sets flag if patients should be shuffled.
 	 * @param shuffle - true if the order of the patients should be randomized; false otherwise
@@ -606,15 +899,15 @@ public abstract class Module extends Worker{
 		this.modifiers = modifiers;
 	}
 
-	private boolean withEvents(){
+	boolean withEvents(){
 		return neededFiles.get(1);
 	}
 
-	private boolean withPrescriptions(){
+	boolean withPrescriptions(){
 		return neededFiles.get(2);
 	}
 
-	private boolean withMeasurements(){
+	boolean withMeasurements(){
 		return neededFiles.get(3);
 	}
 
@@ -42,7 +42,6 @@ import java.util.Collections;
 import java.util.Hashtable;
 import java.util.List;
 
-import org.apache.commons.lang3.text.StrBuilder;
 import org.erasmusmc.jerboa.Jerboa;
 import org.erasmusmc.jerboa.dataClasses.Episode;
 import org.erasmusmc.jerboa.dataClasses.Event;
@@ -51,7 +50,9 @@ import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.dataClasses.Prescription;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.FileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 import org.erasmusmc.jerboa.utilities.Logging;
+import org.erasmusmc.jerboa.utilities.PatientObjectWriter;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
 import org.erasmusmc.jerboa.utilities.Progress;
 import org.erasmusmc.jerboa.utilities.StringUtilities;
@@ -87,15 +88,20 @@ public class PatientObjectCreator {
 	private BufferedReader prescriptionReader;
 	private BufferedReader measurementReader;
 
+	//tokenizers reused for all the lines of an input file
+	private LineTokenizer patientTokenizer;
+	private LineTokenizer eventTokenizer;
+	private LineTokenizer prescriptionTokenizer;
+	private LineTokenizer measurementTokenizer;
+
 	//EOF flags
 	private  boolean eofEvents;
 	private  boolean eofPrescriptions;
 	private  boolean eofMeasurements;
 
 	//output related
-	private Hashtable<String, Integer> outputIndexes;
-	private String outputFile;
 	private boolean hasSubsetID;
+	private PatientObjectWriter patientWriter;
 
 	private int nbErrors;
 	private List<String> errors;
@@ -122,8 +128,7 @@ public class PatientObjectCreator {
 		this.inputSet = inputSet;
 		this.stats = new Stats();
 		this.showExecutionTime = false;
-		this.outputIndexes = new Hashtable<String, Integer>();
-		this.outputIndexes.put("1", 1);
+		initTokenizers();
 
 		if (this.filesSorted)
 			PatientObjectCreatorSorted();
@@ -141,9 +146,23 @@ public class PatientObjectCreator {
 		this.stats = new Stats();
 		this.filesSorted = true;
 		this.inputSet = null;
-		this.outputIndexes = new Hashtable<String, Integer>();
-		this.outputIndexes.put("1", 1);
-		(new PropertiesManager()).ReadProperties();
+		//the properties may already be loaded, e.g. by the application or a unit test
+		if (PropertiesManager.listProperties == null)
+			(new PropertiesManager()).ReadProperties();
+	}
+
+	/**
+	 * Creates the tokenizers used to split the lines of the input files.
+	 */
+	private void initTokenizers(){
+		patientTokenizer = new LineTokenizer(inputSet.getPatientsFile() != null ?
+				inputSet.getPatientsFile().getDelimiter() : null);
+		eventTokenizer = new LineTokenizer(inputSet.getEventsFile() != null ?
+				inputSet.getEventsFile().getDelimiter() : null);
+		prescriptionTokenizer = new LineTokenizer(inputSet.getPrescriptionsFile() != null ?
+				inputSet.getPrescriptionsFile().getDelimiter() : null);
+		measurementTokenizer = new LineTokenizer(inputSet.getMeasurementsFile() != null ?
+				inputSet.getMeasurementsFile().getDelimiter() : null);
 	}
 
 	/*------------------METHODS USED ON SORTED FILES--------------------*/
@@ -231,11 +250,10 @@ public class PatientObjectCreator {
 
 			//go through file
 			while ((strLine = patientReader.readLine()) != null){
-				String[] attributes = StringUtilities.splitLine(strLine,
-						inputSet.getPatientsFile().getDelimiter());
+				LineTokenizer columns = patientTokenizer.reset(strLine);
 
 				//initialize and populate a patient object with patient details
-				patient =  new Patient(attributes, inputSet.getPatientsFile());
+				patient =  new Patient(columns, inputSet.getPatientsFile());
 				stats.countActivePatients(patient);
 				//check for duplicate IDs
 				if ((reference != null) && patient.ID.compareTo(reference.ID) == 0 &&
@@ -282,6 +300,7 @@ public class PatientObjectCreator {
 					//same ID
 					if (isAssigned || (event.patientID.equals(patient.ID) &&
 							(hasSubsetID ? event.subset.equals(patient.subset) : true))){
+						event.shareIDs(patient);
 						patient.getEvents().add(event);
 						Stats.updateEventStats(event);
 					//check if reached a superior patient ID and event was unassigned
@@ -300,9 +319,8 @@ public class PatientObjectCreator {
 				strLine = eventReader.readLine();
 				if (strLine != null && !strLine.equals("")){
 					//populate event object
-					String[] attributes = StringUtilities.splitLine(strLine,
-							inputSet.getEventsFile().getDelimiter());
-					event = new Event(attributes, inputSet.getEventsFile());
+					LineTokenizer columns = eventTokenizer.reset(strLine);
+					event = new Event(columns, inputSet.getEventsFile());
 					//reached the end of the file
 				}else{
 					eofEvents = true;
@@ -335,6 +353,7 @@ public class PatientObjectCreator {
 					//same ID
 					if (isAssigned || (prescription.patientID.equals(patient.ID) &&
 							(hasSubsetID ? prescription.subset.equals(patient.subset) : true))){
+						prescription.shareIDs(patient);
 						patient.getPrescriptions().add(prescription);
 						// Add a copy of the prescription to the original prescriptions
 						patient.getOriginalPrescriptions().add(new Prescription(prescription));
@@ -354,9 +373,8 @@ public class PatientObjectCreator {
 				strLine = prescriptionReader.readLine();
 				if (strLine != null && !strLine.equals("")){
 					//populate prescription object
-					String[] attributes = StringUtilities.splitLine(strLine,
-							inputSet.getPrescriptionsFile().getDelimiter());
-					prescription  = new Prescription(attributes, inputSet.getPrescriptionsFile());
+					LineTokenizer columns = prescriptionTokenizer.reset(strLine);
+					prescription  = new Prescription(columns, inputSet.getPrescriptionsFile());
 					//reached end of file
 				}else{
 					eofPrescriptions = true;
@@ -389,6 +407,7 @@ public class PatientObjectCreator {
 					//same ID
 					if (isAssigned || (measurement.patientID.equals(patient.ID) &&
 							(hasSubsetID ? measurement.subset.equals(patient.subset) : true))){
+						measurement.shareIDs(patient);
 						patient.getMeasurements().add(measurement);
 						Stats.updateMeasurementStats(measurement);
 						//check if reached a superior patient ID and prescription was unassigned
@@ -406,9 +425,8 @@ public class PatientObjectCreator {
 				strLine = measurementReader.readLine();
 				if (strLine != null && !strLine.equals("")){
 					//populate the measurement object
-					String[] attributes = StringUtilities.splitLine(strLine,
-							inputSet.getMeasurementsFile().getDelimiter());
-					measurement = new Measurement(attributes, inputSet.getMeasurementsFile());
+					LineTokenizer columns = measurementTokenizer.reset(strLine);
+					measurement = new Measurement(columns, inputSet.getMeasurementsFile());
 
 					//reached end of file
 				}else{
@@ -508,18 +526,17 @@ public class PatientObjectCreator {
 			int line = 0;
 
 			while ((strLine = patientReader.readLine()) != null){
-				String[] attributes = StringUtilities.splitLine(strLine,
-						inputSet.getPatientsFile().getDelimiter());
+				LineTokenizer columns = patientTokenizer.reset(strLine);
 
 				progress.update(strLine.length());
 
 				//populate the hash table with the patient ID
-				String hashID = hasSubsetID ? attributes[inputSet.getPatientsFile().getSubsetIndex()]+"_"+
-						attributes[inputSet.getPatientsFile().getPatientIDIndex()]:
-							attributes[inputSet.getPatientsFile().getPatientIDIndex()];
+				String hashID = hasSubsetID ? columns.getString(inputSet.getPatientsFile().getSubsetIndex())+"_"+
+						columns.getString(inputSet.getPatientsFile().getPatientIDIndex()):
+							columns.getString(inputSet.getPatientsFile().getPatientIDIndex());
 				hashTableID.put(hashID , line++);
 				//initialize and populate a patient object with patient details
-				patient =  new Patient(attributes, inputSet.getPatientsFile());
+				patient =  new Patient(columns, inputSet.getPatientsFile());
 				stats.countActivePatients(patient);
 
 				Stats.updatePatientStats(patient);
@@ -566,21 +583,21 @@ public class PatientObjectCreator {
 			Event event;
 
 			while ((strLine = eventReader.readLine()) != null){
-				String[] attributes = StringUtilities.splitLine(strLine,
-						inputSet.getEventsFile().getDelimiter());
+				LineTokenizer columns = eventTokenizer.reset(strLine);
 
 				progress.update(strLine.length());
 
 				//check if event is assigned to a patient in the sub set
 				Integer index = null;
 				if (inputSet.getEventsFile() != null && inputSet.getEventsFile().getDataOrder() != null){
-					index = hashTableID.get(hasSubsetID ? attributes[inputSet.getEventsFile().getSubsetIndex()]+"_"+
-							attributes[inputSet.getEventsFile().getPatientIDIndex()]
-									: attributes[inputSet.getEventsFile().getPatientIDIndex()]);
+					index = hashTableID.get(hasSubsetID ? columns.getString(inputSet.getEventsFile().getSubsetIndex())+"_"+
+							columns.getString(inputSet.getEventsFile().getPatientIDIndex())
+									: columns.getString(inputSet.getEventsFile().getPatientIDIndex()));
 				}
 				if (index != null){
-					event = new Event(attributes, inputSet.getEventsFile());
+					event = new Event(columns, inputSet.getEventsFile());
 					//add the event to the rightful owner
+					event.shareIDs(patients.get(index));
 					patients.get(index).getEvents().add(event);
 					Stats.updateEventStats(event);
 				}else{
@@ -612,21 +629,21 @@ public class PatientObjectCreator {
 			Prescription prescription;
 
 			while ((strLine = prescriptionReader.readLine()) != null){
-				String[] attributes = StringUtilities.splitLine(strLine,
-						inputSet.getPrescriptionsFile().getDelimiter());
+				LineTokenizer columns = prescriptionTokenizer.reset(strLine);
 
 				progress.update(strLine.length());
 
 				//check if the prescription is assigned to a patient from the sub set
 				Integer index = null;
 				if (inputSet.getPrescriptionsFile() != null && inputSet.getPrescriptionsFile().getDataOrder() != null){
-					index = hashTableID.get(hasSubsetID ? attributes[inputSet.getPrescriptionsFile().getSubsetIndex()]+"_"+
-							attributes[inputSet.getPrescriptionsFile().getPatientIDIndex()]
-									: attributes[inputSet.getPrescriptionsFile().getPatientIDIndex()]);
+					index = hashTableID.get(hasSubsetID ? columns.getString(inputSet.getPrescriptionsFile().getSubsetIndex())+"_"+
+							columns.getString(inputSet.getPrescriptionsFile().getPatientIDIndex())
+									: columns.getString(inputSet.getPrescriptionsFile().getPatientIDIndex()));
 				}
 				if (index != null){
-					prescription = new Prescription(attributes, inputSet.getPrescriptionsFile());
+					prescription = new Prescription(columns, inputSet.getPrescriptionsFile());
 					//add the prescription to the rightful owner
+					prescription.shareIDs(patients.get(index));
 					patients.get(index).getPrescriptions().add(prescription);
 					Stats.updatePrescriptionStats(prescription);
 				}else{
@@ -658,21 +675,21 @@ public class PatientObjectCreator {
 			Measurement measurement;
 
 			while ((strLine = measurementReader.readLine()) != null){
-				String[] attributes = StringUtilities.splitLine(strLine,
-						inputSet.getMeasurementsFile().getDelimiter());
+				LineTokenizer columns = measurementTokenizer.reset(strLine);
 
 				progress.update(strLine.length());
 
 				//check if the measurement is assigned to a patient from the sub set
 				Integer index = null;
 				if (inputSet.getMeasurementsFile() != null && inputSet.getMeasurementsFile().getDataOrder() != null){
-					index = hashTableID.get(hasSubsetID ? attributes[inputSet.getMeasurementsFile().getSubsetIndex()]+"_"+
-							attributes[inputSet.getMeasurementsFile().getPatientIDIndex()]
-									: attributes[inputSet.getMeasurementsFile().getPatientIDIndex()]);
+					index = hashTableID.get(hasSubsetID ? columns.getString(inputSet.getMeasurementsFile().getSubsetIndex())+"_"+
+							columns.getString(inputSet.getMeasurementsFile().getPatientIDIndex())
+									: columns.getString(inputSet.getMeasurementsFile().getPatientIDIndex()));
 				}
 				if (index != null){
-					measurement = new Measurement(attributes, inputSet.getMeasurementsFile());
+					measurement = new Measurement(columns, inputSet.getMeasurementsFile());
 					//add the measurement to the rightful owner
+					measurement.shareIDs(patients.get(index));
 					patients.get(index).getMeasurements().add(measurement);
 					Stats.updateMeasurementStats(measurement);
 				}else{
@@ -726,6 +743,7 @@ public class PatientObjectCreator {
 			try{
 				inputSet = new InputFileSet(files);
 				filesSorted = true;
+				initTokenizers();
 
 				//open files for reading and set date format to YYYYMMDD
 				if (inputSet != null && inputSet.getSelectedFiles() != null){
@@ -767,10 +785,9 @@ public class PatientObjectCreator {
 				Patient reference = null;
 
 				while ((strLine = patientReader.readLine()) != null){
-					String[] attributes = StringUtilities.splitLine(strLine,
-							inputSet.getPatientsFile().getDelimiter());
+					LineTokenizer columns = patientTokenizer.reset(strLine);
 
-					patient =  new Patient(attributes, inputSet.getPatientsFile());
+					patient =  new Patient(columns, inputSet.getPatientsFile());
 					stats.countActivePatients(patient);
 
 					//check for duplicate IDs
@@ -927,7 +944,7 @@ public class PatientObjectCreator {
 	/*-------------END OF CHECKING PATIENT DATA COHERENCE ---------------*/
 
 	/**
-	 * Adds a patient with all its history to the output buffer.
+	 * Adds a patient with all its history to the binary patient object files.
 	 * The patient object files (POF) are restricted to a maximum size defined
 	 * in the Parameters class. The eventual subset of the patient is taken into
 	 * consideration and will appear in the name of the output file.
@@ -941,41 +958,10 @@ public class PatientObjectCreator {
 
 			String subset = hasSubsetID ? patient.subset : "1";
 
-			//initialize output index for this subset if necessary
-			if (outputIndexes.get(subset) == null)
-				outputIndexes.put(subset, 1);
-
-			outputFile = FilePaths.PATIENTS_PATH+subset+"_"+
-					"patientObjects_"+outputIndexes.get(subset)+
-					DataDefinition.PATIENT_OBJECT_FILE_EXTENSION;
-
-			StrBuilder s = new StrBuilder();
-
-			//see if the first patient in new file
-			if (Jerboa.getOutputManager().addFile(outputFile))
-				Jerboa.getOutputManager().writeln(outputFile, patient.toStringWithFlag(DataDefinition.PATIENT_DETAILS_FLAG), false);
-			else
-				s.appendln(patient.toStringWithFlag(DataDefinition.PATIENT_DETAILS_FLAG));
-
-			//get history and append
-			if (patient.getEvents()!= null && patient.getEvents().size() > 0)
-				for (Event e: patient.getEvents())
-					s.appendln(e.toStringWithFlag(DataDefinition.EVENT_FLAG));
-			if (patient.getPrescriptions()!= null && patient.getPrescriptions().size() > 0)
-				for (Prescription pr: patient.getPrescriptions())
-					s.appendln(pr.toStringWithFlag(DataDefinition.PRESCRIPTION_FLAG));
-			if (patient.getMeasurements()!= null && patient.getMeasurements().size() > 0)
-				for (Measurement m: patient.getMeasurements())
-					s.appendln(m.toStringWithFlag(DataDefinition.MEASUREMENT_FLAG));
-
-			Jerboa.getOutputManager().write(outputFile, s.toString(), true);
-			patientsProcessed++;
-
-			//check if the POF size limit was not reached
-			if ((patientsProcessed % 500 == 0) && (FileUtilities.getFileSizeInMB(outputFile) > Parameters.MAX_POF_SIZE)){
-				Jerboa.getOutputManager().closeFile(outputFile);
-				outputIndexes.put(subset, (outputIndexes.get(subset))+1);
-			}
+			if (patientWriter == null)
+				patientWriter = new PatientObjectWriter(FilePaths.PATIENTS_PATH);
+			if (patientWriter.write(patient, subset))
+				patientsProcessed++;
 		}
 	}
 
@@ -1008,10 +994,10 @@ public class PatientObjectCreator {
 	 * in the output manager.
 	 */
 	private void flushAndCloseOutputBuffers(){
-		for (String s : outputIndexes.keySet())
-			for (int i = 1; i <= outputIndexes.get(s); i++)
-				Jerboa.getOutputManager().closeFile(FilePaths.PATIENTS_PATH+s+"_"+
-					"patientObjects_"+i+DataDefinition.PATIENT_OBJECT_FILE_EXTENSION);
+		if (patientWriter != null){
+			patientWriter.close();
+			patientWriter = null;
+		}
 
 		Jerboa.getOutputManager().closeFile(FilePaths.UNASSIGNED_RECORDS);
 		Jerboa.getOutputManager().closeFile(FilePaths.ERROR_LOG_PATIENT_OBJECTS);
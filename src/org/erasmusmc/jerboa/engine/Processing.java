@@ -38,9 +38,14 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.erasmusmc.jerboa.Jerboa;
 import org.erasmusmc.jerboa.utilities.inputChecking.EventsFileChecker;
+import org.erasmusmc.jerboa.utilities.inputChecking.InputFileChecker;
 import org.erasmusmc.jerboa.utilities.inputChecking.MeasurementsFileChecker;
 import org.erasmusmc.jerboa.utilities.inputChecking.PatientsFileChecker;
 import org.erasmusmc.jerboa.utilities.inputChecking.PrescriptionsFileChecker;
@@ -49,6 +54,7 @@ import org.erasmusmc.jerboa.utilities.stats.Stats;
 import org.erasmusmc.jerboa.utilities.Logging;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
 import org.erasmusmc.jerboa.utilities.MemoryBenchmark;
+import org.erasmusmc.jerboa.utilities.Progress;
 import org.erasmusmc.jerboa.utilities.Timer;
 
 import org.erasmusmc.jerboa.gui.graphs.ActivePatientsPlot;
@@ -128,7 +134,6 @@ public class Processing extends Thread {
 
 			extractData(); //if needed
 			displayNeededFiles();
-			logChecksums(true);//can be turned off via script
 
 			//check if the needed files are present in the working folder
 			if (isInputOK()){
@@ -137,10 +142,16 @@ public class Processing extends Thread {
 				try{
 					//check input files
 					timer.start();
-					checkInputFiles();
-					//display timers
-					timer.stop();
-					timer.displayTotal("Input file(s) checked in");
+					try{
+						checkInputFiles();
+						//display timers
+						timer.stop();
+						timer.displayTotal("Input file(s) checked in");
+					}finally{
+						//can be turned off via script; calculated during the checking,
+						//or from the files if the checking did not complete
+						logChecksums(true);
+					}
 
 					//check if input really sorted; if not restart and split
 					if (noInputErrors){
@@ -396,32 +407,72 @@ public class Processing extends Thread {
 
 	/**
 	 * Performs attribute checking on each one of the input files
-	 * and outputs eventual errors.
+	 * and outputs eventual errors. The needed input files are checked concurrently
+	 * and the checksums are calculated while reading them, if required.
 	 * @throws Exception if the file could not be read
 	 */
 	private void checkInputFiles() throws Exception{
 		MemoryBenchmark.Automated.putMarker("Checking input");
 		inputErrors = new ArrayList<List<String>>();
+		List<InputFileChecker> checkers = new ArrayList<InputFileChecker>();
 		for (short i = 0; i< inputSet.getSelectedFiles().size(); i++){
-			//assign each file to its checker and launch the checking
+			//assign each file to its checker
 			inputErrors.add(i,null);
 			InputFile file = inputSet.getSelectedFiles().get(i);
 			if (file != null){
-				List<String> errors = new ArrayList<String>();
+				InputFileChecker checker = null;
 				switch (file.getType()){
 				case (DataDefinition.PATIENTS_FILE):
-					checkPatients(file, errors);
+					if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType())){
+						checker = new PatientsFileChecker(inputSet.getPatientsFile());
+					}else if (!PropertiesManager.isInDebugMode()){
+						Logging.add("No patients file", Logging.ERROR);
+						if (!Jerboa.inConsoleMode)
+							new ErrorHandler("Please select at least a population file");
+						Jerboa.stop(true);
+					}
 				break;
 				case (DataDefinition.EVENTS_FILE):
-					checkEvents(file, errors);
+					if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType()))
+						checker = new EventsFileChecker(inputSet.getEventsFile());
 				break;
 				case (DataDefinition.PRESCRIPTIONS_FILE):
-					checkPrescriptions(file, errors);
+					if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType()))
+						checker = new PrescriptionsFileChecker(inputSet.getPrescriptionsFile());
 				break;
 				case (DataDefinition.MEASUREMENTS_FILE):
-					checkMeasurements(file, errors);
+					if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType()))
+						checker = new MeasurementsFileChecker(inputSet.getMeasurementsFile());
 				break;
 				}
+				if (checker != null)
+					checkers.add(checker);
+			}
+		}
+
+		//launch the checking
+		scanInputFiles(checkers);
+
+		//the counters and errors are output in the order of the files
+		for (InputFileChecker checker : checkers){
+			checker.updateCounters(checker.getRecords());
+			switch (checker.getInputFile().getType()){
+			case (DataDefinition.PATIENTS_FILE):
+				outputErrors(checker, InputFileSet.PATIENTS_FILE_INDEX, FilePaths.ERROR_LOG_PATIENTS, "Patients file ");
+			break;
+			case (DataDefinition.EVENTS_FILE):
+				outputErrors(checker, InputFileSet.EVENTS_FILE_INDEX, FilePaths.ERROR_LOG_EVENTS, "Events file ");
+			break;
+			case (DataDefinition.PRESCRIPTIONS_FILE):
+				outputErrors(checker, InputFileSet.PRESCRIPTIONS_FILE_INDEX, FilePaths.ERROR_LOG_PRESCRIPTIONS, "Prescriptions file ");
+			break;
+			case (DataDefinition.MEASUREMENTS_FILE):
+				outputErrors(checker, InputFileSet.MEASUREMENTS_FILE_INDEX, FilePaths.ERROR_LOG_MEASUREMENTS, "Measurements file ");
+				int emptyValues = ((MeasurementsFileChecker)checker).getEmptyValuesCount();
+				if (emptyValues > 0) {
+					Logging.add("\t\t" + emptyValues + " measurements have an empty value", Logging.HINT);
+				}
+			break;
 			}
 		}
 
@@ -434,95 +485,72 @@ public class Processing extends Thread {
 	}
 
 	/**
-	 * Checks the patients input file for integrity errors.
-	 * If errors are found, they are added to the existing list.
-	 * @param file - the patients input file
-	 * @param errors - the list of errors
-	 * @throws Exception - if input file cannot be open or read from
-	 */
-	private void checkPatients(InputFile file, List<String> errors) throws Exception{
-		if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType())){
-			PatientsFileChecker pfc = new PatientsFileChecker(inputSet.getPatientsFile());
-			pfc.scan("patient");
-			errors = pfc.getErrorMessages();
-			if (errors != null && errors.size() > 0){
-				errors.add(0,"Line    Error     --  "
-						+Arrays.toString(file.getHeader()).replace("[",  "").replace("]", ""));
-				inputErrors.set(InputFileSet.PATIENTS_FILE_INDEX, errors);
-				InputFileUtilities.outputErrors(FilePaths.ERROR_LOG_PATIENTS,
-						"Patients file "+ file.getName(), inputErrors.get(InputFileSet.PATIENTS_FILE_INDEX));
-			}
-		}else if (!PropertiesManager.isInDebugMode()){
-			Logging.add("No patients file", Logging.ERROR);
-			if (!Jerboa.inConsoleMode)
-				new ErrorHandler("Please select at least a population file");
-			Jerboa.stop(true);
-		}
-	}
-
-	/**
-	 * Checks the events input file for integrity errors.
-	 * @param file - the events input file
-	 * @param errors - the list of errors
-	 * @throws Exception - if input file cannot be open or read from
+	 * Checks the input files concurrently. Each file is read by its own thread,
+	 * while the blocks of lines of all files are checked by a shared pool of threads.
+	 * The counters of the files are not updated.
+	 * @param checkers - the checkers of the needed input files
+	 * @throws Exception - if an input file cannot be open or read from
 	 */
-	private void checkEvents(InputFile file, List<String> errors) throws Exception{
-		if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType())){
-			EventsFileChecker efc = new EventsFileChecker(inputSet.getEventsFile());
-			efc.scan("event");
-			errors = efc.getErrorMessages();
-			if (errors != null && errors.size() > 0){
-				errors.add(0,"Line    Error     --  "
-						+Arrays.toString(file.getHeader()).replace("[",  "").replace("]", ""));
-				inputErrors.set(InputFileSet.EVENTS_FILE_INDEX,errors);
-				InputFileUtilities.outputErrors(FilePaths.ERROR_LOG_EVENTS,
-						"Events file "+ file.getName(), inputErrors.get(InputFileSet.EVENTS_FILE_INDEX));
+	private void scanInputFiles(List<InputFileChecker> checkers) throws Exception{
+		if (checkers.size() == 0)
+			return;
+
+		long totalSize = 0;
+		for (InputFileChecker checker : checkers)
+			totalSize += checker.getInputFile().getSize();
+		final Progress progress = new Progress();
+		progress.init(totalSize, checkers.size() == 1 ?
+				"Checking "+InputFileUtilities.getEpisodeName(checkers.get(0).getInputFile().getType())+" file" :
+				"Checking input files");
+		final boolean withChecksum = Jerboa.getScriptParser().isChecksumRequired();
+
+		final ExecutorService blocks = InputFileChecker.newExecutor(Jerboa.getScriptParser().getNumberOfThreads());
+		ExecutorService files = InputFileChecker.newExecutor(checkers.size());
+		try{
+			List<Future<Void>> scans = new ArrayList<Future<Void>>();
+			for (final InputFileChecker checker : checkers){
+				scans.add(files.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						checker.check(InputFileUtilities.getEpisodeName(checker.getInputFile().getType()),
+								blocks, progress, withChecksum);
+						return null;
+					}
+				}));
 			}
-		}
-	}
 
-	/**
-	 * Checks the prescriptions input file for integrity errors.
-	 * @param file - the prescriptions input file
-	 * @param errors - the list of errors
-	 * @throws Exception - if input file cannot be open or read from
-	 */
-	private void checkPrescriptions(InputFile file, List<String> errors) throws Exception{
-		if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType())){
-			PrescriptionsFileChecker prfc = new PrescriptionsFileChecker(inputSet.getPrescriptionsFile());
-			prfc.scan("prescription");
-			errors = prfc.getErrorMessages();
-			if (errors != null && errors.size() > 0){
-				errors.add(0,"Line    Error     --  "
-						+Arrays.toString(file.getHeader()).replace("[",  "").replace("]", ""));
-				inputErrors.set(InputFileSet.PRESCRIPTIONS_FILE_INDEX, errors);
-				InputFileUtilities.outputErrors(FilePaths.ERROR_LOG_PRESCRIPTIONS,
-						"Prescriptions file "+ file.getName(), inputErrors.get(InputFileSet.PRESCRIPTIONS_FILE_INDEX));
+			//wait for all files to be checked
+			for (Future<Void> scan : scans){
+				try{
+					scan.get();
+				}catch(ExecutionException e){
+					if (e.getCause() instanceof Exception)
+						throw (Exception)e.getCause();
+					throw e;
+				}
 			}
+		}finally{
+			progress.close();
+			blocks.shutdownNow();
+			files.shutdownNow();
 		}
 	}
 
 	/**
-	 * Checks the measurement input file for integrity errors.
-	 * @param file - the measurements input file
-	 * @param errors - the list of errors
-	 * @throws Exception - if input file cannot be open or read from
+	 * Outputs the integrity errors found in an input file, if any.
+	 * @param checker - the checker of the input file
+	 * @param index - the index of the input file in the input set
+	 * @param errorLog - the path of the error log of this type of input file
+	 * @param label - the label of the input file in the error log
+
 	 */
-	private void checkMeasurements(InputFile file, List<String> errors) throws Exception{
-		if (Jerboa.getWorkFlow().getNeededInputFiles().get(file.getType())){
-			MeasurementsFileChecker mfc = new MeasurementsFileChecker(inputSet.getMeasurementsFile());
-			mfc.scan("measurement");
-			errors = mfc.getErrorMessages();
-			if (errors != null && errors.size() > 0){
-				errors.add(0,"Line    Error     --  "
-						+Arrays.toString(file.getHeader()).replace("[",  "").replace("]", ""));
-				inputErrors.set(InputFileSet.MEASUREMENTS_FILE_INDEX,errors);
-				InputFileUtilities.outputErrors(FilePaths.ERROR_LOG_MEASUREMENTS,
-						"Measurements file "+file.getName(), inputErrors.get(InputFileSet.MEASUREMENTS_FILE_INDEX));
-			}
-			if (mfc.getEmptyValuesCount() > 0) {
-				Logging.add("\t\t" + mfc.getEmptyValuesCount() + " measurements have an empty value", Logging.HINT);
-			}
+	private void outputErrors(InputFileChecker checker, int index, String errorLog, String label){
+		InputFile file = checker.getInputFile();
+		List<String> errors = checker.getErrorMessages();
+		if (errors != null && errors.size() > 0){
+			errors.add(0,"Line    Error     --  "
+					+Arrays.toString(file.getHeader()).replace("[",  "").replace("]", ""));
+			inputErrors.set(index, errors);
+			InputFileUtilities.outputErrors(errorLog, label + file.getName(), inputErrors.get(index));
 		}
 	}
 
@@ -533,16 +561,14 @@ public class Processing extends Thread {
 	 */
 	public void splitInputFiles(InputFileSplitter splitter) throws IOException{
 
+		//the needed input files are split concurrently
+		List<InputFile> files = new ArrayList<InputFile>();
 		for (short i = 0; i< inputSet.getSelectedFiles().size(); i++){
-			//assign each file to its checker and launch the checking
 			if (inputSet.getSelectedFiles().get(i) != null &&
-					Jerboa.getWorkFlow().getNeededInputFiles().get(inputSet.getSelectedFiles().get(i).getType())){
-				InputFile file = inputSet.getSelectedFiles().get(i);
-				if (file != null){
-					splitter.split(file);
-				}
-			}
+					Jerboa.getWorkFlow().getNeededInputFiles().get(inputSet.getSelectedFiles().get(i).getType()))
+				files.add(inputSet.getSelectedFiles().get(i));
 		}
+		splitter.split(files);
 	}
 
 	/**
@@ -344,6 +344,12 @@ public class ScriptParser {
 			parsedSettings.metaData.scriptTag = split[1].trim();
 		if (split[0].trim().equals("reusePatients"))
 			parsedSettings.metaData.reusePatients = split[1].trim();
+		if (split[0].trim().equals("threads"))
+			parsedSettings.metaData.threads = split[1].trim();
+		if (split[0].trim().equals("concurrentModules"))
+			parsedSettings.metaData.concurrentModules = split[1].trim();
+		if (split[0].trim().equals("sharedScan"))
+			parsedSettings.metaData.sharedScan = split[1].trim();
 	}
 
 	/**
@@ -450,6 +456,9 @@ public class ScriptParser {
 		public String postMessage;
 		public String scriptTag;
 		public String reusePatients;
+		public String threads;
+		public String concurrentModules;
+		public String sharedScan;
 	}
 
 	public class Settings {
@@ -572,6 +581,62 @@ public class ScriptParser {
 		return chunkSize;
 	}
 
+	/**
+	 * Returns the number of threads to be used when processing the patients.
+	 * A value of 0 or "all" in the script uses all the available processors.
+	 * If the threads property is not set, the patients are processed sequentially.
+	 * @return - the number of threads to be used; 1 if not set or invalid
+	 */
+	public int getNumberOfThreads() {
+		int threads = 1;
+		if (parsedSettings != null && parsedSettings.metaData.threads != null &&
+				!parsedSettings.metaData.threads.equals("")){
+			if (parsedSettings.metaData.threads.toLowerCase().equals("all")){
+				threads = Runtime.getRuntime().availableProcessors();
+			}else{
+				try{
+					threads = Integer.valueOf(parsedSettings.metaData.threads);
+					if (threads <= 0)
+						threads = Runtime.getRuntime().availableProcessors();
+				}catch(Exception e){
+					Logging.add("Invalid value for the number of threads in the script", Logging.ERROR);
+					threads = 1;
+				}
+			}
+		}
+		return threads;
+	}
+
+	/**
+	 * This method will check if the sharedScan flag was set in the script.
+	 * This allows the modules that can run concurrently to be fed
+	 * from a single pass through the patient object files.
+	 * @return - true if the sharedScan flag in the script is set; false otherwise
+	 */
+	public boolean isSharedScan() {
+		return parsedSettings != null && parsedSettings.metaData.sharedScan != null &&
+				(parsedSettings.metaData.sharedScan.toLowerCase().equals("true") ||
+				parsedSettings.metaData.sharedScan.toLowerCase().equals("t"));
+	}
+
+	/**
+	 * Returns the maximum number of modules that can run at the same time.
+	 * Only modules that do not change data shared with other modules are run concurrently.
+	 * @return - the maximum number of concurrent modules; 1 if not set or invalid
+	 */
+	public int getNumberOfConcurrentModules() {
+		int concurrentModules = 1;
+		if (parsedSettings != null && parsedSettings.metaData.concurrentModules != null &&
+				!parsedSettings.metaData.concurrentModules.equals("")){
+			try{
+				concurrentModules = Math.max(1, Integer.valueOf(parsedSettings.metaData.concurrentModules));
+			}catch(Exception e){
+				Logging.add("Invalid value for the number of concurrent modules in the script", Logging.ERROR);
+			}
+		}
+		return concurrentModules;
+	}
+
 	public boolean isExtractionNeeded() {
 		return extractionNeeded;
 	}
@@ -0,0 +1,218 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.utilities.Logging;
+import org.erasmusmc.jerboa.utilities.PatientUtilities;
+import org.erasmusmc.jerboa.utilities.Timer;
+
+/**
+ * Runs a group of modules over a single pass through the patient object files.
+ * Each patient object file is loaded once with the history needed by all the modules
+ * in the group and each module receives its own copy of every patient, as the modifiers
+ * are allowed to change the patient. The post processing of the modules is grouped in
+ * the same way, except for the modules that shuffle the patients, which have their own pass.
+ * The modules are initialized and their results output in the order of the script.
+ * As the modules share the same pass, their start and execution time are logged
+ * once for the whole scan instead of for each module.
+ */
+public class SharedScan {
+
+	//the modules fed by this scan in the order of the script
+	private List<Module> modules;
+
+	//the anonymized patient IDs assigned during processing
+	private Map<String, Integer> anonymizedPatientIDs;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the modules to be run over the same pass.
+	 * @param modules - the modules in the order of the script
+	 */
+	public SharedScan(List<Module> modules){
+		this.modules = modules;
+		this.anonymizedPatientIDs = new HashMap<String, Integer>();
+	}
+
+	/**
+	 * Initializes the modules, processes all patients with each module
+	 * over a single pass through the patient object files, post processes
+	 * them if needed and outputs the results of each module.
+	 */
+	public void run(){
+
+		//initialize the modules
+		List<Module> started = new ArrayList<Module>();
+		for (Module module : modules)
+			if (module.startModule())
+				started.add(module);
+		if (started.isEmpty())
+			return;
+
+		Timer timer = new Timer();
+		timer.start();
+
+		PatientUtilities pu = new PatientUtilities(FilePaths.PATIENTS_PATH);
+		pu.withProgress = false;
+
+		String titles = "";
+		for (Module module : started)
+			titles += (titles.equals("") ? "" : ", ")+module.getTitle();
+		Logging.addWithTimeStamp("Shared scan of "+started.size()+" modules started: "+titles);
+
+		//process all patients
+		for (Module module : started)
+			module.startProcessing(true);
+		int anonymizedPatientID = 0;
+		for (String file : pu.patientFiles){
+			Iterator<Patient> iterator = pu.iteratePatientsFromFile(file, withEvents(started),
+					withPrescriptions(started), withMeasurements(started));
+			while (iterator.hasNext()){
+				Patient patient = iterator.next();
+				anonymizedPatientIDs.put(patient.getPatientID(), anonymizedPatientID);
+				dispatch(started, patient, anonymizedPatientID, false);
+				anonymizedPatientID++;
+			}
+		}
+
+		//group the post processing
+		List<Module> postProcessed = new ArrayList<Module>();
+		List<Module> shuffled = new ArrayList<Module>();
+		for (Module module : started)
+			if (module.startPostProcessing())
+				(module.isShufflePatients() ? shuffled : postProcessed).add(module);
+		if (postProcessed.size() + shuffled.size() > 0)
+			Logging.addWithTimeStamp("Shared scan post processing of "+
+					(postProcessed.size() + shuffled.size())+" modules started");
+		postProcess(pu.patientFiles, postProcessed, false);
+		for (Module module : shuffled)
+			postProcess(pu.patientFiles, Collections.singletonList(module), true);
+
+		//output
+		for (Module module : started)
+			module.finishProcessing();
+
+		timer.stop();
+		timer.displayTotal("Shared scan of "+started.size()+" modules done in: ");
+	}
+
+	/**
+	 * Post processes all patients with a group of modules over a single pass.
+	 * @param files - the patient object files
+	 * @param group - the modules that need post processing
+	 * @param shuffle - true if the patients should be shuffled; false otherwise
+	 */
+	private void postProcess(List<String> files, List<Module> group, boolean shuffle){
+		if (group.isEmpty())
+			return;
+
+		PatientUtilities pu = new PatientUtilities();
+		pu.withProgress = false;
+
+		//shuffle the patient files when needed
+		if (shuffle){
+			files = new ArrayList<String>(files);
+			Collections.shuffle(files);
+		}
+
+		for (String file : files){
+			Iterator<Patient> iterator;
+
+			//shuffle the patients when needed
+			if (shuffle){
+				List<Patient> patients = pu.loadPatientsFromFile(file, withEvents(group),
+						withPrescriptions(group), withMeasurements(group));
+				Collections.shuffle(patients);
+				iterator = patients.iterator();
+			}else{
+				iterator = pu.iteratePatientsFromFile(file, withEvents(group),
+						withPrescriptions(group), withMeasurements(group));
+			}
+
+			while (iterator.hasNext()){
+				Patient patient = iterator.next();
+				dispatch(group, patient, anonymizedPatientIDs.get(patient.getPatientID()), true);
+			}
+		}
+	}
+
+	/**
+	 * Feeds a patient to each module of the group. Each module receives its own copy
+	 * of the patient with the history it needs, except the last one which receives
+	 * the loaded patient if it needs all of its history.
+	 * @param group - the modules to be fed
+	 * @param patient - the loaded patient
+	 * @param anonymizedPatientID - the anonymized ID of the patient
+	 * @param inPostProcessing - true if the patient is to be post processed; false otherwise
+	 */
+	private void dispatch(List<Module> group, Patient patient, int anonymizedPatientID, boolean inPostProcessing){
+		boolean withEvents = withEvents(group);
+		boolean withPrescriptions = withPrescriptions(group);
+		boolean withMeasurements = withMeasurements(group);
+		for (int i = 0; i < group.size(); i++){
+			Module module = group.get(i);
+			Patient copy = (i == group.size() - 1 &&
+					module.withEvents() == withEvents &&
+					module.withPrescriptions() == withPrescriptions &&
+					module.withMeasurements() == withMeasurements) ? patient :
+						new Patient(patient, module.withEvents(), module.withPrescriptions(), module.withMeasurements());
+			copy.setAnonymizedPatientId(anonymizedPatientID);
+			if (inPostProcessing)
+				module.postProcessPatient(copy);
+			else
+				module.processPatient(copy);
+		}
+	}
+
+	//HISTORY NEEDED BY A GROUP OF MODULES
+	private static boolean withEvents(List<Module> group){
+		for (Module module : group)
+			if (module.withEvents())
+				return true;
+		return false;
+	}
+
+	private static boolean withPrescriptions(List<Module> group){
+		for (Module module : group)
+			if (module.withPrescriptions())
+				return true;
+		return false;
+	}
+
+	private static boolean withMeasurements(List<Module> group){
+		for (Module module : group)
+			if (module.withMeasurements())
+				return true;
+		return false;
+	}
+
+}
@@ -41,6 +41,10 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.commons.io.FilenameUtils;
 import org.erasmusmc.jerboa.Jerboa;
@@ -93,6 +97,9 @@ public class WorkFlow extends Thread{
 	//set to false if one of the modules failed to initialize or run
 	private boolean ranModulesSuccessfully = true;
 
+	//the title of the module being run
+	private String moduleTitle;
+
 	//CONSTRUCTORS
 	/**
 	 * Basic constructor.
@@ -201,7 +208,9 @@ public class WorkFlow extends Thread{
 
 	/**
 	 * Method launching the thread.
-	 * It launches modules sequentially in the order they are present in the script file.
+	 * It launches modules in the order they are present in the script file. If the script
+	 * allows concurrent modules, consecutive modules that do not change shared data are run
+	 * at the same time.
 	 */
 	public void run(){
 
@@ -212,27 +221,15 @@ public class WorkFlow extends Thread{
 		}
 
 		if (!noValidModule){
-			String moduleTitle = "";
+			moduleTitle = "";
 			try{
-				for (Module module : modules){
-					if (!Jerboa.inConsoleMode)
-						JerboaGUI.busy();
-					moduleTitle = module.getTitle();
-					module.setOutputFileNames();
-					module.setResultSet();
-					if (module.isActive())
-						MemoryBenchmark.Automated.putMarker(moduleTitle);
-					module.runModule();
-					if (!module.hasFinishedSuccessfully()){
-						ranModulesSuccessfully = false;
-						Logging.add("The module "+moduleTitle+" or one of its modifiers did not finish successfully.", Logging.ERROR);
-						if (!Jerboa.inConsoleMode)
-							JerboaGUI.done();
-						Jerboa.stop(true);
-					}
-					if (!module.outputResultSet())
-						Logging.add("Unable to write resultset "+moduleTitle, Logging.ERROR);
-					Jerboa.getResultSet().clear();
+				for (List<Module> group : scheduleModules()){
+					if (group.size() == 1)
+						runModule(group.get(0));
+					else if (Jerboa.getScriptParser().isSharedScan())
+						runSharedScan(group);
+					else
+						runModulesConcurrently(group);
 				}
 			}catch(Throwable e){
 				ranModulesSuccessfully = false;
@@ -262,6 +259,148 @@ public class WorkFlow extends Thread{
 		Jerboa.stop();
 	}
 
+	/**
+	 * Groups the modules of the work flow in the order they should be run.
+	 * Consecutive modules that can run concurrently are put in the same group,
+	 * up to the number of concurrent modules allowed by the script, or without
+	 * limit when the modules share the scan of the patient object files.
+	 * Any other module is put alone in its group.
+	 * @return - the groups of modules in the order they should be run
+	 */
+	private List<List<Module>> scheduleModules(){
+		int concurrentModules = Jerboa.getScriptParser() == null ? 1 :
+			Jerboa.getScriptParser().isSharedScan() ? Integer.MAX_VALUE :
+				Jerboa.getScriptParser().getNumberOfConcurrentModules();
+
+		List<List<Module>> groups = new ArrayList<List<Module>>();
+		List<Module> group = null;
+		Set<String> titles = new HashSet<String>();
+		for (Module module : modules){
+			boolean concurrent = concurrentModules > 1 && module.isActive() && module.canRunConcurrently();
+			if (group == null || !concurrent || group.size() >= concurrentModules ||
+					!titles.add(module.getTitle())){
+				group = new ArrayList<Module>();
+				groups.add(group);
+				titles.clear();
+				titles.add(module.getTitle());
+			}
+			group.add(module);
+			if (!concurrent)
+				group = null;
+		}
+
+		return groups;
+	}
+
+	/**
+	 * Runs a module and outputs its result set.
+	 * @param module - the module to be run
+	 */
+	private void runModule(Module module){
+		if (!Jerboa.inConsoleMode)
+			JerboaGUI.busy();
+		moduleTitle = module.getTitle();
+		module.setOutputFileNames();
+		module.setResultSet();
+		if (module.isActive())
+			MemoryBenchmark.Automated.putMarker(moduleTitle);
+		module.runModule();
+		checkModule(module);
+	}
+
+	/**
+	 * Runs the modules of a group at the same time, each one in its own thread,
+	 * and outputs their result sets in the order of the modules in the script.
+	 * Note that the modules in the group do not use the result set.
+	 * @param group - the modules to be run concurrently
+	 * @throws Throwable - the error of the first module that did not run ordinarily
+	 */
+	private void runModulesConcurrently(List<Module> group) throws Throwable{
+		if (!Jerboa.inConsoleMode)
+			JerboaGUI.busy();
+		Logging.add("Running "+group.size()+" modules concurrently");
+
+		ExecutorService executor = Executors.newFixedThreadPool(group.size());
+		List<Future<?>> runs = new ArrayList<Future<?>>();
+		try{
+			for (final Module module : group){
+				moduleTitle = module.getTitle();
+				module.setOutputFileNames();
+				module.setResultSet();
+				if (module.isActive())
+					MemoryBenchmark.Automated.putMarker(moduleTitle);
+				runs.add(executor.submit(new Runnable(){
+					public void run(){
+						module.runModule();
+					}
+				}));
+			}
+
+			for (int i = 0; i < group.size(); i++){
+				moduleTitle = group.get(i).getTitle();
+				try{
+					runs.get(i).get();
+				}catch(ExecutionException e){
+					throw e.getCause();
+				}
+			}
+		}finally{
+			executor.shutdownNow();
+		}
+
+		for (Module module : group){
+			moduleTitle = module.getTitle();
+			checkModule(module);
+		}
+	}
+
+	/**
+	 * Runs the modules of a group over a single pass through the patient object files
+	 * and outputs their result sets in the order of the modules in the script.
+	 * Note that the modules in the group do not use the result set.
+	 * @param group - the modules sharing the scan
+	 */
+	private void runSharedScan(List<Module> group){
+		if (!Jerboa.inConsoleMode)
+			JerboaGUI.busy();
+		String titles = "";
+		for (Module module : group){
+			moduleTitle = module.getTitle();
+			module.setOutputFileNames();
+			module.setResultSet();
+			if (module.isActive())
+				titles += (titles.equals("") ? "" : ", ")+moduleTitle;
+		}
+
+		//a single marker as the modules share the same pass
+		if (!titles.equals(""))
+			MemoryBenchmark.Automated.putMarker("Shared scan: "+titles);
+
+		new SharedScan(group).run();
+
+		for (Module module : group){
+			moduleTitle = module.getTitle();
+			checkModule(module);
+		}
+	}
+
+	/**
+	 * Checks if a module finished successfully and outputs its result set.
+	 * @param module - the module that was run
+	 */
+	private void checkModule(Module module){
+		if (!module.hasFinishedSuccessfully()){
+			ranModulesSuccessfully = false;
+			Logging.add("The module "+moduleTitle+" or one of its modifiers did not finish successfully.", Logging.ERROR);
+			if (!Jerboa.inConsoleMode)
+				JerboaGUI.done();
+			Jerboa.stop(true);
+		}
+		if (!module.outputResultSet())
+			Logging.add("Unable to write resultset "+moduleTitle, Logging.ERROR);
+		Jerboa.getResultSet().clear();
+	}
+
 	/**
 	 * Initializes the data extraction object if corresponding settings
 	 * were found in the script file.
@@ -70,7 +70,7 @@ import org.erasmusmc.jerboa.utilities.Timer;
  * @author MG
  *
  */
-public abstract class Worker{
+public abstract class Worker implements Cloneable{
 
 	/**
 	 * Name of the output file (relative to the working folder).
@@ -159,6 +159,9 @@ public abstract class Worker{
 		mapParameters();
 		if (Jerboa.unitTest) {
 			Parameters.DATABASE_NAME = "TEST";
+			//stop the writer thread of the output manager being replaced
+			if (Jerboa.getOutputManager() != null)
+				Jerboa.getOutputManager().closeAll();
 			Jerboa.setOutputManager(new OutputManager());
 			setOutputFileNames();
 		}
@@ -447,6 +450,66 @@ public abstract class Worker{
 	 */
 	public abstract Patient process(Patient patient);
 
+	//PARALLEL PROCESSING
+	/**
+	 * Flag to check if the process() method of this worker can be called
+	 * at the same time from different threads, each one processing its own
+	 * partition of the patient object files. This implies that the worker does
+	 * not modify any of its attributes while processing a patient and only outputs
+	 * via the OutputManager. To be overridden by each worker that is thread-safe.
+	 * @return - true if this worker is thread-safe; false otherwise
+	 */
+	public boolean isThreadSafe(){
+		return false;
+	}
+
+	/**
+	 * Flag to check if this worker changes data that is shared with the other
+	 * workers of the work flow while processing the patients (e.g., adds new values
+	 * to the look-up tables). Such a worker is not run at the same time as other modules.
+	 * A worker is assumed to change shared data unless it was checked that it only
+	 * modifies the patients and its own attributes, in which case this method is overridden.
+	 * @return - true if this worker changes shared data; false otherwise
+	 */
+	public boolean changesSharedData(){
+		return true;
+	}
+
+	/**
+	 * Creates a copy of this worker that will accumulate the results of a partition
+	 * of the patients when the patients are processed in parallel. The copy should be
+	 * initialized with the same settings as this worker and empty accumulators.
+	 * To be overridden together with mergePartition() by each worker which
+	 * has accumulators that can be combined.
+	 * @return - the worker for a partition of the patients; null if not supported
+	 */
+	public Worker createPartition(){
+		return null;
+	}
+
+	/**
+	 * Adds the results accumulated by a partition of this worker to the results
+	 * of this worker. The partitions are merged in the order of the patient object
+	 * files, once all the patients were processed and before the output of the results.
+	 * @param partition - a worker created by createPartition()
+	 */
+	public void mergePartition(Worker partition){/* TO BE OVERRIDEN */}
+
+	/**
+	 * Creates a shallow copy of this worker, sharing its settings and the
+	 * objects created during the initialization. To be used in createPartition(),
+	 * which should replace the accumulators of the copy by empty ones.
+	 * @return - a copy of this worker; null if it could not be copied
+	 */
+	protected Worker copy(){
+		try{
+			return (Worker)super.clone();
+		}catch(CloneNotSupportedException e){
+			Logging.outputStackTrace(e);
+			return null;
+		}
+	}
+
 	/**
 	 * Will graphically display the results of the module and
 	 * output them in PDF format.
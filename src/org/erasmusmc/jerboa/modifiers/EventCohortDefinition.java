@@ -45,6 +45,7 @@ import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.dataClasses.Prescription;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.modules.viewers.PatientViewer;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
@@ -332,6 +333,12 @@ public class EventCohortDefinition extends Modifier{
 		return initOK;
 	}
 
+	//only sets the cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 * Sets the cohort start date and cohort end date based on the first occurence of one of the
 	 * events of interest.
@@ -644,6 +651,46 @@ public class EventCohortDefinition extends Modifier{
 		return false;
 	}
 
+	@Override
+	public Worker createPartition(){
+		// The patients to debug are collected in the order of the patients
+		if (!debugPatientIDs.isEmpty())
+			return null;
+
+		EventCohortDefinition partition = (EventCohortDefinition)copy();
+		if (partition != null){
+			partition.patientTime = new MultiKeyBag();
+			partition.debugPatients = new ArrayList<Patient>();
+			partition.countRemoved = 0;
+			partition.prevalentCount = 0;
+			partition.incidentCount = 0;
+			partition.originalCount = 0;
+			partition.includedPatientsCount = 0;
+			partition.eventOfInterestCount = 0;
+			partition.inclusionDrugCount = 0;
+			partition.drugDoseCount = 0;
+			partition.eventTypeNoExclusionCount = 0;
+			partition.minimumDaysExclusionCount = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition){
+		EventCohortDefinition other = (EventCohortDefinition)partition;
+		patientTime.merge(other.patientTime);
+		countRemoved += other.countRemoved;
+		prevalentCount += other.prevalentCount;
+		incidentCount += other.incidentCount;
+		originalCount += other.originalCount;
+		includedPatientsCount += other.includedPatientsCount;
+		eventOfInterestCount += other.eventOfInterestCount;
+		inclusionDrugCount += other.inclusionDrugCount;
+		drugDoseCount += other.drugDoseCount;
+		eventTypeNoExclusionCount += other.eventTypeNoExclusionCount;
+		minimumDaysExclusionCount += other.minimumDaysExclusionCount;
+	}
+
 	@Override
 	public void outputResults(){
 
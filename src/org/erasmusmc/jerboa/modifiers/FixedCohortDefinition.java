@@ -28,6 +28,7 @@ import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.config.Parameters;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.Logging;
@@ -146,6 +147,12 @@ public class FixedCohortDefinition extends Modifier {
 		return initOK;
 	}
 
+	//only sets the cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 
@@ -189,6 +196,25 @@ public class FixedCohortDefinition extends Modifier {
 		return patient;
 	}
 
+	@Override
+	public Worker createPartition() {
+		FixedCohortDefinition partition = (FixedCohortDefinition)copy();
+		if (partition != null) {
+			partition.patientTime = new MultiKeyBag();
+			partition.originalCount = 0;
+			partition.countRemoved = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition) {
+		FixedCohortDefinition other = (FixedCohortDefinition)partition;
+		patientTime.merge(other.patientTime);
+		originalCount += other.originalCount;
+		countRemoved += other.countRemoved;
+	}
+
 	@Override
 	public void outputResults() {
 		if ((!Jerboa.unitTest) && intermediateFiles) {
@@ -42,6 +42,7 @@ import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.DelimitedStringBuilder;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
@@ -317,6 +318,12 @@ public class MeasurementCleaner extends Modifier {
 	}
 	
 
+	//only removes measurements from the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		statsPatientCount++;
@@ -587,6 +594,52 @@ public class MeasurementCleaner extends Modifier {
 		return patient;
 	}
 	
+	@Override
+	public Worker createPartition() {
+		MeasurementCleaner partition = (MeasurementCleaner)copy();
+		if (partition != null) {
+			partition.statsPatientCount = 0;
+			partition.statsPatientsWithMeasurements = 0;
+			partition.statsMeasurementCount = 0;
+			partition.statsRelevantMeasurementCount = 0;
+			partition.statsMeasurementsNonNumericValueCount = 0;
+			partition.statsMeasurementsFound = new HashMap<Integer, Integer>();
+			partition.statsMeasurementsRemoved = new HashMap<Integer, Integer>();
+			for (Integer measurementType : statsMeasurementsFound.keySet()) {
+				partition.statsMeasurementsFound.put(measurementType, 0);
+			}
+			for (Integer measurementType : statsMeasurementsRemoved.keySet()) {
+				partition.statsMeasurementsRemoved.put(measurementType, 0);
+			}
+			if (reasonRemoved != null) {
+				partition.reasonRemoved = new HashMap<Measurement, String>();
+			}
+			if (unitTestRemoved != null) {
+				partition.unitTestRemoved = new ArrayList<Measurement>();
+			}
+		}
+		return partition;
+	}
+	
+	@Override
+	public void mergePartition(Worker partition) {
+		MeasurementCleaner other = (MeasurementCleaner)partition;
+		statsPatientCount += other.statsPatientCount;
+		statsPatientsWithMeasurements += other.statsPatientsWithMeasurements;
+		statsMeasurementCount += other.statsMeasurementCount;
+		statsRelevantMeasurementCount += other.statsRelevantMeasurementCount;
+		statsMeasurementsNonNumericValueCount += other.statsMeasurementsNonNumericValueCount;
+		for (Integer measurementType : other.statsMeasurementsFound.keySet()) {
+			statsMeasurementsFound.put(measurementType, (statsMeasurementsFound.containsKey(measurementType) ? statsMeasurementsFound.get(measurementType) : 0) + other.statsMeasurementsFound.get(measurementType));
+		}
+		for (Integer measurementType : other.statsMeasurementsRemoved.keySet()) {
+			statsMeasurementsRemoved.put(measurementType, (statsMeasurementsRemoved.containsKey(measurementType) ? statsMeasurementsRemoved.get(measurementType) : 0) + other.statsMeasurementsRemoved.get(measurementType));
+		}
+		if (unitTestRemoved != null) {
+			unitTestRemoved.addAll(other.unitTestRemoved);
+		}
+	}
+	
 	@Override
 	public void outputResults() {
 		// Close intermediate files
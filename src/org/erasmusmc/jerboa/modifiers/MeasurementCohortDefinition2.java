@@ -33,6 +33,7 @@ import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.Item;
@@ -162,6 +163,12 @@ public class MeasurementCohortDefinition2 extends Modifier {
 	}
 
 
+	//only sets the cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 * Sets the cohort start date and cohort end date based on the last occurence of one of the
 	 * measurements of interest before the specified events.
@@ -288,6 +295,27 @@ public class MeasurementCohortDefinition2 extends Modifier {
 		}
 	}
 
+	@Override
+	public Worker createPartition() {
+		MeasurementCohortDefinition2 partition = (MeasurementCohortDefinition2)copy();
+		if (partition != null) {
+			partition.patientTime = new MultiKeyBag();
+			partition.countRemoved = 0;
+			partition.originalCount = 0;
+			partition.includedCount = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition) {
+		MeasurementCohortDefinition2 other = (MeasurementCohortDefinition2)partition;
+		patientTime.merge(other.patientTime);
+		countRemoved += other.countRemoved;
+		originalCount += other.originalCount;
+		includedCount += other.includedCount;
+	}
+
 	@Override
 	public void outputResults() {
 
@@ -35,6 +35,7 @@ import org.erasmusmc.jerboa.config.Parameters;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.Logging;
@@ -163,6 +164,12 @@ public class MeasurementCountCohortDefinition extends Modifier {
 	}
 
 
+	//only sets the cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 
@@ -234,6 +241,27 @@ public class MeasurementCountCohortDefinition extends Modifier {
 	}
 
 
+	@Override
+	public Worker createPartition() {
+		MeasurementCountCohortDefinition partition = (MeasurementCountCohortDefinition)copy();
+		if (partition != null) {
+			// The counts of the exclusions are reset for each patient
+			partition.measurementExclusionCounts = new HashMap<MeasurementExclusion, Integer>(measurementExclusionCounts);
+			partition.patientTime = new MultiKeyBag();
+			partition.originalCount = 0;
+			partition.countRemoved = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition) {
+		MeasurementCountCohortDefinition other = (MeasurementCountCohortDefinition)partition;
+		patientTime.merge(other.patientTime);
+		originalCount += other.originalCount;
+		countRemoved += other.countRemoved;
+	}
+
 	@Override
 	public void outputResults() {
 
@@ -41,6 +41,7 @@ import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.config.Parameters;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.Logging;
@@ -284,6 +285,12 @@ public class PopulationDefinition extends Modifier{
 		return initOK;
 	}
 
+	//only sets the population and cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 *  Sets the population start date and population end date for the patient passed as argument.
 	 *  @param patient - the patient to be processed
@@ -440,6 +447,39 @@ public class PopulationDefinition extends Modifier{
 		}
 	}
 
+	@Override
+	public Worker createPartition(){
+		PopulationDefinition partition = (PopulationDefinition)copy();
+		if (partition != null){
+			partition.patientTime = new MultiKeyBag();
+			partition.countBirthdate = 0;
+			partition.countRemoved = 0;
+			partition.originalCount = 0;
+			partition.populationPeriodCount = 0;
+			partition.ageRangeCount = 0;
+			partition.countRemovedRunInPeriod = 0;
+			partition.countRemovedInitialTime = 0;
+			partition.countRemovedStudyPeriod = 0;
+			partition.countRemovedAgeRange = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition){
+		PopulationDefinition other = (PopulationDefinition)partition;
+		patientTime.merge(other.patientTime);
+		countBirthdate += other.countBirthdate;
+		countRemoved += other.countRemoved;
+		originalCount += other.originalCount;
+		populationPeriodCount += other.populationPeriodCount;
+		ageRangeCount += other.ageRangeCount;
+		countRemovedRunInPeriod += other.countRemovedRunInPeriod;
+		countRemovedInitialTime += other.countRemovedInitialTime;
+		countRemovedStudyPeriod += other.countRemovedStudyPeriod;
+		countRemovedAgeRange += other.countRemovedAgeRange;
+	}
+
 	@Override
 	public void outputResults(){
 		
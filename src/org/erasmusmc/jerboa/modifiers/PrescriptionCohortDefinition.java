@@ -48,6 +48,7 @@ import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.dataClasses.Prescription;
 import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.modules.viewers.PatientViewer;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
@@ -397,6 +398,12 @@ public class PrescriptionCohortDefinition extends Modifier {
 	}
 
 
+	//only sets the cohort of the patients
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 * Sets the cohort start date and cohort end date for the patient passed as argument
 	 * based on the parameter settings present in the script file.
@@ -895,6 +902,35 @@ public class PrescriptionCohortDefinition extends Modifier {
 	}
 
 
+	@Override
+	public Worker createPartition(){
+		PrescriptionCohortDefinition partition = (PrescriptionCohortDefinition)copy();
+		if (partition != null){
+			partition.patientTime = new MultiKeyBag();
+			partition.countRemoved = 0;
+			partition.originalCount = 0;
+			partition.countEndpointDrugOfInterest = 0;
+			partition.countNaiveEndpointDrugOfInterest = 0;
+			partition.countDrugOfInterest = 0;
+			partition.countNaiveDrugOfInterest = 0;
+			partition.countEventOfInterest = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition){
+		PrescriptionCohortDefinition other = (PrescriptionCohortDefinition)partition;
+		patientTime.merge(other.patientTime);
+		countRemoved += other.countRemoved;
+		originalCount += other.originalCount;
+		countEndpointDrugOfInterest += other.countEndpointDrugOfInterest;
+		countNaiveEndpointDrugOfInterest += other.countNaiveEndpointDrugOfInterest;
+		countDrugOfInterest += other.countDrugOfInterest;
+		countNaiveDrugOfInterest += other.countNaiveDrugOfInterest;
+		countEventOfInterest += other.countEventOfInterest;
+	}
+
 	@Override
 	public void outputResults(){
 
@@ -332,6 +332,12 @@ public class AlgorithmComparison extends Module {
 	}
 
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		if ((patient != null) && patient.isInCohort()) {
@@ -24,16 +24,21 @@ package org.erasmusmc.jerboa.modules;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 
 import org.erasmusmc.jerboa.Jerboa;
 import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.config.Parameters;
+import org.erasmusmc.jerboa.dataClasses.ATCMatcher;
+import org.erasmusmc.jerboa.dataClasses.EpisodeIndex;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.dataClasses.Prescription;
@@ -766,8 +771,8 @@ public class CaseControl extends Module {
 	// Counter for case patterns that also serves as caseset ID.
 	private int casePatternCount;
 
-	// List to contain the case patterns found.
-	private List<CasePattern> casePatterns = new ArrayList<CasePattern>();
+	// Index containing the case patterns found.
+	private CasePatternIndex casePatterns = new CasePatternIndex();
 
 	// Set of all case patient ID's.
 	// Only used when controlsNeverCase = true
@@ -777,6 +782,9 @@ public class CaseControl extends Module {
 	private int matchOnDrugCountStart = 0;
 	private int matchOnDrugCountEnd   = 0;
 
+	// The compiled ATCs of interest; null if all drugs are counted
+	private ATCMatcher atcsOfInterestMatcher;
+
 	// Match on ATC class window and level definition
 	private int matchOnATCClassStart = 0;
 	private int matchOnATCClassEnd   = 0;
@@ -829,6 +837,8 @@ public class CaseControl extends Module {
 			caseIDs = new HashSet<String>();
 		}
 
+		atcsOfInterestMatcher = atcsOfInterest.size() > 0 ? new ATCMatcher(atcsOfInterest) : null;
+
 		// Interpret the matchOnDrugCount parameter.
 		if (!matchOnDrugCount.equals("")) {
 			String[] matchOnDrugCountSplit = matchOnDrugCount.split(";");
@@ -1033,6 +1043,12 @@ public class CaseControl extends Module {
 	}
 
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 
@@ -1289,10 +1305,8 @@ public class CaseControl extends Module {
 	 * Check if the patient is a control and write it to the output file
 	 */
 	private void saveControls(Patient patient, int cohortStart, int cohortEnd) {
-		int casePatternNr = casePatterns.size() - 1;
 		PatientCovariateInfo controlCovariateInfo = null;
-		while (casePatternNr >= 0) {
-			CasePattern casePattern = casePatterns.get(casePatternNr);
+		for (CasePattern casePattern : casePatterns.getCandidates(patient)) {
 
 			int cohortStartDate = useMultipleCohorts ? patient.getCohortStartDate(casePattern.event.getDate()) : cohortStart;
 			int cohortEndDate = useMultipleCohorts ? patient.getCohortEndDate(casePattern.event.getDate()) : cohortEnd;
@@ -1313,12 +1327,10 @@ public class CaseControl extends Module {
 
 					// If the maximum number of controls per case is found remove the case pattern
 					if (casePattern.allControlsFound()) {
-						casePatterns.remove(casePatternNr);
+						casePatterns.remove(casePattern);
 					}
 				}
 			}
-
-			casePatternNr--;
 		}
 	}
 
@@ -1348,7 +1360,7 @@ public class CaseControl extends Module {
 		if (outputCohortYear)						record += "," + (cohortStartDate == -1 ? "None" : DateUtilities.getYearFromDays(cohortStartDate));
 		if (outputMonth)							record += "," + DateUtilities.getMonthFromDays(casePattern.event.getDate());
 		if (outputYear)								record += "," + DateUtilities.getYearFromDays(casePattern.event.getDate());
-		if (outputDrugCount)						record += "," + getDrugCount(patient, casePattern.event.getDate(), casePattern.event.getDate() + 1, new ArrayList<String>());
+		if (outputDrugCount)						record += "," + getDrugCount(patient, casePattern.event.getDate(), casePattern.event.getDate() + 1, null);
 		if (outputTimeInCohort)						record += "," + Integer.toString(casePattern.event.getDate() - cohortStartDate);
 		if (outputAgeAtCohortStart)					record += "," + patient.getAgeAtDateInYears(cohortStartDate);
 		if (outputFollowUpBeforeEvent)				record += "," + Double.toString((casePattern.event.getDate() - patient.getPopulationStartDate()) / 365.25);
@@ -1370,10 +1382,10 @@ public class CaseControl extends Module {
 	}
 
 
-	private int getDrugCount(Patient patient, int startWindow, int endWindow, List<String> atcList) {
+	private int getDrugCount(Patient patient, int startWindow, int endWindow, ATCMatcher atcMatcher) {
 		Set<String> atcFound = new HashSet<String>();
 		for (Prescription prescription : patient.getPrescriptions()) {
-			if ((prescription.getEndDate() >= startWindow) && (prescription.getDate() < endWindow) && ((atcList.size() == 0) || prescription.startsWith(atcList))) {
+			if ((prescription.getEndDate() >= startWindow) && (prescription.getDate() < endWindow) && ((atcMatcher == null) || prescription.startsWith(atcMatcher))) {
 				atcFound.add(prescription.getATC());
 			}
 		}
@@ -1405,10 +1417,9 @@ public class CaseControl extends Module {
 		else {
 			windowEnd = indexDate + Integer.valueOf(parameters.get(MATCH_EVENT_COUNT_PARAMETER_WINDOW_END));
 		}
-		for (Event event : patient.getEvents()) {
-			if ((matchOnEventCount.getLookup().contains(event.getType())) && (windowStart < event.getDate()) && (event.getDate() < windowEnd)) {
-				count++;
-			}
+		EpisodeIndex index = patient.getEpisodeIndex();
+		for (String eventType : new HashSet<String>(matchOnEventCount.getLookup())) {
+			count += index.getEvents(eventType).count(windowStart + 1L, windowEnd - 1L);
 		}
 		return count;
 	}
@@ -1427,6 +1438,159 @@ public class CaseControl extends Module {
 	}
 
 
+	private String getExternalCaseSetID(Patient patient) {
+		for (Event caseSetIDEvent : patient.getEvents()) {
+			if (caseSetIDEvent.getType().substring(0, Math.min(caseSetIDEvent.getType().length(), matchOnExternalCaseSetId.length())).equals(matchOnExternalCaseSetId)) {
+				return caseSetIDEvent.getType();
+			}
+		}
+
+		return "";
+	}
+
+
+
+	/**
+	 * Contains the case patterns indexed on the criteria a control has to match exactly
+	 * (gender, practice ID, external case set ID and birth date or birth year) and on
+	 * index date, so that a control is only matched to the case patterns it can match.
+	 */
+	protected class CasePatternIndex {
+		// The case patterns per bucket of matching criteria sorted on index date
+		private Map<String, TreeMap<Integer, List<CasePattern>>> buckets = new HashMap<String, TreeMap<Integer, List<CasePattern>>>();
+
+		// The number of case patterns in the index
+		private int size = 0;
+
+		// The sequence number of the next case pattern added
+		private int sequenceNr = 0;
+
+
+		/**
+		 * Adds a case pattern to the index.
+		 */
+		public void add(CasePattern casePattern) {
+			casePattern.sequenceNr = sequenceNr++;
+			String key = getBucketKey(casePattern.patientGender, casePattern.patientPracticeID, getBirthBucket(casePattern.patientBirthDate, casePattern.patientBirthYear, casePattern.patientBirthMonth), casePattern.externalCaseSetId);
+			TreeMap<Integer, List<CasePattern>> bucket = buckets.get(key);
+			if (bucket == null) {
+				bucket = new TreeMap<Integer, List<CasePattern>>();
+				buckets.put(key, bucket);
+			}
+			List<CasePattern> indexDatePatterns = bucket.get(casePattern.event.getDate());
+			if (indexDatePatterns == null) {
+				indexDatePatterns = new ArrayList<CasePattern>();
+				bucket.put(casePattern.event.getDate(), indexDatePatterns);
+			}
+			indexDatePatterns.add(casePattern);
+			size++;
+		}
+
+
+		/**
+		 * Removes a case pattern from the index.
+		 */
+		public void remove(CasePattern casePattern) {
+			String key = getBucketKey(casePattern.patientGender, casePattern.patientPracticeID, getBirthBucket(casePattern.patientBirthDate, casePattern.patientBirthYear, casePattern.patientBirthMonth), casePattern.externalCaseSetId);
+			TreeMap<Integer, List<CasePattern>> bucket = buckets.get(key);
+			if (bucket != null) {
+				List<CasePattern> indexDatePatterns = bucket.get(casePattern.event.getDate());
+				if ((indexDatePatterns != null) && indexDatePatterns.remove(casePattern)) {
+					size--;
+					if (indexDatePatterns.isEmpty()) {
+						bucket.remove(casePattern.event.getDate());
+						if (bucket.isEmpty()) {
+							buckets.remove(key);
+						}
+					}
+				}
+			}
+		}
+
+
+		/**
+		 * Returns the case patterns the potential control can match, in the reverse order
+		 * in which they were added. The control still has to be matched to each of them.
+		 */
+		public List<CasePattern> getCandidates(Patient potentialControl) {
+			List<CasePattern> candidates = new ArrayList<CasePattern>();
+
+			// The index date should be inside the cohort time of the control
+			int cohortStartDate = potentialControl.getCohortStartDate();
+			int cohortEndDate = potentialControl.getCohortEndDate();
+			if (cohortStartDate >= cohortEndDate) {
+				return candidates;
+			}
+
+			// Determine the birth buckets the control can match
+			long firstBirthBucket;
+			long lastBirthBucket;
+			if (maxDifferenceBetweenBirthDates >= 0) {
+				// The birth date of the case should be in [birth date - difference, birth date + difference)
+				long width = Math.max(1, maxDifferenceBetweenBirthDates);
+				firstBirthBucket = Math.floorDiv((long) potentialControl.birthDate - maxDifferenceBetweenBirthDates, width);
+				lastBirthBucket = Math.floorDiv((long) potentialControl.birthDate + maxDifferenceBetweenBirthDates - 1, width);
+			}
+			else {
+				firstBirthBucket = getBirthBucket(potentialControl.birthDate, potentialControl.getBirthYear(), potentialControl.getBirthMonth());
+				lastBirthBucket = firstBirthBucket;
+			}
+
+			int practiceID = matchOnPracticeID ? potentialControl.getPracticeID() : 0;
+			String externalCaseSetId = matchOnExternalCaseSetId.equals("") ? null : getExternalCaseSetID(potentialControl);
+			for (long birthBucket = firstBirthBucket; birthBucket <= lastBirthBucket; birthBucket++) {
+				TreeMap<Integer, List<CasePattern>> bucket = buckets.get(getBucketKey(potentialControl.gender, practiceID, birthBucket, externalCaseSetId));
+				if (bucket != null) {
+					for (List<CasePattern> indexDatePatterns : bucket.subMap(cohortStartDate, true, cohortEndDate, false).values()) {
+						candidates.addAll(indexDatePatterns);
+					}
+				}
+			}
+
+			// Keep the order in which the case patterns were originally checked
+			Collections.sort(candidates, new Comparator<CasePattern>() {
+				@Override
+				public int compare(CasePattern pattern1, CasePattern pattern2) {
+					return Integer.compare(pattern2.sequenceNr, pattern1.sequenceNr);
+				}
+			});
+
+			return candidates;
+		}
+
+
+		/**
+		 * Returns the number of case patterns in the index.
+		 */
+		public int size() {
+			return size;
+		}
+
+
+		private String getBucketKey(byte gender, int practiceID, long birthBucket, String externalCaseSetId) {
+			return (matchOnGender ? Byte.toString(gender) : "") + "_" +
+					(matchOnPracticeID ? Integer.toString(practiceID) : "") + "_" +
+					Long.toString(birthBucket) + "_" +
+					(matchOnExternalCaseSetId.equals("") ? "" : externalCaseSetId);
+		}
+
+
+		private long getBirthBucket(int birthDate, int birthYear, int birthMonth) {
+			if (maxDifferenceBetweenBirthDates >= 0) {
+				return Math.floorDiv(birthDate, Math.max(1, maxDifferenceBetweenBirthDates));
+			}
+			else if (maxDifferenceBetweenBirthDates < -2) {
+				return (birthYear * 100) + birthMonth;
+			}
+			else if (maxDifferenceBetweenBirthDates < -1) {
+				return birthYear;
+			}
+
+			return 0;
+		}
+	}
+
+
 
 	/**
 	 * Defines a pattern of a case, based on the specified matching criteria.
@@ -1450,6 +1614,7 @@ public class CaseControl extends Module {
 		public String externalCaseSetId;
 		public int controlsFound = 0;
 		public long timeInCohort;
+		public int sequenceNr;
 
 		// Control data
 		public int controlDrugCount = 0;
@@ -1475,7 +1640,7 @@ public class CaseControl extends Module {
 			patientCohortEndDate = patient.getCohortEndDate();
 
 			if (!matchOnDrugCount.equals("")) {
-				drugCount = getDrugCount(patient, event.getDate() + matchOnDrugCountStart, event.getDate() + matchOnDrugCountEnd, atcsOfInterest);
+				drugCount = getDrugCount(patient, event.getDate() + matchOnDrugCountStart, event.getDate() + matchOnDrugCountEnd, atcsOfInterestMatcher);
 			}
 
 			if (!matchOnATCClass.equals("")) {
@@ -1583,7 +1748,7 @@ public class CaseControl extends Module {
 
 			// Match on drug count
 			if (!matchOnDrugCount.equals("")) {
-				controlDrugCount = getDrugCount(potentialControl, indexDate + matchOnDrugCountStart, indexDate + matchOnDrugCountEnd, atcsOfInterest);
+				controlDrugCount = getDrugCount(potentialControl, indexDate + matchOnDrugCountStart, indexDate + matchOnDrugCountEnd, atcsOfInterestMatcher);
 				if (controlDrugCount != drugCount) {
 					return false;
 				}
@@ -1655,16 +1820,6 @@ public class CaseControl extends Module {
 		}
 
 
-		private String getExternalCaseSetID(Patient patient) {
-			for (Event caseSetIDEvent : patient.getEvents()) {
-				if (caseSetIDEvent.getType().substring(0, Math.min(caseSetIDEvent.getType().length(), matchOnExternalCaseSetId.length())).equals(matchOnExternalCaseSetId)) {
-					return caseSetIDEvent.getType();
-				}
-			}
-
-			return "";
-		}
-
 
 		private Set<String> getATCClasses(Patient patient, int startWindow, int endWindow) {
 			Set<String> atcClassSet = new HashSet<String>();
@@ -43,6 +43,7 @@ import org.apache.commons.lang3.text.StrBuilder;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.engine.Module;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.gui.graphs.Graphs;
 import org.erasmusmc.jerboa.gui.graphs.BarPlotCategory;
 import org.erasmusmc.jerboa.gui.graphs.BarPlotLayered;
@@ -110,6 +111,12 @@ public class CodeCounting extends Module{
 		return true;
 	}
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 * Count the first and total number of event type, code combinations in the input population.
 	 * @param patient - the patient to be processed
@@ -151,6 +158,33 @@ public class CodeCounting extends Module{
 		return patient;
 	}
 
+	@Override
+	public Worker createPartition(){
+		CodeCounting partition = (CodeCounting)copy();
+		if (partition != null){
+			partition.firstCountBag = new MultiKeyBag();
+			partition.totalCountBag = new MultiKeyBag();
+			partition.patientsWithoutEvents = 0;
+			partition.eventsOutsidePatientTime = 0;
+			partition.eventsInPatientTime = 0;
+			partition.nrPatients = 0;
+			partition.eventsWithNoCode = 0;
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition){
+		CodeCounting other = (CodeCounting)partition;
+		firstCountBag.merge(other.firstCountBag);
+		totalCountBag.merge(other.totalCountBag);
+		patientsWithoutEvents += other.patientsWithoutEvents;
+		eventsOutsidePatientTime += other.eventsOutsidePatientTime;
+		eventsInPatientTime += other.eventsInPatientTime;
+		nrPatients += other.nrPatients;
+		eventsWithNoCode += other.eventsWithNoCode;
+	}
+
 	@Override
 	public void displayGraphs() {
 
@@ -664,6 +664,12 @@ public class CohortStudy extends Module{
 		return initOK;
 	}
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		if (anonymizePatientID) {
@@ -49,11 +49,11 @@ import org.erasmusmc.jerboa.gui.graphs.Graphs;
 import org.erasmusmc.jerboa.gui.graphs.LinePlotDS;
 import org.erasmusmc.jerboa.gui.graphs.Plot;
 import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.utilities.CompactMultiKeyBag;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.FileUtilities;
 import org.erasmusmc.jerboa.utilities.Logging;
-import org.erasmusmc.jerboa.utilities.MultiKeyBag;
 import org.erasmusmc.jerboa.utilities.Progress;
 import org.erasmusmc.jerboa.utilities.StringUtilities;
 import org.erasmusmc.jerboa.utilities.Wildcard;
@@ -79,21 +79,21 @@ public class DataProfiler extends Module{
 	private Progress progress = new Progress();
 
 	//bags for extra graphs not used for statistics
-	private MultiKeyBag startDatesBag;
-	private MultiKeyBag endDatesBag;
+	private CompactMultiKeyBag startDatesBag;
+	private CompactMultiKeyBag endDatesBag;
 
 	//Bags for statistics
 	//Name equals the key order (index 0 = gender for all bags)
-	private MultiKeyBag yearActivePatientsBag;
-	private MultiKeyBag yearBirthDatesBag;
-	private MultiKeyBag yearsPatientTimeBag;
-	private MultiKeyBag yearAgeGroupAtStartAgeBag;
-	private MultiKeyBag yearAgeGroupAtEndAgeBag;
-	private MultiKeyBag yearAgeGroupAtStartOfYearBag;
-	private MultiKeyBag yearAgeGroupAtStartPatientTimeBag;
-	private MultiKeyBag beforeYearAgeGroupPatientTimeBag;
-	private MultiKeyBag inYearAgeGroupPatientTimeBag;
-	private MultiKeyBag afterYearAgeGroupPatientTimeBag;
+	private CompactMultiKeyBag yearActivePatientsBag;
+	private CompactMultiKeyBag yearBirthDatesBag;
+	private CompactMultiKeyBag yearsPatientTimeBag;
+	private CompactMultiKeyBag yearAgeGroupAtStartAgeBag;
+	private CompactMultiKeyBag yearAgeGroupAtEndAgeBag;
+	private CompactMultiKeyBag yearAgeGroupAtStartOfYearBag;
+	private CompactMultiKeyBag yearAgeGroupAtStartPatientTimeBag;
+	private CompactMultiKeyBag beforeYearAgeGroupPatientTimeBag;
+	private CompactMultiKeyBag inYearAgeGroupPatientTimeBag;
+	private CompactMultiKeyBag afterYearAgeGroupPatientTimeBag;
 
 	//output
 	private StrBuilder out;
@@ -123,29 +123,35 @@ public class DataProfiler extends Module{
 				"Var\tName\tValue\tName\tValue\tGender\tMin\tMax\tCount\tMean\tperc25\tMedian\tperc75\tSD", false);
 
 		//bags for graphs only
-		startDatesBag = new MultiKeyBag(); 					    // gender, start date
-		endDatesBag = new MultiKeyBag(); 						// gender, end date
+		startDatesBag = new CompactMultiKeyBag(); 					    // gender, start date
+		endDatesBag = new CompactMultiKeyBag(); 						// gender, end date
 
 		//age bags
-		yearAgeGroupAtStartAgeBag = new MultiKeyBag(); 		    // gender, year, age group at start, age
-		yearAgeGroupAtEndAgeBag = new MultiKeyBag(); 			// gender, year, age group at end, age
-		yearAgeGroupAtStartOfYearBag = new MultiKeyBag();		// gender, year, age group at start of year, age
+		yearAgeGroupAtStartAgeBag = new CompactMultiKeyBag(); 		    // gender, year, age group at start, age
+		yearAgeGroupAtEndAgeBag = new CompactMultiKeyBag(); 			// gender, year, age group at end, age
+		yearAgeGroupAtStartOfYearBag = new CompactMultiKeyBag();		// gender, year, age group at start of year, age
 
 		//patient time bags
-		yearAgeGroupAtStartPatientTimeBag = new MultiKeyBag();	// gender, year, age group at start, patient time
-		beforeYearAgeGroupPatientTimeBag = new MultiKeyBag();	// gender, before year, age group at start of year, patient time
-		inYearAgeGroupPatientTimeBag = new MultiKeyBag();		// gender, in year, age group at start of year, patient time
-		afterYearAgeGroupPatientTimeBag = new MultiKeyBag();	// gender, after year, age group at start of year, patient time
+		yearAgeGroupAtStartPatientTimeBag = new CompactMultiKeyBag();	// gender, year, age group at start, patient time
+		beforeYearAgeGroupPatientTimeBag = new CompactMultiKeyBag();	// gender, before year, age group at start of year, patient time
+		inYearAgeGroupPatientTimeBag = new CompactMultiKeyBag();		// gender, in year, age group at start of year, patient time
+		afterYearAgeGroupPatientTimeBag = new CompactMultiKeyBag();	// gender, after year, age group at start of year, patient time
 
 		//other bags
-		yearActivePatientsBag = new MultiKeyBag(); 				// gender, year, active patients
-		yearBirthDatesBag = new MultiKeyBag(); 				    // gender, year, birth date
-		yearsPatientTimeBag = new MultiKeyBag(); 				// gender, number of years of patient time
+		yearActivePatientsBag = new CompactMultiKeyBag(); 				// gender, year, active patients
+		yearBirthDatesBag = new CompactMultiKeyBag(); 				    // gender, year, birth date
+		yearsPatientTimeBag = new CompactMultiKeyBag(); 				// gender, number of years of patient time
 
 		return initOK;
 
 	}
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient p){
 
@@ -371,7 +377,7 @@ public class DataProfiler extends Module{
 	 * @param YLabel - the Y axis label
 	 * @return - the list of generated plots
 	 */
-	private List<Plot> getPercentilePlots(MultiKeyBag bag, String title, String XLabel, String YLabel){
+	private List<Plot> getPercentilePlots(CompactMultiKeyBag bag, String title, String XLabel, String YLabel){
 		List<Plot> list = new ArrayList<Plot>();
 		if (bag != null){
 			list.add(createPercentilePlot(bag, DataDefinition.INVALID_GENDER, title + " - Total population", XLabel, YLabel));
@@ -392,7 +398,7 @@ public class DataProfiler extends Module{
 	 * @param YLabel - the Y axis label
 	 * @return - the distribution plot
 	 */
-	private Plot createPercentilePlot(MultiKeyBag bag, byte gender, String title, String XLabel, String YLabel){
+	private Plot createPercentilePlot(CompactMultiKeyBag bag, byte gender, String title, String XLabel, String YLabel){
 		TreeMap<Object, Object> statsMap = getStatsMap(bag, gender);
 		Plot plot = new LinePlotDS.Builder(title).XLabel(XLabel).YLabel(YLabel).showLegend(true).build();
 		plot.addSeriesToDataset(getPercentile(statsMap, 25), "1st quartile");
@@ -413,7 +419,7 @@ public class DataProfiler extends Module{
 	 * @param YLabel - the Y axis label
 	 * @return - the list of generated plots
 	 */
-	private List<Plot> getPatientTimeInAYearPlots(MultiKeyBag bag, String title, String XLabel, String YLabel){
+	private List<Plot> getPatientTimeInAYearPlots(CompactMultiKeyBag bag, String title, String XLabel, String YLabel){
 		List<Plot> list = new ArrayList<Plot>();
 			Plot plot = new BarPlotDS.Builder(title + " - Total population").XLabel(XLabel).YLabel(YLabel)
 					.data(getPatientTimeInAYear(bag, DataDefinition.INVALID_GENDER)).build();list.add(plot);
@@ -432,7 +438,7 @@ public class DataProfiler extends Module{
 	 * @param gender - the gender of interest
 	 * @return - a map with years as keys and patient time as values
 	 */
-	private HashMap<Object, Object> getPatientTimeInAYear(MultiKeyBag bag, byte gender){
+	private HashMap<Object, Object> getPatientTimeInAYear(CompactMultiKeyBag bag, byte gender){
 		HashMap<Object, Object> data = new HashMap<Object, Object>();
 		if (bag != null){
 			TreeMap<Object, Object> stats = getStatsMap(bag, gender);
@@ -467,7 +473,7 @@ public class DataProfiler extends Module{
 	 * @param gender - the gender for which the statistics are to be computed
 	 * @return - a sorted list (by year) of summary statistics
 	 */
-	private TreeMap<Object, Object> getStatsMap(MultiKeyBag bag, byte gender){
+	private TreeMap<Object, Object> getStatsMap(CompactMultiKeyBag bag, byte gender){
 		TreeMap<Object, Object> stats = new TreeMap<Object, Object>();
 		TreeSet<ExtendedMultiKey> keySet = bag.getSortedKeySet();
 		if (keySet != null && keySet.size() > 0){
@@ -492,7 +498,7 @@ public class DataProfiler extends Module{
 	 * @param YLabel - the label of the Y axis
 	 * @return - a list containing plots for each calendar year found in the multi key bag
 	 */
-	private List<Plot> getPlotListPerYear(MultiKeyBag bag, String title, String XLabel, String YLabel){
+	private List<Plot> getPlotListPerYear(CompactMultiKeyBag bag, String title, String XLabel, String YLabel){
 		List<Plot> list = null;
 		if (bag != null){
 			//calculate min and max range for X axis
@@ -529,7 +535,7 @@ public class DataProfiler extends Module{
 	 * @param multiKey - the multikey corresponding to the subset of data of interest
 	 * @return - a HashBag representation of the information aggregated per month
 	 */
-	private HashBag aggregatePerMonth(MultiKeyBag bag, ExtendedMultiKey multiKey){
+	private HashBag aggregatePerMonth(CompactMultiKeyBag bag, ExtendedMultiKey multiKey){
 
 		//sort info to be aggregated
 		HashBag histo = bag.getHistogram(multiKey);
@@ -638,10 +644,10 @@ public class DataProfiler extends Module{
 	 * @param outputPerYearAndAgeGroup - true if statistics are to be computed per calendar year and age groups and output
 	 * @param outputCount - true if the statistics should reflect the count of the elements; false if the sum of the elements should be output
 	 */
-	private void outputBagStats(String name, MultiKeyBag bag, boolean outputCountsOnly, boolean outputTotals,
+	private void outputBagStats(String name, CompactMultiKeyBag bag, boolean outputCountsOnly, boolean outputTotals,
 			boolean outputPerYear, boolean outputPerAgeGroup, boolean outputPerYearAndAgeGroup, boolean outputCount){
 
-		if (!bag.getMasterBag().isEmpty()){
+		if (!bag.isEmpty()){
 
 			try{
 				//totals
@@ -683,7 +689,7 @@ public class DataProfiler extends Module{
 	 * @param outputCountsOnly = true if only the count should be added
 	 * the count of the elements; false if the sum of the elements should be output
 	 */
-	private void outputTotals(String name, MultiKeyBag bag, boolean outputCount, boolean outputCountsOnly){
+	private void outputTotals(String name, CompactMultiKeyBag bag, boolean outputCount, boolean outputCountsOnly){
 		if (bag != null){
 			if (outputCountsOnly) {
 				addToOutput(name, null, null, "T",
@@ -713,7 +719,7 @@ public class DataProfiler extends Module{
 	 * @param outputCountsOnly = true if only the count should be added an no other statistics
 	 * the count of the elements; false if the sum of the elements should be output
 	 */
-	private void outputPerYear(String name, MultiKeyBag bag, boolean outputCount, boolean outputCountsOnly){
+	private void outputPerYear(String name, CompactMultiKeyBag bag, boolean outputCount, boolean outputCountsOnly){
 		if (bag != null){
 			TreeSet<Object> years = bag.getKeyValuesAsObject(1);
 			for (Object year : years){
@@ -745,7 +751,7 @@ public class DataProfiler extends Module{
 	 * @param postKey - the key to be added
 	 * the count of the elements; false if the sum of the elements should be output
 	 */
-	private void outputCountPerYear(String name, MultiKeyBag bag, ExtendedMultiKey postKey){
+	private void outputCountPerYear(String name, CompactMultiKeyBag bag, ExtendedMultiKey postKey){
 
 		ExtendedMultiKey fullKeyT = null;
 		ExtendedMultiKey fullKeyM = null;
@@ -783,7 +789,7 @@ public class DataProfiler extends Module{
 	 * @param outputCountsOnly - true if wanted to output only counts and not sums
 	 * @precondition - Age group should be in position 2 of the bag (To be changed!)
 	 */
-	private void outputPerYearAndAgeGroup(String name, MultiKeyBag bag,  boolean outputCount, boolean outputCountsOnly){
+	private void outputPerYearAndAgeGroup(String name, CompactMultiKeyBag bag,  boolean outputCount, boolean outputCountsOnly){
 		if (bag != null){
 			//get the all unique key objects
 			TreeSet<Object> years = bag.getKeyValuesAsObject(1);
@@ -818,7 +824,7 @@ public class DataProfiler extends Module{
 	 * @param outputCountsOnly - true if wanted to output only counts and not sums
 	 * @precondition - Age group should be in position 2 of the bag (To be changed!)
 	 */
-	private void outputPerAgeGroup(String name, MultiKeyBag bag,  boolean outputCount, boolean outputCountsOnly){
+	private void outputPerAgeGroup(String name, CompactMultiKeyBag bag,  boolean outputCount, boolean outputCountsOnly){
 		if (bag != null){
 			TreeSet<Object> agegroups = bag.getKeyValuesAsObject(2);
 
@@ -237,6 +237,12 @@ public class DrugUtilizationPopulationLevel extends Module {
 	}
 
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 
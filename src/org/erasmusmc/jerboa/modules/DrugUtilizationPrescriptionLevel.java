@@ -569,6 +569,12 @@ public class DrugUtilizationPrescriptionLevel extends Module {
 	}
 	
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		if (!showRealPatientID) {
@@ -45,9 +45,11 @@ import java.util.Set;
 import java.util.TreeMap;
 
 import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.dataClasses.ATCMatcher;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.PatientHistory;
 import org.erasmusmc.jerboa.dataClasses.Prescription;
 import org.erasmusmc.jerboa.engine.Module;
 import org.erasmusmc.jerboa.engine.PatientObjectCreator;
@@ -63,9 +65,11 @@ import org.erasmusmc.jerboa.utilities.AgeGroupDefinition;
 import org.erasmusmc.jerboa.utilities.AgeGroupDefinition.AgeGroup;
 import org.erasmusmc.jerboa.utilities.stats.HistogramStats;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.DenseCounter;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.FileUtilities;
 import org.erasmusmc.jerboa.utilities.StringUtilities;
+import org.erasmusmc.jerboa.utilities.SymbolSet;
 import org.erasmusmc.jerboa.utilities.TimeUtilities;
 import org.erasmusmc.jerboa.utilities.Wildcard;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
@@ -239,13 +243,32 @@ public class IncidenceRate extends Module{
 
 	private static Byte YEAR = 0;
 	private static Byte MONTH = 1;
-
+
 	private String patientTimeFileName = "";
 
-	// Bags
-	private Map<String, Integer> subjectsCount;                     // Event, Year, Month, AgeGroup, Gender
-	private Map<String, Integer> eventsCount;                       // Event, Year, Month, AgeGroup, Gender
-	private Map<String, Long> daysCount;                         // Event, Year, Month, AgeGroup, Gender
+	// Counters
+	private DenseCounter counts;                                    // Event, Year, Month, AgeGroup, Aggregation, Gender
+	private DenseCounter totals;                                    // Event, Gender
+
+	// Dimensions of the counters
+	private static final int EVENT = 0;
+	private static final int PERIOD_YEAR = 1;
+	private static final int PERIOD_MONTH = 2;
+	private static final int AGEGROUP = 3;
+	private static final int AGGREGATION = 4;
+	private static final int GENDER = 5;
+	private static final int TOTALS_GENDER = 1;
+
+	// Initial number of labels of the dimensions of the counters; a dimension grows when more labels are found
+	private static final int INITIAL_YEARS = 16;                                      // Calendar years and ALL
+	private static final int MONTHS = 12;                                             // Months in a year
+	private static final int GENDERS = DataDefinition.UNKNOWN_GENDER + 1;             // F, M and U
+	private static final int INITIAL_AGGREGATIONS = 1;                                // The empty aggregation level
+
+	// Measures of the counters
+	private static final int SUBJECTS = 0;
+	private static final int EVENTS = 1;
+	private static final int DAYS = 2;
 
 	private MultiKeyMap incidenceOverallMap;                        // Event, AgeGroup
 	private MultiKeyMap incidenceOverallGenderMap;                  // Event, AgeGroup, Gender
@@ -260,6 +283,7 @@ public class IncidenceRate extends Module{
 	// Index lists
 	private Map<String, List<String> > allPeriodKeys;
 	private List<String> allEventTypes = new ArrayList<String>();   // All events
+	private SymbolSet allEventTypeCodes;                            // All events resolved in the event types look-up
 
 	// Age group definitions
 	private AgeGroupDefinition ageGroupDefinition = null;
@@ -310,7 +334,8 @@ public class IncidenceRate extends Module{
 	private Set<Event> eventsFound;
 	private Map<Byte, List<Event>> uniqueEvents;
 	private Set<String> eventTypeSet = new HashSet<String>();
-	private Set<String> subjectsSet;
+	private int subjectsStamp = 0;
+	private int allYearsCode;
 	private Set<String> years;
 	private Set<String> historyFollowupEventTypes;
 
@@ -441,9 +466,6 @@ public class IncidenceRate extends Module{
 		}
 
 		// Create the bags
-		subjectsCount = new HashMap<String, Integer>();            // Event, Year, Month, AgeGroup, Gender
-		eventsCount = new HashMap<String, Integer>();              // Event, Year, Month, AgeGroup, Gender
-		daysCount = new HashMap<String, Long>();                // Event, Year, Month, AgeGroup, Gender
 		incidenceOverallMap = new MultiKeyMap();                   // Event, AgeGroup, Incidence
 		incidenceOverallGenderMap = new MultiKeyMap();             // Event, AgeGroup, Gender, Incidence
 		incidenceMap = new MultiKeyMap();                          // Event, Period, AgeGroup, Incidence
@@ -478,10 +500,17 @@ public class IncidenceRate extends Module{
 		}
 		else
 			allEventTypes = FileUtilities.getList(InputFileUtilities.getEventTypes());     // All events
+		allEventTypeCodes = new SymbolSet(allEventTypes);
 
 		aggregations = new AggregationLevels(aggregationLevels);
 		aggregationLevelsFound = new HashSet<String>();
 
+		// Create the counters
+		int monthLabels = timeDivisionPeriod == MONTH ? MONTHS + 1 : 1;                 // The months and ALL
+		counts = new DenseCounter(3, allEventTypes.size() + 1, INITIAL_YEARS, monthLabels, allAgeGroups.size() + 1, INITIAL_AGGREGATIONS, GENDERS);   // Event, Year, Month, AgeGroup, Aggregation, Gender
+		totals = new DenseCounter(3, allEventTypes.size() + 1, GENDERS);                                                                                // Event, Gender
+		allYearsCode = counts.encode(PERIOD_YEAR, "ALL");
+
 		if (intermediateFiles) {
 			/*
 			acceptedEventsFileName = StringUtilities.addSuffixToFileName(intermediateFileName, "_incidenceRateAcceptedEvents", false);
@@ -600,8 +629,8 @@ public class IncidenceRate extends Module{
 								Jerboa.getOutputManager().writeln(acceptedEventsFileName, patient.ID + "," + Patient.convertGender(patient.gender) + "," + DateUtilities.daysToDate(event.date) + ',' + event.getType() + ',' + event.getCode(), true);
 							}
 						}
-						if (allEventTypes.contains(event.getType())) {
-							if (((lastEvent == null) || (event.getDate() != lastEvent.getDate()) || (!event.getType().equals(lastEvent.getType()))) && ((!censorOnEvent) || (!patientEventTypes.contains(event.getType())))) {
+						if (allEventTypeCodes.contains(InputFileUtilities.getEventTypes(), event.type)) {
+							if (((lastEvent == null) || (event.getDate() != lastEvent.getDate()) || (event.type != lastEvent.type)) && ((!censorOnEvent) || (!patientEventTypes.contains(event.getType())))) {
 								uniqueEvents.get(YEAR).add(event);
 								uniqueEvents.get(MONTH).add(event);
 								if (censorOnEvent && (event.getDate() < patient.getCohortStartDate())) {
@@ -635,12 +664,13 @@ public class IncidenceRate extends Module{
 			String currentMonth = timeDivisionPeriod == MONTH ? Integer.toString(period - ((period / 100) * 100)) : "ALL";
 			int nextPeriod = nextPeriod(period, timeDivisionPeriod);
 
-			subjectsSet = new HashSet<String>();
+			subjectsStamp++;
 			years = new HashSet<String>();
 			historyFollowupEventTypes = new HashSet<String>();
 
-			AddSubjects("OVERALL" + "_" + Patient.convertGender(patient.gender), 1);
-			AddDays("OVERALL" + "_" + Patient.convertGender(patient.gender), patient.getCohortEndDate() - patient.getCohortStartDate());
+			int overallCell = totals.getCell(totals.encode(EVENT, "OVERALL"), totals.encode(TOTALS_GENDER, Patient.convertGender(patient.gender)));
+			AddSubjects(totals, overallCell, 1);
+			AddDays(totals, overallCell, patient.getCohortEndDate() - patient.getCohortStartDate());
 			eventsFound = new HashSet<Event>();
 
 			while (period <= endPeriod) {
@@ -717,6 +747,9 @@ public class IncidenceRate extends Module{
 
 		progress.init(allEventTypes.size() * allPeriodKeys.size(), "Computing Incidence Rates");
 
+		// The events and days of all years are the sums over the calendar years
+		counts.marginalize(PERIOD_YEAR, allYearsCode, EVENTS, DAYS);
+
 		Collections.sort(allEventTypes);
 		if (populationSubgroupList != null && populationSubgroupList.size() > 0)
 			Collections.sort(populationSubgroupList);
@@ -765,7 +798,7 @@ public class IncidenceRate extends Module{
 			Jerboa.getOutputManager().writeln(overallIncidenceFileName, incidenceRecord, true);
 		}
 
-		String analysisFileName = StringUtilities.addSuffixToFileName(outputFileName, "_Analysis", false);
+		String analysisFileName = StringUtilities.addSuffixToFileName(outputFileName, "_Analysis", false);
 		Jerboa.getOutputManager().addFile(analysisFileName);
 		String analysisRecord = "Database";
 		analysisRecord += "," + "EventType";
@@ -802,19 +835,19 @@ public class IncidenceRate extends Module{
 
 							// Get subjects
 							// subjectsBag: Event, Year, Month, AgeGroup, Gender
-							maleSubjects = getSubjects(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "M");
-							femaleSubjects = getSubjects(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "F");
+							maleSubjects = getSubjects(eventType, year, month, ageGroupLabel, aggregationLevel, "M");
+							femaleSubjects = getSubjects(eventType, year, month, ageGroupLabel, aggregationLevel, "F");
 
 							if ((maleSubjects + femaleSubjects) >= minSubjectsPerRow) {
 								// Get events
 								// eventsBag: Event, Year, Month, AgeGroup, Gender
-								maleEvents = getEvents(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "M");
-								femaleEvents = getEvents(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "F");
+								maleEvents = getEvents(eventType, year, month, ageGroupLabel, aggregationLevel, "M");
+								femaleEvents = getEvents(eventType, year, month, ageGroupLabel, aggregationLevel, "F");
 
 								// Get days
 								// daysBag: Year, Month, AgeGroup, Gender, Days
-								maleDays = getDays(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "M");
-								femaleDays = getDays(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregationLevel + "_" + "F");
+								maleDays = getDays(eventType, year, month, ageGroupLabel, aggregationLevel, "M");
+								femaleDays = getDays(eventType, year, month, ageGroupLabel, aggregationLevel, "F");
 								if (year.equals("ALL") && month.equals("ALL")) {
 									eventMaleDays += maleDays;
 									eventFemaleDays += femaleDays;
@@ -908,7 +941,7 @@ public class IncidenceRate extends Module{
 
 			//int totalEvents = (int) eventsBag.getCount(new ExtendedMultiKey(eventType, Wildcard.STRING(), Wildcard.STRING(), "A", Wildcard.INTEGER()));
 			//int totalDays = (int) daysBag.getCount(new ExtendedMultiKey(eventType, Wildcard.STRING(), Wildcard.STRING(), "NO_AGEGROUP", Wildcard.INTEGER()));
-			int totalEvents = getEvents(eventType + "_" + "M") + getEvents(eventType + "_" + "F");
+			int totalEvents = getTotalEvents(eventType, "M") + getTotalEvents(eventType, "F");
 			long totalDays = eventMaleDays + eventFemaleDays;
 			double totalIncidence = (double)totalEvents / ((double)totalDays / (perNYears * DateUtilities.daysPerYear));
 
@@ -1014,20 +1047,20 @@ public class IncidenceRate extends Module{
 
 					// Get subjects
 					// subjectsBag: Event, Year, AgeGroup, Gender
-					maleSubjects = getSubjects(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-					femaleSubjects = getSubjects(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+					maleSubjects = getSubjects(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "M");
+					femaleSubjects = getSubjects(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "F");
 
 					if ((maleSubjects + femaleSubjects) >= minSubjectsPerRow) {
 
 						// Get events
 						// eventsBag: Event, Year, AgeGroup, Gender
-						maleEvents = getEvents(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-						femaleEvents = getEvents(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+						maleEvents = getEvents(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "M");
+						femaleEvents = getEvents(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "F");
 
 						// Get days
 						// daysBag: Year, AgeGroup, Gender, Days
-						maleDays = getDays(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-						femaleDays = getDays(eventType + "_" + year + "_" + "ALL" + "_" + "ALL" + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+						maleDays = getDays(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "M");
+						femaleDays = getDays(eventType, year, "ALL", "ALL", aggregations.getEmptyAggregationHeader(), "F");
 
 						// Compute incidence rate
 						maleIncidence = (double)maleEvents / ((double)maleDays / (perNYears * DateUtilities.daysPerYear));
@@ -1066,8 +1099,8 @@ public class IncidenceRate extends Module{
 
 				// Get subjects
 				// subjectsBag: Event, Year, AgeGroup, Gender
-				maleSubjects = getSubjects(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-				femaleSubjects = getSubjects(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+				maleSubjects = getSubjects(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+				femaleSubjects = getSubjects(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 				if ((maleSubjects + femaleSubjects) >= minSubjectsPerRow) {
 
@@ -1075,15 +1108,15 @@ public class IncidenceRate extends Module{
 					// eventsBag: Event, Year, AgeGroup, Gender
 					//maleEvents = (int) eventsBag.getCount(new ExtendedMultiKey(eventType, Wildcard.INTEGER(), ageGroupLabel, (int) DataDefinition.MALE_GENDER));
 					//femaleEvents = (int) eventsBag.getCount(new ExtendedMultiKey(eventType, Wildcard.INTEGER(), ageGroupLabel, (int) DataDefinition.FEMALE_GENDER));
-					maleEvents = getEvents(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-					femaleEvents = getEvents(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+					maleEvents = getEvents(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+					femaleEvents = getEvents(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 					// Get days
 					// daysBag: Year, AgeGroup, Gender, Days
 					//maleDays = (int) daysBag.getCount(new ExtendedMultiKey(eventType, Wildcard.INTEGER(), ageGroupLabel, (int) DataDefinition.MALE_GENDER));
 					//femaleDays = (int) daysBag.getCount(new ExtendedMultiKey(eventType, Wildcard.INTEGER(), ageGroupLabel, (int) DataDefinition.FEMALE_GENDER));
-					maleDays = getDays(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-					femaleDays = getDays(eventType + "_" + "ALL" + "_" + "ALL" + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+					maleDays = getDays(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+					femaleDays = getDays(eventType, "ALL", "ALL", ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 					// Compute incidence rate
 					maleIncidence = (double)maleEvents / ((double)maleDays / (perNYears * DateUtilities.daysPerYear));
@@ -1124,19 +1157,19 @@ public class IncidenceRate extends Module{
 
 						// Get subjects
 						// subjectsBag: Year, AgeGroup, Gender
-						maleSubjects = getSubjects(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-						femaleSubjects = getSubjects(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+						maleSubjects = getSubjects(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+						femaleSubjects = getSubjects(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 						if ((maleSubjects + femaleSubjects) >= minSubjectsPerRow) {
 							// Get events
 							// eventsBag: Event, Year, AgeGroup, Gender
-							maleEvents = getEvents(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-							femaleEvents = getEvents(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+							maleEvents = getEvents(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+							femaleEvents = getEvents(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 							// Get days
 							// daysBag: Year, AgeGroup, Gender, Days
-							maleDays = getDays(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "M");
-							femaleDays = getDays(eventType + "_" + year + "_" + month + "_" + ageGroupLabel + "_" + aggregations.getEmptyAggregationHeader() + "_" + "F");
+							maleDays = getDays(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "M");
+							femaleDays = getDays(eventType, year, month, ageGroupLabel, aggregations.getEmptyAggregationHeader(), "F");
 
 							// Compute incidence rate
 							maleIncidence = (double)maleEvents / ((double)maleDays / (perNYears * DateUtilities.daysPerYear));
@@ -1453,7 +1486,9 @@ public class IncidenceRate extends Module{
 
 	private void count(Patient patient, int start, int end, int period, int nextPeriod, String currentYear, String currentMonth, Byte division) {
 		// Count patient time per period
-		String gender = Patient.convertGender(patient.gender);
+		int genderCode = counts.encode(GENDER, Patient.convertGender(patient.gender));
+		int yearCode = counts.encode(PERIOD_YEAR, currentYear);
+		int monthCode = counts.encode(PERIOD_MONTH, currentMonth);
 
 		//TODO: double check with Mees
 		int birthday  = patient.getBirthdayInYear(getYearFromPeriod(period, division));
@@ -1492,7 +1527,7 @@ public class IncidenceRate extends Module{
 							patientCounted.put(event.getType(), true);
 						}
 						if (eventsFound.add(event)) {
-							AddEvents(event.getType() + "_" + patient.getGender(), 1);
+							AddEvents(totals, totals.getCell(totals.encode(EVENT, event.getType()), totals.encode(TOTALS_GENDER, patient.getGender())), 1);
 						}
 
 						// Event is before birthday
@@ -1509,31 +1544,17 @@ public class IncidenceRate extends Module{
 								for (AgeGroup ageGroupBefore : ageGroupsBefore) {
 									for (String aggregationLevel : aggregationLevels) {
 
-										String key = event.getType() + "_" + currentYear + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
-
-										if (censorOnEvent) {
-											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - periodStart);
-											}
-										}
-										else {
-											AddDays(key, birthday - periodStart);
-										}
-
-										// Count overall
-										key = event.getType() + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
+										int cell = getCell(event.getType(), yearCode, monthCode, ageGroupBefore.getLabel(), aggregationLevel, genderCode);
+										AddSubjects(counts, cell, 1);
+										AddEvents(counts, cell, 1);
 
 										if (censorOnEvent) {
 											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - periodStart);
+												AddDays(counts, cell, event.getDate() + 1 - periodStart);
 											}
 										}
 										else {
-											AddDays(key, birthday - periodStart);
+											AddDays(counts, cell, birthday - periodStart);
 										}
 									}
 								}
@@ -1548,19 +1569,11 @@ public class IncidenceRate extends Module{
 								for (AgeGroup ageGroupAfter : ageGroupsAfter) {
 									for (String aggregationLevel : aggregationLevels) {
 
-										String key = event.getType() + "_" + currentYear + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-
-										if (!censored.get(division).contains(event.getType())) {
-											AddDays(key, periodEnd - birthday);
-										}
-
-										// Count overall
-										key = event.getType() + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
+										int cell = getCell(event.getType(), yearCode, monthCode, ageGroupAfter.getLabel(), aggregationLevel, genderCode);
+										AddSubjects(counts, cell, 1);
 
 										if (!censored.get(division).contains(event.getType())) {
-											AddDays(key, periodEnd - birthday);
+											AddDays(counts, cell, periodEnd - birthday);
 										}
 									}
 								}
@@ -1583,19 +1596,11 @@ public class IncidenceRate extends Module{
 								for (AgeGroup ageGroupBefore : ageGroupsBefore) {
 									for (String aggregationLevel : aggregationLevels) {
 
-										String key = event.getType() + "_" + currentYear + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
+										int cell = getCell(event.getType(), yearCode, monthCode, ageGroupBefore.getLabel(), aggregationLevel, genderCode);
+										AddSubjects(counts, cell, 1);
 
 										if (!censored.get(division).contains(event.getType())) {
-											AddDays(key, birthday - periodStart);
-										}
-
-										// Count overall
-										key = event.getType() + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-
-										if (!censored.get(division).contains(event.getType())) {
-											AddDays(key, birthday - periodStart);
+											AddDays(counts, cell, birthday - periodStart);
 										}
 									}
 								}
@@ -1606,31 +1611,17 @@ public class IncidenceRate extends Module{
 								for (AgeGroup ageGroupAfter : ageGroupsAfter) {
 									for (String aggregationLevel : aggregationLevels) {
 
-										String key = event.getType() + "_" + currentYear + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
+										int cell = getCell(event.getType(), yearCode, monthCode, ageGroupAfter.getLabel(), aggregationLevel, genderCode);
+										AddSubjects(counts, cell, 1);
+										AddEvents(counts, cell, 1);
 
 										if (censorOnEvent) {
 											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - birthday);
+												AddDays(counts, cell, event.getDate() + 1 - birthday);
 											}
 										}
 										else {
-											AddDays(key, periodEnd - birthday);
-										}
-
-										// Count overall
-										key = event.getType() + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
-
-										if (censorOnEvent) {
-											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - birthday);
-											}
-										}
-										else {
-											AddDays(key, periodEnd - birthday);
+											AddDays(counts, cell, periodEnd - birthday);
 										}
 									}
 								}
@@ -1664,14 +1655,9 @@ public class IncidenceRate extends Module{
 							for (AgeGroup ageGroupBefore : ageGroupsBefore) {
 								for (String aggregationLevel : aggregationLevels) {
 
-									String key = eventType + "_" + currentYear + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-									AddSubjects(key, 1);
-									AddDays(key, birthday - periodStart);
-
-									// Count overall
-									key = eventType + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupBefore.getLabel() + "_" + aggregationLevel + "_" + gender;
-									AddSubjects(key, 1);
-									AddDays(key, birthday - periodStart);
+									int cell = getCell(eventType, yearCode, monthCode, ageGroupBefore.getLabel(), aggregationLevel, genderCode);
+									AddSubjects(counts, cell, 1);
+									AddDays(counts, cell, birthday - periodStart);
 								}
 							}
 						}
@@ -1680,14 +1666,9 @@ public class IncidenceRate extends Module{
 							for (AgeGroup ageGroupAfter : ageGroupsAfter) {
 								for (String aggregationLevel : aggregationLevels) {
 
-									String key = eventType + "_" + currentYear + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-									AddSubjects(key, 1);
-									AddDays(key, periodEnd - birthday);
-
-									// Count overall
-									key = eventType + "_" + "ALL" + "_" + currentMonth + "_" + ageGroupAfter.getLabel() + "_" + aggregationLevel + "_" + gender;
-									AddSubjects(key, 1);
-									AddDays(key, periodEnd - birthday);
+									int cell = getCell(eventType, yearCode, monthCode, ageGroupAfter.getLabel(), aggregationLevel, genderCode);
+									AddSubjects(counts, cell, 1);
+									AddDays(counts, cell, periodEnd - birthday);
 								}
 							}
 						}
@@ -1720,7 +1701,7 @@ public class IncidenceRate extends Module{
 							patientCounted.put(event.getType(), true);
 						}
 						if (eventsFound.add(event)) {
-							AddEvents(event.getType() + "_" + patient.getGender(), 1);
+							AddEvents(totals, totals.getCell(totals.encode(EVENT, event.getType()), totals.encode(TOTALS_GENDER, patient.getGender())), 1);
 						}
 
 						// Event is inside period
@@ -1735,31 +1716,17 @@ public class IncidenceRate extends Module{
 								for (AgeGroup ageGroup : allAgeGroupDefinition.getAgeGroups(patient, getAgeDate(patient, periodStart + 1))) {
 									for (String aggregationLevel : aggregationLevels) {
 
-										String key = event.getType() + "_" + currentYear + "_" + currentMonth + "_" + ageGroup.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
+										int cell = getCell(event.getType(), yearCode, monthCode, ageGroup.getLabel(), aggregationLevel, genderCode);
+										AddSubjects(counts, cell, 1);
+										AddEvents(counts, cell, 1);
 
 										if (censorOnEvent) {
 											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - periodStart);
+												AddDays(counts, cell, event.getDate() + 1 - periodStart);
 											}
 										}
 										else {
-											AddDays(key, periodEnd - periodStart);
-										}
-
-										// Count overall
-										key = event.getType() + "_" + "ALL" + "_" + currentMonth + "_" + ageGroup.getLabel() + "_" + aggregationLevel + "_" + gender;
-										AddSubjects(key, 1);
-										AddEvents(key, 1);
-
-										if (censorOnEvent) {
-											if (!censored.get(division).contains(event.getType())) {
-												AddDays(key, event.getDate() + 1 - periodStart);
-											}
-										}
-										else {
-											AddDays(key, periodEnd - periodStart);
+											AddDays(counts, cell, periodEnd - periodStart);
 										}
 									}
 								}
@@ -1791,14 +1758,9 @@ public class IncidenceRate extends Module{
 						for (AgeGroup ageGroup : allAgeGroupDefinition.getAgeGroups(patient, getAgeDate(patient, periodStart + 1))) {
 							for (String aggregationLevel : aggregationLevels) {
 
-								String key = eventType + "_" + currentYear + "_" + currentMonth + "_" + ageGroup.getLabel() + "_" + aggregationLevel + "_" + gender;
-								AddSubjects(key, 1);
-								AddDays(key, periodEnd - periodStart);
-
-								// Count overall
-								key = eventType + "_" + "ALL" + "_" + currentMonth + "_" + ageGroup.getLabel() + "_" + aggregationLevel + "_" + gender;
-								AddSubjects(key, 1);
-								AddDays(key, periodEnd - periodStart);
+								int cell = getCell(eventType, yearCode, monthCode, ageGroup.getLabel(), aggregationLevel, genderCode);
+								AddSubjects(counts, cell, 1);
+								AddDays(counts, cell, periodEnd - periodStart);
 							}
 						}
 					}
@@ -1876,24 +1838,27 @@ public class IncidenceRate extends Module{
 		public void getRelevantData(Patient patient) {
 			init();
 
+			// Scan the compressed types and only retrieve the relevant episodes
+			PatientHistory history = patient.getHistory();
+
 			// Collect relevant events
-			for (Event event : patient.getEvents()) {
+			for (int position = 0; position < history.getEventCount(); position++) {
 				for (AggregationLevel level : eventAggregationLevels) {
-					level.addRelevantEvent(event);
+					level.addRelevantEvent(history, position);
 				}
 			}
 
 			// Collect relevant measurements
-			for (Measurement measurement : patient.getMeasurements()) {
+			for (int position = 0; position < history.getMeasurementCount(); position++) {
 				for (AggregationLevel level : measurementAggregationLevels) {
-					level.addRelevantMeasurement(measurement);
+					level.addRelevantMeasurement(history, position);
 				}
 			}
 
 			// Collect relevant prescriptions
-			for (Prescription prescription : patient.getPrescriptions()) {
+			for (int position = 0; position < history.getPrescriptionCount(); position++) {
 				for (AggregationLevel level : prescriptionAggregationLevels) {
-					level.addRelevantPrescription(prescription);
+					level.addRelevantPrescription(history, position);
 				}
 			}
 		}
@@ -2017,30 +1982,39 @@ public class IncidenceRate extends Module{
 
 
 		// Event level methods
-		public void addRelevantEvent(Event event) {
+		public void addRelevantEvent(PatientHistory history, int position) {
 			for (AggregationRule rule : aggregationRules) {
-				if ((!relevantEvents.contains(event)) && rule.isRelevantEvent(event)) {
-					relevantEvents.add(0, event);
+				if (rule.isRelevantEvent(history.getEventType(position))) {
+					Event event = history.getEvent(position);
+					if (!relevantEvents.contains(event)) {
+						relevantEvents.add(0, event);
+					}
 				}
 			}
 		}
 
 
 		// Measurement level methods
-		public void addRelevantMeasurement(Measurement measurement) {
+		public void addRelevantMeasurement(PatientHistory history, int position) {
 			for (AggregationRule rule : aggregationRules) {
-				if ((!relevantMeasurements.contains(measurement)) && rule.isRelevantMeasurement(measurement)) {
-					relevantMeasurements.add(0, measurement);
+				if (rule.isRelevantMeasurement(history.getMeasurementType(position))) {
+					Measurement measurement = history.getMeasurement(position);
+					if (!relevantMeasurements.contains(measurement)) {
+						relevantMeasurements.add(0, measurement);
+					}
 				}
 			}
 		}
 
 
 		// Prescription level methods
-		public void addRelevantPrescription(Prescription prescription) {
+		public void addRelevantPrescription(PatientHistory history, int position) {
 			for (AggregationRule rule : aggregationRules) {
-				if ((!relevantPrescriptions.contains(prescription)) && rule.isRelevantPrescription(prescription)) {
-					relevantPrescriptions.add(0, prescription);
+				if (rule.isRelevantPrescription(history.getPrescriptionType(position))) {
+					Prescription prescription = history.getPrescription(position);
+					if (!relevantPrescriptions.contains(prescription)) {
+						relevantPrescriptions.add(0, prescription);
+					}
 				}
 			}
 		}
@@ -2133,6 +2107,8 @@ public class IncidenceRate extends Module{
 		private List<String> types = new ArrayList<String>();       // Event Types, Measurement Types, or Prescription ATCs
 		private List<String> values = new ArrayList<String>();      // Event Codes, Measurement Values or Prescription Doses
 		private List<String> indications = new ArrayList<String>(); // Prescription indications
+		private ATCMatcher atcMatcher;                              // The compiled Prescription ATCs
+		private SymbolSet typeCodes;                                // The Event Types or Measurement Types resolved in their look-up
 		private String resultValue = "YES";
 
 
@@ -2155,12 +2131,13 @@ public class IncidenceRate extends Module{
 					indications.add("");
 				}
 			}
+			typeCodes = new SymbolSet(types);
 		}
 
 
 		// Event rule methods
-		public boolean isRelevantEvent(Event event) {
-			return types.contains(event.getType());
+		public boolean isRelevantEvent(int type) {
+			return typeCodes.contains(InputFileUtilities.getEventTypes(), type);
 		}
 
 
@@ -2173,7 +2150,7 @@ public class IncidenceRate extends Module{
 				result = false;
 				for (int nr=0; nr < types.size(); nr++) {
 					if (
-							(event.getType().equals(types.get(nr))) &&
+							typeCodes.matches(InputFileUtilities.getEventTypes(), nr, event.type) &&
 							(values.get(nr).equals("") || (event.hasCode() && event.getCode().equals(values.get(nr))))
 					) {
 						result = true;
@@ -2186,8 +2163,8 @@ public class IncidenceRate extends Module{
 
 
 		// Measurement rule methods
-		public boolean isRelevantMeasurement(Measurement measurement) {
-			return getTypes().contains(measurement.getType());
+		public boolean isRelevantMeasurement(int type) {
+			return typeCodes.contains(InputFileUtilities.getMeasurementTypes(), type);
 		}
 
 
@@ -2200,7 +2177,7 @@ public class IncidenceRate extends Module{
 				result = false;
 				for (int nr=0; nr < types.size(); nr++) {
 					if (
-							(measurement.getType().equals(types.get(nr))) &&
+							typeCodes.matches(InputFileUtilities.getMeasurementTypes(), nr, measurement.type) &&
 							(values.get(nr).equals("") || measurement.getValue().equals(values.get(nr)))
 					) {
 						result = true;
@@ -2213,8 +2190,10 @@ public class IncidenceRate extends Module{
 
 
 		// Prescription rule methods
-		public boolean isRelevantPrescription(Prescription prescription) {
-			return prescription.startsWith(getTypes());
+		public boolean isRelevantPrescription(int atc) {
+			if (atcMatcher == null)
+				atcMatcher = new ATCMatcher(types);
+			return atcMatcher.matches(atc);
 		}
 
 
@@ -2252,100 +2231,106 @@ public class IncidenceRate extends Module{
 	}
 
 
-	private void AddSubjects(String key, int count) {
+	private int getCell(String eventType, int yearCode, int monthCode, String ageGroupLabel, String aggregationLevel, int genderCode) {
+		int eventCode = counts.encode(EVENT, eventType);
+		int ageGroupCode = counts.encode(AGEGROUP, ageGroupLabel);
+		int aggregationCode = counts.encode(AGGREGATION, aggregationLevel);
+		return counts.getCell(eventCode, yearCode, monthCode, ageGroupCode, aggregationCode, genderCode);
+	}
 
-		if (intermediateFiles && (!countLogFileName.equals(""))) {
-			String record = currentPatient.ID;
-			record += "," + Patient.convertGender(currentPatient.gender);
-			record += "," + "AddSubjects";
-			record += "," + key;
-			record += "," + Integer.toString(count);
-			Jerboa.getOutputManager().writeln(countLogFileName, record, true);
-		}
 
-		if (subjectsSet.add(key)) {
-			if (!subjectsCount.containsKey(key)) {
-				subjectsCount.put(key, count);
-			}
-			else {
-				subjectsCount.put(key, subjectsCount.get(key) + count);
-			}
+	private String getKey(DenseCounter counter, int cell) {
+		String key = counter.getLabel(0, counter.getCodeInCell(cell, 0));
+		for (int dimension = 1; dimension < counter.getDimensions(); dimension++) {
+			key += "_" + counter.getLabel(dimension, counter.getCodeInCell(cell, dimension));
 		}
+		return key;
 	}
 
 
-	private int getSubjects(String key) {
-		return (subjectsCount.containsKey(key) ? subjectsCount.get(key) : 0);
+	private void logCount(DenseCounter counter, int cell, String function, long count) {
+		if (!intermediateFiles) {
+			return;
+		}
+
+		logCountKey(getKey(counter, cell), function, count);
+
+		// The counts of a calendar year are also counted for all years
+		if ((counter == counts) && (counts.getCodeInCell(cell, PERIOD_YEAR) != allYearsCode)) {
+			logCountKey(getKey(counts, counts.getCellWithCode(cell, PERIOD_YEAR, allYearsCode)), function, count);
+		}
 	}
 
 
-	private void AddEvents(String key, int count) {
+	private void logCountKey(String key, String function, long count) {
 
 		if (intermediateFiles && (!countLogFileName.equals(""))) {
 			String record = currentPatient.ID;
 			record += "," + Patient.convertGender(currentPatient.gender);
-			record += "," + "AddEvents";
+			record += "," + function;
 			record += "," + key;
-			record += "," + Integer.toString(count);
+			record += "," + Long.toString(count);
 			Jerboa.getOutputManager().writeln(countLogFileName, record, true);
 		}
 
-		if (intermediateFiles && (!periodsFileName.equals(""))) {
+		if (intermediateFiles && (!periodsFileName.equals("")) && (!function.equals("AddSubjects"))) {
 			if (!periods.containsKey(key)) {
 				Map<String, Long> dataMap = new HashMap<String, Long>();
 				dataMap.put("Days", 0L);
 				dataMap.put("Events", 0L);
 				periods.put(key, dataMap);
 			}
-			periods.get(key).put("Events", periods.get(key).get("Events") + count);
+			String measure = function.equals("AddDays") ? "Days" : "Events";
+			periods.get(key).put(measure, periods.get(key).get(measure) + count);
 		}
+	}
+
 
-		if (!eventsCount.containsKey(key)) {
-			eventsCount.put(key, count);
+	private void AddSubjects(DenseCounter counter, int cell, int count) {
+		logCount(counter, cell, "AddSubjects", count);
+		if (counter.mark(cell, subjectsStamp)) {
+			counter.add(cell, SUBJECTS, count);
 		}
-		else {
-			eventsCount.put(key, eventsCount.get(key) + count);
+
+		// A subject is counted once for all years, so it cannot be summed over the calendar years
+		if ((counter == counts) && (counts.getCodeInCell(cell, PERIOD_YEAR) != allYearsCode)) {
+			int allYearsCell = counts.getCellWithCode(cell, PERIOD_YEAR, allYearsCode);
+			if (counts.mark(allYearsCell, subjectsStamp)) {
+				counts.add(allYearsCell, SUBJECTS, count);
+			}
 		}
 	}
 
 
-	private int getEvents(String key) {
-		return (eventsCount.containsKey(key) ? eventsCount.get(key) : 0);
+	private int getSubjects(String... labels) {
+		return (int) counts.get(counts.findCell(labels), SUBJECTS);
 	}
 
 
-	private void AddDays(String key, long count) {
+	private void AddEvents(DenseCounter counter, int cell, int count) {
+		logCount(counter, cell, "AddEvents", count);
+		counter.add(cell, EVENTS, count);
+	}
 
-		if (intermediateFiles && (!countLogFileName.equals(""))) {
-			String record = currentPatient.ID;
-			record += "," + Patient.convertGender(currentPatient.gender);
-			record += "," + "AddDays";
-			record += "," + key;
-			record += "," + Long.toString(count);
-			Jerboa.getOutputManager().writeln(countLogFileName, record, true);
-		}
 
-		if (intermediateFiles && (!periodsFileName.equals(""))) {
-			if (!periods.containsKey(key)) {
-				Map<String, Long> dataMap = new HashMap<String, Long>();
-				dataMap.put("Days", 0L);
-				dataMap.put("Events", 0L);
-				periods.put(key, dataMap);
-			}
-			periods.get(key).put("Days", periods.get(key).get("Days") + count);
-		}
+	private int getEvents(String... labels) {
+		return (int) counts.get(counts.findCell(labels), EVENTS);
+	}
 
-		if (!daysCount.containsKey(key)) {
-			daysCount.put(key, count);
-		}
-		else {
-			daysCount.put(key, daysCount.get(key) + count);
-		}
+
+	private int getTotalEvents(String eventType, String gender) {
+		return (int) totals.get(totals.findCell(eventType, gender), EVENTS);
+	}
+
+
+	private void AddDays(DenseCounter counter, int cell, long count) {
+		logCount(counter, cell, "AddDays", count);
+		counter.add(cell, DAYS, count);
 	}
 
 
-	private long getDays(String key) {
-		return (daysCount.containsKey(key) ? daysCount.get(key) : 0);
+	private long getDays(String... labels) {
+		return counts.get(counts.findCell(labels), DAYS);
 	}
 
 
@@ -2416,11 +2401,11 @@ public class IncidenceRate extends Module{
 			// Events: Event, Year, Month, AgeGroup, Gender
 			if (eventType.equals("")) {
 				for (String type : allEventTypes) {
-					events += getEvents(type + "_" + year + "_" + month + "_" + ageRange + "_" + "M") + getEvents(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "F");
+					events += getEvents(type, year, month, ageRange, "M") + getEvents(eventType, year, month, ageRange, "F");
 				}
 			}
 			else {
-				events = getEvents(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "M") + getEvents(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "F");
+				events = getEvents(eventType, year, month, ageRange, "M") + getEvents(eventType, year, month, ageRange, "F");
 			}
 			if (events != 0) {
 				illegal = false;
@@ -2429,12 +2414,12 @@ public class IncidenceRate extends Module{
 			// Days: Event, Year, Month, AgeGroup, Gender
 			if (eventType.equals("")) {
 				for (String type : allEventTypes) {
-					days += getDays(type + "_" + year + "_" + month + "_" + ageRange + "_" + "M") + getEvents(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "F");
+					days += getDays(type, year, month, ageRange, "M") + getEvents(eventType, year, month, ageRange, "F");
 				}
 
 			}
 			else {
-				days = getDays(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "M") + getEvents(eventType + "_" + year + "_" + month + "_" + ageRange + "_" + "F");
+				days = getDays(eventType, year, month, ageRange, "M") + getEvents(eventType, year, month, ageRange, "F");
 			}
 			if (days != 0) {
 				illegal = false;
@@ -2654,4 +2639,4 @@ public class IncidenceRate extends Module{
 		}
 	}
 
-}
+}
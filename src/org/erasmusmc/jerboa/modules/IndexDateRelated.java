@@ -801,6 +801,12 @@ public class IndexDateRelated extends Module{
 		}
 		return result.toString();
 	}
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	/**
 	 * Run the indexDateRelated module on a patient.
 	 * 
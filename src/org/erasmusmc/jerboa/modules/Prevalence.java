@@ -49,8 +49,10 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.PatientHistory;
 import org.erasmusmc.jerboa.engine.Module;
 import org.erasmusmc.jerboa.engine.PatientObjectCreator;
+import org.erasmusmc.jerboa.engine.Worker;
 import org.erasmusmc.jerboa.gui.graphs.Graphs;
 import org.erasmusmc.jerboa.gui.graphs.LinePlotDS;
 import org.erasmusmc.jerboa.gui.graphs.Plot;
@@ -405,6 +407,12 @@ public class Prevalence extends Module {
 		return initOK;
 	}
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		if ((patient != null) && patient.isInCohort()) {
@@ -531,7 +539,7 @@ public class Prevalence extends Module {
 
 						// Count the patients with the specified events in the period
 						Set<String> eventTypesFound = new HashSet<String>();
-						for (Event event : patient.getEvents()) {
+						for (Event event : getEventsInPeriod(patient, periodPrevalenceStart, periodPrevalenceEnd)) {
 							if (eventMap.containsKey(event.getType())) {
 								for (String eventType : eventMap.get(event.getType())) {
 									int start = 0;
@@ -613,7 +621,7 @@ public class Prevalence extends Module {
 
 							// Count the patients with the specified events in the period
 							Set<String> eventTypesFound = new HashSet<String>();
-							for (Event event : patient.getEvents()) {
+							for (Event event : getEventsInPeriod(patient, periodPrevalenceStart, periodPrevalenceEnd)) {
 								if (eventMap.containsKey(event.getType())) {
 									for (String eventType : eventMap.get(event.getType())) {
 										int start = 0;
@@ -668,7 +676,7 @@ public class Prevalence extends Module {
 
 							// Count the patients with the specified events in the period
 							Set<String> eventTypesFound = new HashSet<String>();
-							for (Event event : patient.getEvents()) {
+							for (Event event : getEventsInPeriod(patient, periodPrevalenceStart, periodPrevalenceEnd)) {
 								if (eventMap.containsKey(event.getType())) {
 									for (String eventType : eventMap.get(event.getType())) {
 										int start = 0;
@@ -704,6 +712,78 @@ public class Prevalence extends Module {
 		return patient;
 	}
 
+
+	/**
+	 * Returns the events of the patient from periodStart up to periodEnd.
+	 * Events outside the period are never counted, so when the events are sorted by date
+	 * the period is found by a binary search on the event dates.
+	 * @param patient - the patient
+	 * @param periodStart - the start of the period in days
+	 * @param periodEnd - the end of the period in days; not included
+	 * @return - the events in the period in the order of the history of the patient
+	 */
+	private List<Event> getEventsInPeriod(Patient patient, int periodStart, int periodEnd) {
+		PatientHistory history = patient.getHistory();
+		if (history.areEventsSorted()) {
+			int first = history.getFirstEventFrom(periodStart);
+			int end = Math.max(first, history.getFirstEventFrom(periodEnd));
+			return patient.getEvents().subList(first, end);
+		}
+
+		List<Event> events = new ArrayList<Event>();
+		for (int position = 0; position < history.getEventCount(); position++) {
+			int eventDate = history.getEventDate(position);
+			if ((eventDate >= periodStart) && (eventDate < periodEnd)) {
+				events.add(history.getEvent(position));
+			}
+		}
+		return events;
+	}
+
+	@Override
+	public Worker createPartition() {
+		// The debug output is written in the order of the patients
+		if (debug > 0) {
+			return null;
+		}
+
+		Prevalence partition = (Prevalence)copy();
+		if (partition != null) {
+			partition.subjectsOverallBag = new MultiKeyBag();
+			partition.eventsOverallBag = new MultiKeyBag();
+			partition.timeOverallBag = new MultiKeyBag();
+			partition.subjectsAgegroupBag = new MultiKeyBag();
+			partition.eventsAgegroupBag = new MultiKeyBag();
+			partition.timeAgegroupBag = new MultiKeyBag();
+			partition.historyBag = new MultiKeyBag();
+			partition.followUpBag = new MultiKeyBag();
+
+			partition.indexDays = new HashSet<Integer>(indexDays);
+			partition.allIndexYears = new HashMap<Integer, Integer>(allIndexYears);
+			partition.allIndexDates = new HashSet<Integer>(allIndexDates);
+			partition.allEventTypes = new HashSet<String>(allEventTypes);
+		}
+		return partition;
+	}
+
+	@Override
+	public void mergePartition(Worker partition) {
+		Prevalence other = (Prevalence)partition;
+		subjectsOverallBag.merge(other.subjectsOverallBag);
+		eventsOverallBag.merge(other.eventsOverallBag);
+		timeOverallBag.merge(other.timeOverallBag);
+		subjectsAgegroupBag.merge(other.subjectsAgegroupBag);
+		eventsAgegroupBag.merge(other.eventsAgegroupBag);
+		timeAgegroupBag.merge(other.timeAgegroupBag);
+		historyBag.merge(other.historyBag);
+		followUpBag.merge(other.followUpBag);
+
+		indexDays.addAll(other.indexDays);
+		allIndexYears.putAll(other.allIndexYears);
+		allIndexDates.addAll(other.allIndexDates);
+		allEventTypes.addAll(other.allEventTypes);
+	}
+
 	@Override
 	public void outputResults() {
 
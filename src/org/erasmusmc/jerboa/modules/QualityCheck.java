@@ -52,6 +52,7 @@ import org.erasmusmc.jerboa.gui.graphs.BarPlotCategory;
 import org.erasmusmc.jerboa.gui.graphs.BarPlotDS;
 import org.erasmusmc.jerboa.gui.graphs.Graphs;
 import org.erasmusmc.jerboa.gui.graphs.Plot;
+import org.erasmusmc.jerboa.utilities.ExtendedData;
 import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
 import org.erasmusmc.jerboa.utilities.Logging;
@@ -275,12 +276,20 @@ public class QualityCheck extends Module{
 		}
 	}
 
+	//only reads the patients and updates its own results
+	@Override
+	public boolean changesSharedData() {
+		return false;
+	}
+
 	@Override
 	public Patient process(Patient patient) {
 		if (patient != null && patient.isInPopulation() && patient.isInCohort()){
 
 			//PATIENT EXTENDED DATA
-			for (int extended : patient.getExtendedData().keySet()){
+			ExtendedData patientExtended = patient.getExtended();
+			for (int i = 0, size = patientExtended.size(); i < size; i++){
+				int extended = patientExtended.getKeyAt(i);
 				String extendedAttribute = patient.getExtended().getAttributeName(extended);
 				if (includeColumnForProcessing(DataDefinition.PATIENT, extendedAttribute)){
 					ExtendedMultiKey key = new ExtendedMultiKey(DataDefinition.PATIENT, extendedAttribute);
@@ -316,7 +325,9 @@ public class QualityCheck extends Module{
 					}
 
 					//extended data
-					for (int extended : e.getExtendedData().keySet()){
+					ExtendedData eventExtended = e.extended;
+					for (int i = 0, size = eventExtended.size(); i < size; i++){
+						int extended = eventExtended.getKeyAt(i);
 						String extendedAttribute = e.getExtendedAttributeName(extended);
 						if (includeColumnForProcessing(DataDefinition.EPISODE_EVENT, extendedAttribute)){
 							key = new ExtendedMultiKey(DataDefinition.EPISODE_EVENT, extendedAttribute);
@@ -376,7 +387,9 @@ public class QualityCheck extends Module{
 					}
 
 					//extended data
-					for (int extended : p.getExtendedData().keySet()){
+					ExtendedData prescriptionExtended = p.extended;
+					for (int i = 0, size = prescriptionExtended.size(); i < size; i++){
+						int extended = prescriptionExtended.getKeyAt(i);
 						String extendedAttribute = p.getExtendedAttributeName(extended);
 						if (includeColumnForProcessing(DataDefinition.EPISODE_PRESCRIPTION, extendedAttribute)){
 							key = new ExtendedMultiKey(DataDefinition.EPISODE_PRESCRIPTION, extendedAttribute);
@@ -434,7 +447,9 @@ public class QualityCheck extends Module{
 					}
 
 					//extended
-					for (int extended : m.getExtendedData().keySet()){
+					ExtendedData measurementExtended = m.extended;
+					for (int i = 0, size = measurementExtended.size(); i < size; i++){
+						int extended = measurementExtended.getKeyAt(i);
 						String extendedAttribute = m.getExtendedAttributeName(extended);
 						if (includeColumnForProcessing(DataDefinition.EPISODE_MEASUREMENT, extendedAttribute)){
 							key = new ExtendedMultiKey(DataDefinition.EPISODE_MEASUREMENT, extendedAttribute);
@@ -0,0 +1,749 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.apache.commons.collections.ComparatorUtils;
+import org.apache.commons.collections.bag.HashBag;
+import org.apache.commons.collections.keyvalue.MultiKey;
+import org.apache.commons.lang3.StringUtils;
+
+import org.erasmusmc.jerboa.utilities.stats.HistogramStats;
+import org.erasmusmc.jerboa.utilities.stats.StatisticalSummary;
+
+/**
+ * This class is used for counting occurrences of combinations of objects,
+ * defined by an extended key, in the same way as the MultiKeyBag.
+ * Each component of the key is dictionary encoded to an integer code and the codes
+ * of a key are packed in a long. The counts are kept in an open addressing table
+ * of longs, so adding a key that is already in the bag does not allocate anything.
+ * All the keys added to a bag should have the same number of components (maximum 5).
+ * Note that this class is not thread safe; use a bag per thread and merge them.
+ *
+ * @see org.erasmusmc.jerboa.utilities.MultiKeyBag
+ */
+public class CompactMultiKeyBag {
+
+	//the number of bits available to encode a key
+	private static final int KEY_BITS = 63;
+
+	//marks an empty slot in the table; encoded keys are never negative
+	private static final long EMPTY = -1L;
+
+	//initial capacity of the table; always a power of two
+	private static final int INITIAL_CAPACITY = 64;
+
+	//number of components of the keys in the bag; 0 if the bag is empty
+	private int keySize;
+
+	//the dictionaries of the key component values per key component
+	private List<HashMap<Object, Integer>> codes;
+	private List<ArrayList<Object>> values;
+
+	//the layout of an encoded key
+	private int[] bits;
+	private int[] shifts;
+
+	//the encoded keys and their counts
+	private long[] keys;
+	private long[] counts;
+	private int nbKeys;
+	private long size;
+
+	//sorted unique key component values; reset when a new value is added
+	private List<TreeSet<Object>> sortedValues;
+
+	//the codes of the last key added
+	private int[] keyCodes;
+
+	//the pattern of the last key to be matched
+	private long pattern;
+	private long patternMask;
+
+	//CONSTRUCTOR
+	/**
+	 * Basic constructor.
+	 */
+	public CompactMultiKeyBag() {
+		this.keys = new long[INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		this.counts = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Add data to the bag. The data is either an extended
+	 * multi key or a single object used as key.
+	 * @param data - the data to be added in the bag
+	 */
+	public final void add(final Object data) {
+		add(data, 1);
+	}
+
+	/**
+	 * Add a number of copies of the data to the bag.
+	 * @param data - the data to be added in the bag
+	 * @param nbCopies - the number of copies
+	 * @throws IllegalArgumentException if the size of the key differs from the keys in the bag
+	 */
+	public final void add(final Object data, final int nbCopies) {
+		if (nbCopies > 0) {
+			if (data instanceof MultiKey) {
+				MultiKey multiKey = (MultiKey) data;
+				checkSize(multiKey.size());
+				for (int i = 0; i < keySize; i++)
+					keyCodes[i] = intern(i, multiKey.getKey(i));
+			} else {
+				checkSize(1);
+				keyCodes[0] = intern(0, data);
+			}
+			increment(encode(keyCodes), nbCopies);
+		}
+	}
+
+	/**
+	 * Adds all the data of another bag to this bag, keeping the counts.
+	 * Used to combine the bags filled by different threads.
+	 * @param other - the bag to be added to this bag
+	 */
+	public final void merge(final CompactMultiKeyBag other) {
+		if (other != null && other.nbKeys > 0) {
+			checkSize(other.keySize);
+			int[] otherCodes = new int[keySize];
+			for (int s = 0; s < other.keys.length; s++) {
+				if (other.keys[s] != EMPTY) {
+					other.decode(other.keys[s], otherCodes);
+					for (int i = 0; i < keySize; i++)
+						keyCodes[i] = intern(i, other.values.get(i).get(otherCodes[i]));
+					increment(encode(keyCodes), other.counts[s]);
+				}
+			}
+		}
+	}
+
+	//GETTERS
+	/**
+	 * Returns the set of unsorted unique multi keys of the bag.
+	 * @return - a set of unique key combinations
+	 */
+	public Set<ExtendedMultiKey> getUniqueSet() {
+		Set<ExtendedMultiKey> set = new HashSet<ExtendedMultiKey>();
+		int[] keyCodes = new int[keySize];
+		for (int s = 0; s < keys.length; s++)
+			if (keys[s] != EMPTY)
+				set.add(toMultiKey(keys[s], keyCodes));
+		return set;
+	}
+
+	/**
+	 * Returns the set of unique multi keys that the bag contains.
+	 * @return - a sorted set of unique key combinations
+	 */
+	public TreeSet<ExtendedMultiKey> getSortedKeySet() {
+		return getSortedKeySet(0);
+	}
+
+	/**
+	 * Returns the set of unique multi keys that the bag contains.
+	 * @param index - the index by which the sorting should be done first
+	 * @return - a set of unique key combinations
+	 */
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	public TreeSet<ExtendedMultiKey> getSortedKeySet(int index){
+		if (index <= 4) {
+			// add each component of the multi key in the comparator
+			Collection<Comparator> comparators = new ArrayList<Comparator>();
+			comparators.add(new MultiKeyComparator(index));
+			for (int i = 0; i < keySize; i++) {
+				if (i != index) {
+					comparators.add(new MultiKeyComparator(i));
+				}
+			}
+			Comparator comparator = ComparatorUtils.chainedComparator(comparators);
+
+			TreeSet<ExtendedMultiKey> set = new TreeSet<ExtendedMultiKey>(comparator);
+			set.addAll(getUniqueSet());
+			return set;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Determines if bag contains a specific multikey.
+	 * Wild cards are allowed.
+	 * @param multiKey - the multikey of interest
+	 * @throws IllegalArgumentException if size of the key is not equal to the keys in the bag.
+	 * @return - true the bag contains the multikey; false otherwise
+	 */
+	public boolean contains(ExtendedMultiKey multiKey) {
+		if (nbKeys > 0) {
+			if (multiKey.size() != keySize) {
+				throw new IllegalArgumentException("contains() can only be called with a key of size equal to the multiKey size");
+			}
+			if (setPattern(multiKey, keySize, -1)) {
+				for (int s = 0; s < keys.length; s++)
+					if (matches(keys[s]))
+						return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns the sorted set of unique key values corresponding to the
+	 * keyIndex in the multi key under a String representation.
+	 * @param keyIndex - the index of the multi key component of interest
+	 * @return - a set of unique key component values under a String
+	 *  	     representation
+	 */
+	public final TreeSet<String> getKeyValuesAsString(final int keyIndex){
+		TreeSet<String> uniqueValues = new TreeSet<String>();
+		for (Object value : getKeyValuesAsObject(keyIndex))
+			uniqueValues.add(value.toString());
+		return uniqueValues;
+	}
+
+	/**
+	 * Returns the sorted set of unique key values corresponding to the
+	 * keyIndex in the multi key under an Object representation.
+	 * @param keyIndex - the index of the multi key component of interest
+	 * @return - a set of unique key component values
+	 */
+	public TreeSet<Object> getKeyValuesAsObject(int keyIndex) {
+		if (keyIndex < 0 || keyIndex >= keySize)
+			return new TreeSet<Object>();
+
+		if (sortedValues.get(keyIndex) == null)
+			sortedValues.set(keyIndex, new TreeSet<Object>(values.get(keyIndex)));
+
+		return sortedValues.get(keyIndex);
+	}
+
+	/**
+	 * Returns a bag that represents a subset of this bag, formed by
+	 * elements that at keyComponentIndex have the keyComponent value.
+	 * @param keyComponentIndex - the index of the component in the multi key
+	 * @param keyComponent - the key component of interest
+	 * @return - a bag that represents the wanted subset
+	 */
+	public CompactMultiKeyBag getSubBag(int keyComponentIndex, Object keyComponent) {
+		if (keyComponentIndex < ExtendedMultiKey.MAX_COMPONENTS) {
+			CompactMultiKeyBag subBag = new CompactMultiKeyBag();
+			Integer code = keyComponentIndex < keySize ? codes.get(keyComponentIndex).get(keyComponent) : null;
+			if (code != null) {
+				int[] keyCodes = new int[keySize];
+				for (int s = 0; s < keys.length; s++) {
+					if (keys[s] != EMPTY && component(keys[s], keyComponentIndex) == code)
+						subBag.add(toMultiKey(keys[s], keyCodes), (int) counts[s]);
+				}
+			}
+			return subBag;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a map containing as keys the values of the key component found at
+	 * keyComponentIndex and as values the sum of frequencies for each of the key
+	 * component values. The multiKey can contain wild cards. The multi key component
+	 * found at keyComponentIndex is ignored.
+	 * @param keyComponentIndex - the index of the component in the multi key
+	 * @param multiKey - the extended multi key for which we want the sub map; wild cards allowed
+	 * @return - a sorted map containing the different values for the key component at
+	 * keyComponentIndex and as values the frequencies for each value
+	 */
+	public TreeMap<Object, Object> getSubBagAsMap(int keyComponentIndex, ExtendedMultiKey multiKey) {
+		if (keyComponentIndex < ExtendedMultiKey.MAX_COMPONENTS) {
+			TreeMap<Object, Object> subMap = new TreeMap<Object, Object>();
+			long[] sums = sumPerValue(keyComponentIndex, multiKey);
+			for (int code = 0; code < sums.length; code++)
+				if (sums[code] != 0)
+					subMap.put(values.get(keyComponentIndex).get(code), sums[code]);
+			return subMap;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Returns a hash bag containing as keys the values of the key component found at
+	 * keyComponentIndex and as values the sum of frequencies for each of the key
+	 * component values. The multiKey can contain wild cards. The multi key component
+	 * found at keyComponentIndex is ignored.
+	 * @param keyComponentIndex - the index of the component in the multi key
+	 * @param multiKey - the extended multi key for which we want the sub bag; wild cards allowed
+	 * @return - a hash bag containing the different values for the key component at
+	 * keyComponentIndex and as values the frequencies for each value
+	 */
+	public HashBag getSubBagAsHashBag(int keyComponentIndex, ExtendedMultiKey multiKey) {
+		if (keyComponentIndex < ExtendedMultiKey.MAX_COMPONENTS) {
+			HashBag subBag = new HashBag();
+			long[] sums = sumPerValue(keyComponentIndex, multiKey);
+			for (int code = 0; code < sums.length; code++)
+				subBag.add(values.get(keyComponentIndex).get(code), (int) sums[code]);
+			return subBag;
+		}
+
+		return null;
+	}
+
+	/** Returns an unsorted histogram if the multi key bag has an integer as last key
+	 * @param multiSubKey - sub key for the histogram. The length should be one lower
+	 * than the size of key in this bag, e.g., if the bag contains gender, age group,
+	 * patient time then multiSubKey should be: Male,"10-20"
+	 * @return an unsorted hash bag with integers as key and frequency as value
+	 */
+	public HashBag getHistogram(ExtendedMultiKey multiSubKey) {
+		HashBag frequencyBag = new HashBag();
+		boolean found = false;
+		if (multiSubKey.size() <= keySize && setPattern(multiSubKey, multiSubKey.size(), -1)) {
+			for (int s = 0; s < keys.length; s++) {
+				if (matches(keys[s])) {
+					Object last = values.get(keySize - 1).get(component(keys[s], keySize - 1));
+					if (last instanceof Integer || last instanceof Double) {
+						//multiply frequency of the key
+						frequencyBag.add(last, (int) counts[s]);
+					} else {
+						//add a single item
+						frequencyBag.add((int) counts[s]);
+					}
+					found = true;
+				}
+			}
+		}
+
+		return (found ? frequencyBag : null);
+	}
+
+	/** Returns a sorted histogram of the subbag defined by the multiSubKey
+	 * @param multiSubKey - sub key for the histogram. The length should can be one lower
+	 * than the size of key in this bag, e.g., if the bag contains gender, age group,
+	 * patient time then multiSubKey can be: Male,"10-20".
+	 * A full key is also allowed if the last key is a Double of Integer Wildcard, e.g.,
+	 * Male, "10-20", Widcard.INTEGER(). This is allows wildcard selection for multikeys of size two!
+	 * @return a sorted hash bag with integers or doubles as key and frequency as value
+	 */
+	public TreeMap<Object,Integer> getHistogramRec(ExtendedMultiKey multiSubKey) {
+		if (keySize == 0 ||
+				!((multiSubKey.getKey(multiSubKey.size()-1) instanceof Wildcard && multiSubKey.size() == keySize) ||
+				(multiSubKey.size() == keySize-1))) {
+			throw new IllegalArgumentException("GetHistogramRec: check the size and content of multikey "+ multiSubKey);
+		}
+
+		TreeMap<Object,Integer> frequencyBag = new TreeMap<Object,Integer>();
+		long[] sums = sumPerValue(keySize - 1, multiSubKey);
+		for (int code = 0; code < sums.length; code++) {
+			if (sums[code] > 0) {
+				Object key = values.get(keySize - 1).get(code);
+				double doubleKey = key instanceof Integer ? ((Integer) key).intValue() : (Double) key;
+				frequencyBag.put(doubleKey, (int) sums[code]);
+			}
+		}
+
+		return frequencyBag;
+	}
+
+	/**
+	 * Returns a StatisticalSummary object containing the descriptive
+	 * statistics of a subset of this bag defined by multiSubKey.
+	 * @param multiSubKey - the key defining the subset of data wanted.
+	 * Wild cards are allowed.
+	 * @return - the descriptive statistics of the subset
+	 */
+	public StatisticalSummary getStatisticalSummary(ExtendedMultiKey multiSubKey){
+		return new HistogramStats(getHistogramRec(multiSubKey)).getStatsSummary();
+	}
+
+	/**
+	 * Returns a HistogramStats object containing the descriptive
+	 * statistics of a subset of this bag defined by multiSubKey.
+	 * @param multiSubKey - the key defining the subset of data wanted.
+	 * Wild cards are allowed.
+	 * @return - the descriptive statistics of the subset or a NaN
+	 * HistogramStats object if the multiSubKey is not found
+	 */
+	public HistogramStats getHistogramStats(ExtendedMultiKey multiSubKey) {
+		if (nbKeys > 0){
+			TreeMap<Object,Integer> histogram = getHistogramRec(multiSubKey);
+			if (histogram.size() > 0) {
+				return new HistogramStats(histogram);
+			}
+		}
+
+		//return a NaN HistrogramStats object
+		return new HistogramStats();
+	}
+
+	/**
+	 * Retrieves the sum of the elements having this multiKey.
+	 * Wild cards are allowed. If no wild card is present
+	 * the count of the element having this multiKey in the bag is returned.
+	 * @param multiKey - the multi key of interest (wild cards allowed)
+	 * @return - the sum of the elements under the multiKey or count if no wild cards present
+	 */
+	public long getCount(ExtendedMultiKey multiKey){
+		long count = 0;
+		if (nbKeys > 0 && multiKey.size() == keySize && setPattern(multiKey, keySize, -1)) {
+			if (patternMask == fullMask()) {
+				int slot = find(pattern);
+				count = keys[slot] == EMPTY ? 0 : counts[slot];
+			} else {
+				for (int s = 0; s < keys.length; s++)
+					if (matches(keys[s]))
+						count += counts[s];
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the total number of elements in the bag.
+	 * @return - the sum of the counts of all the keys
+	 */
+	public int getSize() {
+		return (int) size;
+	}
+
+	/**
+	 * Checks if the bag contains any element.
+	 * @return - true if nothing was added to the bag; false otherwise
+	 */
+	public boolean isEmpty() {
+		return nbKeys == 0;
+	}
+
+	//********************************* PRIVATE METHODS ****************************************//
+
+	/**
+	 * Initializes the dictionaries and the layout of the keys when the first
+	 * key is added, or checks that the key has the same size as the previous ones.
+	 * @param newKeySize - the number of components of the key to be added
+	 * @throws IllegalArgumentException if the size of the key differs from the keys in the bag
+	 */
+	private void checkSize(int newKeySize) {
+		if (keySize == 0) {
+			if (newKeySize < 1 || newKeySize > ExtendedMultiKey.MAX_COMPONENTS)
+				throw new IllegalArgumentException("A key of "+newKeySize+" components cannot be added to the bag");
+			keySize = newKeySize;
+			codes = new ArrayList<HashMap<Object, Integer>>();
+			values = new ArrayList<ArrayList<Object>>();
+			sortedValues = new ArrayList<TreeSet<Object>>();
+			for (int i = 0; i < keySize; i++) {
+				codes.add(new HashMap<Object, Integer>());
+				values.add(new ArrayList<Object>());
+				sortedValues.add(null);
+			}
+			keyCodes = new int[keySize];
+			bits = new int[keySize];
+			shifts = new int[keySize];
+			for (int i = 0; i < keySize; i++)
+				bits[i] = KEY_BITS / keySize;
+			setShifts();
+		} else if (newKeySize != keySize) {
+			throw new IllegalArgumentException("A key of "+newKeySize+" components cannot be added to a bag with keys of "+keySize+" components");
+		}
+	}
+
+	/**
+	 * Returns the code of a key component value, adding it to the dictionary
+	 * if not present yet. If the code does not fit anymore in the bits reserved
+	 * for the key component, the layout of the keys is changed.
+	 * @param index - the index of the key component
+	 * @param value - the key component value
+	 * @return - the code of the value
+	 */
+	private int intern(int index, Object value) {
+		Integer code = codes.get(index).get(value);
+		if (code == null) {
+			ArrayList<Object> dictionary = values.get(index);
+			code = dictionary.size();
+			codes.get(index).put(value, code);
+			dictionary.add(value);
+			sortedValues.set(index, null);
+			if (((long) code) >>> bits[index] != 0)
+				relayout();
+		}
+
+		return code;
+	}
+
+	/**
+	 * Redistributes the bits of an encoded key over the key components
+	 * based on the current dictionary sizes and encodes all keys again.
+	 * @throws IllegalStateException if the number of distinct values is too large
+	 */
+	private void relayout() {
+		int[] oldBits = bits;
+		int[] oldShifts = shifts;
+
+		//the bits needed per component, with room for doubling the dictionaries if possible
+		int[] needed = new int[keySize];
+		int total = 0;
+		for (int i = 0; i < keySize; i++) {
+			needed[i] = Math.max(1, 32 - Integer.numberOfLeadingZeros(values.get(i).size() - 1));
+			total += needed[i];
+		}
+		if (total > KEY_BITS)
+			throw new IllegalStateException("Too many distinct key component values to be counted in the bag");
+		if (total + keySize <= KEY_BITS) {
+			for (int i = 0; i < keySize; i++)
+				needed[i]++;
+			total += keySize;
+		}
+
+		//distribute the remaining bits evenly
+		int spare = KEY_BITS - total;
+		for (int i = 0; i < keySize; i++)
+			needed[i] += spare / keySize + (i < spare % keySize ? 1 : 0);
+
+		bits = needed;
+		shifts = new int[keySize];
+		setShifts();
+
+		//encode the keys again using the new layout
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		keys = new long[oldKeys.length];
+		Arrays.fill(keys, EMPTY);
+		counts = new long[oldKeys.length];
+		for (int s = 0; s < oldKeys.length; s++) {
+			if (oldKeys[s] != EMPTY) {
+				long key = 0;
+				for (int i = 0; i < keySize; i++) {
+					long code = (oldKeys[s] >>> oldShifts[i]) & ((1L << oldBits[i]) - 1);
+					key |= code << shifts[i];
+				}
+				int slot = find(key);
+				keys[slot] = key;
+				counts[slot] = oldCounts[s];
+			}
+		}
+	}
+
+	/**
+	 * Computes the position of each key component in the encoded key.
+	 */
+	private void setShifts() {
+		int shift = 0;
+		for (int i = 0; i < keySize; i++) {
+			shifts[i] = shift;
+			shift += bits[i];
+		}
+	}
+
+	/**
+	 * Packs the codes of the key components in a long.
+	 * @param keyCodes - the codes of the key components
+	 * @return - the encoded key
+	 */
+	private long encode(int[] keyCodes) {
+		long key = 0;
+		for (int i = 0; i < keySize; i++)
+			key |= ((long) keyCodes[i]) << shifts[i];
+		return key;
+	}
+
+	/**
+	 * Unpacks the codes of the key components from an encoded key.
+	 * @param key - the encoded key
+	 * @param keyCodes - the array to be filled with the codes
+	 */
+	private void decode(long key, int[] keyCodes) {
+		for (int i = 0; i < keySize; i++)
+			keyCodes[i] = component(key, i);
+	}
+
+	/**
+	 * Returns the code of a key component in an encoded key.
+	 * @param key - the encoded key
+	 * @param index - the index of the key component
+	 * @return - the code of the key component
+	 */
+	private int component(long key, int index) {
+		return (int) ((key >>> shifts[index]) & ((1L << bits[index]) - 1));
+	}
+
+	/**
+	 * Creates the extended multi key corresponding to an encoded key.
+	 * @param key - the encoded key
+	 * @param keyCodes - a buffer for the codes of the key components
+	 * @return - the multi key
+	 */
+	private ExtendedMultiKey toMultiKey(long key, int[] keyCodes) {
+		decode(key, keyCodes);
+		Object[] components = new Object[keySize];
+		for (int i = 0; i < keySize; i++)
+			components[i] = values.get(i).get(keyCodes[i]);
+		return new ExtendedMultiKey(components);
+	}
+
+	/**
+	 * Returns the mask covering all the key components.
+	 * @return - the mask of a fully instantiated key
+	 */
+	private long fullMask() {
+		return (1L << (shifts[keySize - 1] + bits[keySize - 1])) - 1;
+	}
+
+	/**
+	 * Sets the pattern to be matched from the first length components of
+	 * a multi key. Wild cards and the component at skipIndex match any value.
+	 * @param multiKey - the multi key to be matched; wild cards allowed
+	 * @param length - the number of components to be matched
+	 * @param skipIndex - the index of a component to be ignored; -1 if none
+	 * @return - false if a component value is not in the bag; true otherwise
+	 */
+	private boolean setPattern(ExtendedMultiKey multiKey, int length, int skipIndex) {
+		pattern = 0;
+		patternMask = 0;
+		for (int i = 0; i < length; i++) {
+			Object value = multiKey.getKey(i);
+			if (i != skipIndex && !(value instanceof Wildcard)) {
+				Integer code = codes.get(i).get(value);
+				if (code == null)
+					return false;
+				pattern |= ((long) code) << shifts[i];
+				patternMask |= ((1L << bits[i]) - 1) << shifts[i];
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if an encoded key matches the current pattern.
+	 * @param key - the encoded key; might be empty
+	 * @return - true if the key is not empty and matches the pattern
+	 */
+	private boolean matches(long key) {
+		return key != EMPTY && (key & patternMask) == pattern;
+	}
+
+	/**
+	 * Sums the counts of the keys matching multiKey per value of the key component at index.
+	 * @param index - the index of the key component of interest
+	 * @param multiKey - the multi key to be matched; the component at index is ignored
+	 * @return - the sums indexed by the codes of the key component values
+	 */
+	private long[] sumPerValue(int index, ExtendedMultiKey multiKey) {
+		if (index >= keySize)
+			return new long[0];
+
+		long[] sums = new long[values.get(index).size()];
+		int length = Math.min(multiKey.size(), keySize);
+		if (setPattern(multiKey, length, index)) {
+			for (int s = 0; s < keys.length; s++)
+				if (matches(keys[s]))
+					sums[component(keys[s], index)] += counts[s];
+		}
+
+		return sums;
+	}
+
+	/**
+	 * Adds to the count of an encoded key, inserting it if needed.
+	 * @param key - the encoded key
+	 * @param count - the number to be added to the count
+	 */
+	private void increment(long key, long count) {
+		int slot = find(key);
+		if (keys[slot] == EMPTY) {
+			keys[slot] = key;
+			nbKeys++;
+		}
+		counts[slot] += count;
+		size += count;
+
+		//keep the load factor under 0.75
+		if (nbKeys * 4L > keys.length * 3L)
+			rehash(keys.length * 2);
+	}
+
+	/**
+	 * Finds the slot of an encoded key in the table by linear probing.
+	 * @param key - the encoded key
+	 * @return - the slot of the key or the empty slot where it should be inserted
+	 */
+	private int find(long key) {
+		int mask = keys.length - 1;
+		long hash = (key ^ (key >>> 33)) * 0xFF51AFD7ED558CCDL;
+		int slot = (int) (hash ^ (hash >>> 33)) & mask;
+		while (keys[slot] != EMPTY && keys[slot] != key)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Moves all the keys to a table of a different capacity.
+	 * @param capacity - the new capacity; a power of two
+	 */
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		long[] oldCounts = counts;
+		keys = new long[capacity];
+		Arrays.fill(keys, EMPTY);
+		counts = new long[capacity];
+		for (int s = 0; s < oldKeys.length; s++) {
+			if (oldKeys[s] != EMPTY) {
+				int slot = find(oldKeys[s]);
+				keys[slot] = oldKeys[s];
+				counts[slot] = oldCounts[s];
+			}
+		}
+	}
+
+	//******************* END OF PRIVATE METHODS ***************************//
+
+	/**
+	 * Prints the contents of the bag.
+	 * @return - a string representation of the contents of the bag
+	 */
+	@Override
+	public final String toString() {
+		StringBuilder out = new StringBuilder();
+		out.append(System.lineSeparator());
+
+		for (ExtendedMultiKey iMultiKey : getSortedKeySet()) {
+			out.append("[" + StringUtils.join(iMultiKey.getKeys(), ',')
+					       + "] = "
+		                   + getCount(iMultiKey)
+		                   + System.lineSeparator());
+		}
+
+		return out.toString();
+	}
+
+}
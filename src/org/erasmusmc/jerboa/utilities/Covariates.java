@@ -28,7 +28,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 
+import org.erasmusmc.jerboa.dataClasses.EpisodeIndex;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
@@ -1000,8 +1002,6 @@ public class Covariates {
 				}
 			}
 			else if (covariateType == DATATYPE_EVENT) {
-				List<Event> events = covariateInfo.getCovariateEvents(covariateValueType);
-
 				int windowStart = getWindowStart(patient, indexDate, cohortStartDate, cohortEndDate);
 				int windowEnd   = getWindowEnd(patient, indexDate, cohortStartDate, cohortEndDate);
 				int referenceDate = getValueReferenceDate(patient, indexDate, cohortStartDate, cohortEndDate, valueReferenceOffset);
@@ -1014,27 +1014,55 @@ public class Covariates {
 				boolean incidentEventFound = false;
 				boolean firstEventFound = false;
 				boolean lastEventFound = false;
-				if (events != null) {
-					incident = 1;
-					for (Event event : events) {
+				EpisodeIndex index = patient.getEpisodeIndex();
+				if (index.areEventsSorted()) {
+					// The events before, in and after the window follow each other
+					EpisodeIndex.Posting events = index.getEvents(covariateValueType);
+					if (events.size() > 0) {
 						eventFound = true;
-						if (event.getDate() < windowStart) {
-							incident = 0;
+						int windowFirst = events.lowerBound(windowStart);
+						incident = (windowFirst == 0 ? 1 : 0);
+						count = events.count(windowStart, windowEnd - 1L);
+						if ((incident == 1) && (count > 0)) {
+							incidentEventDate = events.getDate(windowFirst);
+							incidentEventFound = true;
 						}
-						else if ((event.getDate() >= windowStart) && (event.getDate() < windowEnd)) {
-							if ((incident == 1) && (!incidentEventFound)) {
-								incidentEventDate = event.getDate();
-								incidentEventFound = true;
-							}
-							if ((event.getDate() <= referenceDate) && ((!firstEventFound) || (event.getDate() < firstEventDate))) {
-								firstEventFound = true;
-								firstEventDate = event.getDate();
+						int first = events.first(windowStart, Math.min(windowEnd - 1L, referenceDate));
+						if (first != -1) {
+							firstEventFound = true;
+							firstEventDate = events.getDate(first);
+						}
+						int last = events.last(windowStart, Math.min(windowEnd - 1L, referenceDate));
+						if (last != -1) {
+							lastEventFound = true;
+							lastEventDate = events.getDate(last);
+						}
+					}
+				}
+				else {
+					List<Event> events = covariateInfo.getCovariateEvents(covariateValueType);
+					if (events != null) {
+						incident = 1;
+						for (Event event : events) {
+							eventFound = true;
+							if (event.getDate() < windowStart) {
+								incident = 0;
 							}
-							if ((event.getDate() <= referenceDate) && ((!lastEventFound) || (event.getDate() > lastEventDate))) {
-								lastEventFound = true;
-								lastEventDate = event.getDate();
+							else if ((event.getDate() >= windowStart) && (event.getDate() < windowEnd)) {
+								if ((incident == 1) && (!incidentEventFound)) {
+									incidentEventDate = event.getDate();
+									incidentEventFound = true;
+								}
+								if ((event.getDate() <= referenceDate) && ((!firstEventFound) || (event.getDate() < firstEventDate))) {
+									firstEventFound = true;
+									firstEventDate = event.getDate();
+								}
+								if ((event.getDate() <= referenceDate) && ((!lastEventFound) || (event.getDate() > lastEventDate))) {
+									lastEventFound = true;
+									lastEventDate = event.getDate();
+								}
+								count++;
 							}
-							count++;
 						}
 					}
 				}
@@ -1283,40 +1311,55 @@ public class Covariates {
 	 * Should also be used for ExclusionCriteria.
 	 */
 	public class PatientCovariateInfo {
+		private Patient patient;
+		private Covariates covariates;
 		private Map<String, List<Prescription>> prescriptionsOfInterest = new HashMap<String, List<Prescription>>();
-		private Map<String, List<Event>> eventsOfInterest = new HashMap<String, List<Event>>();
+		private Map<String, List<Event>> eventsOfInterest = null;
 		private Map<String, List<Measurement>> measurementsOfInterest = new HashMap<String, List<Measurement>>();
 
 
 		public PatientCovariateInfo(Patient patient, Covariates covariates) {
+			this.patient = patient;
+			this.covariates = covariates;
 			//TODO Which prescriptions do we use?
 			//for (Prescription prescription : patient.getOriginalPrescriptions()) {
-			for (Prescription prescription : patient.getPrescriptions()) {
-				for (String covariateATC : covariates.getATCCovariates().keySet()) {
-					List<Covariate> atcCovariates = covariates.getATCCovariates().get(covariateATC);
-					for (Covariate atcCovariate : atcCovariates) {
-						// When no ATC-codes are specified ATC-codes starting with an underscore are ignored.
-						if ((covariateATC.equals("") && (!prescription.getATC().substring(0, 1).equals("_"))) || ((!covariateATC.equals("")) && prescription.startsWith(atcCovariate.getATCList()))) {
-							List<Prescription> prescriptionList = prescriptionsOfInterest.get(covariateATC);
-							if (prescriptionList == null) {
-								prescriptionList = new ArrayList<Prescription>();
-								prescriptionsOfInterest.put(covariateATC, prescriptionList);
-							}
-							if (!prescriptionList.contains(prescription)) {
+			EpisodeIndex index = patient.getEpisodeIndex();
+			for (String covariateATC : covariates.getATCCovariates().keySet()) {
+				List<Covariate> atcCovariates = covariates.getATCCovariates().get(covariateATC);
+				List<Prescription> prescriptionList = null;
+				if (covariateATC.equals("")) {
+					// When no ATC-codes are specified ATC-codes starting with an underscore are ignored.
+					if (atcCovariates.size() > 0) {
+						for (Prescription prescription : patient.getPrescriptions()) {
+							if (!prescription.getATC().substring(0, 1).equals("_")) {
+								if (prescriptionList == null) {
+									prescriptionList = new ArrayList<Prescription>();
+								}
 								prescriptionList.add(prescription);
 							}
 						}
 					}
 				}
-			}
-			for (Event event : patient.getEvents()) {
-				if (covariates.getEventCovariates().containsKey(event.getType())) {
-					List<Event> eventList = eventsOfInterest.get(event.getType());
-					if (eventList == null) {
-						eventList = new ArrayList<Event>();
-						eventsOfInterest.put(event.getType(), eventList);
-					}
-					eventList.add(event);
+				else {
+					// Collect the positions of the prescriptions in any of the ATC groups in the order of the patient history
+					Set<Integer> positions = new TreeSet<Integer>();
+					for (Covariate atcCovariate : atcCovariates) {
+						for (String atc : atcCovariate.getATCList()) {
+							EpisodeIndex.Posting posting = index.getPrescriptions(atc);
+							for (int i = 0; i < posting.size(); i++) {
+								positions.add(posting.getPosition(i));
+							}
+						}
+					}
+					if (positions.size() > 0) {
+						prescriptionList = new ArrayList<Prescription>();
+						for (int position : positions) {
+							prescriptionList.add(patient.getPrescriptions().get(position));
+						}
+					}
+				}
+				if (prescriptionList != null) {
+					prescriptionsOfInterest.put(covariateATC, prescriptionList);
 				}
 			}
 			for (Measurement measurement : patient.getMeasurements()) {
@@ -1338,6 +1381,20 @@ public class Covariates {
 
 
 		public List<Event> getCovariateEvents(String covariateEventType) {
+			// Only needed when the events are not sorted, otherwise the episode index is used
+			if (eventsOfInterest == null) {
+				eventsOfInterest = new HashMap<String, List<Event>>();
+				for (Event event : patient.getEvents()) {
+					if (covariates.getEventCovariates().containsKey(event.getType())) {
+						List<Event> eventList = eventsOfInterest.get(event.getType());
+						if (eventList == null) {
+							eventList = new ArrayList<Event>();
+							eventsOfInterest.put(event.getType(), eventList);
+						}
+						eventList.add(event);
+					}
+				}
+			}
 			return eventsOfInterest.get(covariateEventType);
 		}
 
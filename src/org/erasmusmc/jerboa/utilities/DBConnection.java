@@ -61,6 +61,7 @@ public class DBConnection {
 	 *   <li>MYSQL</li>
 	 *   <li>MSSQL</li>
 	 *   <li>POSTGRESQL</li>
+	 *   <li>JDBC (any driver on the class path, e.g., an embedded database)</li>
 	 * </ul>
 	 * Default = MYSQL
 	 */
@@ -97,6 +98,16 @@ public class DBConnection {
 	 */
 	private String domain;
 
+	/**
+	 * The connection URL (for JDBC connections)
+	 */
+	private String url;
+
+	/**
+	 * The class name of the driver (for JDBC connections)
+	 */
+	private String driver;
+
 	/**
 	 * Flag to know if secure connection should be used (only PostgreSQL).
 	 */
@@ -150,6 +161,8 @@ public class DBConnection {
 				con = connectToPostgreSQL();
 			else if (connectionType.equals("ORACLE"))
 				con = connectToOracle();
+			else if (connectionType.equals("JDBC"))
+				con = connectToJDBC();
 			if (con != null && !con.isClosed())
 				Logging.add("Connected to the database server");
 
@@ -211,6 +224,17 @@ public class DBConnection {
 		return getConnection(url);
 	}
 
+	/**
+	 * Establishes a connection using the URL from the settings file.
+	 * The driver is loaded first if specified.
+	 * @return - the SQL connection
+	 */
+	private Connection connectToJDBC() {
+		if (driver != null && !driver.equals(""))
+			initializeDriver(driver);
+		return getConnection(url);
+	}
+
 	/**
 	 * Checks if schema exists in the current established connection.
 	 * @param schema - the schema of interest
@@ -218,6 +242,9 @@ public class DBConnection {
 	 * @return - true if schema exists in the current connection; false otherwise
 	 */
 	protected boolean exists(String schema, Connection con) {
+		if (connectionType.equals("JDBC"))
+			return existsInMetaData(schema, con);
+
 		String sql;
 		if (connectionType.equals("MYSQL"))
 			sql = "SELECT SCHEMA_NAME FROM INFORMATION_SCHEMA.SCHEMATA WHERE SCHEMA_NAME = '"+schema+"';";
@@ -242,6 +269,34 @@ public class DBConnection {
 		return false;
 	}
 
+	/**
+	 * Checks if schema is present in the meta data of the connection.
+	 * An empty schema is considered to be the default schema of the connection.
+	 * @param schema - the schema of interest
+	 * @param con - the existing connection
+	 * @return - true if schema exists in the current connection; false otherwise
+	 */
+	private boolean existsInMetaData(String schema, Connection con) {
+		if (schema == null || schema.equals(""))
+			return con != null;
+
+		try {
+			ResultSet schemas = con.getMetaData().getSchemas();
+			try {
+				while (schemas.next())
+					if (schema.equalsIgnoreCase(schemas.getString(1)))
+						return true;
+			} finally {
+				schemas.close();
+			}
+		} catch (SQLException e) {
+			Logging.add("Unable to retrieve the schemas of the database", Logging.ERROR);
+			Logging.outputStackTrace(e);
+		}
+
+		return false;
+	}
+
 	/**
 	 * Loads the connection details from an input file databaseConnectionDetails.
 	 * @throws IOException - if the file is not found; should not occur
@@ -274,6 +329,8 @@ public class DBConnection {
 		schema = settings.get("schema");
 		server = settings.get("server");
 		domain = settings.get("domain");
+		url = settings.get("url");
+		driver = settings.get("driver");
 		ssl = (settings.get("ssl") != null && settings.get("ssl").toLowerCase().equals("true") ? true : false);
 		chunkSize = (settings.get("chunk_size") != null ? Integer.valueOf(settings.get("chunk_size")) : chunkSize);
 		autoCommit = (settings.get("autocommit") != null ? Boolean.valueOf(settings.get("autocommit")) : autoCommit);
@@ -56,16 +56,18 @@ public class DateUtilities{
 	public static final HashMap<Integer, Integer> YEARS_TO_DAYS = yearsToDays();
 	public static final HashMap<Integer, Integer> MONTHS_TO_DAYS = monthsToDays();
 
-	//will hold all the possible dates and their corresponding number of days from first legal date
-	public static HashMap<String, Integer> DATES_IN_DAYS = new HashMap<String, Integer>();
-	public static HashMap<Integer, String> DAYS_IN_DATES = new HashMap<Integer, String>();
+	//dense look-ups of the legal dates; read-only after initialization, thus safe to use by concurrent threads
+	private static final int[] YEAR_DAYS = yearDays();						// the days accumulated until the 1st of January of each legal year
+	private static final int[] MONTH_DAYS = {0, 0, 31, 59, 90, 120, 151, 181, 212, 243, 273, 304, 334};
+	private static final int[] MONTH_LENGTHS = {0, 31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+	private static final int LAST_DAY = YEAR_DAYS[LAST_YEAR + 1 - FIRST_YEAR];	// the 31st of December of the last legal year in days
+	private static final int[] DAYS_IN_DATES = daysInDates();				// the date in days as yyyymmdd integer
 
-	//date validator
-	private static Pattern pattern;
-	private static Matcher matcher;
+	//the string representation of the dates in days; filled in when first used.
+	//Strings are immutable, so a thread seeing a reference also sees the whole string
+	private static final String[] DATE_STRINGS = new String[LAST_DAY + 1];
 
 	public static String format;
-	public static short[] dateComponentsOrder;
 
 	public static final byte DATE_INVALID = -1;
 	public static final byte DATE_ON_YYYYMMDD = 0;
@@ -105,9 +107,10 @@ public class DateUtilities{
 	public static boolean isValidDate(String dateString){
 
 		boolean foundMatch = false;
-		dateComponentsOrder = new short[] {1, //year
-										   2, //month
-										   3};//day
+		Matcher matcher = null;
+		short[] dateComponentsOrder = new short[] {1, //year
+												   2, //month
+												   3};//day
 
 		if (dateString != null && !dateString.equals("")){
 
@@ -122,8 +125,7 @@ public class DateUtilities{
 					//change date components order
 					dateComponentsOrder = new short[] {3,1,2};
 				//try to match the pattern
-				pattern = (DATE_PATTERNS[i]);
-				matcher = pattern.matcher(dateString);
+				matcher = DATE_PATTERNS[i].matcher(dateString);
 				//found a match; get out of the loop
 				if(foundMatch = matcher.matches())
 					break;
@@ -162,27 +164,12 @@ public class DateUtilities{
 	 * @return - the date format as one of the ones defined in this class
 	 */
 	public static byte dateFormat(String dateString){
-		dateComponentsOrder = new short[] {1, //year
-										   2, //month
-										   3};//day
 
 		if (dateString != null && !dateString.equals("")){
 
 			for (byte i = 0; i < DATE_PATTERNS.length; i++){
-
-				//check if the ddmmyyyy pattern is reached
-				if (i > 0 && i % 2 == 0)
-					//change date components order
-					dateComponentsOrder = new short[] {3,2,1};
-				//check if the mmddyyyy pattern is reached
-				if (i > 0 && i % 4 == 0)
-					//change date components order
-					dateComponentsOrder = new short[] {3,1,2};
-				//try to match the pattern
-				pattern = DATE_PATTERNS[i];
-				matcher = pattern.matcher(dateString);
-				//found a match; get out of the loop
-				if(matcher.matches())
+				//try to match the pattern; found a match - get out of the loop
+				if(DATE_PATTERNS[i].matcher(dateString).matches())
 					return i;
 			}
 		}
@@ -245,7 +232,7 @@ public class DateUtilities{
 	 * @param year - the year to be checked
 	 * @return - true if year is a leap year; false otherwise
 	 */
-	public static boolean isLeapYear(Integer year) {
+	public static boolean isLeapYear(int year) {
 		return (year % 4 == 0 && year % 100 != 0) || (year % 400 == 0);
 	}
 
@@ -287,6 +274,8 @@ public class DateUtilities{
 	 * @return the year of the date.
 	 */
 	public static Integer getYearFromDays(int days) {
+		if (days > 0 && days <= LAST_DAY)
+			return DAYS_IN_DATES[days] / 10000;
 		return Integer.parseInt(DateUtilities.daysToDate(days).substring(0, 4));
 	}
 
@@ -306,6 +295,8 @@ public class DateUtilities{
 	 * @return the month of the date.
 	 */
 	public static Integer getMonthFromDays(int days) {
+		if (days > 0 && days <= LAST_DAY)
+			return DAYS_IN_DATES[days] / 100 % 100;
 		return Integer.parseInt(DateUtilities.daysToDate(days).substring(4, 6));
 	}
 
@@ -315,6 +306,8 @@ public class DateUtilities{
 	 * @return the day number of the date.
 	 */
 	public static Integer getDayFromDays(int days) {
+		if (days > 0 && days <= LAST_DAY)
+			return DAYS_IN_DATES[days] % 100;
 		return Integer.parseInt(DateUtilities.daysToDate(days).substring(6, 8));
 	}
 
@@ -325,41 +318,32 @@ public class DateUtilities{
 	 * @return - the converted date into the number of days
 	 */
 	public static Integer dateToDays(int[] dateComponents){
-		Integer inDays = null;
 		if (dateComponents != null && (dateComponents[0] >= FIRST_YEAR)){
-			//check if the date was not already calculated
-			String date = dateComponents[0]+""+
-			(dateComponents[1] < 10 ? "0"+dateComponents[1] : dateComponents[1])+""+
-			(dateComponents[2] < 10 ? "0"+dateComponents[2] : dateComponents[2]);
-			if ((inDays = DATES_IN_DAYS.get(date)) == null){
-				//check if the data is actually valid
-				if (!isDateCoherent(dateComponents)){
-					Logging.add("\nIllegal date found - year: "+dateComponents[0]+
-							" month: "+dateComponents[1]+" day: "+dateComponents[2], Logging.ERROR, true);
-					return null;
-				}
-
-				//retrieve number of days for months + the days of current month
-				int month = dateComponents[1];
-				int day = dateComponents[2];
-				//compute total number of days
-				try{
-					inDays = getYearInDays(dateComponents[0]) + getMonthInDays(month) + day;
-				}catch(IllegalArgumentException e){
-					Logging.add("\nFailed converting date - year: "+dateComponents[0]+
-							" month: "+dateComponents[1]+" day: "+dateComponents[2], Logging.ERROR, true);
-					return null;
-				}
-				//check if it is a leap year and the month is superior to February - to add the leap day
-				if (isLeapYear(dateComponents[0]) && month > 2)
-					inDays += 1;
-
-				//add it to the map
-				DATES_IN_DAYS.put(date, inDays);
-				DAYS_IN_DATES.put(inDays, date);
+			//check if the data is actually valid
+			if (!isDateCoherent(dateComponents)){
+				Logging.add("\nIllegal date found - year: "+dateComponents[0]+
+						" month: "+dateComponents[1]+" day: "+dateComponents[2], Logging.ERROR, true);
+				return null;
 			}
+
+			return toDays(dateComponents[0], dateComponents[1], dateComponents[2]);
 		}
 
+		return null;
+	}
+
+	/**
+	 * Computes the number of days since the first legal date of a coherent date.
+	 * @param year - the year of the date
+	 * @param month - the month of the date
+	 * @param day - the day of the date
+	 * @return - the date in days
+	 */
+	private static int toDays(int year, int month, int day){
+		int inDays = YEAR_DAYS[year - FIRST_YEAR] + MONTH_DAYS[month] + day;
+		//check if it is a leap year and the month is superior to February - to add the leap day
+		if (month > 2 && isLeapYear(year))
+			inDays += 1;
 		return inDays;
 	}
 
@@ -372,72 +356,152 @@ public class DateUtilities{
 	 */
 	public static Integer dateToDays(String date, byte format){
 
-		Integer inDays = null;
 		//check if the string is valid for a date
 		if (format != DATE_INVALID && date != null && !date.equals("")
 				&& (date.length() == 8 || date.length() == 10)) {
 
-			//check if not already calculated
-			String dateInYYYYMMDD = convertDateStringToYYYYMMDD(date, format);
-			if ((inDays = DATES_IN_DAYS.get(dateInYYYYMMDD)) == null){
-
-				int year = 0;
-				int month = 0;
-				int day = 0;
-
-				//retrieve each date component depending on the date format
+			//parse the date components directly from the characters
+			if (date.length() == (format % 2 == 0 ? 8 : 10)){
+				int year, month, day;
 				switch (format){
 				case DATE_ON_YYYYMMDD:
-					//retrieve year value
-					year = Integer.parseInt(date.substring(0, 4));
-					//retrieve number of days for months + the days of current month
-					month = Integer.parseInt(date.substring(4, 6));
-					day = Integer.parseInt(date.substring(6,8));
+					year = parseDigits(date, 0, 4);
+					month = parseDigits(date, 4, 2);
+					day = parseDigits(date, 6, 2);
 					break;
 				case DATE_ON_YYYYMMDD_WITH_SEPARATOR:
-					year = Integer.parseInt(date.substring(0, 4));
-					month = Integer.parseInt(date.substring(5, 7));
-					day = Integer.parseInt(date.substring(8,10));
+					year = parseDigits(date, 0, 4);
+					month = parseDigits(date, 5, 2);
+					day = parseDigits(date, 8, 2);
 					break;
 				case DATE_ON_DDMMYYYY:
-					year = Integer.parseInt(date.substring(4, 8));
-					month = Integer.parseInt(date.substring(2, 4));
-					day = Integer.parseInt(date.substring(0,2));
+					year = parseDigits(date, 4, 4);
+					month = parseDigits(date, 2, 2);
+					day = parseDigits(date, 0, 2);
 					break;
 				case DATE_ON_DDMMYYYY_WITH_SEPARATOR:
-					year = Integer.parseInt(date.substring(6, 10));
-					month = Integer.parseInt(date.substring(3, 5));
-					day = Integer.parseInt(date.substring(0,2));
+					year = parseDigits(date, 6, 4);
+					month = parseDigits(date, 3, 2);
+					day = parseDigits(date, 0, 2);
 					break;
+				default:
+					year = -1; month = -1; day = -1;
 				}
-				//check if not an illegal year
-				if (year < FIRST_YEAR)
-					return null;
-				//compute total number of days
-				try{
-					inDays = getYearInDays(year) + getMonthInDays(month) + day;
-				}catch(IllegalArgumentException e){
-					Logging.add("\nFailed converting date: "+date, Logging.ERROR, true);
-					return null;
-				}
+				Integer days = legalDateToDays(year, month, day);
+				if (days != null)
+					return days;
+			}
 
-				//check if the date is actually valid
-				if (!isDateCoherent(new int[]{year,month,day})){
-					Logging.add("\nIllegal date found - year: "+year+
-							" month: "+month+" day: "+day, Logging.ERROR, true);
-					return null;
-				}
+			//not a legal date; let the conversion report it
+			return dateToDaysChecked(date, format);
+		}
 
-				//check if it is a leap year and the month is superior to February  - to add the leap day
-				if (isLeapYear(year) && month > 2)
-					inDays += 1;
+		return null;
+	}
 
-				//add it to the map of all possible dates
-				DATES_IN_DAYS.put(dateInYYYYMMDD, inDays);
-				DAYS_IN_DATES.put(inDays, dateInYYYYMMDD);
-			}
+	/**
+	 * Converts the components of a date into days if they form a legal date.
+	 * @param year - the year of the date
+	 * @param month - the month of the date (1 to 12)
+	 * @param day - the day of the month
+	 * @return - the date in days; null if the components do not form a legal date
+	 */
+	static Integer legalDateToDays(int year, int month, int day){
+		if (year >= FIRST_YEAR && year <= LAST_YEAR && month >= 1 && month <= 12 &&
+				day >= 1 && day <= lastDayOfMonth(year, month))
+			return toDays(year, month, day);
+		return null;
+	}
+
+	/**
+	 * Returns the number of days in a month without going through the boxed look-up.
+	 * @param year - the year in question
+	 * @param month - the month in question (1 to 12)
+	 * @return - the number of days in that month
+	 */
+	private static int lastDayOfMonth(int year, int month){
+		return month == 2 && isLeapYear(year) ? 29 : MONTH_LENGTHS[month];
+	}
+
+	/**
+	 * Parses a number of digits from a string.
+	 * @param s - the string containing the digits
+	 * @param start - the position of the first digit
+	 * @param digits - the number of digits
+	 * @return - the parsed number; -1 if not only digits
+	 */
+	private static int parseDigits(String s, int start, int digits){
+		int value = 0;
+		for (int i = start; i < start + digits; i++){
+			int digit = s.charAt(i) - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Converts a date which could not be parsed directly into the number of days
+	 * accumulated since the first legal date, reporting the illegal dates.
+	 * @param date - a string containing the date to be converted into days
+	 * @param format - the format of the date
+	 * @return - the converted date into the number of days; null if the date is not legal
+	 */
+	private static Integer dateToDaysChecked(String date, byte format){
+
+		Integer inDays = null;
+		int year = 0;
+		int month = 0;
+		int day = 0;
+
+		//retrieve each date component depending on the date format
+		switch (format){
+		case DATE_ON_YYYYMMDD:
+			//retrieve year value
+			year = Integer.parseInt(date.substring(0, 4));
+			//retrieve number of days for months + the days of current month
+			month = Integer.parseInt(date.substring(4, 6));
+			day = Integer.parseInt(date.substring(6,8));
+			break;
+		case DATE_ON_YYYYMMDD_WITH_SEPARATOR:
+			year = Integer.parseInt(date.substring(0, 4));
+			month = Integer.parseInt(date.substring(5, 7));
+			day = Integer.parseInt(date.substring(8,10));
+			break;
+		case DATE_ON_DDMMYYYY:
+			year = Integer.parseInt(date.substring(4, 8));
+			month = Integer.parseInt(date.substring(2, 4));
+			day = Integer.parseInt(date.substring(0,2));
+			break;
+		case DATE_ON_DDMMYYYY_WITH_SEPARATOR:
+			year = Integer.parseInt(date.substring(6, 10));
+			month = Integer.parseInt(date.substring(3, 5));
+			day = Integer.parseInt(date.substring(0,2));
+			break;
+		}
+		//check if not an illegal year
+		if (year < FIRST_YEAR)
+			return null;
+		//compute total number of days
+		try{
+			inDays = getYearInDays(year) + getMonthInDays(month) + day;
+		}catch(IllegalArgumentException e){
+			Logging.add("\nFailed converting date: "+date, Logging.ERROR, true);
+			return null;
 		}
 
+		//check if the date is actually valid
+		if (!isDateCoherent(new int[]{year,month,day})){
+			Logging.add("\nIllegal date found - year: "+year+
+					" month: "+month+" day: "+day, Logging.ERROR, true);
+			return null;
+		}
+
+		//check if it is a leap year and the month is superior to February  - to add the leap day
+		if (isLeapYear(year) && month > 2)
+			inDays += 1;
+
 		return inDays;
 	}
 
@@ -450,10 +514,13 @@ public class DateUtilities{
 
 		if (days != -1){
 
-			//check if present in the map of all possible dates
-			String date = DAYS_IN_DATES.get(days);
-			if (date != null)
+			//check if a legal date
+			if (days > 0 && days <= LAST_DAY){
+				String date = DATE_STRINGS[days];
+				if (date == null)
+					DATE_STRINGS[days] = date = Integer.toString(DAYS_IN_DATES[days]);
 				return date;
+			}
 
 			//create an instance of the calendar
 			Calendar calendar = Calendar.getInstance();
@@ -491,6 +558,8 @@ public class DateUtilities{
 	 * @return - an array with the date components; null if days is -1
 	 */
 	public static int[] daysToDateComponents(int days){
+		if (days > 0 && days <= LAST_DAY)
+			return new int[]{DAYS_IN_DATES[days] / 10000, DAYS_IN_DATES[days] / 100 % 100, DAYS_IN_DATES[days] % 100};
 		if (days != -1)
 			return splitDate(daysToDate(days), DATE_ON_YYYYMMDD);
 		return null;
@@ -589,6 +658,32 @@ public class DateUtilities{
 		return monthsToDays;
 	}
 
+	/**
+	 * Computes the number of days accumulated until the 1st of January of each legal year.
+	 * The year following the last legal year is included, so that the last legal day can be retrieved.
+	 * @return - an array indexed by the year minus the first legal year
+	 */
+	private static int[] yearDays(){
+		int[] yearDays = new int[LAST_YEAR - FIRST_YEAR + 2];
+		for (int year = FIRST_YEAR + 1; year <= LAST_YEAR + 1; year++)
+			yearDays[year - FIRST_YEAR] = yearDays[year - 1 - FIRST_YEAR] + (isLeapYear(year - 1) ? 366 : 365);
+		return yearDays;
+	}
+
+	/**
+	 * Computes the date of each legal day. The first legal date is day 1.
+	 * @return - an array indexed by the number of days containing the date as yyyymmdd integer
+	 */
+	private static int[] daysInDates(){
+		int[] dates = new int[LAST_DAY + 1];
+		int days = 0;
+		for (int year = FIRST_YEAR; year <= LAST_YEAR; year++)
+			for (int month = 1; month <= 12; month++)
+				for (int day = 1, last = lastDayOfMonth(year, month); day <= last; day++)
+					dates[++days] = year * 10000 + month * 100 + day;
+		return dates;
+	}
+
 	/**
 	 * Will convert date based on format to a string that represents a date
 	 * under the yyyymmdd format. This is mainly used to keep track of all possible
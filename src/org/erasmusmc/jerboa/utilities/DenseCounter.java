@@ -0,0 +1,464 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is used for counting a number of measures (e.g., subjects, events, days)
+ * per combination of labels over a fixed number of dimensions (e.g., event type, year, month,
+ * age group, gender). The labels of each dimension are dictionary encoded to integer codes
+ * and the counts are kept in dense arrays of longs, one per measure, laid out in row-major order.
+ * A combination of codes is addressed by a cell index, so updating a count does not allocate anything.
+ * When a dimension runs out of capacity the arrays are laid out again, which invalidates
+ * the cell indexes retrieved before; codes never change.
+ * When the combinations of labels would exceed the dense limit, the counter only keeps
+ * the cells that were used, looked up by their codes in a map, and appends new cells
+ * to the arrays, which does not invalidate the cell indexes retrieved before.
+ * Note that this class is not thread safe.
+ */
+public class DenseCounter {
+
+	//the minimum capacity of a dimension
+	private static final int MIN_CAPACITY = 2;
+
+	//the maximum number of cells laid out in the dense arrays
+	public static final int DEFAULT_DENSE_LIMIT = 1 << 22;
+
+	//the code and label dictionaries per dimension
+	private List<Map<String, Integer>> codes;
+	private List<List<String>> labels;
+
+	//the capacity and stride of each dimension in the arrays
+	private int[] capacities;
+	private int[] strides;
+
+	//the counts per measure and the last stamp each cell was marked with
+	private long[][] counts;
+	private int[] marks;
+
+	//the number of cells in use
+	private int cells;
+
+	//the maximum number of cells before switching to sparse cells
+	private int denseLimit = DEFAULT_DENSE_LIMIT;
+
+	//the index of each sparse cell by its codes and the codes of each sparse cell; null if dense
+	private Map<CellKey, Integer> sparseCells;
+	private int[] cellCodes;
+
+	//reused to look up the sparse cells
+	private int[] probe;
+	private CellKey probeKey;
+
+	/**
+	 * Constructor.
+	 * @param measures - the number of measures counted per cell
+	 * @param capacities - the expected number of labels per dimension
+	 */
+	public DenseCounter(int measures, int... capacities) {
+		codes = new ArrayList<Map<String, Integer>>();
+		labels = new ArrayList<List<String>>();
+		this.capacities = new int[capacities.length];
+		for (int dimension = 0; dimension < capacities.length; dimension++) {
+			codes.add(new HashMap<String, Integer>());
+			labels.add(new ArrayList<String>());
+			this.capacities[dimension] = Math.max(MIN_CAPACITY, capacities[dimension]);
+		}
+		counts = new long[measures][];
+		layout(this.capacities, null);
+	}
+
+
+	/**
+	 * Returns the code of label in dimension. The label is added to the dictionary
+	 * of the dimension if it is not there yet, which may lay out the arrays again.
+	 * @param dimension - the index of the dimension
+	 * @param label - the label to be encoded
+	 * @return - the code of the label
+	 */
+	public int encode(int dimension, String label) {
+		Integer code = codes.get(dimension).get(label);
+		if (code == null) {
+			List<String> dimensionLabels = labels.get(dimension);
+			code = dimensionLabels.size();
+			if ((sparseCells == null) && (code == capacities[dimension])) {
+				int[] newCapacities = capacities.clone();
+				newCapacities[dimension] = capacities[dimension] + (capacities[dimension] >> 1);
+				layout(newCapacities, capacities);
+			}
+			codes.get(dimension).put(label, code);
+			dimensionLabels.add(label);
+		}
+		return code;
+	}
+
+
+	/**
+	 * Returns the code of label in dimension without adding it to the dictionary.
+	 * @param dimension - the index of the dimension
+	 * @param label - the label to be looked up
+	 * @return - the code of the label; -1 if the label was never encoded
+	 */
+	public int findCode(int dimension, String label) {
+		Integer code = codes.get(dimension).get(label);
+		return code == null ? -1 : code;
+	}
+
+
+	/**
+	 * Returns the label encoded by code in dimension.
+	 * @param dimension - the index of the dimension
+	 * @param code - the code of the label
+	 * @return - the label
+	 */
+	public String getLabel(int dimension, int code) {
+		return labels.get(dimension).get(code);
+	}
+
+
+	/**
+	 * Returns the number of labels encoded in dimension.
+	 * @param dimension - the index of the dimension
+	 * @return - the number of labels
+	 */
+	public int getSize(int dimension) {
+		return labels.get(dimension).size();
+	}
+
+
+	/**
+	 * Returns the number of dimensions of the counter.
+	 * @return - the number of dimensions
+	 */
+	public int getDimensions() {
+		return capacities.length;
+	}
+
+
+	/**
+	 * Returns the index of the cell addressed by a code in each dimension.
+	 * The index is valid until a new label is encoded, unless the counter is sparse.
+	 * @param codes - the code in each dimension
+	 * @return - the index of the cell; -1 if any of the codes is -1
+	 */
+	public int getCell(int... codes) {
+		int cell = 0;
+		for (int dimension = 0; dimension < codes.length; dimension++) {
+			if (codes[dimension] < 0) {
+				return -1;
+			}
+			if (sparseCells != null) {
+				probe[dimension] = codes[dimension];
+			}
+			else {
+				cell += codes[dimension] * strides[dimension];
+			}
+		}
+		return sparseCells != null ? getSparseCell(true) : cell;
+	}
+
+
+	/**
+	 * Returns the index of the cell addressed by a label in each dimension
+	 * without adding any of the labels to the dictionaries.
+	 * @param labels - the label in each dimension
+	 * @return - the index of the cell; -1 if any of the labels was never encoded,
+	 * the number of labels does not match the number of dimensions
+	 * or the counter is sparse and the cell was never used
+	 */
+	public int findCell(String... labels) {
+		if (labels.length != capacities.length) {
+			return -1;
+		}
+		int cell = 0;
+		for (int dimension = 0; dimension < labels.length; dimension++) {
+			int code = findCode(dimension, labels[dimension]);
+			if (code == -1) {
+				return -1;
+			}
+			if (sparseCells != null) {
+				probe[dimension] = code;
+			}
+			else {
+				cell += code * strides[dimension];
+			}
+		}
+		return sparseCells != null ? getSparseCell(false) : cell;
+	}
+
+
+	/**
+	 * Returns the code in dimension of the cell.
+	 * @param cell - the index of the cell
+	 * @param dimension - the index of the dimension
+	 * @return - the code in dimension
+	 */
+	public int getCodeInCell(int cell, int dimension) {
+		if (sparseCells != null) {
+			return cellCodes[cell * capacities.length + dimension];
+		}
+		return (cell / strides[dimension]) % capacities[dimension];
+	}
+
+
+	/**
+	 * Returns the index of the cell that has code in dimension
+	 * and the same codes as cell in the other dimensions.
+	 * @param cell - the index of the cell
+	 * @param dimension - the index of the dimension
+	 * @param code - the code in dimension
+	 * @return - the index of the cell with code in dimension
+	 */
+	public int getCellWithCode(int cell, int dimension, int code) {
+		if (sparseCells != null) {
+			System.arraycopy(cellCodes, cell * capacities.length, probe, 0, capacities.length);
+			probe[dimension] = code;
+			return getSparseCell(true);
+		}
+		return cell + (code - getCodeInCell(cell, dimension)) * strides[dimension];
+	}
+
+
+	/**
+	 * Adds value to the count of measure in cell.
+	 * @param cell - the index of the cell
+	 * @param measure - the index of the measure
+	 * @param value - the value to be added
+	 */
+	public void add(int cell, int measure, long value) {
+		counts[measure][cell] += value;
+	}
+
+
+	/**
+	 * Returns the count of measure in cell.
+	 * @param cell - the index of the cell; -1 is an empty cell
+	 * @param measure - the index of the measure
+	 * @return - the count; 0 if the cell is empty
+	 */
+	public long get(int cell, int measure) {
+		return cell == -1 ? 0 : counts[measure][cell];
+	}
+
+
+	/**
+	 * Sets the counts of the measures in the cells having code in dimension to the sums
+	 * of the counts of the cells having any other code in dimension and the same codes
+	 * in the other dimensions, e.g., the counts of all years as the sums over the years.
+	 * Only meaningful for measures that can be summed.
+	 * @param dimension - the index of the dimension
+	 * @param code - the code in dimension of the cells holding the sums
+	 * @param measures - the indexes of the measures to be summed
+	 */
+	public void marginalize(int dimension, int code, int... measures) {
+		for (int cell = 0; cell < cells; cell++) {
+			if (getCodeInCell(cell, dimension) == code) {
+				for (int measure : measures) {
+					counts[measure][cell] = 0;
+				}
+			}
+		}
+		//the sparse cells holding the sums may be appended while looping
+		for (int cell = 0; cell < cells; cell++) {
+			if (getCodeInCell(cell, dimension) != code) {
+				int marginalCell = getCellWithCode(cell, dimension, code);
+				for (int measure : measures) {
+					counts[measure][marginalCell] += counts[measure][cell];
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * Marks the cell with stamp. Can be used to count something only once per cell,
+	 * for instance once per patient by using a different stamp for each patient.
+	 * @param cell - the index of the cell
+	 * @param stamp - a non-zero stamp
+	 * @return - true if the cell was not marked with stamp yet; false otherwise
+	 */
+	public boolean mark(int cell, int stamp) {
+		if (marks[cell] == stamp) {
+			return false;
+		}
+		marks[cell] = stamp;
+		return true;
+	}
+
+
+	/**
+	 * Sets the maximum number of cells laid out in the dense arrays.
+	 * If the current layout has more cells, the counter becomes sparse.
+	 * @param denseLimit - the maximum number of dense cells
+	 */
+	public void setDenseLimit(int denseLimit) {
+		this.denseLimit = denseLimit;
+		if ((sparseCells == null) && (cells > denseLimit)) {
+			toSparse();
+		}
+	}
+
+
+	/**
+	 * Returns if the counter only keeps the cells that were used.
+	 * @return - true if the counter is sparse; false if it is dense
+	 */
+	public boolean isSparse() {
+		return sparseCells != null;
+	}
+
+
+	/**
+	 * Lays out the arrays for newCapacities and copies the contents of
+	 * the current arrays, which have oldCapacities, into them.
+	 * Switches to sparse cells if the new layout exceeds the dense limit.
+	 * @param newCapacities - the capacity of each dimension in the new layout
+	 * @param oldCapacities - the capacity of each dimension in the current layout; null if there are no arrays yet
+	 */
+	private void layout(int[] newCapacities, int[] oldCapacities) {
+		int[] newStrides = new int[newCapacities.length];
+		long length = 1;
+		for (int dimension = newCapacities.length - 1; dimension >= 0; dimension--) {
+			newStrides[dimension] = (int) length;
+			length *= newCapacities[dimension];
+			if (length > denseLimit) {
+				toSparse();
+				return;
+			}
+		}
+
+		long[][] newCounts = new long[counts.length][(int) length];
+		int[] newMarks = new int[(int) length];
+		if (oldCapacities != null) {
+			for (int cell = 0; cell < cells; cell++) {
+				int newCell = 0;
+				for (int dimension = 0; dimension < newCapacities.length; dimension++) {
+					newCell += ((cell / strides[dimension]) % oldCapacities[dimension]) * newStrides[dimension];
+				}
+				for (int measure = 0; measure < counts.length; measure++) {
+					newCounts[measure][newCell] = counts[measure][cell];
+				}
+				newMarks[newCell] = marks[cell];
+			}
+		}
+
+		capacities = newCapacities;
+		strides = newStrides;
+		counts = newCounts;
+		marks = newMarks;
+		cells = (int) length;
+	}
+
+
+	/**
+	 * Switches to sparse cells and copies the cells of the dense
+	 * arrays that have a count or a mark into them.
+	 */
+	private void toSparse() {
+		long[][] denseCounts = counts;
+		int[] denseMarks = marks;
+		int denseCells = cells;
+
+		int dimensions = capacities.length;
+		sparseCells = new HashMap<CellKey, Integer>();
+		probe = new int[dimensions];
+		probeKey = new CellKey(probe);
+		cells = 0;
+		cellCodes = new int[MIN_CAPACITY * dimensions];
+		counts = new long[denseCounts.length][MIN_CAPACITY];
+		marks = new int[MIN_CAPACITY];
+
+		for (int cell = 0; cell < denseCells; cell++) {
+			boolean used = denseMarks[cell] != 0;
+			for (int measure = 0; measure < denseCounts.length && !used; measure++) {
+				used = denseCounts[measure][cell] != 0;
+			}
+			if (used) {
+				for (int dimension = 0; dimension < dimensions; dimension++) {
+					probe[dimension] = (cell / strides[dimension]) % capacities[dimension];
+				}
+				int sparseCell = getSparseCell(true);
+				for (int measure = 0; measure < denseCounts.length; measure++) {
+					counts[measure][sparseCell] = denseCounts[measure][cell];
+				}
+				marks[sparseCell] = denseMarks[cell];
+			}
+		}
+	}
+
+
+	/**
+	 * Returns the index of the sparse cell having the codes in the probe.
+	 * @param create - true if the cell should be appended when it was never used; false otherwise
+	 * @return - the index of the cell; -1 if it was never used and not created
+	 */
+	private int getSparseCell(boolean create) {
+		Integer cell = sparseCells.get(probeKey);
+		if (cell != null) {
+			return cell;
+		}
+		if (!create) {
+			return -1;
+		}
+		if (cells == marks.length) {
+			int capacity = marks.length * 2;
+			for (int measure = 0; measure < counts.length; measure++) {
+				counts[measure] = Arrays.copyOf(counts[measure], capacity);
+			}
+			marks = Arrays.copyOf(marks, capacity);
+			cellCodes = Arrays.copyOf(cellCodes, capacity * probe.length);
+		}
+		System.arraycopy(probe, 0, cellCodes, cells * probe.length, probe.length);
+		sparseCells.put(new CellKey(probe.clone()), cells);
+		return cells++;
+	}
+
+
+	/**
+	 * The codes of a sparse cell as key of the map of the sparse cells.
+	 */
+	private static class CellKey {
+
+		private final int[] codes;
+
+		CellKey(int[] codes) {
+			this.codes = codes;
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(codes);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return (other instanceof CellKey) && Arrays.equals(codes, ((CellKey) other).codes);
+		}
+	}
+
+}
@@ -22,10 +22,13 @@
 
 package org.erasmusmc.jerboa.utilities;
 
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.collections.bidimap.DualHashBidiMap;
 import org.erasmusmc.jerboa.Jerboa;
@@ -33,14 +36,25 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.dataClasses.Episode;
 import org.erasmusmc.jerboa.dataClasses.Patient;
 
+/**
+ * This class holds the extended data (not mandatory columns) of a patient or an episode.
+ * The compressed values are kept in an array with one position per extended column of the
+ * input file, as described by a schema shared by all objects of the same episode type.
+ * The array is only allocated when a value is set.
+ */
 public class ExtendedData {
 
-	// will contain pairs <column_index_in_input_file, extended_column_name>
+	// will contain pairs <column_index_in_input_file, extended_column_name>; shared by the episode type
 	public Map<Integer, String> dataOrder;
 
-	// extended attributes (not mandatory) will contain pairs of <ext_col_index,
-	// mapped_val>
-	public HashMap<Integer, Integer> data;
+	// the positions of the extended columns in values
+	private Schema schema;
+
+	// extended attributes (not mandatory) as mapped values per position in the schema; null if none is set
+	private int[] values;
+
+	// extended attributes set on columns that are not in the schema as pairs of <ext_col_index, mapped_val>
+	private HashMap<Integer, Integer> otherData;
 
 	//extended attributes without passing through look-ups or other mappings
 	public HashMap<String, String> dataAsIs;
@@ -50,15 +64,20 @@ public class ExtendedData {
 	// flag for no data
 	public final static int NO_DATA = -1;
 
+	// flag for a position in values that is not set
+	private final static int NOT_SET = Integer.MIN_VALUE;
+
+	// the schemas per episode type
+	private final static Map<String, Schema> schemas = new ConcurrentHashMap<String, Schema>();
+
 	/**
 	 * Constructor receiving the type of episode for which the extended data is.
 	 * @param typeOfEpisode - the type of episode
 	 */
 	public ExtendedData(String typeOfEpisode) {
 		this.typeOfEpisode = typeOfEpisode;
-		this.dataOrder = InputFileUtilities
-				.getExtendedDataOrder(this.typeOfEpisode);
-		this.data = new HashMap<Integer, Integer>();
+		this.schema = getSchema(typeOfEpisode);
+		this.dataOrder = schema.dataOrder;
 	}
 
 	/**
@@ -67,14 +86,69 @@ public class ExtendedData {
 	 */
 	public ExtendedData(ExtendedData extendedData){
 		this.typeOfEpisode = extendedData.typeOfEpisode;
-		if (extendedData.data != null)
-			this.data = new HashMap<Integer, Integer>(extendedData.data);
-		if (extendedData.dataOrder != null)
-			this.dataOrder = new HashMap<Integer, String>(extendedData.dataOrder);
+		this.schema = extendedData.schema;
+		this.dataOrder = extendedData.dataOrder;
+		if (extendedData.values != null)
+			this.values = extendedData.values.clone();
+		if (extendedData.otherData != null)
+			this.otherData = new HashMap<Integer, Integer>(extendedData.otherData);
 		if (extendedData.dataAsIs != null)
 			this.dataAsIs = new HashMap<String, String>(extendedData.dataAsIs);
 	}
 
+	/**
+	 * Returns the schema of the extended columns of an episode type.
+	 * It is created again if the extended columns of the input file changed.
+	 * @param typeOfEpisode - the type of episode
+	 * @return - the schema of the extended data columns
+	 */
+	private static Schema getSchema(String typeOfEpisode) {
+		Map<Integer, String> dataOrder = InputFileUtilities.getExtendedDataOrder(typeOfEpisode);
+		Schema schema = schemas.get(typeOfEpisode);
+		if ((schema == null) || (schema.dataOrder != dataOrder)) {
+			schema = new Schema(dataOrder);
+			schemas.put(typeOfEpisode, schema);
+		}
+		return schema;
+	}
+
+	/**
+	 * Sets all the extended data attributes for this episode type from a line of the input file.
+	 * @param columns - the tokenizer holding a line of the input file
+	 */
+	public void readFromInputFile(LineTokenizer columns) {
+		if (dataOrder == null)
+			return;
+		for (Integer index : dataOrder.keySet()) {
+			if (index != null && columns.size() > index) {
+				String attribute = columns.getTrimmed(index).toUpperCase();
+				int indexInLookUp = noData(attribute) ? NO_DATA
+						: InputFileUtilities.addToList(
+								getAttributeLookUp(index), attribute);
+				put(index, indexInLookUp);
+			}
+		}
+	}
+
+	/**
+	 * Sets all the extended data attributes for this episode type from a patient object file.
+	 * @param attributes - the list of attributes from the patient object file
+	 */
+	public void readFromPOF(String[] attributes) {
+		if (dataOrder == null)
+			return;
+		int nbColumns = InputFileUtilities
+				.getNumberOfMandatoryColumns(this.typeOfEpisode);
+		short entryIndex = 0;
+		for (Integer index : dataOrder.keySet()) {
+			if (attributes.length > nbColumns + entryIndex
+					+ Episode.COMPRESSION_OFFSET)
+				put(index, Integer.valueOf(attributes[nbColumns + entryIndex
+								+ Episode.SUBSET_OFFSET]));
+			entryIndex++;
+		}
+	}
+
 	/**
 	 * Sets all the extended data attributes for this episode type as pairs of
 	 * {@literal <mapped_value, extended_column_index>}.
@@ -180,8 +254,8 @@ public class ExtendedData {
 	 * and if it actually has a value; false otherwise
 	 */
 	public boolean hasAttribute(int extendedColumnIndex) {
-		return this.data.get(extendedColumnIndex) != null
-				&& this.data.get(extendedColumnIndex) != NO_DATA;
+		Integer value = get(extendedColumnIndex);
+		return value != null && value != NO_DATA;
 	}
 
 	/**
@@ -211,7 +285,7 @@ public class ExtendedData {
 	 */
 	public Integer getAttribute(Integer extendedColumnIndex) {
 		return extendedColumnIndex != NO_DATA ?
-				this.data.get(extendedColumnIndex) : NO_DATA;
+				get(extendedColumnIndex) : NO_DATA;
 	}
 
 	/**
@@ -222,7 +296,7 @@ public class ExtendedData {
 	 * @return - the integer value (compressed) of the extended element;
 	 */
 	public Integer getAttribute(String attribute) {
-		return this.data.get(getIndexOfAttribute(attribute.toLowerCase()));
+		return get(getIndexOfAttribute(attribute.toLowerCase()));
 	}
 
 	/**
@@ -233,9 +307,9 @@ public class ExtendedData {
 	 * @return - the String value (uncompressed) of the extended element;
 	 */
 	public String getAttributeAsString(Integer extendedColumnIndex) {
-		return (extendedColumnIndex != NO_DATA && this.data.get(extendedColumnIndex) != NO_DATA) ?
+		return (extendedColumnIndex != NO_DATA && get(extendedColumnIndex) != NO_DATA) ?
 				getValue(getAttributeLookUp(this.dataOrder.get(extendedColumnIndex)),
-				this.data.get(extendedColumnIndex)) : DataDefinition.NO_DATA;
+				get(extendedColumnIndex)) : DataDefinition.NO_DATA;
 	}
 
 	/**
@@ -251,7 +325,7 @@ public class ExtendedData {
 		int index = getIndexOfAttribute(attribute);
 		String value = DataDefinition.NO_DATA;
 		if (index != -1)
-			value = getValue(getAttributeLookUp(attribute), data.get(index));
+			value = getValue(getAttributeLookUp(attribute), get(index));
 		else {
 			if (getDataAsIs().containsKey(attribute)) {
 				value = getDataAsIs().get(attribute);
@@ -312,8 +386,8 @@ public class ExtendedData {
 	 * @return - the integer key associated to value in the list
 	 */
 	public int getIndex(DualHashBidiMap list, String value) {
-		return (list != null && list.getKey(value) != null) ?
-				(int) list.getKey(value) : NO_DATA;
+		Object index = list != null ? list.getKey(value) : null;
+		return index != null ? (int) index : NO_DATA;
 	}
 
 	/**
@@ -323,6 +397,10 @@ public class ExtendedData {
 	 * @return - the string representation of value
 	 */
 	public String getValue(DualHashBidiMap list, int key) {
+		if (list instanceof SymbolTable) {
+			String value = ((SymbolTable)list).getSymbol(key);
+			return value != null ? value : DataDefinition.NO_DATA;
+		}
 		return (list != null && list.get(key) != null) ?
 				list.get(key).toString() : DataDefinition.NO_DATA;
 	}
@@ -332,7 +410,80 @@ public class ExtendedData {
 	 * @return - the key set of the extended data map
 	 */
 	public Set<Integer> getKeySet() {
-		return this.data.keySet();
+		Set<Integer> keys = new TreeSet<Integer>();
+		if (values != null)
+			for (int position = 0; position < values.length; position++)
+				if (values[position] != NOT_SET)
+					keys.add(schema.columns[position]);
+		if (otherData != null)
+			keys.addAll(otherData.keySet());
+		return keys;
+	}
+
+	/**
+	 * Returns the number of extended attributes that are set.
+	 * @return - the number of extended attributes
+	 */
+	public int size() {
+		int size = otherData != null ? otherData.size() : 0;
+		if (values != null)
+			for (int value : values)
+				if (value != NOT_SET)
+					size++;
+		return size;
+	}
+
+	/**
+	 * Returns the index of the extended column of the extended attribute at index, in the
+	 * order of the columns in the input file followed by the columns that are not in the schema.
+	 * Together with size() and getValueAt() it allows to go through the extended attributes
+	 * without copying them as getData() does.
+	 * @param index - the index of the extended attribute, from 0 to size() - 1
+	 * @return - the index of the extended column
+	 */
+	public Integer getKeyAt(int index) {
+		int position = getPositionAt(index);
+		return position >= 0 ? schema.columns[position] : getOtherEntryAt(-position - 1).getKey();
+	}
+
+	/**
+	 * Returns the mapped value of the extended attribute at index, in the same order as getKeyAt().
+	 * @param index - the index of the extended attribute, from 0 to size() - 1
+	 * @return - the value mapped for the extended attribute
+	 */
+	public Integer getValueAt(int index) {
+		int position = getPositionAt(index);
+		return position >= 0 ? values[position] : getOtherEntryAt(-position - 1).getValue();
+	}
+
+	/**
+	 * Returns the position in values of the extended attribute at index or, if it is
+	 * not in the schema, -1 minus its index in otherData.
+	 * @param index - the index of the extended attribute, from 0 to size() - 1
+	 * @return - the position of the extended attribute
+	 */
+	private int getPositionAt(int index) {
+		int remaining = index;
+		if (values != null)
+			for (int position = 0; position < values.length; position++)
+				if ((values[position] != NOT_SET) && (remaining-- == 0))
+					return position;
+		if ((remaining < 0) || (otherData == null) || (remaining >= otherData.size()))
+			throw new IndexOutOfBoundsException("No extended attribute at index " + index);
+		return -remaining - 1;
+	}
+
+	/**
+	 * Returns the entry at index in otherData.
+	 * @param index - the index of the entry
+	 * @return - the entry of the extended attribute
+	 */
+	private Entry<Integer, Integer> getOtherEntryAt(int index) {
+		int remaining = index;
+		for (Entry<Integer, Integer> entry : otherData.entrySet())
+			if (remaining-- == 0)
+				return entry;
+		throw new IndexOutOfBoundsException("No extended attribute at index " + index);
 	}
 
 	/**
@@ -341,7 +492,12 @@ public class ExtendedData {
 	 * @return - the value mapped at extColumnIndex.
 	 */
 	public Integer get(Integer extColumnIndex) {
-		return this.data.get(extColumnIndex);
+		if (extColumnIndex == null)
+			return otherData != null ? otherData.get(null) : null;
+		int position = schema.getPosition(extColumnIndex);
+		if (position != -1)
+			return (values != null && values[position] != NOT_SET) ? values[position] : null;
+		return otherData != null ? otherData.get(extColumnIndex) : null;
 	}
 
 	/**
@@ -351,7 +507,23 @@ public class ExtendedData {
 	 * @return - the previous value that was associated with key
 	 */
 	public Integer put(Integer key, Integer value) {
-		return this.data.put(key, value);
+		int position = key != null ? schema.getPosition(key) : -1;
+		if (position == -1 || value == null || value == NOT_SET) {
+			Integer previous = get(key);
+			if (position != -1 && values != null)
+				values[position] = NOT_SET;
+			if (otherData == null)
+				otherData = new HashMap<Integer, Integer>();
+			otherData.put(key, value);
+			return previous;
+		}
+		if (values == null) {
+			values = new int[schema.columns.length];
+			Arrays.fill(values, NOT_SET);
+		}
+		Integer previous = values[position] != NOT_SET ? values[position] : null;
+		values[position] = value;
+		return previous;
 	}
 
 	/**
@@ -363,7 +535,7 @@ public class ExtendedData {
 	public Integer put(String key, String value) {
 		int indexInLookUp = InputFileUtilities.addToList(
 				this.getAttributeLookUp(key), value);
-		return this.data.put(this.getIndexOfAttribute(key), indexInLookUp);
+		return this.put(this.getIndexOfAttribute(key), (Integer)indexInLookUp);
 	}
 
 	/**
@@ -377,13 +549,34 @@ public class ExtendedData {
 	}
 
 	// GETTERS AND SETTERS FOR OBJECT ATTRIBUTES
+	/**
+	 * Returns a copy of the extended attributes as pairs of {@literal <ext_col_index, mapped_val>}.
+	 * Changes to the returned map are not reflected in this object.
+	 * @return - the extended attributes
+	 */
 	public HashMap<Integer, Integer> getData() {
+		HashMap<Integer, Integer> data = new HashMap<Integer, Integer>();
+		if (values != null)
+			for (int position = 0; position < values.length; position++)
+				if (values[position] != NOT_SET)
+					data.put(schema.columns[position], values[position]);
+		if (otherData != null)
+			data.putAll(otherData);
 		return data;
 	}
 
+	/**
+	 * Replaces the extended attributes by the pairs of {@literal <ext_col_index, mapped_val>} in data.
+	 * @param data - the extended attributes; null if there are none
+	 * @return - data
+	 */
 	public HashMap<Integer, Integer> setData(HashMap<Integer, Integer> data) {
-		this.data = data;
-		return this.data;
+		this.values = null;
+		this.otherData = null;
+		if (data != null)
+			for (Entry<Integer, Integer> entry : data.entrySet())
+				put(entry.getKey(), entry.getValue());
+		return data;
 	}
 
 	public HashMap<String, String> getDataAsIs() {
@@ -424,4 +617,43 @@ public class ExtendedData {
 		this.dataAsIs.put(attribute.toLowerCase(), value);
 	}
 
+	//NESTED CLASSES
+	/**
+	 * The extended columns of an input file in ascending order of their index in the file,
+	 * with their position in the array of values.
+	 */
+	private static class Schema {
+
+		private final Map<Integer, String> dataOrder;
+		private final int[] columns;
+		private final int[] positions;
+
+		public Schema(Map<Integer, String> dataOrder) {
+			this.dataOrder = dataOrder;
+			TreeSet<Integer> sorted = new TreeSet<Integer>();
+			if (dataOrder != null)
+				for (Integer column : dataOrder.keySet())
+					if (column != null && column >= 0)
+						sorted.add(column);
+
+			columns = new int[sorted.size()];
+			positions = new int[sorted.isEmpty() ? 0 : sorted.last() + 1];
+			Arrays.fill(positions, -1);
+			int position = 0;
+			for (int column : sorted) {
+				columns[position] = column;
+				positions[column] = position++;
+			}
+		}
+
+		/**
+		 * Returns the position of an extended column in the array of values.
+		 * @param column - the index of the extended column in the input file
+		 * @return - the position in the values; -1 if the column is not in the schema
+		 */
+		public int getPosition(int column) {
+			return (column >= 0 && column < positions.length) ? positions[column] : -1;
+		}
+	}
+
 }
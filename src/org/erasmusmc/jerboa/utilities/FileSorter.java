@@ -0,0 +1,402 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang3.text.StrMatcher;
+import org.erasmusmc.jerboa.config.DataDefinition;
+
+/**
+ * Sorts a delimited input file by patient identifier using an external merge sort.
+ * The rows are read in chunks that fit in the memory budget; each chunk is sorted by
+ * a separate thread and written to a temporary run file. The runs are then merged
+ * using a heap until a single sorted file remains. The header of the input file is kept
+ * as first line of the sorted file.
+ * The rows are ordered by patient identifier in the same way as the PatientObjectCreator
+ * compares them (shorter identifiers first) and then by date. Rows with equal keys keep
+ * their order in the input file, so that the result is the same on any platform.
+ * If the header does not contain a patient identifier column, the whole rows are compared.
+ */
+public class FileSorter {
+
+	//the maximum number of runs merged at once
+	private static final int MAX_MERGED_RUNS = 64;
+
+	//estimated memory overhead of a row besides its characters, in bytes
+	private static final int ROW_OVERHEAD = 96;
+
+	//the memory budget in bytes and the number of sorting threads
+	private long memoryBudget;
+	private int threads;
+	private int maxMergedRuns = MAX_MERGED_RUNS;
+
+	//key columns
+	private StrMatcher delimiter;
+	private int idColumn;
+	private int dateColumn;
+	private byte dateFormat;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor using all the available processors and a quarter
+	 * of the maximum heap size as memory budget.
+	 */
+	public FileSorter(){
+		this(Runtime.getRuntime().maxMemory() / (4 * 1024 * 1024), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Constructor receiving the memory budget and the number of sorting threads.
+	 * @param memoryMB - the memory that can be used for the rows held in memory, in MB
+	 * @param threads - the number of threads sorting the runs
+	 */
+	public FileSorter(long memoryMB, int threads){
+		this.memoryBudget = Math.max(1, memoryMB) * 1024 * 1024;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Sorts inputFile and writes the result to outputFile.
+	 * @param inputFile - the path of the file to be sorted
+	 * @param outputFile - the path of the sorted file
+	 * @throws IOException - if unable to read from the input file or write the sorted file
+	 */
+	public void sort(String inputFile, String outputFile) throws IOException{
+
+		File output = new File(outputFile);
+		File tempFolder = output.getAbsoluteFile().getParentFile();
+		List<File> runs = new ArrayList<File>();
+
+		BufferedReader br = FileUtilities.openFile(inputFile);
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try{
+			//retrieve the key columns from the header
+			String header = br.readLine();
+			setKeyColumns(header);
+
+			//at most one chunk being read and one per thread being sorted are held in memory
+			long chunkBudget = memoryBudget / (threads + 1);
+			Semaphore chunksInMemory = new Semaphore(threads);
+			List<Future<File>> sortedRuns = new ArrayList<Future<File>>();
+
+			List<String> chunk = new ArrayList<String>();
+			long chunkSize = 0;
+			String line;
+			while ((line = br.readLine()) != null){
+				if (line.equals(""))
+					continue;
+				//the date format is retrieved from the first chunk, before any sorting thread starts
+				if (sortedRuns.isEmpty() && dateFormat == DateUtilities.DATE_INVALID && idColumn != -1 && dateColumn != -1)
+					setDateFormat(line);
+				chunk.add(line);
+				chunkSize += ROW_OVERHEAD + 2L * line.length();
+				if (chunkSize >= chunkBudget){
+					sortedRuns.add(submitRun(executor, chunksInMemory, chunk, tempFolder));
+					chunk = new ArrayList<String>();
+					chunkSize = 0;
+				}
+			}
+			if (!chunk.isEmpty() || sortedRuns.isEmpty())
+				sortedRuns.add(submitRun(executor, chunksInMemory, chunk, tempFolder));
+			br.close();
+
+			//wait for all runs to be written in order
+			for (Future<File> run : sortedRuns)
+				runs.add(run.get());
+
+			//merge the runs until few enough are left to be merged in the output
+			while (runs.size() > maxMergedRuns){
+				List<File> merged = new ArrayList<File>();
+				for (int i = 0; i < runs.size(); i += maxMergedRuns){
+					List<File> group = runs.subList(i, Math.min(runs.size(), i + maxMergedRuns));
+					File run = File.createTempFile("sort_", ".run", tempFolder);
+					merge(group, new OutputStreamWriter(new FileOutputStream(run), StandardCharsets.UTF_8), null);
+					for (File f : group)
+						f.delete();
+					merged.add(run);
+				}
+				runs = merged;
+			}
+			//the sorted file has the same encoding as the input file
+			merge(runs, new FileWriter(output), header);
+
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("The sorting of "+inputFile+" was interrupted", e);
+		}catch(ExecutionException e){
+			throw e.getCause() instanceof IOException ? (IOException)e.getCause() :
+				new IOException("Unable to sort "+inputFile, e.getCause());
+		}finally{
+			br.close();
+			executor.shutdownNow();
+			for (File run : runs)
+				run.delete();
+		}
+	}
+
+	/**
+	 * Submits the sorting of a chunk of rows and its output to a run file.
+	 * Blocks if too many chunks are already held in memory.
+	 * @param executor - the executor running the sorting threads
+	 * @param chunksInMemory - the permits for the chunks held in memory
+	 * @param chunk - the rows to be sorted
+	 * @param tempFolder - the folder in which the run file is created
+	 * @return - the future run file
+	 * @throws InterruptedException - if interrupted while waiting for memory
+	 */
+	private Future<File> submitRun(ExecutorService executor, final Semaphore chunksInMemory,
+			final List<String> chunk, final File tempFolder) throws InterruptedException{
+		chunksInMemory.acquire();
+		return executor.submit(new Callable<File>(){
+			public File call() throws IOException{
+				try{
+					LineTokenizer tokenizer = new LineTokenizer(delimiter);
+					List<Row> rows = new ArrayList<Row>(chunk.size());
+					for (String line : chunk)
+						rows.add(new Row(line, tokenizer));
+					chunk.clear();
+					Collections.sort(rows, ROW_ORDER);
+
+					File run = File.createTempFile("sort_", ".run", tempFolder);
+					BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(
+							new FileOutputStream(run), StandardCharsets.UTF_8), 1 << 16);
+					try{
+						for (Row row : rows){
+							bw.write(row.line);
+							bw.write('\n');
+						}
+					}finally{
+						bw.close();
+					}
+					return run;
+				}finally{
+					chunksInMemory.release();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Merges sorted runs into one sorted file using a heap. Rows with equal keys
+	 * are taken from the runs in their order, so that the merge is stable.
+	 * @param runs - the sorted runs in the order of the input file
+	 * @param output - the writer towards the file to be written; closed once the merge is done
+	 * @param header - the header to be written first; null if none
+	 * @throws IOException - if unable to read a run or write the output
+	 */
+	private void merge(List<File> runs, Writer output, String header) throws IOException{
+		PriorityQueue<RunCursor> heap = new PriorityQueue<RunCursor>(Math.max(1, runs.size()));
+		BufferedWriter bw = new BufferedWriter(output, 1 << 16);
+		try{
+			if (header != null){
+				bw.write(header);
+				bw.write('\n');
+			}
+			for (int i = 0; i < runs.size(); i++){
+				RunCursor cursor = new RunCursor(runs.get(i), i);
+				if (cursor.advance())
+					heap.add(cursor);
+			}
+			while (!heap.isEmpty()){
+				RunCursor cursor = heap.poll();
+				bw.write(cursor.row.line);
+				bw.write('\n');
+				if (cursor.advance())
+					heap.add(cursor);
+			}
+		}finally{
+			for (RunCursor cursor : heap)
+				cursor.close();
+			bw.close();
+		}
+	}
+
+	/**
+	 * Sets the maximum number of runs merged at once. If there are more
+	 * runs, they are merged in several passes.
+	 * @param maxMergedRuns - the maximum number of runs merged at once
+	 */
+	public void setMaxMergedRuns(int maxMergedRuns){
+		this.maxMergedRuns = Math.max(2, maxMergedRuns);
+	}
+
+	/**
+	 * Retrieves the delimiter and the position of the patient identifier
+	 * and date columns from the header of the input file.
+	 * @param header - the first line of the input file
+	 */
+	private void setKeyColumns(String header){
+		idColumn = -1;
+		dateColumn = -1;
+		dateFormat = DateUtilities.DATE_INVALID;
+		if (header == null)
+			return;
+
+		for (char candidate : new char[]{DataDefinition.COMMA_DELIMITER,
+				DataDefinition.SEMICOLON_DELIMITER, DataDefinition.TAB_DELIMITER}){
+			String[] columns = StringUtilities.splitLine(header, StrMatcher.charMatcher(candidate));
+			if (columns.length > 1){
+				delimiter = StrMatcher.charMatcher(candidate);
+				for (int i = 0; i < columns.length; i++){
+					String column = columns[i].trim().replace("\"", "").toLowerCase();
+					if (column.equals(DataDefinition.PATIENTS_ID))
+						idColumn = i;
+					else if (column.equals(DataDefinition.EVENT_DATE) ||
+							(dateColumn == -1 && column.equals(DataDefinition.PATIENT_START_DATE)))
+						dateColumn = i;
+				}
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Retrieves the format of the dates in the date column from a row of the input file.
+	 * @param line - a row of the input file
+	 */
+	private void setDateFormat(String line){
+		String[] columns = StringUtilities.splitLine(line, delimiter);
+		if (dateColumn < columns.length)
+			dateFormat = DateUtilities.dateFormat(columns[dateColumn].trim());
+	}
+
+	/**
+	 * Compares two patient identifiers as done when creating the patient objects:
+	 * shorter identifiers come first and identifiers of equal length are compared lexicographically.
+	 * @param id1 - the first identifier
+	 * @param id2 - the second identifier
+	 * @return - a negative value, zero or a positive value if id1 comes before, together or after id2
+	 */
+	public static int compareIDs(String id1, String id2){
+		return id1.length() == id2.length() ? id1.compareTo(id2) : id1.length() - id2.length();
+	}
+
+	//order of the rows: patient identifier, then date
+	private static final Comparator<Row> ROW_ORDER = new Comparator<Row>(){
+		public int compare(Row row1, Row row2){
+			int result = compareIDs(row1.id, row2.id);
+			return result != 0 ? result : row1.date.compareTo(row2.date);
+		}
+	};
+
+	/**
+	 * A row of the input file with its sorting keys.
+	 */
+	private class Row{
+
+		private String line;
+		private String id;
+		private String date;
+
+		public Row(String line, LineTokenizer tokenizer){
+			this.line = line;
+			if (idColumn == -1){
+				this.id = line;
+				this.date = "";
+			}else{
+				//only the key columns are turned into strings
+				tokenizer.reset(line);
+				this.id = idColumn < tokenizer.size() ? tokenizer.getTrimmed(idColumn) : "";
+				this.date = dateColumn != -1 && dateColumn < tokenizer.size() ?
+						toSortableDate(tokenizer.getTrimmed(dateColumn)) : "";
+			}
+		}
+
+		/**
+		 * Converts a date to the YYYYMMDD format, so that dates compare as strings.
+		 * @param date - the date as it is in the input file
+		 * @return - the date under the format YYYYMMDD; the date as it is if it cannot be converted
+		 */
+		private String toSortableDate(String date){
+			if (dateFormat == DateUtilities.DATE_INVALID || date.length() < 8)
+				return date;
+			try{
+				String converted = DateUtilities.convertDateStringToYYYYMMDD(date, dateFormat);
+				return converted != null ? converted : date;
+			}catch(IndexOutOfBoundsException e){
+				return date;
+			}
+		}
+	}
+
+	/**
+	 * Reads the rows of a run file one at a time while merging.
+	 */
+	private class RunCursor implements Comparable<RunCursor>{
+
+		private BufferedReader reader;
+		private LineTokenizer tokenizer = new LineTokenizer(delimiter);
+		private int index;
+		private Row row;
+
+		public RunCursor(File run, int index) throws IOException{
+			this.reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(run), StandardCharsets.UTF_8), 1 << 16);
+			this.index = index;
+		}
+
+		public boolean advance() throws IOException{
+			String line = reader.readLine();
+			if (line == null){
+				close();
+				row = null;
+				return false;
+			}
+			row = new Row(line, tokenizer);
+			return true;
+		}
+
+		public void close() throws IOException{
+			reader.close();
+		}
+
+		@Override
+		public int compareTo(RunCursor other){
+			int result = ROW_ORDER.compare(row, other.row);
+			return result != 0 ? result : index - other.index;
+		}
+	}
+
+}
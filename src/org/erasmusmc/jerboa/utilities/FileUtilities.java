@@ -39,11 +39,9 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.net.URL;
 import java.nio.file.Files;
@@ -68,6 +66,7 @@ import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.erasmusmc.jerboa.Jerboa;
 import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.Parameters;
 import org.erasmusmc.jerboa.config.PropertiesManager;
 
 /**
@@ -493,107 +492,45 @@ public class FileUtilities extends FileUtils{
 	}
 
 	/**
-	 * Sorts the input file by grabbing the header first and removing
-	 * it from the input file so only data is to be sorted. The header is output
-	 * in the resulting sorted file and the sorted data appended.
-	 * If in a Windows environment, the sed and head commands are not
-	 * supported without extra libraries, thus the input file has to be opened,
-	 * header copied, the rest of the file copied instead of the original file
-	 * and afterwards sorted.
+	 * Sorts the input file by patient identifier and date, keeping the header
+	 * as first line of the sorted file. The sorting is done in Java by an external
+	 * merge sort, using at most Parameters.SORT_MEMORY MB for the rows held in memory
+	 * and all the available processors.
 	 * @param fileName - the name of the file to be sorted
 	 * @return - the path of the sorted file; null if sorting failed
 	 */
 	public static String sortFile(String fileName){
+		return sortFile(fileName, Parameters.SORT_MEMORY);
+	}
 
+	/**
+	 * Sorts the input file by patient identifier and date, keeping the header
+	 * as first line of the sorted file. The sorted file is created in the same folder
+	 * as the input file, with the suffix _sorted.
+	 * @param fileName - the name of the file to be sorted
+	 * @param memoryMB - the maximum amount of memory for the rows held in memory, in MB
+	 * @return - the path of the sorted file; null if sorting failed
+	 * @see FileSorter
+	 */
+	public static String sortFile(String fileName, int memoryMB){
 
 		//create name of sorted file
-		try{
-			File input = null;
-			input = new File(fileName);
-			String path = input.getAbsolutePath().replaceAll("\\\\", "/");
-			String sortedFile = input.getName().substring(0, input.getName().length() - 4);
-			String tempFile = sortedFile+"_temp.txt";
-			sortedFile = sortedFile+"_sorted.txt";
-			sortedFile = path.replaceFirst(input.getName(), sortedFile);
-			tempFile = path.replaceFirst(input.getName(), tempFile);
-
-			System.out.println("Sorting file "+input.getAbsolutePath());
-			long start = System.currentTimeMillis();
-
-			boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
-
-			if (isWindows){
-				//get header
-				BufferedReader br = openFile(input.getAbsolutePath());
-				String head = br.readLine();
-
-				//prepare for output
-				StringBuilder out = new StringBuilder();
-
-				//read from file
-				String line = br.readLine();
-				while (line != null){
-					out.append(line+"\n");
-					line = br.readLine();
-				}
-				br.close();
-
-				//write to file
-				BufferedWriter bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile)));
-				bw.write(out.toString());
-				bw.flush();
-				bw.close();
-
-				//write header to new file
-				bw = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(sortedFile)));
-				bw.write(head+"\n");
-				bw.flush();
-				bw.close();
+		File input = new File(fileName);
+		String sortedFile = input.getName().substring(0, input.getName().length() - 4)+"_sorted.txt";
+		sortedFile = new File(input.getAbsoluteFile().getParentFile(), sortedFile).getAbsolutePath().replaceAll("\\\\", "/");
 
-				//not windows
-			}else{
-				//copy header to output file
-				String[] header = {
-					(isWindows ? "cmd" : "sh"), (isWindows ? "/c" : "-c"),
-					"head -1 "+"\""+path+"\""+" > "+"\""+sortedFile+"\""};
-				Process headerProcess = Runtime.getRuntime().exec(header);
-				headerProcess.waitFor();
-			}
-
-			//sort file by starting at second row
-		    String[] sort = {
-		           (isWindows ? "cmd" : "sh"), (isWindows ? "/c" : "-c"),
-		           (!isWindows ? "sed 1d "+"\""+path+"\""+ " | " : "") +
-		           "sort " + (isWindows ? "\""+tempFile+"\" " : "") +">> "+"\""+sortedFile+"\""};
-		    Process sortProcess = Runtime.getRuntime().exec(sort);
-
-		    // capture error messages (if any)
-		    BufferedReader reader = new BufferedReader(new InputStreamReader(
-		        sortProcess.getErrorStream()));
-
-		    //output errors
-		    String outputS = reader.readLine();
-		    while (outputS != null) {
-		        System.err.println(outputS);
-		        outputS = reader.readLine();
-		    }
-		    sortProcess.waitFor();
-		    System.out.println(input.getName()+ " file sorted in: "+(System.currentTimeMillis() - start)/1000+" sec.");
-
-		    //delete temporary file
-		    delete(new File(tempFile));
-
-		    return sortedFile;
-
-		}catch(IOException io){
-			System.out.println("Unable to read the file "+fileName+" Check the file name/path.");
-			System.exit(0);
-			return null;
-		}catch(InterruptedException ie){
-			System.out.println("The sorting process was interrupted unexpectedly. Is the file still there?");
-			System.exit(0);
+		System.out.println("Sorting file "+input.getAbsolutePath());
+		long start = System.currentTimeMillis();
+		try{
+			new FileSorter(memoryMB, Runtime.getRuntime().availableProcessors()).sort(input.getAbsolutePath(), sortedFile);
+		}catch(IOException e){
+			Logging.add("Unable to sort the file "+fileName+". Check the file name/path and the free disk space.", Logging.ERROR);
+			Logging.outputStackTrace(e);
 			return null;
 		}
+		System.out.println(input.getName()+ " file sorted in: "+(System.currentTimeMillis() - start)/1000+" sec.");
+
+		return sortedFile;
 	}
 
 	/**
@@ -34,6 +34,7 @@ import java.util.Set;
 import org.apache.commons.collections.bag.HashBag;
 import org.apache.commons.lang3.StringUtils;
 import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.dataClasses.EpisodeIndex;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
@@ -681,86 +682,107 @@ public class IndexDateUtilities {
 	 */
 	public static String processMeasurementCounts(Patient patient, int indexDate, ItemList measurementsList, int timeWindowMeasurement, MultiKeyBag measurementCountBag) throws IllegalArgumentException { 
 
-		//populate the map with the last value of the measurement
-		int date = 0;
-		Double min = Double.MIN_VALUE;
-		Double max = Double.MAX_VALUE;
 		HashBag measurementFreq = new HashBag();
 		
-		for (Measurement measurement : patient.getMeasurements()) {
-
-			//check measurements are still sorted		
-			if (measurement.date<date) {
-				Logging.add("Descriptives:Measurements were not sorted by date!");
-				throw new IllegalArgumentException("Measurements should be sorted by date!");
-			} else
-				date = measurement.date;
-			// Check if measurement of interest
-			int windowStart = indexDate + timeWindowMeasurement;
-			int windowEnd = indexDate;
-			
-			for (Item measurementItem : measurementsList) {
-				List<String> parameters = new ArrayList<String>(measurementItem.getParameters());
-				
-				//parse min and max value
-				try {
-					if (parameters.size()>0) {
-						min = Double.valueOf(parameters.get(0));
+		if (patient.getMeasurements().size() > 0) {
+			//parse the value range and window of every item. A value limit that is not specified
+			//is kept from the previous item, also from the last item for the next measurement.
+			//Therefore the first measurement is checked against the limits of the first pass.
+			Double min = Double.MIN_VALUE;
+			Double max = Double.MAX_VALUE;
+			double[] firstMins = new double[measurementsList.size()];
+			double[] firstMaxs = new double[measurementsList.size()];
+			double[] mins = new double[measurementsList.size()];
+			double[] maxs = new double[measurementsList.size()];
+			int[] windowStarts = new int[measurementsList.size()];
+			int[] windowEnds = new int[measurementsList.size()];
+			for (int pass = 0; pass < 2; pass++) {
+				for (int itemNr = 0; itemNr < measurementsList.size(); itemNr++) {
+					Item measurementItem = measurementsList.get(itemNr);
+					List<String> parameters = new ArrayList<String>(measurementItem.getParameters());
+					
+					//parse min and max value
+					try {
+						if (parameters.size()>0) {
+							min = Double.valueOf(parameters.get(0));
+						}
 					}
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement min " + measurementItem.getLookup() + "] should have a numeric value");
-				}
-				
-				try {
-					if (parameters.size()>1) {
-						max = Double.valueOf(parameters.get(1));
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement min " + measurementItem.getLookup() + "] should have a numeric value");
 					}
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement max " + measurementItem.getLookup() + "] should have a numeric value");
-				}
-				
-				//parse windowStart and throw if needed
-				
-				windowStart = indexDate + timeWindowMeasurement;
-				windowEnd = indexDate; 
-				try {
+					
+					try {
+						if (parameters.size()>1) {
+							max = Double.valueOf(parameters.get(1));
+						}
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement max " + measurementItem.getLookup() + "] should have a numeric value");
+					}
+					
+					if (pass == 1) {
+						mins[itemNr] = min;
+						maxs[itemNr] = max;
+						continue;
+					}
+					firstMins[itemNr] = min;
+					firstMaxs[itemNr] = max;
+					
+					//parse windowStart and throw if needed
+					
+					int windowStart = indexDate + timeWindowMeasurement;
+					int windowEnd = indexDate; 
+					try {
 
-					if (parameters.size()>2 && !parameters.get(2).toLowerCase().equals("birth")) 
-						windowStart = indexDate+Integer.valueOf(parameters.get(2));
+						if (parameters.size()>2 && !parameters.get(2).toLowerCase().equals("birth")) 
+							windowStart = indexDate+Integer.valueOf(parameters.get(2));
 
-					if (parameters.size()>2 && parameters.get(2).toLowerCase().equals("birth"))
-						windowStart = patient.birthDate;
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement [" +measurementItem.getLookup() + "] should have a numeric window start");
-				}
+						if (parameters.size()>2 && parameters.get(2).toLowerCase().equals("birth"))
+							windowStart = patient.birthDate;
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement [" +measurementItem.getLookup() + "] should have a numeric window start");
+					}
 
-				try {
-					if (parameters.size()>3) {
-						if (parameters.get(3).toLowerCase().equals("cohortend"))
-							windowEnd = patient.getCohortEndDate();
-						else
-							windowEnd = Integer.valueOf(parameters.get(3))+indexDate;
-					}	
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement" + measurementItem.getLookup() + "] should have a numeric window end or cohortend");
+					try {
+						if (parameters.size()>3) {
+							if (parameters.get(3).toLowerCase().equals("cohortend"))
+								windowEnd = patient.getCohortEndDate();
+							else
+								windowEnd = Integer.valueOf(parameters.get(3))+indexDate;
+						}	
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement" + measurementItem.getLookup() + "] should have a numeric window end or cohortend");
+					}
+					windowStarts[itemNr] = windowStart;
+					windowEnds[itemNr] = windowEnd;
 				}
-				
-
-				if (StringUtils.upperCase(measurement.getType()).equals(StringUtils.upperCase(measurementItem.getLookup().get(0))) && 
-						measurement.isInPeriod(windowStart,windowEnd,true,false) && 
-						measurement.isInRange(min, max)) {
-					measurementFreq.add(measurementItem.getLabel());
+			}
+			
+			//check measurements are still sorted
+			EpisodeIndex index = patient.getEpisodeIndex();
+			if (!index.areMeasurementsSorted()) {
+				Logging.add("Descriptives:Measurements were not sorted by date!");
+				throw new IllegalArgumentException("Measurements should be sorted by date!");
+			}
+			
+			//count the measurements in the window of each item, the window end is not included
+			for (int itemNr = 0; itemNr < measurementsList.size(); itemNr++) {
+				Item measurementItem = measurementsList.get(itemNr);
+				EpisodeIndex.Posting posting = index.getMeasurementsIgnoreCase(measurementItem.getLookup().get(0));
+				for (int i = posting.lowerBound(windowStarts[itemNr]); (i < posting.size()) && (posting.getDate(i) < windowEnds[itemNr]); i++) {
+					boolean firstMeasurement = (posting.getPosition(i) == 0);
+					if (patient.getMeasurements().get(posting.getPosition(i)).isInRange(firstMeasurement ? firstMins[itemNr] : mins[itemNr], firstMeasurement ? firstMaxs[itemNr] : maxs[itemNr])) {
+						measurementFreq.add(measurementItem.getLabel());
+					}
 				}
 			}
-		}	
+		}
 		
 		//return comma-delimited set of results of found measurements
 		DelimitedStringBuilder result = new DelimitedStringBuilder(",");
@@ -928,86 +950,108 @@ public class IndexDateUtilities {
 	 */
 	public static String processEventCounts(Patient patient, int indexDate, ItemList eventsList, int timeWindowEvent, MultiKeyBag eventCountBag) throws IllegalArgumentException { 
 
-		//populate the map with the last value of the measurement
-		int date = 0;
-		Double minAge = Double.MIN_VALUE;
-		Double maxAge = Double.MAX_VALUE;
 		HashBag eventFreq = new HashBag();
 		
-		for (Event event : patient.getEvents()) {
-
-			//check measurements are still sorted		
-			if (event.date<date) {
-				Logging.add("Descriptives:Events were not sorted by date!");
-				throw new IllegalArgumentException("Events should be sorted by date!");
-			} else
-				date = event.date;
-			// Check if measurement of interest
-			int windowStart = indexDate + timeWindowEvent;
-			int windowEnd = indexDate;
-			
-			for (Item eventItem : eventsList) {
-				List<String> parameters = new ArrayList<String>(eventItem.getParameters());
-				
-				//parse min and max age value
-				try {
-					if (parameters.size()>0) {
-						minAge = parameters.get(0).trim().equals("") ? 0 : Double.valueOf(parameters.get(0));
+		if (patient.getEvents().size() > 0) {
+			//parse the age range and window of every item. An age limit that is not specified
+			//is kept from the previous item, also from the last item for the next event.
+			//Therefore the first event is checked against the limits of the first pass.
+			Double minAge = Double.MIN_VALUE;
+			Double maxAge = Double.MAX_VALUE;
+			double[] firstMinAges = new double[eventsList.size()];
+			double[] firstMaxAges = new double[eventsList.size()];
+			double[] minAges = new double[eventsList.size()];
+			double[] maxAges = new double[eventsList.size()];
+			int[] windowStarts = new int[eventsList.size()];
+			int[] windowEnds = new int[eventsList.size()];
+			for (int pass = 0; pass < 2; pass++) {
+				for (int itemNr = 0; itemNr < eventsList.size(); itemNr++) {
+					Item eventItem = eventsList.get(itemNr);
+					List<String> parameters = new ArrayList<String>(eventItem.getParameters());
+					
+					//parse min and max age value
+					try {
+						if (parameters.size()>0) {
+							minAge = parameters.get(0).trim().equals("") ? 0 : Double.valueOf(parameters.get(0));
+						}
 					}
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. minAge [" + eventItem.getLookup() + "] should have a numeric value");
-				}
-				
-				try {
-					if (parameters.size()>1) {
-						maxAge = parameters.get(1).trim().equals("") ? 999 : Double.valueOf(parameters.get(1));
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. minAge [" + eventItem.getLookup() + "] should have a numeric value");
 					}
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. maxAge [" + eventItem.getLookup() + "] should have a numeric value");
-				}
-				
-				//parse windowStart and throw if needed
-				
-				windowStart = indexDate + timeWindowEvent;
-				windowEnd = indexDate; 
-				try {
+					
+					try {
+						if (parameters.size()>1) {
+							maxAge = parameters.get(1).trim().equals("") ? 999 : Double.valueOf(parameters.get(1));
+						}
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. maxAge [" + eventItem.getLookup() + "] should have a numeric value");
+					}
+					
+					if (pass == 1) {
+						minAges[itemNr] = minAge;
+						maxAges[itemNr] = maxAge;
+						continue;
+					}
+					firstMinAges[itemNr] = minAge;
+					firstMaxAges[itemNr] = maxAge;
+					
+					//parse windowStart and throw if needed
+					
+					int windowStart = indexDate + timeWindowEvent;
+					int windowEnd = indexDate; 
+					try {
 
-					if (parameters.size()>2 && !parameters.get(2).toLowerCase().equals("birth")) 
-						windowStart = indexDate+Integer.valueOf(parameters.get(2));
+						if (parameters.size()>2 && !parameters.get(2).toLowerCase().equals("birth")) 
+							windowStart = indexDate+Integer.valueOf(parameters.get(2));
 
-					if (parameters.size()>2 && parameters.get(2).toLowerCase().equals("birth"))
-						windowStart = patient.birthDate;
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement [" +eventItem.getLookup() + "] should have a numeric window start");
-				}
+						if (parameters.size()>2 && parameters.get(2).toLowerCase().equals("birth"))
+							windowStart = patient.birthDate;
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement [" +eventItem.getLookup() + "] should have a numeric window start");
+					}
 
-				try {
-					if (parameters.size()>3) {
-						if (parameters.get(3).toLowerCase().equals("cohortend"))
-							windowEnd = patient.getCohortEndDate();
-						else
-							windowEnd = Integer.valueOf(parameters.get(3))+indexDate;
-					}	
-				}
-				catch(NumberFormatException e)
-				{
-					throw new InvalidParameterException("Please check the script. measurement" + eventItem.getLookup() + "] should have a numeric window end or cohortend");
+					try {
+						if (parameters.size()>3) {
+							if (parameters.get(3).toLowerCase().equals("cohortend"))
+								windowEnd = patient.getCohortEndDate();
+							else
+								windowEnd = Integer.valueOf(parameters.get(3))+indexDate;
+						}	
+					}
+					catch(NumberFormatException e)
+					{
+						throw new InvalidParameterException("Please check the script. measurement" + eventItem.getLookup() + "] should have a numeric window end or cohortend");
+					}
+					windowStarts[itemNr] = windowStart;
+					windowEnds[itemNr] = windowEnd;
 				}
-				
-
-				if (StringUtils.upperCase(event.getType()).equals(StringUtils.upperCase(eventItem.getLookup().get(0))) && 
-						event.isInPeriod(windowStart,windowEnd) && 
-						(patient.getAge(event.date) >= minAge) && (patient.getAge(event.date) <= maxAge)) {
-					eventFreq.add(eventItem.getLabel());
+			}
+			
+			//check events are still sorted
+			EpisodeIndex index = patient.getEpisodeIndex();
+			if (!index.areEventsSorted()) {
+				Logging.add("Descriptives:Events were not sorted by date!");
+				throw new IllegalArgumentException("Events should be sorted by date!");
+			}
+			
+			//count the events in the window of each item
+			for (int itemNr = 0; itemNr < eventsList.size(); itemNr++) {
+				Item eventItem = eventsList.get(itemNr);
+				EpisodeIndex.Posting posting = index.getEventsIgnoreCase(eventItem.getLookup().get(0));
+				for (int i = posting.lowerBound(windowStarts[itemNr]); (i < posting.size()) && (posting.getDate(i) <= windowEnds[itemNr]); i++) {
+					double age = patient.getAge(posting.getDate(i));
+					boolean firstEvent = (posting.getPosition(i) == 0);
+					if ((age >= (firstEvent ? firstMinAges[itemNr] : minAges[itemNr])) && (age <= (firstEvent ? firstMaxAges[itemNr] : maxAges[itemNr]))) {
+						eventFreq.add(eventItem.getLabel());
+					}
 				}
 			}
-		}	
+		}
 		
 		//return comma-delimited set of results of found events
 		DelimitedStringBuilder result = new DelimitedStringBuilder(",");
@@ -1129,6 +1173,11 @@ public class IndexDateUtilities {
 	 * @return date
 	 */
 	public static int getFirstEventDate(Patient patient, List<String> eventLabels, boolean inCohort){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			int position = index.firstEvent(eventLabels, searchStart(patient, inCohort), searchEnd(patient, inCohort));
+			return position != -1 ? patient.getEvents().get(position).date : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if (event.inList(eventLabels) && (inCohort ? patient.dateInCohort(event.getDate(),true): true)){
@@ -1146,6 +1195,12 @@ public class IndexDateUtilities {
 	 * @return date
 	 */
 	public static int getFirstEventDate(Patient patient, String eventLabel, boolean inCohort){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			EpisodeIndex.Posting posting = index.getEvents(eventLabel);
+			int i = posting.first(searchStart(patient, inCohort), searchEnd(patient, inCohort));
+			return i != -1 ? posting.getDate(i) : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if (event.getType().equals(eventLabel)  && (inCohort ? patient.dateInCohort(event.getDate(),true): true)){
@@ -1164,6 +1219,11 @@ public class IndexDateUtilities {
 	 * @return date
 	 */
 	public static String getFirstEventType(Patient patient, List<String> eventLabels, boolean inCohort){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			int position = index.firstEvent(eventLabels, searchStart(patient, inCohort), searchEnd(patient, inCohort));
+			return position != -1 ? patient.getEvents().get(position).getType() : "";
+		}
 		String eventStr = "";
 		for (Event event : patient.getEvents()){
 			if (event.inList(eventLabels) && (inCohort ? patient.dateInCohort(event.getDate(),true): true)){
@@ -1181,6 +1241,12 @@ public class IndexDateUtilities {
 	 * @return date
 	 */
 	public static String getFirstEventType(Patient patient, String eventLabel, boolean inCohort){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			EpisodeIndex.Posting posting = index.getEvents(eventLabel);
+			int i = posting.first(searchStart(patient, inCohort), searchEnd(patient, inCohort));
+			return i != -1 ? patient.getEvents().get(posting.getPosition(i)).getType() : "";
+		}
 		String eventStr = "";
 		for (Event event : patient.getEvents()){
 			if (event.getType().equals(eventLabel)  && (inCohort ? patient.dateInCohort(event.getDate(),true): true)){
@@ -1192,6 +1258,12 @@ public class IndexDateUtilities {
 	}
 	
 	public static int  getTimeToNextEvent(Patient patient, int indexDate, List<String> eventLabels, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			long fromDate = Math.max(searchStart(patient, inCohort), includeIndexDate ? indexDate : indexDate + 1L);
+			int position = index.firstEvent(eventLabels, fromDate, searchEnd(patient, inCohort));
+			return position != -1 ? patient.getEvents().get(position).date - indexDate : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if ((includeIndexDate ? event.getDate()>=indexDate : event.getDate()>indexDate) &&
@@ -1207,6 +1279,12 @@ public class IndexDateUtilities {
 	}
 	
 	public static int  getTimeToNextEvent(Patient patient, int indexDate, String eventLabel, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			EpisodeIndex.Posting posting = index.getEvents(eventLabel);
+			int i = posting.first(Math.max(searchStart(patient, inCohort), includeIndexDate ? indexDate : indexDate + 1L), searchEnd(patient, inCohort));
+			return i != -1 ? posting.getDate(i) - indexDate : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if ((includeIndexDate ? event.getDate()>=indexDate : event.getDate()>indexDate) &&
@@ -1222,6 +1300,12 @@ public class IndexDateUtilities {
 	}
 	
 	public static int  getTimeToPreviousEvent(Patient patient, int indexDate, List<String> eventLabels, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			long toDate = Math.min(searchEnd(patient, inCohort), includeIndexDate ? indexDate : indexDate - 1L);
+			int position = index.lastEvent(eventLabels, searchStart(patient, inCohort), toDate);
+			return position != -1 ? indexDate - patient.getEvents().get(position).date : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if ((includeIndexDate ? event.getDate()<=indexDate : event.getDate()<indexDate) &&
@@ -1237,6 +1321,12 @@ public class IndexDateUtilities {
 	
 	
 	public static int  getTimeToPreviousEvent(Patient patient, int indexDate, String eventLabel, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areEventsSorted()) {
+			EpisodeIndex.Posting posting = index.getEvents(eventLabel);
+			int i = posting.last(searchStart(patient, inCohort), Math.min(searchEnd(patient, inCohort), includeIndexDate ? indexDate : indexDate - 1L));
+			return i != -1 ? indexDate - posting.getDate(i) : -1;
+		}
 		int date = -1;
 		for (Event event : patient.getEvents()){
 			if ((includeIndexDate ? event.getDate()<=indexDate : event.getDate()<indexDate) && 
@@ -1251,18 +1341,9 @@ public class IndexDateUtilities {
 	}
 	
 	public static int  getEventCount(Patient patient, int indexDate, String eventLabel, boolean inCohort, Integer windowStart, Integer windowEnd){
-		int count = 0;
-		for (Event event : patient.getEvents()) {
-			if (
-					event.getType().equals(eventLabel) && 
-					(inCohort ? patient.dateInCohort(event.getDate(),true): true) && 
-					((windowStart == null ? 0 : (indexDate + windowStart)) <= event.getDate()) && 
-					(event.getDate() < (windowEnd == null ? Integer.MAX_VALUE : (indexDate + windowEnd)))
-				) {
-				count++;
-			}
-		}
-		return count;
+		long fromDate = Math.max(searchStart(patient, inCohort), windowStart == null ? 0 : (indexDate + windowStart));
+		long toDate = Math.min(searchEnd(patient, inCohort), (windowEnd == null ? Integer.MAX_VALUE : (indexDate + windowEnd)) - 1L);
+		return patient.getEpisodeIndex().getEvents(eventLabel).count(fromDate, toDate);
 	}
 	
 	/**
@@ -1303,6 +1384,24 @@ public class IndexDateUtilities {
 	 * @return
 	 */
 	public static int  getTimeToNextMeasurement(Patient patient, int indexDate, Item item, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areMeasurementsSorted()) {
+			long fromDate = Math.max(searchStart(patient, inCohort), includeIndexDate ? indexDate : indexDate + 1L);
+			long toDate = searchEnd(patient, inCohort);
+			int first = -1;
+			for (String measurementLabel : item.getLookup()) {
+				EpisodeIndex.Posting posting = index.getMeasurementsIgnoreCase(measurementLabel);
+				for (int i = posting.lowerBound(fromDate); (i < posting.size()) && (posting.getDate(i) <= toDate); i++) {
+					int position = posting.getPosition(i);
+					if (item.getValue().equals("*") || patient.getMeasurements().get(position).getValue().equals(item.getValue())) {
+						if ((first == -1) || (position < first))
+							first = position;
+						break;
+					}
+				}
+			}
+			return first != -1 ? patient.getMeasurements().get(first).date - indexDate : -1;
+		}
 		int date = -1;
 		for (Measurement measurement : patient.getMeasurements()){
 			if ((includeIndexDate ? measurement.getDate()>=indexDate : measurement.getDate()>indexDate) && 
@@ -1356,6 +1455,23 @@ public class IndexDateUtilities {
 	 * @return
 	 */
 	public static int  getTimeToPreviousMeasurement(Patient patient, int indexDate, Item item, boolean inCohort, boolean includeIndexDate){
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.areMeasurementsSorted()) {
+			long fromDate = searchStart(patient, inCohort);
+			long toDate = Math.min(searchEnd(patient, inCohort), includeIndexDate ? indexDate : indexDate - 1L);
+			int last = -1;
+			for (String measurementLabel : item.getLookup()) {
+				EpisodeIndex.Posting posting = index.getMeasurementsIgnoreCase(measurementLabel);
+				for (int i = posting.upperBound(toDate) - 1; (i >= 0) && (posting.getDate(i) >= fromDate); i--) {
+					int position = posting.getPosition(i);
+					if (item.getValue().equals("*") || patient.getMeasurements().get(position).getValue().equals(item.getValue())) {
+						last = Math.max(last, position);
+						break;
+					}
+				}
+			}
+			return last != -1 ? indexDate - patient.getMeasurements().get(last).date : -1;
+		}
 		int date = -1;
 		for (Measurement measurement : patient.getMeasurements()){
 			if ((includeIndexDate ? measurement.getDate()<=indexDate : measurement.getDate()<indexDate) && 
@@ -1371,14 +1487,13 @@ public class IndexDateUtilities {
 	}
 	
 	public static int  getMeasurementCount(Patient patient, int indexDate, String eventLabel, boolean inCohort, Integer windowStart, Integer windowEnd){
+		long fromDate = Math.max(searchStart(patient, inCohort), windowStart == null ? 0 : (indexDate + windowStart));
+		long toDate = Math.min(searchEnd(patient, inCohort), (windowEnd == null ? Integer.MAX_VALUE : (indexDate + windowEnd)) - 1L);
+		EpisodeIndex.Posting posting = patient.getEpisodeIndex().getMeasurementsIgnoreCase(eventLabel);
 		int count = 0;
-		for (Measurement measurement : patient.getMeasurements()) {
-			if (
-					measurement.getType().equals(eventLabel) && 
-					(inCohort ? patient.dateInCohort(measurement.getDate(),true): true) && 
-					((windowStart == null ? 0 : (indexDate + windowStart)) <= measurement.getDate()) && 
-					(measurement.getDate() < (windowEnd == null ? Integer.MAX_VALUE : (indexDate + windowEnd)))
-				) {
+		for (int i = posting.lowerBound(fromDate); (i < posting.size()) && (posting.getDate(i) <= toDate); i++) {
+			//the posting ignores case, the measurement type has to match exactly
+			if (patient.getMeasurements().get(posting.getPosition(i)).getType().equals(eventLabel)) {
 				count++;
 			}
 		}
@@ -1398,6 +1513,23 @@ public class IndexDateUtilities {
 	 * @return time since the end of the last prescription in atcLabel. -1 if not found, 0 if still running.
 	 */
 	public static int  getTimeSincePreviousPrescription(Patient patient, int indexDate, List<String> atcLabels, boolean inCohort, boolean includeIndexDate, int windowStart) {
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.arePrescriptionsSorted()) {
+			long fromDate = searchStart(patient, inCohort);
+			long toDate = Math.min(searchEnd(patient, inCohort), includeIndexDate ? indexDate : indexDate - 1L);
+			int last = -1;
+			for (String atcLabel : atcLabels) {
+				EpisodeIndex.Posting posting = index.getPrescriptions(atcLabel);
+				for (int i = posting.upperBound(toDate) - 1; (i >= 0) && (posting.getDate(i) >= fromDate); i--) {
+					int position = posting.getPosition(i);
+					if (patient.getPrescriptions().get(position).getEndDate() >= windowStart) {
+						last = Math.max(last, position);
+						break;
+					}
+				}
+			}
+			return last != -1 ? Math.max(0, indexDate - patient.getPrescriptions().get(last).getEndDate()) : -1;
+		}
 		int date = -1;
 		for (Prescription prescription : patient.getPrescriptions()){
 			if (
@@ -1427,6 +1559,19 @@ public class IndexDateUtilities {
 	 * @return time to the start of the next prescription in atcLabel. -1 if not found, 0 if still running.
 	 */
 	public static int  getTimeToNextPrescription(Patient patient, int indexDate, List<String> atcLabels, boolean inCohort, boolean includeIndexDate, int windowEnd) {
+		EpisodeIndex index = patient.getEpisodeIndex();
+		if (index.arePrescriptionsSorted()) {
+			long fromDate = Math.max(searchStart(patient, inCohort), includeIndexDate ? indexDate : indexDate + 1L);
+			long toDate = Math.min(searchEnd(patient, inCohort), windowEnd - 1L);
+			int last = -1;
+			for (String atcLabel : atcLabels) {
+				EpisodeIndex.Posting posting = index.getPrescriptions(atcLabel);
+				int i = posting.last(fromDate, toDate);
+				if (i != -1)
+					last = Math.max(last, posting.getPosition(i));
+			}
+			return last != -1 ? Math.max(0, patient.getPrescriptions().get(last).getDate() - indexDate) : -1;
+		}
 		int date = -1;
 		for (Prescription prescription : patient.getPrescriptions()){
 			if (
@@ -1443,6 +1588,26 @@ public class IndexDateUtilities {
 		else return -1;
 	}
 	
+	/**
+	 * Returns the first date of the period searched in by the queries on the patient history.
+	 * @param patient			- patient object
+	 * @param inCohort			- only look within cohort time
+	 * @return the cohort start date if inCohort; the beginning of time otherwise
+	 */
+	private static long searchStart(Patient patient, boolean inCohort) {
+		return inCohort ? patient.getCohortStartDate() : Long.MIN_VALUE;
+	}
+	
+	/**
+	 * Returns the last date of the period searched in by the queries on the patient history.
+	 * As in patient.dateInCohort(date, true) the cohort end date is included.
+	 * @param patient			- patient object
+	 * @param inCohort			- only look within cohort time
+	 * @return the cohort end date if inCohort; the end of time otherwise
+	 */
+	private static long searchEnd(Patient patient, boolean inCohort) {
+		return inCohort ? patient.getCohortEndDate() : Long.MAX_VALUE;
+	}
 	
 
 }
@@ -53,6 +53,7 @@ import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.config.PropertiesManager;
 import org.erasmusmc.jerboa.config.Parameters;
+import org.erasmusmc.jerboa.dataClasses.ATCMatcher;
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.dataClasses.Patient;
@@ -74,10 +75,10 @@ import org.erasmusmc.jerboa.utilities.stats.Stats;
 public class InputFileUtilities {
 
 	//look-up tables for compression
-	public static DualHashBidiMap eventTypes = new DualHashBidiMap();
-	public static DualHashBidiMap prescriptionATCS = new DualHashBidiMap();
-	public static DualHashBidiMap measurementTypes = new DualHashBidiMap();
-	public static DualHashBidiMap measurementValues = new DualHashBidiMap();
+	public static SymbolTable eventTypes = new SymbolTable();
+	public static SymbolTable prescriptionATCS = new SymbolTable();
+	public static SymbolTable measurementTypes = new SymbolTable();
+	public static SymbolTable measurementValues = new SymbolTable();
 
 	//look-ups for the extended columns - not mandatory data
 	public static HashMap<String, DualHashBidiMap> lookupsExtended; // = initLookupExtendedColumns(FilePaths.LOOKUPS_PATH);
@@ -89,14 +90,14 @@ public class InputFileUtilities {
 	 * @param file - the input file containing the list of codes
 	 * @return - a bidirectional map with the codes found in file
 	 */
-	public static DualHashBidiMap createCodeList(String file){
+	public static SymbolTable createCodeList(String file){
 		try{
 			//open the file containing the mapping
 			BufferedReader br  = new BufferedReader(new InputStreamReader(
 					new FileInputStream(file)));
 
 			String strLine = "";
-			DualHashBidiMap list = new DualHashBidiMap();
+			SymbolTable list = new SymbolTable();
 			while ((strLine = br.readLine()) != null){
 				String[] split = strLine.split(Character.toString(DataDefinition.TAB_DELIMITER),2);
 				Integer index = Integer.valueOf(split[0]);
@@ -107,7 +108,7 @@ public class InputFileUtilities {
 			return list;
 
 		}catch(IOException e){
-			return new DualHashBidiMap();
+			return new SymbolTable();
 		}
 	}
 
@@ -120,6 +121,7 @@ public class InputFileUtilities {
 		String filePath = FilePaths.LOOKUPS_PATH;
 		eventTypes = createCodeList(filePath+FilePaths.FILE_EVENT_TYPES);
 		prescriptionATCS = createCodeList(filePath+FilePaths.FILE_PRESCRIPTION_TYPES);
+		ATCMatcher.clearGroupMatchers();
 		measurementTypes = createCodeList(filePath+FilePaths.FILE_MEASUREMENT_TYPES);
 		measurementValues = createCodeList(filePath+FilePaths.FILE_MEASUREMENT_VALUES);
 
@@ -169,6 +171,7 @@ public class InputFileUtilities {
 
 		if (lookUpsPath != null && !lookUpsPath.equals("")){
 			prescriptionATCS = createCodeList(lookUpsPath+FilePaths.FILE_PRESCRIPTION_TYPES);
+			ATCMatcher.clearGroupMatchers();
 		}else{
 			Logging.add("Invalid path for look-up tables.", Logging.ERROR);
 			Logging.add("Please check the look-up tables are in the same working folder.");
@@ -257,7 +260,7 @@ public class InputFileUtilities {
 	 */
 	public static int addToList(DualHashBidiMap list, String value){
 		if (list == null)
-			list = new DualHashBidiMap();
+			list = new SymbolTable();
 		if (!list.containsValue(value))
 			list.put(list.size(),value);
 		return (int)list.getKey(value);
@@ -798,19 +801,19 @@ public class InputFileUtilities {
 		return (int)lookUp.getKey(episodeType);
 	}
 
-	public static DualHashBidiMap getEventTypes() {
+	public static SymbolTable getEventTypes() {
 		return eventTypes;
 	}
 
-	public static DualHashBidiMap getPrescriptionAtcs() {
+	public static SymbolTable getPrescriptionAtcs() {
 		return prescriptionATCS;
 	}
 
-	public static DualHashBidiMap getMeasurementTypes() {
+	public static SymbolTable getMeasurementTypes() {
 		return measurementTypes;
 	}
 
-	public static DualHashBidiMap getMeasurementValues() {
+	public static SymbolTable getMeasurementValues() {
 		return measurementValues;
 	}
 
@@ -826,7 +829,7 @@ public class InputFileUtilities {
 		if (lookupsExtended == null)
 			lookupsExtended = new HashMap<String, DualHashBidiMap>();
 		if (lookupsExtended.get(episodeType+"_"+extendedColumn) == null)
-			lookupsExtended.put(episodeType+"_"+extendedColumn, new DualHashBidiMap());
+			lookupsExtended.put(episodeType+"_"+extendedColumn, new SymbolTable());
 		return lookupsExtended.get(episodeType+"_"+extendedColumn);
 	}
 
@@ -1188,4 +1191,4 @@ public class InputFileUtilities {
 		return 0;
 	}
 
-}
+}
@@ -0,0 +1,496 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.util.Arrays;
+
+import org.apache.commons.lang3.text.StrMatcher;
+
+/**
+ * Reusable tokenizer splitting a line of an input file into columns.
+ * Instead of creating a string for each column, it keeps the offsets of the columns
+ * in an internal buffer, so that integer and date columns can be parsed directly and
+ * columns that are not needed are never turned into strings.
+ * The tokens are the same as the ones of a StrTokenizer using the same delimiter and
+ * the quote matcher, without trimming and keeping the empty tokens: a column starting
+ * with a single or double quote is read until the matching quote, in which the
+ * delimiter is not taken into account and a doubled quote stands for the quote itself.
+ * An instance is meant to be used by a single thread.
+ */
+public class LineTokenizer {
+
+	//the delimiter of the columns
+	private StrMatcher delimiter;
+
+	//the current line
+	private char[] buffer = new char[256];
+	private int length;
+
+	//the columns of the current line
+	private int size;
+	private int[] starts = new int[16];
+	private int[] ends = new int[16];
+	private String[] unquoted = new String[16];	//the value of a quoted column; null if not quoted
+
+	//flags for the columns to be turned into strings; null if all are needed
+	private boolean[] neededColumns;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the delimiter of the columns.
+	 * @param delimiter - the field delimiter of the input file
+	 */
+	public LineTokenizer(StrMatcher delimiter){
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * Constructor receiving the delimiter of the columns and the columns
+	 * that are to be retrieved by toArray().
+	 * @param delimiter - the field delimiter of the input file
+	 * @param neededColumns - a flag for each column; true if it is needed; null if all are needed
+	 */
+	public LineTokenizer(StrMatcher delimiter, boolean[] neededColumns){
+		this.delimiter = delimiter;
+		this.neededColumns = neededColumns;
+	}
+
+	/**
+	 * Splits line into columns. The previous line is discarded.
+	 * @param line - a line from the input file
+	 * @return - this tokenizer
+	 */
+	public LineTokenizer reset(String line){
+		length = line == null ? 0 : line.length();
+		if (buffer.length < length)
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		if (line != null)
+			line.getChars(0, length, buffer, 0);
+		tokenize();
+		return this;
+	}
+
+	/**
+	 * Splits the characters of a line into columns. The previous line is discarded.
+	 * @param chars - the buffer containing the line
+	 * @param offset - the start of the line in the buffer
+	 * @param length - the number of characters in the line
+	 * @return - this tokenizer
+	 */
+	public LineTokenizer reset(char[] chars, int offset, int length){
+		this.length = length;
+		if (buffer.length < length)
+			buffer = new char[Math.max(length, buffer.length * 2)];
+		System.arraycopy(chars, offset, buffer, 0, length);
+		tokenize();
+		return this;
+	}
+
+	/**
+	 * Finds the offsets of the columns in the current line.
+	 */
+	private void tokenize(){
+		size = 0;
+		int pos = 0;
+		while (pos < length){
+			int start = pos;
+			int match = delimiter.isMatch(buffer, pos, 0, length);
+			if (match > 0){
+				//empty column
+				addColumn(start, start, null);
+				pos += match;
+			}else if (isQuote(buffer[pos])){
+				pos = readQuoted(pos);
+			}else{
+				while (pos < length && (match = delimiter.isMatch(buffer, pos, 0, length)) == 0)
+					pos++;
+				addColumn(start, pos, null);
+				pos += match;
+			}
+			//the line ends with a delimiter
+			if (pos == length && match > 0)
+				addColumn(length, length, null);
+		}
+	}
+
+	/**
+	 * Reads a column starting with a quote. The quotes are removed from its value.
+	 * @param start - the position of the opening quote
+	 * @return - the position after the delimiter ending the column; the length of the line if last column
+	 */
+	private int readQuoted(int start){
+		char quote = buffer[start];
+		StringBuilder value = new StringBuilder();
+		boolean quoting = true;
+		int pos = start + 1;
+		while (pos < length){
+			if (quoting){
+				if (buffer[pos] == quote){
+					//a doubled quote stands for the quote itself
+					if (pos + 1 < length && buffer[pos + 1] == quote){
+						value.append(quote);
+						pos += 2;
+					}else{
+						quoting = false;
+						pos++;
+					}
+				}else{
+					value.append(buffer[pos++]);
+				}
+			}else{
+				int match = delimiter.isMatch(buffer, pos, 0, length);
+				if (match > 0){
+					addColumn(start, pos, value.toString());
+					pos += match;
+					if (pos == length)
+						addColumn(length, length, null);
+					return pos;
+				}
+				if (buffer[pos] == quote){
+					quoting = true;
+					pos++;
+				}else{
+					value.append(buffer[pos++]);
+				}
+			}
+		}
+		addColumn(start, length, value.toString());
+		return length;
+	}
+
+	/**
+	 * Checks if a character is a quote.
+	 * @param c - the character to be checked
+	 * @return - true if c is a single or double quote; false otherwise
+	 */
+	private static boolean isQuote(char c){
+		return c == '"' || c == '\'';
+	}
+
+	/**
+	 * Adds a column to the current line.
+	 * @param start - the start of the column in the buffer
+	 * @param end - the end (exclusive) of the column in the buffer
+	 * @param value - the value of the column without quotes; null if the column is not quoted
+	 */
+	private void addColumn(int start, int end, String value){
+		if (size == starts.length){
+			starts = Arrays.copyOf(starts, size * 2);
+			ends = Arrays.copyOf(ends, size * 2);
+			unquoted = Arrays.copyOf(unquoted, size * 2);
+		}
+		starts[size] = start;
+		ends[size] = end;
+		unquoted[size] = value;
+		size++;
+	}
+
+	//GETTERS FOR COLUMNS
+	/**
+	 * Returns the number of columns in the current line.
+	 * @return - the number of columns
+	 */
+	public int size(){
+		return size;
+	}
+
+	/**
+	 * Returns the position of the first character of a column
+	 * in the buffer of the tokenizer, quotes included.
+	 * @param column - the index of the column
+	 * @return - the start of the column
+	 */
+	public int getStart(int column){
+		return starts[column];
+	}
+
+	/**
+	 * Returns the position after the last character of a column
+	 * in the buffer of the tokenizer, quotes included.
+	 * @param column - the index of the column
+	 * @return - the end (exclusive) of the column
+	 */
+	public int getEnd(int column){
+		return ends[column];
+	}
+
+	/**
+	 * Returns the buffer holding the current line. Only the
+	 * characters between the offsets of a column are relevant.
+	 * @return - the buffer of the tokenizer
+	 */
+	public char[] getBuffer(){
+		return buffer;
+	}
+
+	/**
+	 * Checks if a column is needed.
+	 * @param column - the index of the column
+	 * @return - true if the column is to be retrieved by toArray(); false otherwise
+	 */
+	public boolean isNeeded(int column){
+		return neededColumns == null || (column < neededColumns.length && neededColumns[column]);
+	}
+
+	/**
+	 * Returns the value of a column.
+	 * @param column - the index of the column
+	 * @return - the value of the column as it is in the line, without the quotes
+	 */
+	public String getString(int column){
+		checkColumn(column);
+		return unquoted[column] != null ? unquoted[column] :
+			new String(buffer, starts[column], ends[column] - starts[column]);
+	}
+
+	/**
+	 * Returns the value of a column without leading and trailing white spaces.
+	 * @param column - the index of the column
+	 * @return - the trimmed value of the column, without the quotes
+	 */
+	public String getTrimmed(int column){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return unquoted[column].trim();
+		int start = trimStart(column);
+		return new String(buffer, start, trimEnd(column, start) - start);
+	}
+
+	/**
+	 * Checks if a column is empty or contains only white spaces.
+	 * @param column - the index of the column
+	 * @return - true if the column has no value; false otherwise
+	 */
+	public boolean isEmpty(int column){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return unquoted[column].trim().isEmpty();
+		return trimStart(column) == ends[column];
+	}
+
+	/**
+	 * Checks if the value of a column is equal to a string, without creating a string for the column.
+	 * @param column - the index of the column
+	 * @param value - the value to compare with
+	 * @return - true if the trimmed value of the column equals value; false otherwise
+	 */
+	public boolean equals(int column, String value){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return unquoted[column].trim().equals(value);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		if (end - start != value.length())
+			return false;
+		for (int i = start; i < end; i++)
+			if (buffer[i] != value.charAt(i - start))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Checks if a column holds an integer that can be retrieved by getInt(int),
+	 * that is an optional sign followed by at most nine digits.
+	 * @param column - the index of the column
+	 * @return - true if the column is a small enough integer; false otherwise
+	 */
+	public boolean isInt(int column){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return false;
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		if (start < end && (buffer[start] == '-' || buffer[start] == '+'))
+			start++;
+		if (start == end || end - start > 9)
+			return false;
+		for (int i = start; i < end; i++)
+			if (buffer[i] < '0' || buffer[i] > '9')
+				return false;
+		return true;
+	}
+
+	/**
+	 * Parses an integer column without creating a string for it.
+	 * @param column - the index of the column
+	 * @return - the value of the column as integer
+	 * @throws NumberFormatException - if the column is not an integer
+	 */
+	public int getInt(int column){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return Integer.parseInt(unquoted[column].trim());
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		if (start == end)
+			throw new NumberFormatException("Empty value in column "+column);
+		boolean negative = buffer[start] == '-';
+		if (negative || buffer[start] == '+')
+			start++;
+		if (start == end || end - start > 10)
+			return Integer.parseInt(new String(buffer, starts[column], ends[column] - starts[column]).trim());
+		long value = 0;
+		for (int i = start; i < end; i++){
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				throw new NumberFormatException("For input string: \""+getString(column)+"\"");
+			value = value * 10 + digit;
+		}
+		value = negative ? -value : value;
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new NumberFormatException("For input string: \""+getString(column)+"\"");
+		return (int)value;
+	}
+
+	/**
+	 * Converts a date column into the number of days since the first legal date.
+	 * A legal date in the expected format is parsed without creating a string for it,
+	 * any other value is left to DateUtilities, which reports it the same way as for
+	 * a string column.
+	 * @param column - the index of the column
+	 * @param format - the format of the date as defined in DateUtilities
+	 * @return - the date in days; null if the date is not valid
+	 * @see DateUtilities#dateToDays(String, byte)
+	 */
+	public Integer getDays(int column, byte format){
+		checkColumn(column);
+		if (unquoted[column] != null)
+			return DateUtilities.dateToDays(unquoted[column].trim(), format);
+		int start = trimStart(column);
+		int end = trimEnd(column, start);
+		if (format == DateUtilities.DATE_INVALID || end - start != (format % 2 == 0 ? 8 : 10))
+			return DateUtilities.dateToDays(getTrimmed(column), format);
+
+		int year, month, day;
+		switch (format){
+		case DateUtilities.DATE_ON_YYYYMMDD:
+			year = parseDigits(start, 4);
+			month = parseDigits(start + 4, 2);
+			day = parseDigits(start + 6, 2);
+			break;
+		case DateUtilities.DATE_ON_YYYYMMDD_WITH_SEPARATOR:
+			year = parseDigits(start, 4);
+			month = parseDigits(start + 5, 2);
+			day = parseDigits(start + 8, 2);
+			break;
+		case DateUtilities.DATE_ON_DDMMYYYY:
+			year = parseDigits(start + 4, 4);
+			month = parseDigits(start + 2, 2);
+			day = parseDigits(start, 2);
+			break;
+		case DateUtilities.DATE_ON_DDMMYYYY_WITH_SEPARATOR:
+			year = parseDigits(start + 6, 4);
+			month = parseDigits(start + 3, 2);
+			day = parseDigits(start, 2);
+			break;
+		default:
+			return DateUtilities.dateToDays(getTrimmed(column), format);
+		}
+
+		Integer days = DateUtilities.legalDateToDays(year, month, day);
+		return days != null ? days : DateUtilities.dateToDays(getTrimmed(column), format);
+	}
+
+	/**
+	 * Checks if a column exists in the current line. The internal arrays
+	 * may still hold the offsets of the columns of a longer previous line.
+	 * @param column - the index of the column
+	 * @throws ArrayIndexOutOfBoundsException - if the current line has no such column
+	 */
+	private void checkColumn(int column){
+		if (column >= size)
+			throw new ArrayIndexOutOfBoundsException(column);
+	}
+
+	/**
+	 * Parses a number of digits from the buffer.
+	 * @param start - the position of the first digit
+	 * @param digits - the number of digits
+	 * @return - the parsed number; -1 if not only digits
+	 */
+	private int parseDigits(int start, int digits){
+		int value = 0;
+		for (int i = start; i < start + digits; i++){
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9)
+				return -1;
+			value = value * 10 + digit;
+		}
+		return value;
+	}
+
+	/**
+	 * Returns the position of the first character of a column that is not a white space.
+	 * @param column - the index of the column
+	 * @return - the start of the trimmed column
+	 */
+	private int trimStart(int column){
+		int start = starts[column];
+		while (start < ends[column] && buffer[start] <= ' ')
+			start++;
+		return start;
+	}
+
+	/**
+	 * Returns the position after the last character of a column that is not a white space.
+	 * @param column - the index of the column
+	 * @param start - the start of the trimmed column
+	 * @return - the end (exclusive) of the trimmed column
+	 */
+	private int trimEnd(int column, int start){
+		int end = ends[column];
+		while (end > start && buffer[end - 1] <= ' ')
+			end--;
+		return end;
+	}
+
+	/**
+	 * Returns the columns of the current line as strings. The columns that
+	 * are not needed are returned as empty strings, without being copied.
+	 * @return - an array containing the columns of the current line
+	 */
+	public String[] toArray(){
+		String[] columns = new String[size];
+		for (int i = 0; i < size; i++)
+			columns[i] = isNeeded(i) ? getString(i) : "";
+		return columns;
+	}
+
+	//GETTERS AND SETTERS
+	public StrMatcher getDelimiter(){
+		return delimiter;
+	}
+
+	public void setDelimiter(StrMatcher delimiter){
+		this.delimiter = delimiter;
+	}
+
+	public boolean[] getNeededColumns(){
+		return neededColumns;
+	}
+
+	public void setNeededColumns(boolean[] neededColumns){
+		this.neededColumns = neededColumns;
+	}
+
+}
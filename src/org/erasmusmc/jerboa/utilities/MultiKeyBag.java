@@ -37,6 +37,7 @@ import org.apache.commons.collections.*;
 import org.apache.commons.collections.keyvalue.*;
 import org.apache.commons.collections.bag.*;
 import org.apache.commons.collections.bag.HashBag;
+import org.apache.commons.collections.iterators.AbstractIteratorDecorator;
 import org.apache.commons.lang3.*;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import org.apache.commons.beanutils.*;
@@ -70,9 +71,18 @@ public class MultiKeyBag {
 	private TreeMap<Integer, TreeSet<String>> keyStrings;
 
 	//the bags
-	private Bag masterBag;
+	private ModificationCountingBag masterBag;
 	private Bag decoratedBag;
 
+	//the unique keys in the order they were added; the position is the key id
+	private List<Object> keyList;
+
+	//per key component the ids of the keys having a certain value
+	private List<HashMap<Object, KeyIds>> postings;
+
+	//the number of modifications of the master bag reflected in the index
+	private int indexedModifications;
+
 	private boolean LOG = false;
 	private Timer timer;
 
@@ -81,12 +91,13 @@ public class MultiKeyBag {
 	 *Basic constructor.
 	 */
 	public MultiKeyBag() {
-		this.masterBag = new HashBag();
+		this.masterBag = new ModificationCountingBag(new HashBag());
 		this.maxSize = 1;
 		this.updateKeyValues = false;
 
 		this.keyObjects = new TreeMap<Integer, TreeSet<Object>>();
 		this.keyStrings = new TreeMap<Integer, TreeSet<String>>();
+		clearIndex();
 		if (LOG) {
 			this.timer = new Timer();
 		}
@@ -99,7 +110,7 @@ public class MultiKeyBag {
 	 * @param multiKeyStr - the key defining the transformation
 	 */
 	public MultiKeyBag(final String[] multiKeyStr) {
-		this.masterBag = new HashBag();
+		this.masterBag = new ModificationCountingBag(new HashBag());
 		this.multiKey = multiKeyStr;
 		this.maxSize = this.multiKey.length;
 		this.decoratedBag = TransformedBag.decorate(masterBag,
@@ -109,6 +120,7 @@ public class MultiKeyBag {
 
 		this.keyObjects = new TreeMap<Integer, TreeSet<Object>>();
 		this.keyStrings = new TreeMap<Integer, TreeSet<String>>();
+		clearIndex();
 		if (LOG) {
 			this.timer = new Timer();
 		}
@@ -126,7 +138,11 @@ public class MultiKeyBag {
 		}
 
 		this.updateKeyValues = true;
-		masterBag.add(data);
+		boolean indexed = isIndexUpToDate();
+		if (masterBag.add(data) && indexed)
+			addToIndex(data);
+		if (indexed)
+			indexedModifications = masterBag.modifications;
 	}
 
 	/**
@@ -141,7 +157,24 @@ public class MultiKeyBag {
 		}
 
 		this.updateKeyValues = true;
-		masterBag.add(data, nbCopies);
+		boolean indexed = isIndexUpToDate();
+		if (masterBag.add(data, nbCopies) && indexed)
+			addToIndex(data);
+		if (indexed)
+			indexedModifications = masterBag.modifications;
+	}
+
+	/**
+	 * Adds all the data of another bag to this bag, keeping the counts.
+	 * Used to combine the bags filled by different threads.
+	 * @param other - the bag to be added to this bag
+	 */
+	public final void merge(final MultiKeyBag other) {
+		if (other != null) {
+			for (Object data : other.masterBag.uniqueSet()) {
+				add(data, other.masterBag.getCount(data));
+			}
+		}
 	}
 
 	//GETTERS
@@ -215,8 +248,9 @@ public class MultiKeyBag {
 			if (multiKey.size() != maxSize) {
 				throw new IllegalArgumentException("contains() can only be called with a key of size equal to the multiKey size");
 			}
-			boolean init = false;
-			return recursiveContains(multiKey,init);
+			if (multiKey.getWildCardIndex() == -1)
+				return masterBag.contains(multiKey);
+			return match(multiKey, multiKey.size(), -1, multiKey.size()).size > 0;
 		} else
 			return false;
 	}
@@ -266,14 +300,13 @@ public class MultiKeyBag {
 	 */
 	public MultiKeyBag getSubBag(int keyComponentIndex, Object keyComponent) {
 		if (keyComponentIndex < 4) {
-			TreeSet<ExtendedMultiKey> keySet = getSortedKeySet(keyComponentIndex);
+			updateIndex();
 			MultiKeyBag subBag = new MultiKeyBag();
-			for (ExtendedMultiKey key : keySet){
-				if (key.getKey(keyComponentIndex).equals(keyComponent)){
-					long count = getCount(key);
-					//make sure there are occurrences of the formed key
-					if (count != 0)
-						subBag.add(key, (int) count);
+			KeyIds ids = keyComponentIndex < postings.size() ? postings.get(keyComponentIndex).get(keyComponent) : null;
+			if (ids != null) {
+				for (int i = 0; i < ids.size; i++) {
+					Object key = keyList.get(ids.ids[i]);
+					subBag.add(key, masterBag.getCount(key));
 				}
 			}
 			return subBag;
@@ -296,13 +329,10 @@ public class MultiKeyBag {
 	public TreeMap<Object, Object> getSubBagAsMap(int keyComponentIndex, ExtendedMultiKey multiKey) {
 		if (keyComponentIndex < 4) {
 			TreeMap<Object, Object> subMap = new TreeMap<Object, Object>();
-			Set<Object> keySet = getKeyComponentValuesAsObjects(keyComponentIndex);
-			for (Object keyValue : keySet){
-				multiKey = multiKey.setKeyComponent(keyComponentIndex, keyValue);
-				long count = getCount(multiKey);
+			for (Map.Entry<Object, Long> entry : countPerValue(keyComponentIndex, multiKey, multiKey.size()).entrySet()){
 				//make sure we have occurences of the formed multikey
-				if (count != 0)
-					subMap.put(keyValue, count);
+				if (entry.getValue() != 0)
+					subMap.put(entry.getKey(), entry.getValue());
 			}
 
 			return subMap;
@@ -325,11 +355,8 @@ public class MultiKeyBag {
 	public HashBag getSubBagAsHashBag(int keyComponentIndex, ExtendedMultiKey multiKey) {
 		if (keyComponentIndex < 4) {
 			HashBag subBag = new HashBag();
-			Set<Object> keySet = getKeyComponentValuesAsObjects(keyComponentIndex);
-			for (Object keyValue : keySet){
-				multiKey = multiKey.setKeyComponent(keyComponentIndex, keyValue);
-				subBag.add(keyValue, (int)getCount(multiKey));
-			}
+			for (Map.Entry<Object, Long> entry : countPerValue(keyComponentIndex, multiKey, multiKey.size()).entrySet())
+				subBag.add(entry.getKey(), entry.getValue().intValue());
 			return subBag;
 		}
 
@@ -343,23 +370,20 @@ public class MultiKeyBag {
 	 * @return an unsorted hash bag with integers as key and frequency as value
 	 */
 	public HashBag getHistogram(ExtendedMultiKey multiSubKey) {
-		//Set<ExtendedMultiKey> keySet = getSortedKeySet();
-		@SuppressWarnings("unchecked")
-		Set<ExtendedMultiKey> keySet = masterBag.uniqueSet();
+		KeyIds ids = match(multiSubKey, multiSubKey.size(), -1, -1);
 
 		HashBag frequencyBag = new HashBag();
 		boolean found = false;
-		for (ExtendedMultiKey key : keySet) {
-			if (key.isSubset(multiSubKey)) {
-				if(key.isLastNumeric()) {
-					//multiply frequency of the key
-					frequencyBag.add(key.getKey(key.size() - 1), getMasterBag().getCount(key));
-				} else {
-					//add a single item
-					frequencyBag.add(getMasterBag().getCount(key));
-				}
-				found = true;
+		for (int id = 0; id < ids.size; id++) {
+			ExtendedMultiKey key = (ExtendedMultiKey) keyList.get(ids.ids[id]);
+			if(key.isLastNumeric()) {
+				//multiply frequency of the key
+				frequencyBag.add(key.getKey(key.size() - 1), getMasterBag().getCount(key));
+			} else {
+				//add a single item
+				frequencyBag.add(getMasterBag().getCount(key));
 			}
+			found = true;
 		}
 
 		return (found ? frequencyBag : null);
@@ -375,25 +399,16 @@ public class MultiKeyBag {
 	 */
 	public TreeMap<Object,Integer> getHistogramRec(ExtendedMultiKey multiSubKey) {
 
-		extractKeyComponentValuesAsObjects();
-		Set<Object> keyValues = null;
 		TreeMap<Object,Integer> frequencyBag = null; //holds the final histogram
 
 		if ((multiSubKey.getKey(multiSubKey.size()-1) instanceof Wildcard && multiSubKey.size() == maxSize) ||
 			(multiSubKey.size() == maxSize-1)){
 			frequencyBag = new TreeMap<Object,Integer>();
-			//get all the numeric values
-			keyValues = getKeyValuesAsObject(maxSize-1);
+			//sum the frequencies of the full keys matching the sub key per numeric value
+			HashMap<Object, Long> frequencies = countPerValue(maxSize-1, multiSubKey, maxSize);
 			double doubleKey;
-			for (Object key : keyValues) {
-				ExtendedMultiKey fullKey = null;
-				//if the multikey is full size fill in the numeric value otherwise add it
-				if (multiSubKey.size() == maxSize) {
-					fullKey = multiSubKey.setKeyComponent(maxSize-1, key);
-				} else {
-					fullKey = multiSubKey.add(key);
-				}
-				long frequency = getCount(fullKey);
+			for (Object key : frequencies.keySet()) {
+				long frequency = frequencies.get(key);
 				if (key instanceof Integer){
 					Integer intKey = (Integer) key;
 					doubleKey = intKey.intValue();
@@ -481,28 +496,6 @@ public class MultiKeyBag {
 
 	//********************************* PRIVATE METHODS ****************************************//
 
-	/**
-	 * Determines recursively if the bag contains a multikey.
-	 * Wild cards are allowed.
-	 * @param multiKey - the multikey of interest
-	 * @return - true the bag contains the multikey; false otherwise
-	 */
-	private boolean recursiveContains(ExtendedMultiKey multiKey, boolean contains) {
-		int wildCardIndex = multiKey.getWildCardIndex();
-		if (wildCardIndex != -1) {
-			TreeSet<Object> keyValues = getKeyValuesAsObject(wildCardIndex);
-			for (Object key : keyValues) {
-				if (contains) {
-					break;
-				}
-				ExtendedMultiKey newKey = multiKey.setKeyComponent(wildCardIndex, key);
-				contains = recursiveContains(newKey,contains);
-			}
-		}
-
-		return contains || masterBag.contains(multiKey);
-	}
-
 	/** Returns a StatisticalSummary if the multi key bag has an integer as last key.
 	 * @param multiSubKey - sub key for the stats, asterisks are allowed as "*".
 	 * The length should be lower than the size of key in this bag, e.g.,
@@ -514,21 +507,17 @@ public class MultiKeyBag {
 		StatisticalSummary summary = new StatisticalSummary();
 		DescriptiveStatistics stats = new DescriptiveStatistics();
 
-		//Set<ExtendedMultiKey> keySet = getSortedKeySet();
-		@SuppressWarnings("unchecked")
-		Set<ExtendedMultiKey> keySet = masterBag.uniqueSet();
+		KeyIds ids = match(multiSubKey, multiSubKey.size(), -1, -1);
 
 		boolean found = false;
 
-		for (ExtendedMultiKey key : keySet) {
-			//System.out.println("key "+key);
-			if (key.isSubset(multiSubKey)) {
-				found = true;
-				int value = (Integer) key.getKey(key.size() - 1);
-				int frequency = getMasterBag().getCount(key);
-				for (int i=1; i <= frequency; i++){
-					stats.addValue(value);
-				}
+		for (int id = 0; id < ids.size; id++) {
+			ExtendedMultiKey key = (ExtendedMultiKey) keyList.get(ids.ids[id]);
+			found = true;
+			int value = (Integer) key.getKey(key.size() - 1);
+			int frequency = getMasterBag().getCount(key);
+			for (int i=1; i <= frequency; i++){
+				stats.addValue(value);
 			}
 		}
 
@@ -559,86 +548,151 @@ public class MultiKeyBag {
 
 	/**
 	 * Retrieves the count of occurrences of multiKey.
-	 * Makes use of the recursive count method of this class.
+	 * Wild cards are resolved by intersecting the posting lists of the other key components.
 	 * @param multiKey - the multi key of interest
 	 * @return - the number of occurrences for multiKey
 	 */
 	private long count(ExtendedMultiKey multiKey){
-		long init = 0;
-		return recursiveCount(multiKey, init);
-		//return iterativeCount(multiKey);
+		//get the count of the fully instantiated key
+		if (multiKey.getWildCardIndex() == -1)
+			return masterBag.getCount(multiKey);
+
+		//sum the counts of the keys matching the instantiated components
+		long count = 0;
+		KeyIds ids = match(multiKey, multiKey.size(), -1, multiKey.size());
+		for (int i = 0; i < ids.size; i++)
+			count += masterBag.getCount(keyList.get(ids.ids[i]));
+
+		return count;
 	}
 
 	/**
-	 * Count the number of elements with multiKey.
-	 * Wild cards are allowed. NOTE: that the recursion
-	 * could result in keys that have no values! A check
-	 * should be put in place for formed keys with no occurence
-	 * in the bag (i.e., count is 0)
-	 * @param multiKey - the multikey of interest
-	 * @param count - updated counter using recursion
-	 * @return - the total number of elements
-	 */
-	private long recursiveCount(ExtendedMultiKey multiKey, long count){
-		//get the index of the first wildcard in this key
-		int wildCardIndex = multiKey.getWildCardIndex();
-
-		//if there is a wildcard then instantiate all values
-		//any other wildcards are instantiated automatically by tail recursion
-		if (wildCardIndex != -1){
-			TreeSet<Object> keyValues = getKeyValuesAsObject(wildCardIndex);
-			if (keyValues != null) {
-				for (Object key : keyValues){
-					ExtendedMultiKey newKey = multiKey.setKeyComponent(wildCardIndex, key);
-					count = recursiveCount(newKey,count);
-				}
-			}else {
-				count = 0;
-			}
+	 * Sums the counts of the keys of size keySize matching multiKey per value of the key
+	 * component at keyComponentIndex. The key component of multiKey found at keyComponentIndex
+	 * is ignored, as well as the components of multiKey beyond keySize.
+	 * @param keyComponentIndex - the index of the key component of interest
+	 * @param multiKey - the multi key to be matched (wild cards allowed)
+	 * @param keySize - the size of the keys to be counted
+	 * @return - a map with the key component values as keys and the sum of their counts as values
+	 */
+	private HashMap<Object, Long> countPerValue(int keyComponentIndex, ExtendedMultiKey multiKey, int keySize){
+		HashMap<Object, Long> counts = new HashMap<Object, Long>();
+		if (keyComponentIndex >= keySize)
+			return counts;
+
+		KeyIds ids = match(multiKey, Math.min(multiKey.size(), keySize), keyComponentIndex, keySize);
+		for (int i = 0; i < ids.size; i++) {
+			MultiKey key = (MultiKey) keyList.get(ids.ids[i]);
+			Object value = key.getKey(keyComponentIndex);
+			Long count = counts.get(value);
+			counts.put(value, (count == null ? 0 : count) + masterBag.getCount(key));
 		}
 
-		//get the count of the fully instantiated key
-		return count += masterBag.getCount(multiKey);
+		return counts;
 	}
 
+	//********************************* INDEX ****************************************//
+
 	/**
-	 * Count the number of elements with multiKey.
-	 * Wild cards are allowed. NOT FINISHED YET!
-	 * @param multiKey - the multikey of interest
-	 * @return - the total number of elements
+	 * Removes all the keys from the index.
 	 */
-	@SuppressWarnings("unused")
-	private long iterativeCount(ExtendedMultiKey multiKey){
-		long count = 0;
-		int  numberOfWildcards = multiKey.getNrWildcards();
-		int  wildCardIndex;
-		List<Integer> wildcardIndices = multiKey.getWildCardIndices();
+	private void clearIndex(){
+		keyList = new ArrayList<Object>();
+		postings = new ArrayList<HashMap<Object, KeyIds>>();
+		indexedModifications = masterBag.modifications;
+	}
 
-		switch (numberOfWildcards) {
-		case 0: return masterBag.getCount(multiKey);
+	/**
+	 * Checks if all modifications of the master bag are reflected in the index.
+	 * @return - true if the index is up to date; false otherwise
+	 */
+	private boolean isIndexUpToDate(){
+		return indexedModifications == masterBag.modifications;
+	}
 
-		case 1: wildCardIndex = wildcardIndices.get(0);
-		for (Object key : getKeyValuesAsObject(wildCardIndex)){
-			ExtendedMultiKey multiKeyNew = multiKey.setKeyComponent(wildCardIndex, key);
-			count += masterBag.getCount(multiKeyNew);
+	/**
+	 * Adds a new unique key to the index. Each key component value
+	 * gets the id of the key added to its posting list.
+	 * @param data - the key that was not yet in the bag
+	 */
+	private void addToIndex(Object data){
+		int id = keyList.size();
+		keyList.add(data);
+		if (data instanceof MultiKey) {
+			MultiKey key = (MultiKey) data;
+			for (int i = 0; i < key.size(); i++) {
+				if (postings.size() <= i)
+					postings.add(new HashMap<Object, KeyIds>());
+				KeyIds ids = postings.get(i).get(key.getKey(i));
+				if (ids == null) {
+					ids = new KeyIds();
+					postings.get(i).put(key.getKey(i), ids);
+				}
+				ids.add(id);
+			}
 		}
-		return count;
+	}
 
-		case 2: for (int i=0;i<wildcardIndices.size();i++){
-			wildCardIndex = wildcardIndices.get(i);
+	/**
+	 * Rebuilds the index if the master bag was changed without passing
+	 * through this class, e.g., via the decorated bag or a removal.
+	 */
+	private void updateIndex(){
+		if (!isIndexUpToDate()) {
+			clearIndex();
+			for (Object data : masterBag.uniqueSet())
+				addToIndex(data);
 		}
-		int index1 = wildcardIndices.get(0);
-		int index2 = wildcardIndices.get(1);
-		for (Object key1 : getKeyValuesAsObject(index1)){
-			ExtendedMultiKey multiKeyNew1 = multiKey.setKeyComponent(index1, key1);
-			for (Object key2 : getKeyValuesAsObject(index2)){
-				ExtendedMultiKey multiKeyNew2 = multiKeyNew1.setKeyComponent(index2, key2);
-				count += masterBag.getCount(multiKeyNew2);
+	}
+
+	/**
+	 * Retrieves the ids of the keys matching the first length components of multiKey.
+	 * Wild cards and the component at skipIndex match any value. The posting lists
+	 * of the other components are intersected, starting from the shortest one.
+	 * @param multiKey - the multi key to be matched (wild cards allowed)
+	 * @param length - the number of components of multiKey to be matched
+	 * @param skipIndex - the index of a component to be ignored; -1 if none
+	 * @param keySize - the size of the keys to be retrieved; -1 if all keys
+	 * with at least length components should be retrieved
+	 * @return - the ids of the matching keys in ascending order
+	 */
+	private KeyIds match(ExtendedMultiKey multiKey, int length, int skipIndex, int keySize){
+		updateIndex();
+
+		//retrieve the posting lists of the instantiated components
+		List<KeyIds> lists = new ArrayList<KeyIds>();
+		for (int i = 0; i < length; i++) {
+			Object value = multiKey.getKey(i);
+			if (i != skipIndex && !(value instanceof Wildcard)) {
+				KeyIds ids = i < postings.size() ? postings.get(i).get(value) : null;
+				if (ids == null)
+					return new KeyIds();
+				lists.add(ids);
 			}
 		}
-		return count;
-		default: return count;
+		Collections.sort(lists);
+
+		//intersect the posting lists
+		KeyIds result = new KeyIds();
+		int nbCandidates = lists.isEmpty() ? keyList.size() : lists.get(0).size;
+		int[] positions = new int[lists.size()];
+		for (int c = 0; c < nbCandidates; c++) {
+			int id = lists.isEmpty() ? c : lists.get(0).ids[c];
+			boolean found = true;
+			for (int l = 1; found && l < lists.size(); l++) {
+				KeyIds ids = lists.get(l);
+				int index = Arrays.binarySearch(ids.ids, positions[l], ids.size, id);
+				found = index >= 0;
+				positions[l] = found ? index + 1 : -index - 1;
+			}
+			if (found && keyList.get(id) instanceof MultiKey) {
+				int size = ((MultiKey) keyList.get(id)).size();
+				if (keySize == -1 ? size >= length : size == keySize)
+					result.add(id);
+			}
 		}
+
+		return result;
 	}
 
 	/**
@@ -669,13 +723,12 @@ public class MultiKeyBag {
 	 * @param keyIndex - the index of the multi key component of interest
 	 * @return - a sorted set of unique key component values as String representation
 	 */
-	@SuppressWarnings({"unchecked" })
 	private TreeSet<String> getKeyComponentValuesAsString(int keyIndex){
 		if (keyIndex >= 0 && keyIndex <= 4){ //a key of 5 elements is maximum supported
 			//retrieve unique values of the key component at keyIndex
 			TreeSet<String> uniqueValues = new TreeSet<String>();
-			for (MultiKey key : (Set<MultiKey>)masterBag.uniqueSet())
-				uniqueValues.add(key.getKey(keyIndex).toString());
+			for (Object value : getKeyComponentValuesAsObjects(keyIndex))
+				uniqueValues.add(value.toString());
 			return uniqueValues;
 		}
 
@@ -687,13 +740,13 @@ public class MultiKeyBag {
 	 * @param keyIndex - the index of the multi key component of interest
 	 * @return - a sorted set of unique key component values under an Object representation
 	 */
-	@SuppressWarnings({"unchecked" })
 	private TreeSet<Object> getKeyComponentValuesAsObjects(int keyIndex){
 		if (keyIndex >= 0 && keyIndex <= 4){ //a key of 5 elements is maximum supported
-			//retrieve unique values of the key component at keyIndex
+			//retrieve unique values of the key component at keyIndex from the index
+			updateIndex();
 			TreeSet<Object> uniqueValues = new TreeSet<Object>();
-			for (MultiKey key : (Set<MultiKey>)masterBag.uniqueSet())
-				uniqueValues.add(key.getKey(keyIndex));
+			if (keyIndex < postings.size())
+				uniqueValues.addAll(postings.get(keyIndex).keySet());
 			return uniqueValues;
 		}
 
@@ -703,42 +756,10 @@ public class MultiKeyBag {
 	/**
 	 * Extracts all individual components of the MultiKeys.
 	 */
-	@SuppressWarnings({"unchecked" })
 	private void extractKeyComponentValuesAsObjects(){
-		//TODO: how to do this in an array to loop over?
-
 		if (updateKeyValues) {
-			TreeSet<Object> uniqueValuesKey0 = new TreeSet<Object>();
-			TreeSet<Object> uniqueValuesKey1 = new TreeSet<Object>();
-			TreeSet<Object> uniqueValuesKey2 = new TreeSet<Object>();
-			TreeSet<Object> uniqueValuesKey3 = new TreeSet<Object>();
-			TreeSet<Object> uniqueValuesKey4 = new TreeSet<Object>();
-			Set<ExtendedMultiKey> keySet = masterBag.uniqueSet();
-
-			for (MultiKey key : keySet){
-				for (int i = 0; i < key.size(); i++) {
-					Object component = new Object();
-					component = key.getKey(i);
-					switch (i) {
-					case 0: uniqueValuesKey0.add(component); break;
-					case 1: uniqueValuesKey1.add(component); break;
-					case 2: uniqueValuesKey2.add(component); break;
-					case 3: uniqueValuesKey3.add(component); break;
-					case 4: uniqueValuesKey4.add(component); break;
-					default: break;
-					}
-				}
-			}
-			for (int i = 0; i < 5; i++) {
-				switch (i) {
-				case 0: keyObjects.put(i, uniqueValuesKey0); break;
-				case 1: keyObjects.put(i, uniqueValuesKey1); break;
-				case 2: keyObjects.put(i, uniqueValuesKey2); break;
-				case 3: keyObjects.put(i, uniqueValuesKey3); break;
-				case 4: keyObjects.put(i, uniqueValuesKey4); break;
-				default: break;
-				}
-			}
+			for (int i = 0; i < ExtendedMultiKey.MAX_COMPONENTS; i++)
+				keyObjects.put(i, getKeyComponentValuesAsObjects(i));
 
 			updateKeyValues = false;
 		}
@@ -804,6 +825,103 @@ public class MultiKeyBag {
 		}
 	}
 
+	/**
+	 * Nested class holding a growing list of key ids in ascending order.
+	 * Comparable by the number of ids in order to intersect the shortest lists first.
+	 */
+	private static class KeyIds implements Comparable<KeyIds>{
+		int[] ids = new int[4];
+		int size;
+
+		/**
+		 * Adds a key id at the end of the list.
+		 * @param id - the key id; higher than the ids in the list
+		 */
+		private void add(int id){
+			if (size == ids.length)
+				ids = Arrays.copyOf(ids, size * 2);
+			ids[size++] = id;
+		}
+
+		@Override
+		public int compareTo(KeyIds other){
+			return Integer.compare(size, other.size);
+		}
+	}
+
+	/**
+	 * Nested class counting the modifications of the decorated bag.
+	 * Used to detect the changes of the master bag that did not
+	 * pass through the add methods of the multi key bag.
+	 */
+	private static class ModificationCountingBag extends AbstractBagDecorator{
+		int modifications;
+
+		//CONSTRUCTOR
+		private ModificationCountingBag(Bag bag){
+			super(bag);
+		}
+
+		@Override
+		public boolean add(Object object){
+			modifications++;
+			return super.add(object);
+		}
+
+		@Override
+		public boolean add(Object object, int nCopies){
+			modifications++;
+			return super.add(object, nCopies);
+		}
+
+		@Override
+		public boolean addAll(Collection coll){
+			modifications++;
+			return super.addAll(coll);
+		}
+
+		@Override
+		public boolean remove(Object object){
+			modifications++;
+			return super.remove(object);
+		}
+
+		@Override
+		public boolean remove(Object object, int nCopies){
+			modifications++;
+			return super.remove(object, nCopies);
+		}
+
+		@Override
+		public boolean removeAll(Collection coll){
+			modifications++;
+			return super.removeAll(coll);
+		}
+
+		@Override
+		public boolean retainAll(Collection coll){
+			modifications++;
+			return super.retainAll(coll);
+		}
+
+		@Override
+		public void clear(){
+			modifications++;
+			super.clear();
+		}
+
+		@Override
+		public Iterator iterator(){
+			return new AbstractIteratorDecorator(super.iterator()){
+				@Override
+				public void remove(){
+					modifications++;
+					super.remove();
+				}
+			};
+		}
+	}
+
 	//ATTRIBUTE GETTERS AND SETTERS
 	public String[] getMultiKeyStr() {
 		return multiKey;
@@ -818,7 +936,9 @@ public class MultiKeyBag {
 	}
 
 	public void setMasterBag(Bag uberBag) {
-		this.masterBag = uberBag;
+		this.masterBag = new ModificationCountingBag(uberBag);
+		clearIndex();
+		masterBag.modifications++;
 	}
 
 	public Bag getBag() {
@@ -941,4 +1061,4 @@ public class MultiKeyBag {
 		//Check contains
 		System.out.println("Contains: " + bag.contains(new ExtendedMultiKey("Male",Wildcard.INTEGER(), "10-20",Wildcard.INTEGER())));
 	}
-}
+}
@@ -302,10 +302,12 @@ public class OutputBagStats {
 	}
 
 	/**
-	 * Closes the output buffer assigned to the output file name.
+	 * Closes the output buffer assigned to the output file name
+	 * and stops the writer thread of the output manager.
 	 */
 	public void close(){
 		outputManager.closeFile(outputFilename);
+		outputManager.closeAll();
 	}
 
 }
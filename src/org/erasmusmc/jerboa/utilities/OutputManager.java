@@ -31,16 +31,39 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.Parameters;
 
 /**
  * Handles the output from the modules/filters across the application.
+ * In asynchronous mode the buffers that reach their size limit are handed off
+ * to a background thread which writes them to file, so that the processing
+ * threads do not wait for the disk. Flushing or closing a file explicitly
+ * waits until all the data handed off so far is written.
  *
  * @author bmosseveld
  *
@@ -52,31 +75,45 @@ public class OutputManager {
 	// Output storage for unit tests
 	private Map<String, List<String>> output = new HashMap<String, List<String>>();
 
+	// Output of the threads that are deferring their output
+	private ThreadLocal<DeferredOutput> deferred = new ThreadLocal<DeferredOutput>();
+
 	private long DEFAULT_FLUSH_THRESHOLD = 1024 * 1024; //1 MB
 	private long OVERALL_FLUSH_THRESHOLD = 10 * 1024 * 1024; //10 MB
 
+	// The cumulative size of all buffers, kept up to date on every write
+	private long overallBufferSize = 0;
+
+	// Asynchronous output
+	private boolean asynchronous;
+	private BlockingQueue<PendingWrite> pendingWrites;
+	private Thread writerThread;
+	// Written buffers kept for reuse; also taken back by the writer thread
+	private BlockingQueue<StrBuilder> spareBuffers = new ArrayBlockingQueue<StrBuilder>(Parameters.OUTPUT_QUEUE_SIZE);
+
+	/**
+	 * Constructor of an output manager. The output is written
+	 * asynchronously if so defined in the parameters.
+	 */
+	public OutputManager() {
+		this(Parameters.ASYNC_OUTPUT);
+	}
+
+	/**
+	 * Constructor of an output manager.
+	 * @param asynchronous - true if the buffers should be written to file by a background thread
+	 */
+	public OutputManager(boolean asynchronous) {
+		this.asynchronous = asynchronous;
+	}
+
 	/**
 	 * Will add a file to the list of output files to be handled.
 	 * @param fileName - the name of the output file to be added
 	 * @return - true if the file was added successfully and opened for writing
 	 */
 	public boolean addFile(String fileName) {
-		boolean result = false;
-		if (!Jerboa.unitTest) {
-			if (buffers.get(fileName) == null) {
-				newFile(fileName);
-				thresholds.put(fileName, DEFAULT_FLUSH_THRESHOLD);
-				result = true;
-			}
-		}
-		else {
-			List<String> fileOutput = new ArrayList<String>();
-			fileOutput.add("");
-			output.put(fileName, fileOutput);
-			result = true;
-		}
-
-		return result;
+		return addFile(fileName, DEFAULT_FLUSH_THRESHOLD, deferred.get());
 	}
 
 	/**
@@ -86,11 +123,41 @@ public class OutputManager {
 	 * @return - true if the file was added successfully and opened for writing
 	 */
 	public boolean addFile(String fileName, long thresholdMB) {
+		return addFile(fileName, thresholdMB * 1024 * 1024, deferred.get());
+	}
+
+	/**
+	 * Will add a file to the list of output files to be handled. If the output of the
+	 * calling thread is deferred, the file is added when the deferred output is committed.
+	 * @param fileName - the name of the output file to be added
+	 * @param threshold - the buffer size for this output file in bytes
+	 * @param deferredOutput - the deferred output of the calling thread; null if not deferred
+	 * @return - true if the file was added successfully and opened for writing
+	 */
+	private boolean addFile(String fileName, long threshold, DeferredOutput deferredOutput) {
+		if (deferredOutput != null) {
+			if (!Jerboa.unitTest && hasFile(fileName, deferredOutput)) {
+				return false;
+			}
+			deferredOutput.files.add(fileName);
+			deferredOutput.writes.add(new DeferredWrite(fileName, threshold));
+			return true;
+		}
+		return addFileNow(fileName, threshold);
+	}
+
+	/**
+	 * Adds a file to the list of output files to be handled.
+	 * @param fileName - the name of the output file to be added
+	 * @param threshold - the buffer size for this output file in bytes
+	 * @return - true if the file was added successfully and opened for writing
+	 */
+	private synchronized boolean addFileNow(String fileName, long threshold) {
 		boolean result = false;
 		if (!Jerboa.unitTest) {
 			if (buffers.get(fileName) == null) {
 				newFile(fileName);
-				thresholds.put(fileName, thresholdMB * 1024 * 1024);
+				thresholds.put(fileName, threshold);
 				result = true;
 			}
 		}
@@ -109,6 +176,44 @@ public class OutputManager {
 	 * @return - true if the file already exists in the buffers; false otherwise
 	 */
 	public boolean hasFile(String fileName) {
+		DeferredOutput deferredOutput = deferred.get();
+		return deferredOutput != null ? hasFile(fileName, deferredOutput) : hasFileNow(fileName);
+	}
+
+	/**
+	 * Checks if fileName was added by the calling thread while its output is deferred
+	 * or by the output committed before it. The latter is only known once the output
+	 * preceding that of the calling thread is committed, so it is waited for if needed.
+	 * @param fileName - the name of the file
+	 * @param deferredOutput - the deferred output of the calling thread
+	 * @return - true if the file exists when the deferred output is committed; false otherwise
+	 */
+	private boolean hasFile(String fileName, DeferredOutput deferredOutput) {
+		if (deferredOutput.files.contains(fileName) || hasFileNow(fileName)) {
+			return true;
+		}
+		if (deferredOutput.previous != null) {
+			try {
+				deferredOutput.previous.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			catch (ExecutionException e) {
+				//the output was not committed, so the files are the ones known so far
+			}
+			deferredOutput.previous = null;
+			return hasFileNow(fileName);
+		}
+		return false;
+	}
+
+	/**
+	 * Checks if fileName is among the elements in buffers.
+	 * @param fileName - the name of the file
+	 * @return - true if the file already exists in the buffers; false otherwise
+	 */
+	private synchronized boolean hasFileNow(String fileName) {
 		boolean result = false;
 		if (!Jerboa.unitTest) {
 			result = (this.buffers.get(fileName) != null);
@@ -149,22 +254,43 @@ public class OutputManager {
 	 * @param append - true if data should be appended to file; false otherwise
 	 */
 	private void write(String fileName, String data, boolean newLine, boolean append) {
+		DeferredOutput deferredOutput = deferred.get();
+		if (deferredOutput != null) {
+			deferredOutput.writes.add(new DeferredWrite(fileName, data, newLine, append));
+		}
+		else {
+			writeNow(fileName, data, newLine, append);
+		}
+	}
+
+	/**
+	 * Writes data to the buffer of fileName, flushing the buffers if their size limit is reached.
+	 * @param fileName - the name of the output file
+	 * @param data - the data to be appended
+	 * @param newLine - true if an end of line character should be added; falso otherwise
+	 * @param append - true if data should be appended to file; false otherwise
+	 */
+	private synchronized void writeNow(String fileName, String data, boolean newLine, boolean append) {
 		if (!Jerboa.unitTest) {
 			if (!append) {
 				newFile(fileName);
 			}
 			StrBuilder buffer = buffers.get(fileName);
+			int length = buffer.length();
 			if (newLine) {
 				buffer.appendln(data);
 			}
 			else {
 				buffer.append(data);
 			}
-			if (getOverallBufferSize() > OVERALL_FLUSH_THRESHOLD) {
-				flushAll();
+			overallBufferSize += buffer.length() - length;
+			if (overallBufferSize > OVERALL_FLUSH_THRESHOLD) {
+				for (String bufferFileName : buffers.keySet()) {
+					output(bufferFileName);
+				}
 			}
 			else if (buffer.length() > thresholds.get(fileName)) {
-				flush(fileName);
+				output(fileName);
 			}
 		}
 		else {
@@ -182,38 +308,77 @@ public class OutputManager {
 		}
 	}
 
+	//DEFERRED OUTPUT
 	/**
-	 * Returns the buffer cumulative buffer size of all buffers used.
-	 * @return - the sum of all buffers used by all output files
+	 * Starts deferring the output written by the calling thread. Until the deferred
+	 * output is retrieved, the files added and the data written by this thread are kept
+	 * in memory, in the order they were added or written. Used when processing the patients
+	 * in parallel, so that the output can be committed in the same order as if it was
+	 * processed sequentially.
 	 */
-	private long getOverallBufferSize() {
-		long overallSize = 0;
-		if (!Jerboa.unitTest) {
-			for (String fileName : buffers.keySet()) {
-				overallSize += buffers.get(fileName).length();
+	public void deferOutput() {
+		deferOutput(null);
+	}
+
+	/**
+	 * Starts deferring the output written by the calling thread, which is committed after
+	 * the output of another thread. Whether a file exists is then answered as it would be
+	 * once that output is committed, so that a file and its header are only added once.
+	 * @param previous - completes when the output preceding that of this thread is committed; null if none
+	 */
+	public void deferOutput(Future<?> previous) {
+		deferred.set(new DeferredOutput(previous));
+	}
+
+	/**
+	 * Stops deferring the output of the calling thread and returns
+	 * the files added and the data written by this thread since deferOutput().
+	 * @return - the deferred output of this thread; null if the output was not deferred
+	 */
+	public List<DeferredWrite> getDeferredOutput() {
+		DeferredOutput deferredOutput = deferred.get();
+		deferred.remove();
+		return deferredOutput == null ? null : deferredOutput.writes;
+	}
+
+	/**
+	 * Adds the files and writes the data of the deferred output to the output buffers in
+	 * the order they were added or written.
+	 * @param deferredWrites - the output retrieved via getDeferredOutput()
+	 */
+	public synchronized void commit(List<DeferredWrite> deferredWrites) {
+		if (deferredWrites != null) {
+			for (DeferredWrite write : deferredWrites) {
+				if (write.newFile) {
+					addFileNow(write.fileName, write.threshold);
+				}
+				else {
+					writeNow(write.fileName, write.data, write.newLine, write.append);
+				}
 			}
 		}
-
-		return overallSize;
 	}
 
 	/**
 	 * Closes all buffers that are assigned to the output files.
 	 * @return - true if all buffers were successfully closed
 	 */
-	public boolean closeAll() {
+	public synchronized boolean closeAll() {
 		boolean result = false;
 		if (!Jerboa.unitTest) {
 			for (String fileName : buffers.keySet()) {
 				if (buffers.get(fileName) != null) {
-					flush(fileName);
+					output(fileName);
 					result &= true;
 				}else
 					result &= false;
 			}
+			waitForOutput();
 			buffers.clear();
 			thresholds.clear();
+			overallBufferSize = 0;
 		}
+		stopWriter();
 		return result;
 	}
 
@@ -222,12 +387,12 @@ public class OutputManager {
 	 * @param fileName - the name of the file to close
 	 * @return - true if the buffer was successfully closed; false otherwise
 	 */
-	public boolean closeFile(String fileName) {
+	public synchronized boolean closeFile(String fileName) {
 		boolean result = false;
 		if (!Jerboa.unitTest) {
 			if (buffers.get(fileName) != null) {
 				flush(fileName);
-				buffers.remove(fileName);
+				overallBufferSize -= buffers.remove(fileName).length();
 				thresholds.remove(fileName);
 				result = true;
 			}
@@ -238,29 +403,119 @@ public class OutputManager {
 
 	/**
 	 * Writes the contents of the output buffer assigned to fileName to file.
+	 * In asynchronous mode it returns when all data handed off so far is written.
 	 * @param fileName - the output file to be flushed
 	 */
-	public void flush(String fileName) {
+	public synchronized void flush(String fileName) {
 		if (!Jerboa.unitTest) {
-			StrBuilder buffer = buffers.get(fileName);
-			if (buffer != null) {
-				//if (logDebugInfo > 0) Logging.add(" -> Flush" + Parameters.NEW_LINE);
-				FileUtilities.outputData(fileName, buffer, true);
-			}
-			newBuffer(fileName);
+			output(fileName);
+			waitForOutput();
 		}
 	}
 
 	/**
 	 * Writes the contents of all the output buffers to their assigned files.
+	 * In asynchronous mode it returns when all data handed off so far is written.
 	 */
-	public void flushAll() {
+	public synchronized void flushAll() {
 		if (!Jerboa.unitTest) {
 			for (String fileName: buffers.keySet()) {
 				if (buffers.get(fileName) != null) {
-					flush(fileName);
+					output(fileName);
 				}
 			}
+			waitForOutput();
+		}
+	}
+
+	/**
+	 * Writes the contents of the output buffer assigned to fileName to file and
+	 * replaces it by an empty buffer. An empty buffer is kept. In asynchronous mode the buffer is handed off
+	 * to the writer thread, which may block if too many buffers are waiting.
+	 * @param fileName - the output file to be flushed
+	 */
+	private void output(String fileName) {
+		StrBuilder buffer = buffers.get(fileName);
+		if ((buffer != null) && (buffer.length() == 0)) {
+			//nothing to write
+			return;
+		}
+		if (buffer != null) {
+			overallBufferSize -= buffer.length();
+			if (asynchronous) {
+				handOff(new PendingWrite(fileName, buffer, true));
+			}
+			else {
+				//if (logDebugInfo > 0) Logging.add(" -> Flush" + Parameters.NEW_LINE);
+				FileUtilities.outputData(fileName, buffer, true);
+				recycle(buffer);
+			}
+		}
+		newBuffer(fileName);
+	}
+
+	/**
+	 * Passes a write to the writer thread, starting it if needed.
+	 * @param write - the data to be written
+	 */
+	private void handOff(PendingWrite write) {
+		//also restarts a writer thread that was interrupted; it leaves the data waiting in the queue
+		if ((writerThread == null) || (!writerThread.isAlive())) {
+			if (pendingWrites == null) {
+				pendingWrites = new ArrayBlockingQueue<PendingWrite>(Parameters.OUTPUT_QUEUE_SIZE);
+			}
+			writerThread = new Thread(new OutputWriter(), "Jerboa output writer");
+			writerThread.setDaemon(true);
+			writerThread.start();
+		}
+		try {
+			pendingWrites.put(write);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits until the writer thread has written all the data handed off so far.
+	 */
+	private void waitForOutput() {
+		if (writerThread != null) {
+			PendingWrite barrier = new PendingWrite(null, null, true);
+			handOff(barrier);
+			try {
+				barrier.written.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Stops the writer thread, if any, after it has written all the data handed off so far.
+	 * A new writer thread is started when data is written again.
+	 */
+	private void stopWriter() {
+		if (writerThread != null) {
+			handOff(PendingWrite.STOP);
+			try {
+				writerThread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			writerThread = null;
+			pendingWrites = null;
+		}
+	}
+
+	/**
+	 * Keeps a buffer that was written to file for reuse, if there are not enough spare buffers.
+	 * It does not lock the output manager, as it is called by the writer thread.
+	 * @param buffer - a buffer that was written to file
+	 */
+	private void recycle(StrBuilder buffer) {
+		if (buffer.capacity() <= 2 * DEFAULT_FLUSH_THRESHOLD) {
+			buffer.clear();
+			spareBuffers.offer(buffer);
 		}
 	}
 
@@ -276,9 +531,19 @@ public class OutputManager {
 	 * @param fileName
 	 */
 	private void newFile(String fileName) {
+		StrBuilder buffer = buffers.get(fileName);
+		if (buffer != null) {
+			overallBufferSize -= buffer.length();
+		}
 		newBuffer(fileName);
-		//will automatically create any sub folders in the filename
-		FileUtilities.writeStringToFile(fileName, buffers.get(fileName).toString(), false);
+		if (asynchronous) {
+			//the file is emptied in turn with the data still waiting to be written
+			handOff(new PendingWrite(fileName, new StrBuilder(), false));
+		}
+		else {
+			//will automatically create any sub folders in the filename
+			FileUtilities.writeStringToFile(fileName, buffers.get(fileName).toString(), false);
+		}
 	}
 
 	/**
@@ -286,7 +551,179 @@ public class OutputManager {
 	 * @param fileName - the file assigned to the output buffer
 	 */
 	private void newBuffer(String fileName) {
-		buffers.put(fileName, new StrBuilder());
+		StrBuilder buffer = spareBuffers.poll();
+		buffers.put(fileName, buffer == null ? new StrBuilder() : buffer);
+	}
+
+	/**
+	 * Holds a buffer handed off to the writer thread. A write without a
+	 * file name is a barrier that is counted down when reached.
+	 */
+	private static class PendingWrite {
+		//stops the writer thread when reached
+		private static final PendingWrite STOP = new PendingWrite(null, null, false);
+
+		private final String fileName;
+		private final StrBuilder data;
+		private final boolean append;
+		private final CountDownLatch written;
+
+		private PendingWrite(String fileName, StrBuilder data, boolean append) {
+			this.fileName = fileName;
+			this.data = data;
+			this.append = append;
+			this.written = (fileName == null ? new CountDownLatch(1) : null);
+		}
+	}
+
+	/**
+	 * Writes the handed off buffers to file, in the order they were handed off,
+	 * through a file channel and a direct byte buffer.
+	 */
+	private class OutputWriter implements Runnable {
+
+		private static final int CHUNK_SIZE = 64 * 1024;
+
+		private char[] chars = new char[CHUNK_SIZE];
+		private ByteBuffer bytes = ByteBuffer.allocateDirect(4 * CHUNK_SIZE);
+		private CharsetEncoder encoder = Charset.defaultCharset().newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private boolean failed = false;
+
+		@Override
+		public void run() {
+			while (true) {
+				PendingWrite write;
+				try {
+					write = pendingWrites.take();
+				} catch (InterruptedException e) {
+					//the data still waiting is written by the next writer thread
+					Thread.currentThread().interrupt();
+					return;
+				}
+				if (write == PendingWrite.STOP) {
+					return;
+				}
+				else if (write.fileName == null) {
+					write.written.countDown();
+				}
+				//keep taking the data after an error so that the processing threads are not blocked
+				else if (!failed) {
+					try {
+						output(write);
+					} catch (Throwable e) {
+						failed = true;
+						Logging.add("Unable to output to "+write.fileName, Logging.ERROR);
+						Logging.outputStackTrace(e);
+						Jerboa.stop(true);
+					}
+					if (write.append) {
+						recycle(write.data);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Appends the data to the file or replaces the file by the data.
+		 * @param write - the data to be written
+		 * @throws IOException - if the file cannot be written
+		 */
+		private void output(PendingWrite write) throws IOException {
+			File file = new File(write.fileName);
+			if (!file.exists())
+				new File(FilenameUtils.getFullPath(write.fileName)).mkdirs();
+			FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					write.append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				StrBuilder data = write.data;
+				CharBuffer in = CharBuffer.wrap(chars);
+				in.limit(0);
+				encoder.reset();
+				int offset = 0;
+				boolean endOfInput = false;
+				while (!endOfInput) {
+					//keep the characters not encoded yet, e.g. half a surrogate pair
+					in.compact();
+					int length = Math.min(in.remaining(), data.length() - offset);
+					data.getChars(offset, offset + length, chars, in.position());
+					in.position(in.position() + length);
+					in.flip();
+					offset += length;
+					endOfInput = (offset == data.length());
+					CoderResult result;
+					while ((result = encoder.encode(in, bytes, endOfInput)).isOverflow()) {
+						drain(channel);
+					}
+					if (result.isError()) {
+						result.throwException();
+					}
+				}
+				while (encoder.flush(bytes).isOverflow()) {
+					drain(channel);
+				}
+				drain(channel);
+			} finally {
+				channel.close();
+			}
+		}
+
+		/**
+		 * Writes the encoded bytes to the channel.
+		 * @param channel - the channel of the output file
+		 * @throws IOException - if the file cannot be written
+		 */
+		private void drain(FileChannel channel) throws IOException {
+			bytes.flip();
+			while (bytes.hasRemaining()) {
+				channel.write(bytes);
+			}
+			bytes.clear();
+		}
+	}
+
+	/**
+	 * Holds a file added or the data written by a thread while its output is deferred.
+	 */
+	public static class DeferredWrite {
+		private final String fileName;
+		private final String data;
+		private final boolean newLine;
+		private final boolean append;
+		private final long threshold;
+		private final boolean newFile;
+
+		private DeferredWrite(String fileName, String data, boolean newLine, boolean append) {
+			this.fileName = fileName;
+			this.data = data;
+			this.newLine = newLine;
+			this.append = append;
+			this.threshold = 0;
+			this.newFile = false;
+		}
+
+		private DeferredWrite(String fileName, long threshold) {
+			this.fileName = fileName;
+			this.data = null;
+			this.newLine = false;
+			this.append = true;
+			this.threshold = threshold;
+			this.newFile = true;
+		}
+	}
+
+	/**
+	 * Holds the output of a thread while it is deferred.
+	 */
+	private static class DeferredOutput {
+		private final List<DeferredWrite> writes = new ArrayList<DeferredWrite>();
+		private final Set<String> files = new HashSet<String>();
+		private Future<?> previous;
+
+		private DeferredOutput(Future<?> previous) {
+			this.previous = previous;
+		}
 	}
 
 }
@@ -0,0 +1,286 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Measurement;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.Prescription;
+
+/**
+ * Reads patient objects from binary patient object files (POF) created by the PatientObjectWriter.
+ * The patients are returned one at a time, in the order they were written. The episodes
+ * that are not requested are skipped without being decoded.
+ *
+ * @see PatientObjectWriter
+ */
+public class PatientObjectReader {
+
+	//the file being read
+	private String fileName;
+	private DataInputStream stream;
+
+	//the current record and the position within it
+	private byte[] record;
+	private int position;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the path to a binary patient object file.
+	 * The header of the file is checked upon opening.
+	 * @param fileName - the path to the patient object file
+	 */
+	public PatientObjectReader(String fileName){
+		this.fileName = fileName;
+		this.record = new byte[1024];
+		try{
+			stream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), 1 << 16));
+			if (stream.readInt() != DataDefinition.PATIENT_OBJECT_FILE_MAGIC ||
+					stream.readByte() != DataDefinition.PATIENT_OBJECT_FILE_VERSION){
+				Logging.add("The file "+fileName+" is not a valid patient object file", Logging.ERROR);
+				close();
+				Jerboa.stop(true);
+			}
+		}catch(IOException e){
+			Logging.add("Unable to open the patient object file "+fileName, Logging.ERROR);
+			close();
+			Jerboa.stop(true);
+		}
+	}
+
+	/**
+	 * Checks if the file is a binary patient object file by looking at its header.
+	 * @param fileName - the path to the file
+	 * @return - true if the file starts with the binary patient object file header; false otherwise
+	 */
+	public static boolean isBinary(String fileName){
+		DataInputStream in = null;
+		try{
+			in = new DataInputStream(new FileInputStream(fileName));
+			return in.readInt() == DataDefinition.PATIENT_OBJECT_FILE_MAGIC;
+		}catch(IOException e){
+			return false;
+		}finally{
+			if (in != null)
+				try{
+					in.close();
+				}catch(IOException e){}
+		}
+	}
+
+	/**
+	 * Reads the next patient from the file.
+	 * @param withEvents - true if the patient should be loaded with its events; false otherwise
+	 * @param withPrescriptions - true if the patient should be loaded with its prescriptions; false otherwise
+	 * @param withMeasurements - true if the patient should be loaded with its measurements; false otherwise
+	 * @return - the next patient in the file or null if the end of the file was reached
+	 */
+	public Patient next(boolean withEvents, boolean withPrescriptions, boolean withMeasurements){
+
+		if (stream == null)
+			return null;
+
+		try{
+			//retrieve the next record
+			int length;
+			try{
+				length = readVarInt(stream);
+			}catch(EOFException e){
+				return null;
+			}
+			if (record.length < length)
+				record = new byte[Math.max(length, record.length * 2)];
+			stream.readFully(record, 0, length);
+			position = 0;
+
+			//patient details
+			String subset = readString();
+			String ID = readString();
+			int birthDate = readSignedVarInt();
+			byte gender = record[position++];
+			int startDate = readSignedVarInt();
+			int endDate = readSignedVarInt();
+			Patient patient = new Patient(subset, ID, birthDate, gender, startDate, endDate, readExtended());
+
+			//events
+			int count = readVarInt();
+			int size = readVarInt();
+			if (withEvents){
+				int date = startDate;
+				for (int i = 0; i < count; i++){
+					int type = readSignedVarInt();
+					date += readSignedVarInt();
+					patient.getEvents().add(new Event(subset, ID, type, date, readExtended()));
+				}
+			}else{
+				position += size;
+			}
+
+			//prescriptions
+			count = readVarInt();
+			size = readVarInt();
+			if (withPrescriptions){
+				int date = startDate;
+				for (int i = 0; i < count; i++){
+					int type = readSignedVarInt();
+					date += readSignedVarInt();
+					int duration = readSignedVarInt();
+					Prescription prescription = new Prescription(subset, ID, type, date, duration, readExtended());
+					patient.getPrescriptions().add(prescription);
+					patient.getOriginalPrescriptions().add(new Prescription(prescription));
+				}
+			}else{
+				position += size;
+			}
+
+			//measurements
+			count = readVarInt();
+			size = readVarInt();
+			if (withMeasurements){
+				int date = startDate;
+				for (int i = 0; i < count; i++){
+					int type = readSignedVarInt();
+					date += readSignedVarInt();
+					int value = readSignedVarInt();
+					patient.getMeasurements().add(new Measurement(subset, ID, type, date, value, readExtended()));
+				}
+			}else{
+				position += size;
+			}
+
+			return patient;
+
+		}catch(IOException | ArrayIndexOutOfBoundsException e){
+			Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
+			close();
+			Jerboa.stop(true);
+			return null;
+		}
+	}
+
+	/**
+	 * Skips the next patient in the file without decoding it.
+	 * @return - true if a patient was skipped; false if the end of the file was reached
+	 */
+	public boolean skip(){
+
+		if (stream == null)
+			return false;
+
+		try{
+			int length;
+			try{
+				length = readVarInt(stream);
+			}catch(EOFException e){
+				return false;
+			}
+			stream.skipBytes(length);
+			return true;
+		}catch(IOException e){
+			Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
+			close();
+			Jerboa.stop(true);
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the underlying file.
+	 */
+	public void close(){
+		if (stream != null){
+			try{
+				stream.close();
+			}catch(IOException e){
+				Logging.add("Unable to close the patient object file "+fileName, Logging.ERROR);
+			}
+			stream = null;
+		}
+	}
+
+	//DECODING
+	/**
+	 * Reads an unsigned variable length integer from stream.
+	 * @param stream - the stream to read from
+	 * @return - the decoded value
+	 * @throws IOException - if unable to read from stream or the end of the stream was reached
+	 */
+	private static int readVarInt(DataInputStream stream) throws IOException{
+		int value = 0;
+		int shift = 0;
+		int b;
+		do{
+			b = stream.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private int readVarInt(){
+		int value = 0;
+		int shift = 0;
+		int b;
+		do{
+			b = record[position++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}while ((b & 0x80) != 0);
+		return value;
+	}
+
+	private int readSignedVarInt(){
+		int value = readVarInt();
+		return (value >>> 1) ^ -(value & 1);
+	}
+
+	private String readString(){
+		int length = readVarInt();
+		String value = new String(record, position, length, StandardCharsets.UTF_8);
+		position += length;
+		return value;
+	}
+
+	private HashMap<Integer, Integer> readExtended(){
+		int count = readVarInt();
+		if (count == 0)
+			return null;
+		HashMap<Integer, Integer> data = new HashMap<Integer, Integer>(count * 2);
+		for (int i = 0; i < count; i++){
+			int key = readVarInt();
+			data.put(key, readSignedVarInt());
+		}
+		return data;
+	}
+
+}
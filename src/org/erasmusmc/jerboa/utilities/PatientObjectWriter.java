@@ -0,0 +1,329 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.config.Parameters;
+import org.erasmusmc.jerboa.dataClasses.Episode;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Measurement;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.Prescription;
+
+/**
+ * Writes patient objects and their history to binary patient object files (POF).
+ * Each patient is written as one length-prefixed record containing the patient details
+ * followed by a section for its events, prescriptions and measurements. Each section
+ * starts with the number of episodes and its size in bytes, so that a reader can skip
+ * the history it does not need. Dates are stored in days, types and extended data as
+ * their index in the look-up tables, all under a variable length integer encoding.
+ * The file naming is the same as for the text patient object files: a POF is created
+ * per subset and a new one is started with an increased index once MAX_POF_SIZE is reached.
+ *
+ * @see PatientObjectReader
+ */
+public class PatientObjectWriter {
+
+	//the folder in which the patient object files are created
+	private String path;
+
+	//the open file per subset and its index and size
+	private Map<String, DataOutputStream> streams;
+	private Map<String, Integer> fileIndexes;
+	private Map<String, Long> fileSizes;
+
+	//reusable buffers for the encoding of one patient
+	private Buffer record;
+	private Buffer section;
+
+	//CONSTRUCTORS
+	/**
+	 * Constructor receiving the folder in which the patient object files are to be created.
+	 * @param path - the folder of the patient object files
+	 */
+	public PatientObjectWriter(String path){
+		this.path = path;
+		this.streams = new HashMap<String, DataOutputStream>();
+		this.fileIndexes = new HashMap<String, Integer>();
+		this.fileSizes = new HashMap<String, Long>();
+		this.record = new Buffer();
+		this.section = new Buffer();
+	}
+
+	/**
+	 * Returns the name of a patient object file based on its subset and index.
+	 * @param path - the folder of the patient object files
+	 * @param subset - the subset of the patients in the file
+	 * @param index - the index of the file within the subset
+	 * @return - the full path of the patient object file
+	 */
+	public static String getFileName(String path, String subset, int index){
+		return path+subset+"_"+"patientObjects_"+index+DataDefinition.PATIENT_OBJECT_FILE_EXTENSION;
+	}
+
+	/**
+	 * Adds a patient with all its history to the patient object file of its subset.
+	 * Once the maximum size of a POF is reached, the file is closed and the next
+	 * patient of the subset will be written to a new file with an increased index.
+	 * @param patient - the patient object to be output
+	 * @param subset - the subset under which the patient is to be output
+	 * @return - true if the patient was successfully written; false otherwise
+	 */
+	public boolean write(Patient patient, String subset){
+
+		if (patient == null)
+			return false;
+
+		try{
+			DataOutputStream stream = getStream(subset);
+
+			//encode the patient and its history
+			record.reset();
+			encodePatient(patient);
+			section.reset();
+			encodeEvents(patient.getEvents(), patient.startDate);
+			record.writeSection(patient.getEvents() == null ? 0 : patient.getEvents().size(), section);
+			section.reset();
+			encodePrescriptions(patient.getPrescriptions(), patient.startDate);
+			record.writeSection(patient.getPrescriptions() == null ? 0 : patient.getPrescriptions().size(), section);
+			section.reset();
+			encodeMeasurements(patient.getMeasurements(), patient.startDate);
+			record.writeSection(patient.getMeasurements() == null ? 0 : patient.getMeasurements().size(), section);
+
+			//output the length prefixed record
+			long size = fileSizes.get(subset) + writeVarInt(stream, record.size()) + record.size();
+			record.writeTo(stream);
+			fileSizes.put(subset, size);
+
+			//check if the POF size limit was reached
+			if (size > (long)Parameters.MAX_POF_SIZE * 1024 * 1024){
+				closeStream(subset);
+				fileIndexes.put(subset, fileIndexes.get(subset) + 1);
+			}
+
+			return true;
+
+		}catch(IOException e){
+			Logging.add("Unable to write to patient object file "+
+					getFileName(path, subset, fileIndexes.get(subset) == null ? 1 : fileIndexes.get(subset)), Logging.ERROR);
+			Jerboa.stop(true);
+			return false;
+		}
+	}
+
+	/**
+	 * Flushes and closes all the patient object files that are still open.
+	 */
+	public void close(){
+		for (String subset : streams.keySet().toArray(new String[streams.size()])){
+			try{
+				closeStream(subset);
+			}catch(IOException e){
+				Logging.add("Unable to close the patient object file of subset "+subset, Logging.ERROR);
+			}
+		}
+	}
+
+	/**
+	 * Returns the output stream of the current patient object file of subset.
+	 * If there is no open file for the subset, a new one is created and its header written.
+	 * @param subset - the subset of interest
+	 * @return - the stream towards the current patient object file of subset
+	 * @throws IOException - if the file cannot be created
+	 */
+	private DataOutputStream getStream(String subset) throws IOException{
+		DataOutputStream stream = streams.get(subset);
+		if (stream == null){
+			if (fileIndexes.get(subset) == null)
+				fileIndexes.put(subset, 1);
+			File file = new File(getFileName(path, subset, fileIndexes.get(subset)));
+			if (file.getParentFile() != null && !file.getParentFile().exists())
+				file.getParentFile().mkdirs();
+			stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+			stream.writeInt(DataDefinition.PATIENT_OBJECT_FILE_MAGIC);
+			stream.writeByte(DataDefinition.PATIENT_OBJECT_FILE_VERSION);
+			streams.put(subset, stream);
+			fileSizes.put(subset, 5L);
+		}
+		return stream;
+	}
+
+	/**
+	 * Flushes and closes the current patient object file of subset.
+	 * @param subset - the subset of interest
+	 * @throws IOException - if the file cannot be closed
+	 */
+	private void closeStream(String subset) throws IOException{
+		DataOutputStream stream = streams.remove(subset);
+		if (stream != null)
+			stream.close();
+	}
+
+	//ENCODING
+	/**
+	 * Encodes the patient details and its extended data in the record buffer.
+	 * @param patient - the patient to be encoded
+	 */
+	private void encodePatient(Patient patient){
+		record.writeString(patient.subset);
+		record.writeString(patient.ID);
+		record.writeSignedVarInt(patient.birthDate);
+		record.write(patient.gender);
+		record.writeSignedVarInt(patient.startDate);
+		record.writeSignedVarInt(patient.endDate);
+		record.writeExtended(patient.extended);
+	}
+
+	/**
+	 * Encodes the events in the section buffer. The dates are stored
+	 * as the difference with the date of the previous event.
+	 * @param events - the events to be encoded
+	 * @param baseDate - the date from which the first difference is calculated
+	 */
+	private void encodeEvents(List<Event> events, int baseDate){
+		if (events != null)
+			for (Event event : events){
+				baseDate = encodeEpisode(event, baseDate);
+				section.writeExtended(event.extended);
+			}
+	}
+
+	/**
+	 * Encodes the prescriptions in the section buffer. The dates are stored
+	 * as the difference with the date of the previous prescription.
+	 * @param prescriptions - the prescriptions to be encoded
+	 * @param baseDate - the date from which the first difference is calculated
+	 */
+	private void encodePrescriptions(List<Prescription> prescriptions, int baseDate){
+		if (prescriptions != null)
+			for (Prescription prescription : prescriptions){
+				baseDate = encodeEpisode(prescription, baseDate);
+				section.writeSignedVarInt(prescription.getDuration());
+				section.writeExtended(prescription.extended);
+			}
+	}
+
+	/**
+	 * Encodes the measurements in the section buffer. The dates are stored
+	 * as the difference with the date of the previous measurement.
+	 * @param measurements - the measurements to be encoded
+	 * @param baseDate - the date from which the first difference is calculated
+	 */
+	private void encodeMeasurements(List<Measurement> measurements, int baseDate){
+		if (measurements != null)
+			for (Measurement measurement : measurements){
+				baseDate = encodeEpisode(measurement, baseDate);
+				section.writeSignedVarInt(measurement.getValueCompressed());
+				section.writeExtended(measurement.extended);
+			}
+	}
+
+	/**
+	 * Encodes the type and date attributes common to all episodes.
+	 * @param episode - the episode to be encoded
+	 * @param previousDate - the date of the previous episode of the same kind
+	 * @return - the date of this episode
+	 */
+	private int encodeEpisode(Episode episode, int previousDate){
+		section.writeSignedVarInt(episode.type);
+		section.writeSignedVarInt(episode.date - previousDate);
+		return episode.date;
+	}
+
+	/**
+	 * Writes value to stream as an unsigned variable length integer.
+	 * @param stream - the stream to write to
+	 * @param value - the value to be written
+	 * @return - the number of bytes written
+	 * @throws IOException - if unable to write to stream
+	 */
+	private static int writeVarInt(DataOutputStream stream, int value) throws IOException{
+		int bytes = 1;
+		while ((value & ~0x7F) != 0){
+			stream.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+			bytes++;
+		}
+		stream.writeByte(value);
+		return bytes;
+	}
+
+	/**
+	 * Byte buffer with the variable length integer encoding used in the
+	 * binary patient object files. Signed values are zig-zag encoded
+	 * so that small negative values (e.g., NO_DATA) take a single byte.
+	 */
+	private static class Buffer extends ByteArrayOutputStream{
+
+		public Buffer(){
+			super(1024);
+		}
+
+		public void writeVarInt(int value){
+			while ((value & ~0x7F) != 0){
+				write((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			write(value);
+		}
+
+		public void writeSignedVarInt(int value){
+			writeVarInt((value << 1) ^ (value >> 31));
+		}
+
+		public void writeString(String value){
+			byte[] bytes = (value == null ? "" : value).getBytes(StandardCharsets.UTF_8);
+			writeVarInt(bytes.length);
+			write(bytes, 0, bytes.length);
+		}
+
+		public void writeExtended(ExtendedData data){
+			int size = data == null ? 0 : data.size();
+			writeVarInt(size);
+			for (int i = 0; i < size; i++){
+				writeVarInt(data.getKeyAt(i));
+				Integer value = data.getValueAt(i);
+				writeSignedVarInt(value == null ? ExtendedData.NO_DATA : value);
+			}
+		}
+
+		public void writeSection(int count, Buffer content){
+			writeVarInt(count);
+			writeVarInt(content.size());
+			write(content.buf, 0, content.size());
+		}
+	}
+
+}
@@ -42,7 +42,10 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 import javax.swing.JFrame;
 import javax.swing.ProgressMonitor;
@@ -109,61 +112,9 @@ public class PatientUtilities {
 
 		patients = new ArrayList<Patient>();
 		if (fileName != null && !fileName.equals("")){
-
-			try{
-
-				//initialize reader
-				BufferedReader br = FileUtilities.openFile(fileName);
-
-				//read first line and initialize patient object
-				String strLine = br.readLine();
-				StrMatcher delimiter = StrMatcher.charMatcher(DataDefinition.COMMA_DELIMITER);
-				Patient patient = null;
-
-				do{
-					//retrieve attributes from input line
-					String[] attributes = StringUtilities.splitLine(strLine, delimiter);
-					int flag = Integer.valueOf(attributes[attributes.length-1]);
-
-					//see what data there is
-					switch (flag){
-					case DataDefinition.PATIENT_DETAILS_FLAG :
-						if (patient != null)
-							patients.add(patient);
-						patient = new Patient(attributes);
-						break;
-					case DataDefinition.EVENT_FLAG :
-						if (withEvents){
-							Event event = new Event(attributes);
-							patient.getEvents().add(event);
-						}
-						break;
-					case DataDefinition.PRESCRIPTION_FLAG :
-						if (withPrescriptions){
-							Prescription prescription = new Prescription(attributes);
-							patient.getPrescriptions().add(prescription);
-							patient.getOriginalPrescriptions().add(new Prescription(prescription));
-						}
-						break;
-					case DataDefinition.MEASUREMENT_FLAG :
-						if (withMeasurements){
-							Measurement measurement = new Measurement(attributes);
-							patient.getMeasurements().add(measurement);
-						}
-						break;
-					}
-
-					//update progress and display each 10%
-				}while ((strLine = br.readLine()) != null);
-				patients.add(patient);
-
-				br.close();
-				br = null;
-
-			}catch(IOException e ){
-				Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
-				Jerboa.stop(true);
-			}
+			Iterator<Patient> iterator = iteratePatientsFromFile(fileName, withEvents, withPrescriptions, withMeasurements);
+			while (iterator.hasNext())
+				patients.add(iterator.next());
 			return patients;
 		}else{
 			Logging.add("The patient object file path is invalid", Logging.ERROR);
@@ -172,6 +123,60 @@ public class PatientUtilities {
 		}
 	}
 
+	/**
+	 * Returns an iterator over the patient objects from a file passed as parameter. The patients
+	 * are parsed one at a time while iterating, so that only the history of the current patient
+	 * is kept in memory. The file is closed once the last patient was retrieved.
+	 * @param fileName - the path to the file containing patient objects.
+	 * @param withEvents - true if the patient should be loaded with its events; false otherwise
+	 * @param withPrescriptions - true if the patient should be loaded with its prescriptions; false otherwise
+	 * @param withMeasurements - true if the patient should be loaded with its measurements; false otherwise
+	 * @return - an iterator over the patients found in fileName
+	 */
+	public Iterator<Patient> iteratePatientsFromFile(String fileName, boolean withEvents, boolean withPrescriptions, boolean withMeasurements){
+		if (fileName == null || fileName.equals("")){
+			Logging.add("The patient object file path is invalid", Logging.ERROR);
+			Jerboa.stop(true);
+			return Collections.<Patient>emptyList().iterator();
+		}
+		return PatientObjectReader.isBinary(fileName) ?
+				new BinaryPatientIterator(fileName, withEvents, withPrescriptions, withMeasurements) :
+					new TextPatientIterator(fileName, withEvents, withPrescriptions, withMeasurements);
+	}
+
+	/**
+	 * Counts the patients in a patient object file without loading their history.
+	 * @param fileName - the path to the patient object file
+	 * @return - the number of patients in fileName
+	 */
+	public static int countPatients(String fileName){
+		int count = 0;
+
+		//binary patient object file
+		if (PatientObjectReader.isBinary(fileName)){
+			PatientObjectReader reader = new PatientObjectReader(fileName);
+			while (reader.skip())
+				count++;
+			reader.close();
+			return count;
+		}
+
+		try{
+			BufferedReader br = FileUtilities.openFile(fileName);
+			String strLine;
+			String flag = ","+DataDefinition.PATIENT_DETAILS_FLAG;
+			while ((strLine = br.readLine()) != null)
+				if (strLine.endsWith(flag))
+					count++;
+			br.close();
+		}catch(IOException e){
+			Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
+			Jerboa.stop(true);
+		}
+
+		return count;
+	}
+
 	/**
 	 * Searches and loads (if found) patient data from the file where the patientId is found.
 	 * The method searches through the patient object files in the fromFolder folder
@@ -206,6 +211,21 @@ public class PatientUtilities {
 					//check if not a folder
 					if( !files[i].isDirectory()){
 						String path = files[i].getAbsolutePath().replace("\\","/");
+
+						//binary patient object file
+						if (PatientObjectReader.isBinary(path)){
+							if (findPatient(patientId, path, false) != null){
+								if (withProgress){
+									progress.setProgress(files.length);
+									progress.close();
+								}
+								return loadPatientsFromFile(path, withHistory, withHistory, withHistory);
+							}
+							if (withProgress)
+								progress.setProgress(i);
+							continue;
+						}
+
 						try{
 							//open the file
 							BufferedReader br  = new BufferedReader(new InputStreamReader(
@@ -286,6 +306,22 @@ public class PatientUtilities {
 					//check if not a folder
 					if( !files[i].isDirectory()){
 						String path = files[i].getAbsolutePath().replace("\\","/");
+
+						//binary patient object file
+						if (PatientObjectReader.isBinary(path)){
+							Patient patient = findPatient(patientId, path, true);
+							if (patient != null){
+								if (withProgress){
+									progress.setProgress(files.length);
+									progress.close();
+								}
+								return patient;
+							}
+							if (withProgress)
+								progress.setProgress(i);
+							continue;
+						}
+
 						try{
 							//open the file
 							BufferedReader br  = new BufferedReader(new InputStreamReader(
@@ -314,14 +350,17 @@ public class PatientUtilities {
 
 													case DataDefinition.EVENT_FLAG :
 														Event event = new Event(attributes);
+														event.shareIDs(patient);
 														patient.getEvents().add(event);
 														break;
 													case DataDefinition.PRESCRIPTION_FLAG :
 														Prescription prescription = new Prescription(attributes);
+														prescription.shareIDs(patient);
 														patient.getPrescriptions().add(prescription);
 														break;
 													case DataDefinition.MEASUREMENT_FLAG :
 														Measurement measurement = new Measurement(attributes);
+														measurement.shareIDs(patient);
 														patient.getMeasurements().add(measurement);
 														break;
 													}
@@ -365,6 +404,23 @@ public class PatientUtilities {
 		return null;
 	}
 
+	/**
+	 * Searches for the patient with the ID patientId in a binary patient object file.
+	 * @param patientId - the ID of the patient to search for
+	 * @param fileName - the path to the binary patient object file
+	 * @param withHistory - true if the patient should be loaded with its history; false otherwise
+	 * @return - the patient object if found in fileName; null otherwise
+	 */
+	private Patient findPatient(String patientId, String fileName, boolean withHistory){
+		PatientObjectReader reader = new PatientObjectReader(fileName);
+		Patient patient;
+		while ((patient = reader.next(withHistory, withHistory, withHistory)) != null)
+			if (patientId.equals(patient.ID))
+				break;
+		reader.close();
+		return patient;
+	}
+
 	/**
 	 * Retrieves the files containing patient objects from a specified path.
 	 * It populates a list with the names of the files containing patient
@@ -396,4 +452,150 @@ public class PatientUtilities {
 		}
 	}
 
+	/**
+	 * Iterates over the patients of a binary patient object file.
+	 */
+	private static class BinaryPatientIterator implements Iterator<Patient>{
+
+		private PatientObjectReader reader;
+		private Patient next;
+
+		private boolean withEvents;
+		private boolean withPrescriptions;
+		private boolean withMeasurements;
+
+		public BinaryPatientIterator(String fileName, boolean withEvents, boolean withPrescriptions, boolean withMeasurements){
+			this.withEvents = withEvents;
+			this.withPrescriptions = withPrescriptions;
+			this.withMeasurements = withMeasurements;
+			reader = new PatientObjectReader(fileName);
+			advance();
+		}
+
+		private void advance(){
+			next = reader.next(withEvents, withPrescriptions, withMeasurements);
+			if (next == null)
+				reader.close();
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next != null;
+		}
+
+		@Override
+		public Patient next(){
+			if (next == null)
+				throw new NoSuchElementException();
+			Patient patient = next;
+			advance();
+			return patient;
+		}
+	}
+
+	/**
+	 * Iterates over the patients of a text patient object file. The lines
+	 * of a patient are read until the details line of the next patient.
+	 */
+	private static class TextPatientIterator implements Iterator<Patient>{
+
+		private String fileName;
+		private BufferedReader br;
+		private StrMatcher delimiter = StrMatcher.charMatcher(DataDefinition.COMMA_DELIMITER);
+
+		//the patient whose history is being read and the next patient to be returned
+		private Patient current;
+		private Patient next;
+
+		private boolean withEvents;
+		private boolean withPrescriptions;
+		private boolean withMeasurements;
+
+		public TextPatientIterator(String fileName, boolean withEvents, boolean withPrescriptions, boolean withMeasurements){
+			this.fileName = fileName;
+			this.withEvents = withEvents;
+			this.withPrescriptions = withPrescriptions;
+			this.withMeasurements = withMeasurements;
+			try{
+				br = FileUtilities.openFile(fileName);
+			}catch(IOException e){
+				Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
+				Jerboa.stop(true);
+			}
+			advance();
+		}
+
+		private void advance(){
+			next = null;
+			if (br == null)
+				return;
+
+			try{
+				String strLine;
+				while ((strLine = br.readLine()) != null){
+
+					//retrieve attributes from input line
+					String[] attributes = StringUtilities.splitLine(strLine, delimiter);
+					int flag = Integer.valueOf(attributes[attributes.length-1]);
+
+					//see what data there is
+					switch (flag){
+					case DataDefinition.PATIENT_DETAILS_FLAG :
+						next = current;
+						current = new Patient(attributes);
+						if (next != null)
+							return;
+						break;
+					case DataDefinition.EVENT_FLAG :
+						if (withEvents){
+							Event event = new Event(attributes);
+							event.shareIDs(current);
+							current.getEvents().add(event);
+						}
+						break;
+					case DataDefinition.PRESCRIPTION_FLAG :
+						if (withPrescriptions){
+							Prescription prescription = new Prescription(attributes);
+							prescription.shareIDs(current);
+							current.getPrescriptions().add(prescription);
+							current.getOriginalPrescriptions().add(new Prescription(prescription));
+						}
+						break;
+					case DataDefinition.MEASUREMENT_FLAG :
+						if (withMeasurements){
+							Measurement measurement = new Measurement(attributes);
+							measurement.shareIDs(current);
+							current.getMeasurements().add(measurement);
+						}
+						break;
+					}
+				}
+
+				//end of file
+				next = current;
+				current = null;
+				br.close();
+				br = null;
+
+			}catch(IOException e){
+				Logging.add("Unable to read from patient object file "+fileName, Logging.ERROR);
+				Jerboa.stop(true);
+			}
+		}
+
+		@Override
+		public boolean hasNext(){
+			return next != null;
+		}
+
+		@Override
+		public Patient next(){
+			if (next == null)
+				throw new NoSuchElementException();
+			Patient patient = next;
+			advance();
+			return patient;
+		}
+	}
+
 }
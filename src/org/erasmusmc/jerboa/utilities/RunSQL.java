@@ -32,8 +32,13 @@
 package org.erasmusmc.jerboa.utilities;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.FileChannel;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
@@ -43,6 +48,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JOptionPane;
 
@@ -72,6 +82,10 @@ public class RunSQL{
 	 * Contains pairs of SQL files to fetch data from DB
 	 * and output file name to export data (separated by ';').
 	 * EXAMPLE: DataFetch1.sql;Patients.txt
+	 *
+	 * Optionally followed by a partition column and the number of partitions.
+	 * The results are then fetched in parallel, over one connection per partition.
+	 * EXAMPLE: DataFetch1.sql;Patients.txt;PatientID;4
 	 */
 	private List<String> fetchData;
 
@@ -80,6 +94,11 @@ public class RunSQL{
 	 */
 	private HashMap<String, String> outputData;
 
+	/**
+	 * Map of the SQL files of fetchData to their partitioning, if declared.
+	 */
+	private HashMap<String, Partitioning> partitionData;
+
 	//details about the DB connection
 	private String connectionDetails;
 	private DBConnection connection;
@@ -174,7 +193,6 @@ public class RunSQL{
 		if (IOisOK){
 
 			timer = new Timer(noGUI);
-			Connection con = null;
 
 			if (!connection.hasSettingsFile()){
 				if (!Jerboa.inConsoleMode)
@@ -204,26 +222,7 @@ public class RunSQL{
 
 			timer.start();
 
-			//establish connection
-			con = connection.connect(false); //false = do not stop if schema is not found
-			con.setAutoCommit(connection.getType().equals("POSTGRESQL") ? true : connection.autoCommit); //!! check if set to false with PostgreSQL while fetching results
-
-			//TODO check if still necessary; normally done in DBConnection.java
-			if (connection.schema != null && !connection.schema.equals("")){
-				try{
-					Statement useStatement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
-					if (connection.getType().equals("MYSQL") || connection.getType().equals("MSSQL"))
-						useStatement.executeQuery("USE "+connection.schema+";");
-					else if (connection.getType().equals("POSTGRESQL") || connection.getType().equals("ORACLE"))
-						useStatement.executeUpdate("SET "+(connection.getType().equals("POSTGRESQL") ? "search_path TO " : "SCHEMA ")+"'"+connection.schema+"';");
-				}catch(Exception e){
-					displayError("Unable to select schema "+connection.schema);
-				}
-			}
-
-			//execute SQL scripts
-			runPrepareDataFiles(con);
-			runFetchDataFiles(con);
+			extract();
 
 		//IO not OK
 		}else{
@@ -234,6 +233,41 @@ public class RunSQL{
 		timer.stopAndDisplay("Data extracted in ");
 	}
 
+	/**
+	 * Connects to the database, runs the data preparation files and fetches the results,
+	 * without asking for confirmation.
+	 * @throws Exception - if the database connection cannot be established or input files cannot be read
+	 */
+	public void extract() throws Exception{
+		//establish connection
+		Connection con = connection.connect(false); //false = do not stop if schema is not found
+		con.setAutoCommit(connection.getType().equals("POSTGRESQL") ? true : connection.autoCommit); //!! check if set to false with PostgreSQL while fetching results
+		selectSchema(con);
+
+		//execute SQL scripts
+		runPrepareDataFiles(con);
+		runFetchDataFiles(con);
+	}
+
+	/**
+	 * Selects the schema from the connection settings on the connection.
+	 * @param con - the DB connection
+	 */
+	private void selectSchema(Connection con){
+		//TODO check if still necessary; normally done in DBConnection.java
+		if (connection.schema != null && !connection.schema.equals("")){
+			try{
+				Statement useStatement = con.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+				if (connection.getType().equals("MYSQL") || connection.getType().equals("MSSQL"))
+					useStatement.executeQuery("USE "+connection.schema+";");
+				else if (connection.getType().equals("POSTGRESQL") || connection.getType().equals("ORACLE"))
+					useStatement.executeUpdate("SET "+(connection.getType().equals("POSTGRESQL") ? "search_path TO " : "SCHEMA ")+"'"+connection.schema+"';");
+			}catch(Exception e){
+				displayError("Unable to select schema "+connection.schema);
+			}
+		}
+	}
+
 	/**
 	 * Runs sequentially all the SQL files that are for data preparation.
 	 * @param con - the DB connection
@@ -297,7 +331,8 @@ public class RunSQL{
 	/**
 	 * Runs sequentially all the SQL files that are for result fetching
 	 * and outputs them to file. Note that the mapping result fetching/file output is
-	 * considered to be one to one.
+	 * considered to be one to one. The queries of the SQL files with a partitioning
+	 * are fetched in parallel, one partition per connection.
 	 * @param con - the DB connection
 	 */
 	private void runFetchDataFiles(Connection con){
@@ -326,7 +361,11 @@ public class RunSQL{
 					String sqlStatement = readQuery(reader);
 					boolean isFirst = true;
 					while (sqlStatement != null && !sqlStatement.equals("")){
-						fetchResults(con, sqlStatement, entry.getValue(), isFirst);
+						Partitioning partitioning = partitionData.get(entry.getKey());
+						if (partitioning != null)
+							fetchPartitionedResults(con, sqlStatement, entry.getValue(), partitioning);
+						else
+							fetchResults(con, sqlStatement, entry.getValue(), isFirst);
 						isFirst = isFirst ? !isFirst : isFirst;
 						sqlStatement = readQuery(reader);
 					}
@@ -417,12 +456,14 @@ public class RunSQL{
 	 * Will parse the input list of SQL statements, fetching data and
 	 * their respective output file names. The mapping is considered one to one.
 	 * If a list entry does not have two elements, a warning message is raised
-	 * and the entry omitted.
+	 * and the entry omitted. If a list entry has four elements, the last two are
+	 * the partition column and the number of partitions, which are put in partitionData.
 	 * @param fetchData - the list of queries for fetching data
 	 * @return - the data ready to be output
 	 */
 	private HashMap<String, String> parseFetchData(List<String> fetchData){
 		HashMap<String, String> outputData = new HashMap<String, String>();
+		partitionData = new HashMap<String, Partitioning>();
 		if (fetchData == null || fetchData.isEmpty())
 			Logging.add("There are no data fetching files declared", Logging.HINT);
 
@@ -435,6 +476,22 @@ public class RunSQL{
 			}
 			split[1] = FilePaths.WORKING_PATH+"/"+split[1].trim();
 			outputData.put(split[0].trim(), split[1]);
+
+			if (split.length > 2){
+				Partitioning partitioning = null;
+				try{
+					partitioning = new Partitioning(split[2].trim(), Integer.parseInt(split[3].trim()));
+				}catch(Exception e){
+					//handled below
+				}
+				if (partitioning != null && !partitioning.column.equals("") && partitioning.partitions > 0){
+					partitionData.put(split[0].trim(), partitioning);
+				}else{
+					Logging.add("Invalid partitioning for the data fetching: "+s+
+							" check if both partition column and number of partitions are specified.", Logging.ERROR);
+					IOisOK = false;
+				}
+			}
 		}
 
 		return outputData;
@@ -450,38 +507,197 @@ public class RunSQL{
 	 * @param isFirstQuery - true if it is the first query from a SQL file. Needed to know if appending to file or not
 	 */
 	private void fetchResults(Connection connection, String sqlStatement, String outputFileName, boolean isFirstQuery){
-		try {
-			Logging.add("Fetching results and output to "+outputFileName, Logging.HINT, true);
+		Logging.add("Fetching results and output to "+outputFileName, Logging.HINT, true);
+
+		File f = new File(outputFileName);
+		if(f.exists() && isFirstQuery)
+			f.delete();
+
+		writeResults(connection, sqlStatement, outputFileName, true);
+	}
+
+	/**
+	 * Will retrieve the results of the sqlStatement in partitions and output them to CSV file.
+	 * Each partition is fetched over its own connection into its own file, in parallel.
+	 * The partition files are concatenated in the output file afterwards.
+	 * Note that the tables created in the data preparation should not be temporary,
+	 * as these are not visible from the other connections. For the same reason the
+	 * data preparation is committed first.
+	 * @param con - the DB connection used for the data preparation
+	 * @param sqlStatement - the SQL statement to be executed
+	 * @param outputFileName - the name of the file which will contain the output
+	 * @param partitioning - the partition column and the number of partitions
+	 */
+	private void fetchPartitionedResults(Connection con, final String sqlStatement, final String outputFileName, Partitioning partitioning){
+		Logging.add("Fetching results in "+partitioning.partitions+" partitions and output to "+outputFileName, Logging.HINT, true);
+
+		//no results from a previous extraction are left if the fetching fails
+		File f = new File(outputFileName);
+		if(f.exists())
+			f.delete();
 
-			File f = new File(outputFileName);
-			if(f.exists() && isFirstQuery)
-				f.delete();
+		try{
+			if (!con.getAutoCommit())
+				con.commit();
+		}catch(SQLException e){
+			Logging.add("Unable to commit the data preparation before fetching "+outputFileName, Logging.ERROR);
+			Logging.outputStackTrace(e);
+		}
 
+		ExecutorService executor = Executors.newFixedThreadPool(partitioning.partitions, new ThreadFactory(){
+			public Thread newThread(Runnable runnable){
+				Thread thread = new Thread(runnable, "Jerboa extraction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		List<Future<Boolean>> partitions = new ArrayList<Future<Boolean>>();
+		final List<String> partitionFiles = new ArrayList<String>();
+		try{
+			for (int i = 0; i < partitioning.partitions; i++){
+				final String partitionQuery = partitionQuery(sqlStatement, partitioning.column,
+						partitioning.partitions, i, connection.getType());
+				final String partitionFile = outputFileName+".part"+i;
+				final boolean withHeader = i == 0;
+				partitionFiles.add(partitionFile);
+				partitions.add(executor.submit(new Callable<Boolean>(){
+					public Boolean call() throws Exception{
+						Connection con;
+						synchronized (connection){
+							con = connection.connect(false);
+						}
+						if (con == null)
+							return false;
+						try{
+							if (connection.getType().equals("POSTGRESQL"))
+								con.setAutoCommit(false);
+							selectSchema(con);
+							return writeResults(con, partitionQuery, partitionFile, withHeader);
+						}finally{
+							con.close();
+						}
+					}
+				}));
+			}
+
+			boolean fetched = true;
+			for (Future<Boolean> partition : partitions)
+				fetched &= partition.get();
+
+			if (fetched)
+				concatenate(partitionFiles, outputFileName);
+			else
+				Logging.add("Unable to fetch the partitions of the results for "+outputFileName, Logging.ERROR);
+		}catch(Exception e){
+			Logging.add("Unable to fetch the partitions of the results for "+outputFileName, Logging.ERROR);
+			Logging.outputStackTrace(e);
+		}finally{
+			executor.shutdownNow();
+			for (String partitionFile : partitionFiles)
+				new File(partitionFile).delete();
+		}
+	}
+
+	/**
+	 * Will retrieve the results of the sqlStatement and stream them to a CSV file.
+	 * The rows are written as they are fetched from the database.
+	 * @param connection - the active connection to the database
+	 * @param sqlStatement - the SQL statement to be executed
+	 * @param outputFileName - the name of the file which will contain the output
+	 * @param withHeader - true if the column names are to be output first
+	 * @return - true if the results were fetched successfully; false otherwise
+	 */
+	private boolean writeResults(Connection connection, String sqlStatement, String outputFileName, boolean withHeader){
+		try {
 			Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
 			statement.setFetchSize(this.connection.chunkSize); // if not specified, the entire table is loaded first in memory
 
 			ResultSet resultSet = statement.executeQuery(sqlStatement);
 			ResultSetMetaData metaData = resultSet.getMetaData();
+			int columns = metaData.getColumnCount();
+
+			BufferedWriter out = new BufferedWriter(new OutputStreamWriter(
+					FileUtilities.openOutputStream(new File(outputFileName))), 1 << 16);
+			try{
+				StringBuilder line = new StringBuilder();
+				if (withHeader){
+					for (int i = 1; i <= columns; i++){
+						if (i > 1)
+							line.append(',');
+						WriteCSVFile.appendColumn(line, metaData.getColumnName(i));
+					}
+					out.append(line).append(System.lineSeparator());
+				}
 
-			WriteCSVFile out = new WriteCSVFile(outputFileName);
-			List<String> header = new ArrayList<String>();
-			for (int i = 1; i < metaData.getColumnCount() + 1; i++) {
-				String columnName = metaData.getColumnName(i);
-				header.add(columnName);
+				while (resultSet.next()) {
+					line.setLength(0);
+					for (int i = 1; i <= columns; i++){
+						if (i > 1)
+							line.append(',');
+						WriteCSVFile.appendColumn(line, resultSet.getString(i));
+					}
+					out.append(line).append(System.lineSeparator());
+				}
+			}finally{
+				out.close();
+				resultSet.close();
+				statement.close();
 			}
+			return true;
+		} catch (SQLException e) {
+			Logging.add("SQL statement failed:" + sqlStatement, Logging.ERROR);
+			Logging.outputStackTrace(e);
+		} catch (IOException e) {
+			Logging.add("Unable to output to "+outputFileName, Logging.ERROR);
+			Logging.outputStackTrace(e);
+		}
 
-			out.write(header);
+		return false;
+	}
 
-			while (resultSet.next()) {
-				List<String> row = new ArrayList<String>();
-				for (int i = 1; i < metaData.getColumnCount() + 1; i++)
-					row.add(resultSet.getString(i));
-				out.write(row);
+	/**
+	 * Creates the query retrieving one partition of the results of sqlStatement.
+	 * The rows are divided over the partitions by the absolute value of the
+	 * partition column modulo the number of partitions. The rows having no
+	 * value in the partition column are part of the first partition.
+	 * @param sqlStatement - the SQL statement whose results are partitioned
+	 * @param column - the numeric column (or expression on the columns) of the results to partition on
+	 * @param partitions - the number of partitions
+	 * @param partition - the index of the partition, from 0 to partitions - 1
+	 * @param connectionType - the type of the database connection
+	 * @return - the SQL statement retrieving the partition
+	 */
+	public static String partitionQuery(String sqlStatement, String column, int partitions, int partition, String connectionType){
+		String condition = "MSSQL".equals(connectionType) ?
+				"ABS("+column+") % "+partitions+" = "+partition :
+				"MOD(ABS("+column+"), "+partitions+") = "+partition;
+		if (partition == 0)
+			condition = "("+condition+" OR "+column+" IS NULL)";
+		return "SELECT * FROM ("+sqlStatement+") jerboa_partition WHERE "+condition;
+	}
+
+	/**
+	 * Concatenates the partition files in the output file, in order.
+	 * @param partitionFiles - the files of the partitions
+	 * @param outputFileName - the name of the output file
+	 * @throws IOException - if unable to read a partition file or write the output file
+	 */
+	public static void concatenate(List<String> partitionFiles, String outputFileName) throws IOException{
+		FileChannel out = new FileOutputStream(outputFileName).getChannel();
+		try{
+			for (String partitionFile : partitionFiles){
+				FileChannel in = new FileInputStream(partitionFile).getChannel();
+				try{
+					long position = 0;
+					long size = in.size();
+					while (position < size)
+						position += in.transferTo(position, size - position, out);
+				}finally{
+					in.close();
+				}
 			}
+		}finally{
 			out.close();
-		} catch (SQLException e) {
-			Logging.add("SQL statement failed:" + sqlStatement, Logging.ERROR);
-			Logging.outputStackTrace(e);
 		}
 	}
 
@@ -497,4 +713,24 @@ public class RunSQL{
 		Jerboa.stop();
 	}
 
+	//INNER CLASSES
+	/**
+	 * The partitioning of the results of a data fetching file.
+	 */
+	private static class Partitioning{
+
+		private String column;
+		private int partitions;
+
+		/**
+		 * Constructor receiving the partition column and the number of partitions.
+		 * @param column - the column of the results to partition on
+		 * @param partitions - the number of partitions, fetched in parallel
+		 */
+		public Partitioning(String column, int partitions){
+			this.column = column;
+			this.partitions = partitions;
+		}
+	}
+
 }
@@ -41,7 +41,6 @@ import java.util.Iterator;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.text.StrMatcher;
-import org.apache.commons.lang3.text.StrTokenizer;
 import org.erasmusmc.jerboa.config.FilePaths;
 import org.erasmusmc.jerboa.utilities.stats.HistogramStats;
 
@@ -63,6 +62,13 @@ public class StringUtilities extends StringUtils{
 	//max length of a path to be displayed on the GUI before repplacing the middle part with "..."
 	public static final int MAX_STRING_LENGTH = 50;
 
+	//the tokenizer used by each thread to split lines
+	private static final ThreadLocal<LineTokenizer> TOKENIZER = new ThreadLocal<LineTokenizer>(){
+		protected LineTokenizer initialValue(){
+			return new LineTokenizer(null);
+		}
+	};
+
 	/**
 	 * The short form of the Parameters.DECIMAL_FORMAT_FORCE_PRECISION.format.
 	 * This format adds to value two decimals.
@@ -188,20 +194,15 @@ public class StringUtilities extends StringUtils{
 	 * which is set to be either the double quotes character or single quote.
 	 * It can process also fields which contain the separator between the string delimiters.
 	 * Note that empty tokens are taken into consideration (missing values)
-	 * This method makes use of a StrTokenizer object.
+	 * This method makes use of a LineTokenizer object reused by the calling thread.
 	 * @param line - a line from the input file
 	 * @param separator - the field separator of the input file
 	 * @return - an array of strings that represents the different fields obtained from the input line
 	 */
 	public static String[] splitLine(final String line, StrMatcher separator) {
-		StrTokenizer tokenizer = new StrTokenizer(line, separator, StrMatcher.quoteMatcher());
-		tokenizer.setEmptyTokenAsNull(false);
-		tokenizer.setIgnoreEmptyTokens(false);
-		String[] tokens = new String[tokenizer.size()];
-		for (int i = 0; i < tokens.length; i++)
-			tokens[i] = tokenizer.nextToken();
-
-		return tokens;
+		LineTokenizer tokenizer = TOKENIZER.get();
+		tokenizer.setDelimiter(separator);
+		return tokenizer.reset(line).toArray();
 	}
 
 	/**
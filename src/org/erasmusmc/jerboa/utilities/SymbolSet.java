@@ -0,0 +1,122 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class is a set of codes, e.g. the event types of interest of a module, resolved to their
+ * compressed values in a look-up table. It allows to check if an episode has one of the codes by
+ * comparing integers instead of strings. The codes that are not (yet) in the look-up table are
+ * resolved again when the table grows, e.g. when a modifier adds new event types.
+ *
+ * @see org.erasmusmc.jerboa.utilities.SymbolTable
+ */
+public class SymbolSet {
+
+	//the codes in their original order
+	private final List<String> symbols;
+
+	//the codes resolved on a look-up table
+	private volatile Resolution resolution = new Resolution(null, 0, new int[0], new BitSet(), 0);
+
+	/**
+	 * Constructor accepting the codes of the set.
+	 * @param symbols - the codes
+	 */
+	public SymbolSet(Collection<String> symbols) {
+		this.symbols = new ArrayList<String>(symbols);
+	}
+
+	/**
+	 * Checks if the code with compressed value index in table is in this set.
+	 * @param table - the look-up table of the codes
+	 * @param index - the compressed value of the code
+	 * @return - true if the code is in this set; false otherwise
+	 */
+	public boolean contains(SymbolTable table, int index) {
+		return (index >= 0) && resolve(table).indexes.get(index);
+	}
+
+	/**
+	 * Checks if the code with compressed value index in table is the code at position in this set.
+	 * @param table - the look-up table of the codes
+	 * @param position - the position of the code in the list this set was created from
+	 * @param index - the compressed value of the code
+	 * @return - true if the code is the one at position; false otherwise
+	 */
+	public boolean matches(SymbolTable table, int position, int index) {
+		return (index >= 0) && (resolve(table).positions[position] == index);
+	}
+
+	/**
+	 * Returns the resolution of the codes on table, resolving them again if the table was
+	 * replaced or if some codes were not found and the table has grown since.
+	 * @param table - the look-up table of the codes
+	 * @return - the resolution of the codes
+	 */
+	private Resolution resolve(SymbolTable table) {
+		Resolution current = resolution;
+		if ((current.table == table) && ((current.unresolved == 0) || (current.tableSize == table.size())))
+			return current;
+
+		int[] positions = new int[symbols.size()];
+		BitSet indexes = new BitSet();
+		int unresolved = 0;
+		for (int position = 0; position < symbols.size(); position++) {
+			positions[position] = table.getIndex(symbols.get(position));
+			if (positions[position] == -1)
+				unresolved++;
+			else
+				indexes.set(positions[position]);
+		}
+		current = new Resolution(table, table.size(), positions, indexes, unresolved);
+		resolution = current;
+
+		return current;
+	}
+
+	//NESTED CLASSES
+	/**
+	 * The compressed values of the codes in a look-up table.
+	 */
+	private static class Resolution {
+		private final SymbolTable table;
+		private final int tableSize;
+		private final int[] positions;
+		private final BitSet indexes;
+		private final int unresolved;
+
+		public Resolution(SymbolTable table, int tableSize, int[] positions, BitSet indexes, int unresolved) {
+			this.table = table;
+			this.tableSize = tableSize;
+			this.positions = positions;
+			this.indexes = indexes;
+			this.unresolved = unresolved;
+		}
+	}
+
+}
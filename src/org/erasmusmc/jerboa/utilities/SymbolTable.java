@@ -0,0 +1,136 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.collections.bidimap.DualHashBidiMap;
+
+/**
+ * This class is a look-up table used in the data compression. It maps the codes found in the input files,
+ * e.g. event types or ATC codes, to consecutive integers starting at zero. Besides the bidirectional map,
+ * the codes are kept in an array indexed on their integer value, so that retrieving the code of a
+ * compressed episode does not need a hash look-up nor the boxing of the index.
+ * The table can still grow after the input data is compressed, e.g. when modifiers add new event types.
+ */
+public class SymbolTable extends DualHashBidiMap {
+
+	private static final long serialVersionUID = 4285913628301574103L;
+
+	//the code per index; null for indexes without code
+	private transient volatile String[] symbols = new String[16];
+
+	/**
+	 * Basic constructor creating an empty table.
+	 */
+	public SymbolTable() {
+		super();
+	}
+
+	@Override
+	public synchronized Object put(Object key, Object value) {
+		int size = size();
+		Object previous = super.put(key, value);
+		if ((previous == null) && (size() == size + 1) && (key instanceof Integer) && ((Integer)key >= 0))
+			setSymbol((Integer)key, value);
+		else
+			rebuild();
+		return previous;
+	}
+
+	@Override
+	public synchronized Object remove(Object key) {
+		Object previous = super.remove(key);
+		rebuild();
+		return previous;
+	}
+
+	@Override
+	public synchronized Object removeValue(Object value) {
+		Object previous = super.removeValue(value);
+		rebuild();
+		return previous;
+	}
+
+	@Override
+	public synchronized void clear() {
+		super.clear();
+		rebuild();
+	}
+
+	/**
+	 * Returns the code at index.
+	 * @param index - the compressed value of the code
+	 * @return - the code; null if there is no code at index
+	 */
+	public String getSymbol(int index) {
+		String[] current = symbols;
+		if ((current != null) && (index >= 0) && (index < current.length) && (current[index] != null))
+			return current[index];
+		Object value = super.get(index);
+		return value != null ? value.toString() : null;
+	}
+
+	/**
+	 * Returns the index of a code.
+	 * @param symbol - the code
+	 * @return - the compressed value of the code; -1 if the code is not in the table
+	 */
+	public int getIndex(String symbol) {
+		Object index = getKey(symbol);
+		return index instanceof Integer ? (Integer)index : -1;
+	}
+
+	/**
+	 * Stores the code at index in the array, growing the array if needed.
+	 * @param index - the compressed value of the code
+	 * @param value - the code
+	 */
+	private void setSymbol(int index, Object value) {
+		String[] current = symbols != null ? symbols : new String[16];
+		if (index >= current.length)
+			current = Arrays.copyOf(current, Math.max(index + 1, 2 * current.length));
+		current[index] = value != null ? value.toString() : null;
+		symbols = current;
+	}
+
+	/**
+	 * Rebuilds the array of codes from the map, after a code was replaced or removed.
+	 */
+	private void rebuild() {
+		int length = 16;
+		for (Object key : keySet())
+			if ((key instanceof Integer) && ((Integer)key >= length))
+				length = (Integer)key + 1;
+
+		String[] rebuilt = new String[length];
+		for (Object entry : entrySet()) {
+			Map.Entry<?, ?> mapping = (Map.Entry<?, ?>)entry;
+			if ((mapping.getKey() instanceof Integer) && ((Integer)mapping.getKey() >= 0) && (mapping.getValue() != null))
+				rebuilt[(Integer)mapping.getKey()] = mapping.getValue().toString();
+		}
+		symbols = rebuilt;
+	}
+
+}
@@ -31,19 +31,31 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
-import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FilenameUtils;
 import org.erasmusmc.jerboa.Jerboa;
@@ -51,16 +63,35 @@ import org.erasmusmc.jerboa.config.FilePaths;
 
 /**
  * Class for zipping and unzipping files in a stream.
+ * The entries of an archive are compressed in parallel by worker threads,
+ * while the compressed entries are written to the stream in order.
  *
  * @author MM {@literal &} MG
  *
  */
 public class Zip {
 
+	//buffer size used when copying streams
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	//compressed entries up to this size are held in memory; larger ones in a temporary file
+	private static final int MAX_ENTRY_IN_MEMORY = 4 * 1024 * 1024;
+
+	//zip format
+	private static final int LOCAL_HEADER = 0x04034b50;
+	private static final int CENTRAL_HEADER = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY = 0x06054b50;
+	private static final int ZIP64_END_OF_CENTRAL_DIRECTORY = 0x06064b50;
+	private static final int ZIP64_LOCATOR = 0x07064b50;
+	private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+	private static final int ZIP64_ENTRIES_LIMIT = 0xFFFF;
+	private static final int UTF8_FLAG = 0x0800;
+
 	private Progress progress;
 	private Timer timer;
 
 	private boolean encrypted;
+	private int threads;
 
 	//COSNTRUCTORS
 	/**
@@ -69,6 +100,7 @@ public class Zip {
 	public Zip(){
 		this.progress = new Progress();
 		this.timer = new Timer();
+		this.threads = Runtime.getRuntime().availableProcessors();
 	}
 
 	/**
@@ -76,18 +108,30 @@ public class Zip {
 	 * @param encrypted - true if the stream should be encrypted; false otherwise
 	 */
 	public Zip(boolean encrypted){
-		this.progress = new Progress();
-		this.timer = new Timer();
+		this();
 		this.encrypted = encrypted;
 	}
 
+	/**
+	 * Constructor receiving a flag if the stream should be encrypted or not
+	 * and the number of threads compressing the entries.
+	 * @param encrypted - true if the stream should be encrypted; false otherwise
+	 * @param threads - the number of threads compressing the entries
+	 */
+	public Zip(boolean encrypted, int threads){
+		this(encrypted);
+		this.threads = Math.max(1, threads);
+	}
+
 	/**
 	 * Archives (.zip) the given files with a specified base folder to a stream.
+	 * The entries are compressed by a pool of worker threads, at most two per thread
+	 * ahead of the entry being written.
 	 * @param inputFiles - the list of input files.
 	 * @param stream - the output stream where the archive is written.
 	 * @return - true if the zipping of the files was performed successfully; false otherwise
 	 */
-	public boolean zip(List<String> inputFiles, OutputStream stream) {
+	public boolean zip(final List<String> inputFiles, OutputStream stream) {
 
 		if (inputFiles != null && inputFiles.size() > 0){
 
@@ -97,9 +141,16 @@ public class Zip {
 			//will hold all unique zip entries (crashes if duplicate entry)
 			Set<String> zipEntries = new TreeSet<String>();
 
+			ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory(){
+				public Thread newThread(Runnable runnable){
+					Thread thread = new Thread(runnable, "Jerboa compressor");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			List<Future<CompressedEntry>> compressed = new ArrayList<Future<CompressedEntry>>();
 			try {
 				Logging.add("Zipping files", Logging.HINT, true);
-				ZipOutputStream zipOut = new ZipOutputStream(stream);
 				for (String inputFile : inputFiles){
 					//keep folder structure inside the zip
 					String newFile = inputFile;
@@ -113,27 +164,44 @@ public class Zip {
 						zipEntries.add(i < pathFolders.length - 1 ? pathFolders[i] + "/" : newFile);
 				}
 
-				//add them to the zip stream one by one
-				for (String entry : zipEntries){
-					zipOut.putNextEntry(new ZipEntry(entry));
-					if (!entry.endsWith("/")){
-						for (String inputFile : inputFiles){
-							if (inputFile.endsWith(entry)){
-								copyStream(new FileInputStream(inputFile), zipOut);
-								if (!Jerboa.errorOccurred){
-									Logging.add("Compressing " + inputFile, true);
-									if (this.encrypted)
-										Logging.add("Encrypted " + inputFile);
-								}
-								progress.update();
-							}
+				//compress the entries in parallel and add them to the zip stream one by one
+				final List<String> entries = new ArrayList<String>(zipEntries);
+				ZipWriter zipOut = new ZipWriter(stream);
+				int window = 2 * threads;
+				for (int i = 0; i < entries.size(); i++){
+					while (compressed.size() < Math.min(entries.size(), i + window + 1))
+						compressed.add(submitEntry(executor, entries.get(compressed.size()), inputFiles));
+					CompressedEntry entry = compressed.get(i).get();
+					compressed.set(i, null);
+					try {
+						zipOut.write(entry);
+					} finally {
+						entry.delete();
+					}
+					for (String inputFile : entry.inputFiles){
+						if (!Jerboa.errorOccurred){
+							Logging.add("Compressing " + inputFile, true);
+							if (this.encrypted)
+								Logging.add("Encrypted " + inputFile);
 						}
+						progress.update();
 					}
 				}
 				zipOut.close();
 			} catch (Exception e){
-				Logging.outputStackTrace(e);
+				Logging.outputStackTrace(e instanceof ExecutionException ? e.getCause() : e);
 				return false;
+			} finally {
+				executor.shutdownNow();
+				//remove the temporary files of the entries compressed but not written
+				for (Future<CompressedEntry> future : compressed){
+					try {
+						if (future != null)
+							future.get().delete();
+					} catch (Exception e){
+						//nothing to clean up
+					}
+				}
 			}
 
 			timer.stopAndDisplay("Result packing done in:");
@@ -147,6 +215,29 @@ public class Zip {
 		}
 	}
 
+	/**
+	 * Submits the compression of a zip entry. The data of the entry are
+	 * the contents of all input files whose name ends with the entry name.
+	 * @param executor - the executor running the compressing threads
+	 * @param entry - the name of the zip entry
+	 * @param inputFiles - the list of input files
+	 * @return - the future compressed entry
+	 */
+	private Future<CompressedEntry> submitEntry(ExecutorService executor, final String entry, final List<String> inputFiles){
+		return executor.submit(new Callable<CompressedEntry>(){
+			public CompressedEntry call() throws IOException{
+				CompressedEntry compressed = new CompressedEntry(entry);
+				if (!entry.endsWith("/")){
+					for (String inputFile : inputFiles)
+						if (inputFile.endsWith(entry))
+							compressed.inputFiles.add(inputFile);
+					compressed.compress();
+				}
+				return compressed;
+			}
+		});
+	}
+
 	/**
 	 * Unzip files from an archived (zipped) stream to a target folder.
 	 * @param stream - the archived stream.
@@ -191,27 +282,333 @@ public class Zip {
 	 * @param dest - the destination stream.
 	 */
 	public void copyStream(InputStream source, OutputStream dest){
-		int bufferSize = 1024;
-		int bytes;
-		byte[] buffer;
-		buffer = new byte[bufferSize];
 		try {
-			while ((bytes = source.read(buffer)) != -1) {
-				if (bytes == 0) {
-					bytes = source.read();
-					if (bytes < 0)
-						break;
-					dest.write(bytes);
-					dest.flush();
-					continue;
-				}
-				dest.write(buffer, 0, bytes);
-				dest.flush();
-			}
+			copy(source, dest);
 		} catch (IOException e) {
 			Logging.outputStackTrace(e);
 		}
+	}
+
+	/**
+	 * Copy the source stream to the destination stream.
+	 * @param source - the source stream.
+	 * @param dest - the destination stream.
+	 * @return - the number of bytes copied
+	 * @throws IOException - if unable to read from the source or write to the destination
+	 */
+	private static long copy(InputStream source, OutputStream dest) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		long total = 0;
+		int bytes;
+		while ((bytes = source.read(buffer)) != -1) {
+			if (bytes == 0) {
+				bytes = source.read();
+				if (bytes < 0)
+					break;
+				dest.write(bytes);
+				total++;
+				continue;
+			}
+			dest.write(buffer, 0, bytes);
+			total += bytes;
+		}
+		dest.flush();
+		return total;
+	}
+
+	//INNER CLASSES
+	/**
+	 * A zip entry with its data deflated, held in memory or in a temporary file.
+	 */
+	private static class CompressedEntry {
+
+		private String name;
+		private List<String> inputFiles = new ArrayList<String>();
+
+		private long crc;
+		private long size;
+		private long compressedSize;
+		private ByteArrayOutputStream data;
+		private File file;
+
+		/**
+		 * Constructor receiving the name of the entry.
+		 * @param name - the name of the entry in the archive
+		 */
+		public CompressedEntry(String name){
+			this.name = name;
+		}
+
+		/**
+		 * Deflates the contents of the input files of this entry.
+		 * @throws IOException - if unable to read an input file or write the temporary file
+		 */
+		public void compress() throws IOException {
+			CRC32 checksum = new CRC32();
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			SpillingStream spill = new SpillingStream();
+			DeflaterOutputStream out = new DeflaterOutputStream(spill, deflater, BUFFER_SIZE);
+			try {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				for (String inputFile : inputFiles){
+					InputStream in = new FileInputStream(inputFile);
+					try {
+						int bytes;
+						while ((bytes = in.read(buffer)) != -1){
+							checksum.update(buffer, 0, bytes);
+							out.write(buffer, 0, bytes);
+							size += bytes;
+						}
+					} finally {
+						in.close();
+					}
+				}
+				out.finish();
+			} finally {
+				out.close();
+				deflater.end();
+			}
+			crc = checksum.getValue();
+			compressedSize = spill.count;
+			data = spill.memory;
+			file = spill.file;
+		}
+
+		/**
+		 * @return - true if this entry is a folder
+		 */
+		public boolean isDirectory(){
+			return name.endsWith("/");
+		}
+
+		/**
+		 * Writes the compressed data to the output stream.
+		 * @param out - the stream the data is written to
+		 * @throws IOException - if unable to read the temporary file or write the data
+		 */
+		public void writeData(OutputStream out) throws IOException {
+			if (data != null){
+				data.writeTo(out);
+			}else if (file != null){
+				InputStream in = new FileInputStream(file);
+				try {
+					copy(in, out);
+				} finally {
+					in.close();
+				}
+			}
+		}
+
+		/**
+		 * Releases the compressed data, removing the temporary file if any.
+		 */
+		public void delete(){
+			data = null;
+			if (file != null)
+				file.delete();
+			file = null;
+		}
+
+		/**
+		 * Output stream keeping the data in memory until MAX_ENTRY_IN_MEMORY is
+		 * exceeded, after which all data is moved to a temporary file.
+		 */
+		private static class SpillingStream extends OutputStream {
+
+			private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+			private File file;
+			private OutputStream fileStream;
+			private long count;
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte)b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				if (fileStream == null && count + len > MAX_ENTRY_IN_MEMORY){
+					file = File.createTempFile("zip_", ".tmp");
+					file.deleteOnExit();
+					fileStream = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+					memory.writeTo(fileStream);
+					memory = null;
+				}
+				if (fileStream != null)
+					fileStream.write(b, off, len);
+				else
+					memory.write(b, off, len);
+				count += len;
+			}
+
+			@Override
+			public void close() throws IOException {
+				if (fileStream != null)
+					fileStream.close();
+			}
+		}
+	}
 
+	/**
+	 * Writes entries that are already compressed to a stream in the zip format.
+	 * The zip64 extensions are used for the entries and archives which need them.
+	 */
+	private static class ZipWriter {
+
+		private OutputStream out;
+		private long offset;
+		private long dosTime;
+		private ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+		private int entries;
+
+		/**
+		 * Constructor receiving the stream the archive is written to.
+		 * @param out - the output stream
+		 */
+		public ZipWriter(OutputStream out){
+			this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+			this.dosTime = dosTime(System.currentTimeMillis());
+		}
+
+		/**
+		 * Writes the local header and the data of an entry, and keeps its central directory header.
+		 * @param entry - the compressed entry
+		 * @throws IOException - if unable to write the entry
+		 */
+		public void write(CompressedEntry entry) throws IOException {
+			byte[] name = entry.name.getBytes(StandardCharsets.UTF_8);
+			boolean directory = entry.isDirectory();
+			boolean zip64 = entry.size >= ZIP64_LIMIT || entry.compressedSize >= ZIP64_LIMIT;
+			long localOffset = offset;
+
+			//local header
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			writeInt(header, LOCAL_HEADER);
+			writeShort(header, zip64 ? 45 : 20);
+			writeShort(header, UTF8_FLAG);
+			writeShort(header, directory ? ZipEntry.STORED : ZipEntry.DEFLATED);
+			writeInt(header, dosTime);
+			writeInt(header, entry.crc);
+			writeInt(header, zip64 ? ZIP64_LIMIT : entry.compressedSize);
+			writeInt(header, zip64 ? ZIP64_LIMIT : entry.size);
+			writeShort(header, name.length);
+			writeShort(header, zip64 ? 20 : 0);
+			header.write(name);
+			if (zip64){
+				writeShort(header, 0x0001);
+				writeShort(header, 16);
+				writeLong(header, entry.size);
+				writeLong(header, entry.compressedSize);
+			}
+			header.writeTo(out);
+			entry.writeData(out);
+			offset += header.size() + entry.compressedSize;
+
+			//central directory header
+			boolean zip64Offset = localOffset >= ZIP64_LIMIT;
+			int extra = (zip64 ? 16 : 0) + (zip64Offset ? 8 : 0);
+			writeInt(centralDirectory, CENTRAL_HEADER);
+			writeShort(centralDirectory, 45);
+			writeShort(centralDirectory, zip64 || zip64Offset ? 45 : 20);
+			writeShort(centralDirectory, UTF8_FLAG);
+			writeShort(centralDirectory, directory ? ZipEntry.STORED : ZipEntry.DEFLATED);
+			writeInt(centralDirectory, dosTime);
+			writeInt(centralDirectory, entry.crc);
+			writeInt(centralDirectory, zip64 ? ZIP64_LIMIT : entry.compressedSize);
+			writeInt(centralDirectory, zip64 ? ZIP64_LIMIT : entry.size);
+			writeShort(centralDirectory, name.length);
+			writeShort(centralDirectory, extra > 0 ? extra + 4 : 0);
+			writeShort(centralDirectory, 0); //comment length
+			writeShort(centralDirectory, 0); //disk number
+			writeShort(centralDirectory, 0); //internal attributes
+			writeInt(centralDirectory, directory ? 0x10 : 0); //external attributes
+			writeInt(centralDirectory, zip64Offset ? ZIP64_LIMIT : localOffset);
+			centralDirectory.write(name);
+			if (extra > 0){
+				writeShort(centralDirectory, 0x0001);
+				writeShort(centralDirectory, extra);
+				if (zip64){
+					writeLong(centralDirectory, entry.size);
+					writeLong(centralDirectory, entry.compressedSize);
+				}
+				if (zip64Offset)
+					writeLong(centralDirectory, localOffset);
+			}
+			entries++;
+		}
+
+		/**
+		 * Writes the central directory and the end of the archive, and closes the stream.
+		 * @throws IOException - if unable to write to the stream
+		 */
+		public void close() throws IOException {
+			long directoryOffset = offset;
+			long directorySize = centralDirectory.size();
+			centralDirectory.writeTo(out);
+			offset += directorySize;
+
+			ByteArrayOutputStream end = new ByteArrayOutputStream();
+			boolean zip64 = entries >= ZIP64_ENTRIES_LIMIT || directoryOffset >= ZIP64_LIMIT;
+			if (zip64){
+				long zip64End = offset;
+				writeInt(end, ZIP64_END_OF_CENTRAL_DIRECTORY);
+				writeLong(end, 44);
+				writeShort(end, 45);
+				writeShort(end, 45);
+				writeInt(end, 0);
+				writeInt(end, 0);
+				writeLong(end, entries);
+				writeLong(end, entries);
+				writeLong(end, directorySize);
+				writeLong(end, directoryOffset);
+
+				writeInt(end, ZIP64_LOCATOR);
+				writeInt(end, 0);
+				writeLong(end, zip64End);
+				writeInt(end, 1);
+			}
+			writeInt(end, END_OF_CENTRAL_DIRECTORY);
+			writeShort(end, 0);
+			writeShort(end, 0);
+			writeShort(end, Math.min(entries, ZIP64_ENTRIES_LIMIT));
+			writeShort(end, Math.min(entries, ZIP64_ENTRIES_LIMIT));
+			writeInt(end, Math.min(directorySize, ZIP64_LIMIT));
+			writeInt(end, Math.min(directoryOffset, ZIP64_LIMIT));
+			writeShort(end, 0); //comment length
+			end.writeTo(out);
+			out.close();
+		}
+
+		/**
+		 * Converts a time to the MS-DOS date and time format used in the zip headers.
+		 * @param time - the time in milliseconds
+		 * @return - the MS-DOS date (high 16 bits) and time (low 16 bits)
+		 */
+		private static long dosTime(long time){
+			Calendar calendar = Calendar.getInstance();
+			calendar.setTimeInMillis(time);
+			int year = calendar.get(Calendar.YEAR);
+			if (year < 1980)
+				return (1 << 21) | (1 << 16);
+			return ((long)(year - 1980) << 25) | ((calendar.get(Calendar.MONTH) + 1) << 21) |
+					(calendar.get(Calendar.DAY_OF_MONTH) << 16) | (calendar.get(Calendar.HOUR_OF_DAY) << 11) |
+					(calendar.get(Calendar.MINUTE) << 5) | (calendar.get(Calendar.SECOND) >> 1);
+		}
+
+		private static void writeShort(OutputStream out, int value) throws IOException {
+			out.write(value & 0xFF);
+			out.write((value >>> 8) & 0xFF);
+		}
+
+		private static void writeInt(OutputStream out, long value) throws IOException {
+			writeShort(out, (int)(value & 0xFFFF));
+			writeShort(out, (int)((value >>> 16) & 0xFFFF));
+		}
+
+		private static void writeLong(OutputStream out, long value) throws IOException {
+			writeInt(out, value & 0xFFFFFFFFL);
+			writeInt(out, value >>> 32);
+		}
 	}
 
 }
@@ -31,6 +31,8 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities.dataSimulator;
 
+import java.util.List;
+
 import org.erasmusmc.jerboa.dataClasses.Event;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 
@@ -51,6 +53,16 @@ public class EventFileWriter extends FileWriter{
 	  super(filename);
   }
 
+  /**
+   * Constructor receiving the name of the output file and the names
+   * of the extended columns that follow the mandatory columns.
+   * @param filename - the output file
+   * @param extendedColumns - the names of the extended columns
+   */
+  public EventFileWriter(String filename, List<String> extendedColumns){
+	  super(filename, extendedColumns);
+  }
+
   /**
    * Exports the header for the events file.
    */
@@ -60,6 +72,7 @@ public class EventFileWriter extends FileWriter{
 	  this.header.add("EventType");
 	  this.header.add("Date");
 	  this.header.add("Code");
+	  this.header.addAll(this.extendedColumns);
 	  this.file.write(header);
   }
 
@@ -67,10 +80,27 @@ public class EventFileWriter extends FileWriter{
   public void write(Object o){
 	  Event e = new Event((Event)o);
 	  if (e != null){
-		  String s = e.subset+","+e.patientID+","+e.getType()+","+
-				  DateUtilities.daysToDate(e.date)+","+
-				  e.getCode();
-		  file.write(s);
+		  StringBuilder sb = new StringBuilder();
+		  appendLine(sb, e.subset, e.patientID, e.getType(), e.date, e.getCode());
+		  file.writeLines(sb);
 	  }
   }
+
+  /**
+   * Appends an event to a block of lines of the events file.
+   * @param sb - the lines being built
+   * @param subset - the subset ID of the patient
+   * @param patientID - the ID of the patient
+   * @param type - the event type
+   * @param date - the date of the event in days
+   * @param code - the code of the event
+   * @param extended - the values of the extended columns, if any
+   */
+  public static void appendLine(StringBuilder sb, String subset, String patientID, String type,
+		  int date, String code, String... extended){
+	  sb.append(subset).append(',').append(patientID).append(',').append(type).append(',')
+	  	.append(DateUtilities.daysToDate(date)).append(',')
+	  	.append(code);
+	  endLine(sb, extended);
+  }
 }
\ No newline at end of file
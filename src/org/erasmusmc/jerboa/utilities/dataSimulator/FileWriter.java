@@ -46,14 +46,26 @@ public abstract class FileWriter {
 
   protected WriteCSVFile file;
   protected List<String> header;
+  protected List<String> extendedColumns;
 
   /**
    * Constructor receiving the name of the output file
    * @param filename - the output file
    */
   public FileWriter(String filename){
+    this(filename, new ArrayList<String>());
+  }
+
+  /**
+   * Constructor receiving the name of the output file and the names of
+   * the extended columns that follow the mandatory columns of the file.
+   * @param filename - the output file
+   * @param extendedColumns - the names of the extended columns
+   */
+  public FileWriter(String filename, List<String> extendedColumns){
     file = new WriteCSVFile(filename);
     header = new ArrayList<String>();
+    this.extendedColumns = extendedColumns;
     writeHeader();
   }
 
@@ -82,6 +94,29 @@ public abstract class FileWriter {
     		write(o);
   }
 
+  /**
+   * Writes a block of lines that are already in CSV format, as
+   * put together by the appendLine methods of the writers.
+   * @param lines - the lines to be output, each one ended by a new line
+   */
+  public void writeLines(CharSequence lines){
+	  file.writeLines(lines);
+  }
+
+  /**
+   * Appends the values of the extended columns to a line and ends it.
+   * @param sb - the line being built
+   * @param extended - the values of the extended columns
+   */
+  protected static void endLine(StringBuilder sb, String[] extended){
+	  if (extended != null)
+		  for (String value : extended){
+			  sb.append(',');
+			  WriteCSVFile.appendColumn(sb, value);
+		  }
+	  sb.append(WriteCSVFile.NEW_LINE);
+  }
+
   /**
    * Will flush and close the output buffer.
    */
@@ -31,6 +31,8 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities.dataSimulator;
 
+import java.util.List;
+
 import org.erasmusmc.jerboa.dataClasses.Measurement;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 
@@ -51,6 +53,16 @@ public class MeasurementFileWriter extends FileWriter{
 	  super(filename);
   }
 
+  /**
+   * Constructor receiving the name of the output file and the names
+   * of the extended columns that follow the mandatory columns.
+   * @param filename - the output file
+   * @param extendedColumns - the names of the extended columns
+   */
+  public MeasurementFileWriter(String filename, List<String> extendedColumns){
+	  super(filename, extendedColumns);
+  }
+
   /**
    * Exports the header for the measurements file.
    */
@@ -60,6 +72,7 @@ public class MeasurementFileWriter extends FileWriter{
 	  this.header.add("Measurementtype");
 	  this.header.add("Date");
 	  this.header.add("Value");
+	  this.header.addAll(this.extendedColumns);
 	  this.file.write(header);
   }
 
@@ -67,10 +80,28 @@ public class MeasurementFileWriter extends FileWriter{
   public void write(Object o){
 	  	Measurement m = new Measurement((Measurement)o);
 		if (m != null){
-			String s = m.subset+","+m.patientID+","+m.getType()+","+
-				DateUtilities.daysToDate(m.date)+","+m.getValue();
-			file.write(s);
+			StringBuilder sb = new StringBuilder();
+			appendLine(sb, m.subset, m.patientID, m.getType(), m.date, m.getValue());
+			file.writeLines(sb);
 		}
 	}
 
+  /**
+   * Appends a measurement to a block of lines of the measurements file.
+   * @param sb - the lines being built
+   * @param subset - the subset ID of the patient
+   * @param patientID - the ID of the patient
+   * @param type - the measurement type
+   * @param date - the date of the measurement in days
+   * @param value - the value of the measurement
+   * @param extended - the values of the extended columns, if any
+   */
+  public static void appendLine(StringBuilder sb, String subset, String patientID, String type,
+		  int date, String value, String... extended){
+	  sb.append(subset).append(',').append(patientID).append(',').append(type).append(',')
+	  	.append(DateUtilities.daysToDate(date)).append(',')
+	  	.append(value);
+	  endLine(sb, extended);
+  }
+
 }
\ No newline at end of file
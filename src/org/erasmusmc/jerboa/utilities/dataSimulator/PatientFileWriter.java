@@ -31,6 +31,8 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities.dataSimulator;
 
+import java.util.List;
+
 import org.erasmusmc.jerboa.dataClasses.Patient;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 
@@ -51,6 +53,16 @@ public class PatientFileWriter extends FileWriter{
 	  super(filename);
   }
 
+  /**
+   * Constructor receiving the name of the output file and the names
+   * of the extended columns that follow the mandatory columns.
+   * @param filename - the output file
+   * @param extendedColumns - the names of the extended columns
+   */
+  public PatientFileWriter(String filename, List<String> extendedColumns){
+	  super(filename, extendedColumns);
+  }
+
   /**
    * Exports the header for the patients file.
    */
@@ -61,6 +73,7 @@ public class PatientFileWriter extends FileWriter{
 	  this.header.add("Gender");
 	  this.header.add("Startdate");
 	  this.header.add("Enddate");
+	  this.header.addAll(this.extendedColumns);
 	  this.file.write(this.header);
   }
 
@@ -68,13 +81,31 @@ public class PatientFileWriter extends FileWriter{
   public void write(Object o){
 	  Patient p = new Patient((Patient)o);
 	  if (p != null){
-		  String s = p.subset+","+p.ID+","+
-			DateUtilities.daysToDate(p.birthDate)+","+
-			(p.gender == 1 ? "M" : "F")+","+
-			DateUtilities.daysToDate(p.startDate)+","+
-			DateUtilities.daysToDate(p.endDate);
-		  file.write(s);
+		  StringBuilder sb = new StringBuilder();
+		  appendLine(sb, p.subset, p.ID, p.birthDate, p.gender, p.startDate, p.endDate);
+		  file.writeLines(sb);
 	  }
   }
 
+  /**
+   * Appends a patient to a block of lines of the patients file.
+   * @param sb - the lines being built
+   * @param subset - the subset ID of the patient
+   * @param patientID - the ID of the patient
+   * @param birthDate - the birth date in days
+   * @param gender - the gender of the patient
+   * @param startDate - the start date of the observation in days
+   * @param endDate - the end date of the observation in days
+   * @param extended - the values of the extended columns, if any
+   */
+  public static void appendLine(StringBuilder sb, String subset, String patientID, int birthDate,
+		  byte gender, int startDate, int endDate, String... extended){
+	  sb.append(subset).append(',').append(patientID).append(',')
+	  	.append(DateUtilities.daysToDate(birthDate)).append(',')
+	  	.append(gender == 1 ? "M" : "F").append(',')
+	  	.append(DateUtilities.daysToDate(startDate)).append(',')
+	  	.append(DateUtilities.daysToDate(endDate));
+	  endLine(sb, extended);
+  }
+
 }
\ No newline at end of file
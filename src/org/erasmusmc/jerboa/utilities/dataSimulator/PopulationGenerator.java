@@ -0,0 +1,733 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package org.erasmusmc.jerboa.utilities.dataSimulator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.Logging;
+import org.erasmusmc.jerboa.utilities.Timer;
+
+/**
+ * This class generates a synthetic population of any size and writes it as a set
+ * of input files (patients, events, prescriptions and measurements) with the file writers
+ * of this package. The population follows an age pyramid, leaves the database or dies
+ * with an age dependent mortality, has events drawn from Poisson processes with age
+ * dependent rates, receives chronic and acute prescriptions following its events and
+ * has measurements with a personal level.
+ *
+ * Each patient is drawn from its own random generator, seeded from the seed of the generator
+ * and the index of the patient, so the output only depends on the settings and not on
+ * the number of threads. The patients are generated in parallel in blocks of consecutive
+ * patients, which are written in order by the calling thread. When the output is not sorted
+ * the blocks are written in a random order and the lines of each block are shuffled.
+ */
+public class PopulationGenerator {
+
+	//the number of patients generated at once by a thread
+	public static final int BLOCK_SIZE = 10000;
+
+	//the names of the input files
+	public static final String PATIENTS_FILE = "Patients.txt";
+	public static final String EVENTS_FILE = "Events.txt";
+	public static final String PRESCRIPTIONS_FILE = "Prescriptions.txt";
+	public static final String MEASUREMENTS_FILE = "Measurements.txt";
+
+	//the extended columns of the input files
+	public static final String PRACTICE_ID = "PracticeID";
+	public static final String EVENT_SOURCE = "Source";
+	public static final String PRESCRIBER = "Prescriber";
+	public static final String MEASUREMENT_UNIT = "Unit";
+
+	//the event marking the death of a patient
+	public static final String DEATH = "DEATH";
+
+	//the share in percentages of the five year age bands (0-4, 5-9, ..., 95-99) in the population, summing up to 100
+	private static final double[] AGE_PYRAMID = {5.1, 5.2, 5.2, 5.5, 6.0, 6.3, 6.4, 6.6, 7.0, 7.4,
+			7.2, 6.6, 6.0, 5.6, 4.6, 3.6, 2.8, 1.7, 0.8, 0.4};
+
+	//the yearly mortality is exp(MORTALITY_INTERCEPT + MORTALITY_SLOPE * age)
+	private static final double MORTALITY_INTERCEPT = -10.0;
+	private static final double MORTALITY_SLOPE = 0.09;
+
+	//the share of the patients that are born during the study period
+	private static final double BIRTHS = 0.05;
+
+	//the share of the patients already registered at the start of the study period
+	private static final double REGISTERED_AT_START = 0.6;
+
+	//the probability that a chronic drug is stopped at a refill
+	private static final double STOP_PER_REFILL = 0.03;
+
+	//the number of patients per practice
+	private static final int PRACTICE_SIZE = 2000;
+
+	//the events with their yearly rate at the age of 50 and the change of the rate per year of age
+	private static final EventDefinition[] EVENTS = {
+		new EventDefinition("MI",           "I21", 0.002, 0.07,  false, "HOSPITAL"),
+		new EventDefinition("STROKE",       "I63", 0.0015, 0.08, false, "HOSPITAL"),
+		new EventDefinition("DIABETES",     "E11", 0.005, 0.04,  true,  "GP"),
+		new EventDefinition("HYPERTENSION", "I10", 0.015, 0.05,  true,  "GP"),
+		new EventDefinition("ASTHMA",       "J45", 0.004, -0.01, true,  "GP"),
+		new EventDefinition("DEPRESSION",   "F32", 0.01,  0.0,   true,  "GP"),
+		new EventDefinition("FRACTURE",     "S72", 0.01,  0.03,  false, "HOSPITAL"),
+		new EventDefinition("INFECTION",    "J06", 0.3,   0.0,   false, "GP"),
+	};
+
+	//the drugs with the event they are prescribed for and the way they are prescribed
+	private static final DrugDefinition[] DRUGS = {
+		new DrugDefinition("A10BA02", "DIABETES",     0.8, true,  30, "2", 0,   "GP"),
+		new DrugDefinition("C09AA05", "HYPERTENSION", 0.7, true,  90, "1", 0,   "GP"),
+		new DrugDefinition("C07AB02", "HYPERTENSION", 0.3, true,  90, "1", 0,   "GP"),
+		new DrugDefinition("C10AA05", "MI",           0.9, true,  90, "1", 0,   "SPECIALIST"),
+		new DrugDefinition("B01AC06", "MI",           0.8, true,  90, "1", 0,   "SPECIALIST"),
+		new DrugDefinition("B01AC06", "STROKE",       0.8, true,  90, "1", 0,   "SPECIALIST"),
+		new DrugDefinition("R03AC02", "ASTHMA",       0.9, true,  60, "2", 0,   "GP"),
+		new DrugDefinition("N06AB06", "DEPRESSION",   0.6, true,  30, "1", 0,   "GP"),
+		new DrugDefinition("M01AE01", "FRACTURE",     0.6, false, 14, "3", 0,   "SPECIALIST"),
+		new DrugDefinition("J01CA04", "INFECTION",    0.4, false, 7,  "3", 0,   "GP"),
+		new DrugDefinition("N02BE01", null,           0,   false, 10, "4", 0.2, "GP"),
+	};
+
+	//the measurements with the event after which they are repeated more often
+	private static final MeasurementDefinition[] MEASUREMENTS = {
+		new MeasurementDefinition("BMI",   "kg/m2",  null,           0.3, 0,   27,  4,   0.8),
+		new MeasurementDefinition("SBP",   "mmHg",   "HYPERTENSION", 0.5, 4,   130, 15,  8),
+		new MeasurementDefinition("DBP",   "mmHg",   "HYPERTENSION", 0.5, 4,   80,  9,   5),
+		new MeasurementDefinition("HBA1C", "%",      "DIABETES",     0.05, 2,  6.5, 1.0, 0.4),
+		new MeasurementDefinition("SMOKING", "",     null,           0.2, 0,   0,   0,   0,
+				"NEVER", "NEVER", "NEVER", "FORMER", "FORMER", "CURRENT"),
+	};
+
+	//builder parameters
+	private String folder;
+	private int nbPatients;
+	private long seed;
+	private int threads;
+	private boolean sorted;
+	private boolean extendedColumns;
+	private int studyStart;
+	private int studyEnd;
+	private double meanFollowUp;
+
+	//the width of the patient IDs
+	private int idLength;
+
+	//statistics
+	private long nbEvents;
+	private long nbPrescriptions;
+	private long nbMeasurements;
+
+	//CONSTRUCTOR
+	public PopulationGenerator(Builder builder){
+		folder = builder.folder;
+		nbPatients = builder.nbPatients;
+		seed = builder.seed;
+		threads = builder.threads;
+		sorted = builder.sorted;
+		extendedColumns = builder.extendedColumns;
+		studyStart = DateUtilities.dateToDays(builder.studyStart, DateUtilities.DATE_ON_YYYYMMDD);
+		studyEnd = DateUtilities.dateToDays(builder.studyEnd, DateUtilities.DATE_ON_YYYYMMDD);
+		meanFollowUp = builder.meanFollowUp;
+
+		idLength = Integer.toString(Math.max(nbPatients - 1, 0)).length();
+	}
+
+	/**
+	 * Generates the population and writes the input files in the folder.
+	 * @throws IOException - if the generation of a block of patients failed
+	 */
+	public void generate() throws IOException{
+
+		Timer timer = new Timer();
+		timer.start();
+		nbEvents = 0;
+		nbPrescriptions = 0;
+		nbMeasurements = 0;
+		new File(folder).mkdirs();
+
+		PatientFileWriter patientWriter = new PatientFileWriter(getPatientsFile(),
+				columns(PRACTICE_ID));
+		EventFileWriter eventWriter = new EventFileWriter(getEventsFile(),
+				columns(EVENT_SOURCE));
+		PrescriptionFileWriter prescriptionWriter = new PrescriptionFileWriter(getPrescriptionsFile(),
+				columns(PRESCRIBER));
+		MeasurementFileWriter measurementWriter = new MeasurementFileWriter(getMeasurementsFile(),
+				columns(MEASUREMENT_UNIT));
+
+		//the order in which the blocks are written
+		int nbBlocks = (int)(((long)nbPatients + BLOCK_SIZE - 1) / BLOCK_SIZE);
+		List<Integer> blockOrder = new ArrayList<Integer>(nbBlocks);
+		for (int i = 0; i < nbBlocks; i++)
+			blockOrder.add(i);
+		if (!sorted)
+			Collections.shuffle(blockOrder, new Random(mix(seed)));
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int count = 0;
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Jerboa generator " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try{
+			//keep a limited number of blocks in memory
+			LinkedList<Future<Block>> pending = new LinkedList<Future<Block>>();
+			for (final Integer blockIndex : blockOrder){
+				pending.add(executor.submit(new Callable<Block>() {
+					public Block call() {
+						return generateBlock(blockIndex);
+					}
+				}));
+				if (pending.size() >= 2 * threads)
+					write(pending.removeFirst(), patientWriter, eventWriter, prescriptionWriter, measurementWriter);
+			}
+			while (!pending.isEmpty())
+				write(pending.removeFirst(), patientWriter, eventWriter, prescriptionWriter, measurementWriter);
+		}finally{
+			executor.shutdownNow();
+			patientWriter.close();
+			eventWriter.close();
+			prescriptionWriter.close();
+			measurementWriter.close();
+		}
+
+		Logging.add("Generated " + nbPatients + " patients, " + nbEvents + " events, " +
+				nbPrescriptions + " prescriptions and " + nbMeasurements + " measurements in " + folder);
+		timer.stopAndDisplay("Population generated in:");
+	}
+
+	/**
+	 * Waits for a block of patients and writes it to the input files.
+	 * @param future - the block being generated
+	 * @param patientWriter - the writer of the patients file
+	 * @param eventWriter - the writer of the events file
+	 * @param prescriptionWriter - the writer of the prescriptions file
+	 * @param measurementWriter - the writer of the measurements file
+	 * @throws IOException - if the generation of the block failed
+	 */
+	private void write(Future<Block> future, PatientFileWriter patientWriter, EventFileWriter eventWriter,
+			PrescriptionFileWriter prescriptionWriter, MeasurementFileWriter measurementWriter) throws IOException{
+		Block block;
+		try{
+			block = future.get();
+		}catch (InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException("The generation of the population was interrupted", e);
+		}catch (ExecutionException e){
+			throw new IOException("Unable to generate a block of patients", e.getCause());
+		}
+
+		patientWriter.writeLines(block.patients);
+		eventWriter.writeLines(block.events);
+		prescriptionWriter.writeLines(block.prescriptions);
+		measurementWriter.writeLines(block.measurements);
+
+		nbEvents += block.nbEvents;
+		nbPrescriptions += block.nbPrescriptions;
+		nbMeasurements += block.nbMeasurements;
+	}
+
+	/**
+	 * Generates a block of consecutive patients.
+	 * @param blockIndex - the index of the block
+	 * @return - the lines of the input files for the patients of the block
+	 */
+	private Block generateBlock(int blockIndex){
+		Block block = new Block();
+		int first = blockIndex * BLOCK_SIZE;
+		int last = (int)Math.min((long)first + BLOCK_SIZE, nbPatients);
+		for (int index = first; index < last; index++)
+			generatePatient(index, block);
+
+		if (!sorted){
+			Random random = new Random(mix(seed - blockIndex - 1));
+			shuffleLines(block.patients, random);
+			shuffleLines(block.events, random);
+			shuffleLines(block.prescriptions, random);
+			shuffleLines(block.measurements, random);
+		}
+
+		return block;
+	}
+
+	/**
+	 * Generates a patient with its history and appends it to the block.
+	 * @param index - the index of the patient in the population
+	 * @param block - the block the patient belongs to
+	 */
+	private void generatePatient(int index, Block block){
+		Random random = new Random(mix(seed + index * 0x9E3779B97F4A7C15L));
+		String subset = DataDefinition.DEFAULT_SUBSET_ID;
+		String id = patientID(index);
+		byte gender = random.nextDouble() < 0.51 ? DataDefinition.FEMALE_GENDER : DataDefinition.MALE_GENDER;
+
+		//birth and registration
+		int birthDate;
+		int startDate;
+		if (random.nextDouble() < BIRTHS){
+			birthDate = studyStart + random.nextInt(studyEnd - studyStart);
+			startDate = birthDate;
+		}else{
+			birthDate = studyStart - (int)(ageAtStudyStart(random) * DateUtilities.daysPerYear);
+			if (random.nextDouble() < REGISTERED_AT_START)
+				startDate = Math.max(birthDate, studyStart - random.nextInt(10 * 365));
+			else
+				startDate = studyStart + random.nextInt(studyEnd - studyStart);
+		}
+
+		//leaving the database or death
+		int leaveDate = startDate + (int)(-Math.log(1 - random.nextDouble()) * meanFollowUp * DateUtilities.daysPerYear);
+		int endDate = Math.max(startDate + 1, Math.min(leaveDate, studyEnd));
+		int deathDate = -1;
+		for (int date = startDate; date < endDate && deathDate == -1; date += 365){
+			double age = (date - birthDate) / DateUtilities.daysPerYear;
+			if (random.nextDouble() < Math.exp(MORTALITY_INTERCEPT + MORTALITY_SLOPE * age)){
+				deathDate = Math.min(date + random.nextInt(365), endDate);
+				endDate = Math.max(startDate + 1, deathDate);
+			}
+		}
+
+		PatientFileWriter.appendLine(block.patients, subset, id, birthDate, gender, startDate, endDate,
+				values("PR" + (index / PRACTICE_SIZE)));
+
+		//events
+		List<Episode> events = new ArrayList<Episode>();
+		for (int e = 0; e < EVENTS.length; e++){
+			EventDefinition definition = EVENTS[e];
+			for (int year = startDate; year < endDate; year += 365){
+				double age = (year - birthDate + 182) / DateUtilities.daysPerYear;
+				int days = Math.min(365, endDate - year);
+				int count = poisson(random, definition.rate(age) * days / 365);
+				//a chronic condition is diagnosed once
+				if (definition.chronic && count > 0){
+					events.add(new Episode(year + random.nextInt(days), e));
+					break;
+				}
+				for (int i = 0; i < count; i++)
+					events.add(new Episode(year + random.nextInt(days), e));
+			}
+		}
+		if (deathDate != -1)
+			events.add(new Episode(deathDate, -1));
+		Collections.sort(events);
+		for (Episode event : events){
+			if (event.definition == -1){
+				EventFileWriter.appendLine(block.events, subset, id, DEATH, event.date, "R99", values("GP"));
+			}else{
+				EventDefinition definition = EVENTS[event.definition];
+				EventFileWriter.appendLine(block.events, subset, id, definition.type, event.date,
+						definition.code + "." + random.nextInt(10), values(definition.source));
+			}
+		}
+		block.nbEvents += events.size();
+
+		//prescriptions
+		List<Episode> prescriptions = new ArrayList<Episode>();
+		for (int d = 0; d < DRUGS.length; d++){
+			DrugDefinition drug = DRUGS[d];
+			if (drug.indication == null){
+				for (int year = startDate; year < endDate; year += 365){
+					int days = Math.min(365, endDate - year);
+					for (int i = poisson(random, drug.rate * days / 365); i > 0; i--)
+						prescriptions.add(new Episode(year + random.nextInt(days), d));
+				}
+			}else{
+				for (Episode event : events){
+					if (event.definition != -1 && EVENTS[event.definition].type.equals(drug.indication)
+							&& random.nextDouble() < drug.probability){
+						int date = event.date + (drug.chronic ? random.nextInt(30) : 0);
+						while (date < endDate){
+							prescriptions.add(new Episode(date, d));
+							if (!drug.chronic || random.nextDouble() < STOP_PER_REFILL)
+								break;
+							date += drug.duration - 5 + random.nextInt(16);
+						}
+						//a chronic drug is started once
+						if (drug.chronic)
+							break;
+					}
+				}
+			}
+		}
+		Collections.sort(prescriptions);
+		for (Episode prescription : prescriptions){
+			DrugDefinition drug = DRUGS[prescription.definition];
+			PrescriptionFileWriter.appendLine(block.prescriptions, subset, id, drug.atc, prescription.date,
+					drug.duration, drug.dose, drug.indication == null ? "" : drug.indication,
+					values(drug.prescriber));
+		}
+		block.nbPrescriptions += prescriptions.size();
+
+		//measurements
+		List<Episode> measurements = new ArrayList<Episode>();
+		double[] levels = new double[MEASUREMENTS.length];
+		for (int m = 0; m < MEASUREMENTS.length; m++){
+			MeasurementDefinition measurement = MEASUREMENTS[m];
+			levels[m] = measurement.mean + random.nextGaussian() * measurement.sd;
+			int monitoredFrom = endDate;
+			for (Episode event : events)
+				if (event.definition != -1 && EVENTS[event.definition].type.equals(measurement.monitoredEvent)){
+					monitoredFrom = event.date;
+					break;
+				}
+			for (int year = startDate; year < endDate; year += 365){
+				int days = Math.min(365, endDate - year);
+				double rate = year + days > monitoredFrom ? measurement.monitoredRate : measurement.rate;
+				for (int i = poisson(random, rate * days / 365); i > 0; i--)
+					measurements.add(new Episode(year + random.nextInt(days), m));
+			}
+		}
+		Collections.sort(measurements);
+		for (Episode episode : measurements){
+			MeasurementDefinition measurement = MEASUREMENTS[episode.definition];
+			String value = measurement.categories != null ?
+					measurement.categories[random.nextInt(measurement.categories.length)] :
+					Double.toString(Math.max(0, Math.round((levels[episode.definition] + random.nextGaussian() * measurement.noise) * 10)) / 10.0);
+			MeasurementFileWriter.appendLine(block.measurements, subset, id, measurement.type, episode.date,
+					value, values(measurement.unit));
+		}
+		block.nbMeasurements += measurements.size();
+	}
+
+	/**
+	 * Draws the age at the start of the study period from the age pyramid.
+	 * @param random - the random generator of the patient
+	 * @return - the age in years
+	 */
+	private static double ageAtStudyStart(Random random){
+		double draw = random.nextDouble() * 100;
+		int band = 0;
+		while (band < AGE_PYRAMID.length - 1 && (draw -= AGE_PYRAMID[band]) > 0)
+			band++;
+		return 5 * (band + random.nextDouble());
+	}
+
+	/**
+	 * Draws a number from a Poisson distribution.
+	 * @param random - the random generator of the patient
+	 * @param mean - the mean of the distribution
+	 * @return - the drawn number
+	 */
+	private static int poisson(Random random, double mean){
+		if (mean <= 0)
+			return 0;
+		double limit = Math.exp(-mean);
+		double product = random.nextDouble();
+		int count = 0;
+		while (product > limit){
+			product *= random.nextDouble();
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Shuffles the lines of a block.
+	 * @param lines - the lines, each of them ended by a new line
+	 * @param random - the random generator of the block
+	 */
+	private static void shuffleLines(StringBuilder lines, Random random){
+		if (lines.length() == 0)
+			return;
+		List<String> list = Arrays.asList(lines.toString().split(WriteCSVFile.NEW_LINE));
+		Collections.shuffle(list, random);
+		lines.setLength(0);
+		for (String line : list)
+			lines.append(line).append(WriteCSVFile.NEW_LINE);
+	}
+
+	/**
+	 * Scrambles a seed so that consecutive seeds give unrelated random generators.
+	 * @param z - the seed
+	 * @return - the scrambled seed
+	 */
+	private static long mix(long z){
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Returns the ID of a patient. The IDs have the same width, so
+	 * that their alphabetical order is the order of the patients.
+	 * @param index - the index of the patient
+	 * @return - the ID of the patient
+	 */
+	public String patientID(int index){
+		String number = Integer.toString(index);
+		StringBuilder id = new StringBuilder(idLength + 1).append('P');
+		for (int i = number.length(); i < idLength; i++)
+			id.append('0');
+		return id.append(number).toString();
+	}
+
+	/**
+	 * Returns the extended columns to be added, if any.
+	 * @param columns - the names of the extended columns
+	 * @return - the extended columns if they are generated; an empty list otherwise
+	 */
+	private List<String> columns(String... columns){
+		return extendedColumns ? Arrays.asList(columns) : new ArrayList<String>();
+	}
+
+	/**
+	 * Returns the values of the extended columns, if any.
+	 * @param values - the values of the extended columns
+	 * @return - the values if the extended columns are generated; null otherwise
+	 */
+	private String[] values(String... values){
+		return extendedColumns ? values : null;
+	}
+
+	//GETTERS
+	public String getPatientsFile() {
+		return new File(folder, PATIENTS_FILE).getPath();
+	}
+
+	public String getEventsFile() {
+		return new File(folder, EVENTS_FILE).getPath();
+	}
+
+	public String getPrescriptionsFile() {
+		return new File(folder, PRESCRIPTIONS_FILE).getPath();
+	}
+
+	public String getMeasurementsFile() {
+		return new File(folder, MEASUREMENTS_FILE).getPath();
+	}
+
+	public long getNbEvents() {
+		return nbEvents;
+	}
+
+	public long getNbPrescriptions() {
+		return nbPrescriptions;
+	}
+
+	public long getNbMeasurements() {
+		return nbMeasurements;
+	}
+
+	//MAIN
+	/**
+	 * Generates a population from the command line.
+	 * Usage: PopulationGenerator folder patients [-seed N] [-threads N] [-unsorted] [-extended]
+	 * @param args - the command line arguments
+	 */
+	public static void main(String[] args) {
+		if (args.length < 2){
+			System.out.println("Usage: PopulationGenerator folder patients [-seed N] [-threads N] [-unsorted] [-extended]");
+			return;
+		}
+
+		Builder builder = new Builder().folder(args[0]).patients(Integer.parseInt(args[1]));
+		for (int i = 2; i < args.length; i++){
+			if (args[i].equals("-seed"))
+				builder.seed(Long.parseLong(args[++i]));
+			else if (args[i].equals("-threads"))
+				builder.threads(Integer.parseInt(args[++i]));
+			else if (args[i].equals("-unsorted"))
+				builder.sorted(false);
+			else if (args[i].equals("-extended"))
+				builder.extendedColumns(true);
+		}
+
+		try {
+			builder.build().generate();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	//NESTED CLASSES
+	/**
+	 * The parameters of a population generator.
+	 */
+	public static class Builder{
+
+		private String folder = ".";
+		private int nbPatients = 1000;
+		private long seed = 1;
+		private int threads = Runtime.getRuntime().availableProcessors();
+		private boolean sorted = true;
+		private boolean extendedColumns;
+		private String studyStart = "20000101";
+		private String studyEnd = "20180101";
+		private double meanFollowUp = 10;
+
+		public Builder() {}
+
+		public Builder folder(String value) { folder = value; return this;}
+		public Builder patients(int value) { nbPatients = value; return this;}
+		public Builder seed(long value) { seed = value; return this;}
+		public Builder threads(int value) { threads = value; return this;}
+		public Builder sorted(boolean value) { sorted = value; return this;}
+		public Builder extendedColumns(boolean value) { extendedColumns = value; return this;}
+		public Builder studyStart(String value) { studyStart = value; return this;}
+		public Builder studyEnd(String value) { studyEnd = value; return this;}
+		public Builder meanFollowUp(double value) { meanFollowUp = value; return this;}
+
+		public PopulationGenerator build() {
+			if (nbPatients < 0 || threads < 1 || meanFollowUp <= 0 || studyEnd.compareTo(studyStart) <= 0)
+				throw new IllegalArgumentException("Invalid population generator settings");
+			return new PopulationGenerator(this);
+		}
+	}
+
+	/**
+	 * The lines of the input files for a block of patients.
+	 */
+	private static class Block{
+		private StringBuilder patients = new StringBuilder();
+		private StringBuilder events = new StringBuilder();
+		private StringBuilder prescriptions = new StringBuilder();
+		private StringBuilder measurements = new StringBuilder();
+		private int nbEvents;
+		private int nbPrescriptions;
+		private int nbMeasurements;
+	}
+
+	/**
+	 * An event, prescription or measurement of a patient before it is written.
+	 */
+	private static class Episode implements Comparable<Episode>{
+		private int date;
+		private int definition;
+
+		public Episode(int date, int definition){
+			this.date = date;
+			this.definition = definition;
+		}
+
+		@Override
+		public int compareTo(Episode other){
+			return date != other.date ? Integer.compare(date, other.date) : Integer.compare(definition, other.definition);
+		}
+	}
+
+	/**
+	 * The way an event type occurs in the population.
+	 */
+	private static class EventDefinition{
+		private String type;
+		private String code;
+		private double rateAt50;
+		private double ageSlope;
+		private boolean chronic;
+		private String source;
+
+		public EventDefinition(String type, String code, double rateAt50, double ageSlope, boolean chronic, String source){
+			this.type = type;
+			this.code = code;
+			this.rateAt50 = rateAt50;
+			this.ageSlope = ageSlope;
+			this.chronic = chronic;
+			this.source = source;
+		}
+
+		/**
+		 * Returns the yearly rate of the event.
+		 * @param age - the age in years
+		 * @return - the expected number of events per year
+		 */
+		public double rate(double age){
+			return rateAt50 * Math.exp(ageSlope * (age - 50));
+		}
+	}
+
+	/**
+	 * The way a drug is prescribed. A drug with an indication is started after an event
+	 * of the indication with a probability and a chronic drug is repeated until it is
+	 * stopped. A drug without indication is prescribed at a yearly rate.
+	 */
+	private static class DrugDefinition{
+		private String atc;
+		private String indication;
+		private double probability;
+		private boolean chronic;
+		private int duration;
+		private String dose;
+		private double rate;
+		private String prescriber;
+
+		public DrugDefinition(String atc, String indication, double probability, boolean chronic,
+				int duration, String dose, double rate, String prescriber){
+			this.atc = atc;
+			this.indication = indication;
+			this.probability = probability;
+			this.chronic = chronic;
+			this.duration = duration;
+			this.dose = dose;
+			this.rate = rate;
+			this.prescriber = prescriber;
+		}
+	}
+
+	/**
+	 * The way a measurement is taken. Each patient has a personal level around the mean
+	 * and the measurements vary around this level. A categorical measurement takes one
+	 * of its categories instead.
+	 */
+	private static class MeasurementDefinition{
+		private String type;
+		private String unit;
+		private String monitoredEvent;
+		private double rate;
+		private double monitoredRate;
+		private double mean;
+		private double sd;
+		private double noise;
+		private String[] categories;
+
+		public MeasurementDefinition(String type, String unit, String monitoredEvent, double rate,
+				double monitoredRate, double mean, double sd, double noise, String... categories){
+			this.type = type;
+			this.unit = unit;
+			this.monitoredEvent = monitoredEvent;
+			this.rate = rate;
+			this.monitoredRate = Math.max(rate, monitoredRate);
+			this.mean = mean;
+			this.sd = sd;
+			this.noise = noise;
+			this.categories = categories.length > 0 ? categories : null;
+		}
+	}
+
+}
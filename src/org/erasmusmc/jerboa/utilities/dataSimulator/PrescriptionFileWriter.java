@@ -31,6 +31,8 @@
  ******************************************************************************************/
 package org.erasmusmc.jerboa.utilities.dataSimulator;
 
+import java.util.List;
+
 import org.erasmusmc.jerboa.dataClasses.Prescription;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 
@@ -51,6 +53,16 @@ public class PrescriptionFileWriter extends FileWriter{
 	  super(filename);
   }
 
+  /**
+   * Constructor receiving the name of the output file and the names
+   * of the extended columns that follow the mandatory columns.
+   * @param filename - the output file
+   * @param extendedColumns - the names of the extended columns
+   */
+  public PrescriptionFileWriter(String filename, List<String> extendedColumns){
+	  super(filename, extendedColumns);
+  }
+
   /**
    * Exports the header for the prescriptions file.
    */
@@ -62,6 +74,7 @@ public class PrescriptionFileWriter extends FileWriter{
 	  this.header.add("Duration");
 	  this.header.add("Dose");
 	  this.header.add("Indication");
+	  this.header.addAll(this.extendedColumns);
 	  this.file.write(header);
   }
 
@@ -69,13 +82,32 @@ public class PrescriptionFileWriter extends FileWriter{
   public void write(Object o){
 	  Prescription p = new Prescription((Prescription)o);
 		if (p != null){
-			String s = p.subset+","+p.patientID+","+p.getATC()+","+
-					DateUtilities.daysToDate(p.date)+","+
-					p.getDuration()+","+
-					p.getDose()+","+
-					p.getIndication();
-			file.write(s);
+			StringBuilder sb = new StringBuilder();
+			appendLine(sb, p.subset, p.patientID, p.getATC(), p.date, p.getDuration(), p.getDose(), p.getIndication());
+			file.writeLines(sb);
 		}
 	}
 
+  /**
+   * Appends a prescription to a block of lines of the prescriptions file.
+   * @param sb - the lines being built
+   * @param subset - the subset ID of the patient
+   * @param patientID - the ID of the patient
+   * @param atc - the ATC code of the drug
+   * @param date - the date of the prescription in days
+   * @param duration - the duration of the prescription in days
+   * @param dose - the dose of the prescription
+   * @param indication - the indication of the prescription
+   * @param extended - the values of the extended columns, if any
+   */
+  public static void appendLine(StringBuilder sb, String subset, String patientID, String atc,
+		  int date, int duration, String dose, String indication, String... extended){
+	  sb.append(subset).append(',').append(patientID).append(',').append(atc).append(',')
+	  	.append(DateUtilities.daysToDate(date)).append(',')
+	  	.append(duration).append(',')
+	  	.append(dose).append(',')
+	  	.append(indication);
+	  endLine(sb, extended);
+  }
+
 }
\ No newline at end of file
@@ -50,6 +50,9 @@ import org.erasmusmc.jerboa.utilities.FileUtilities;
  */
 public class WriteCSVFile {
 
+	//the line separator used by the buffered writer
+	public static final String NEW_LINE = System.lineSeparator();
+
 	private BufferedWriter bufferedWrite;
 
 	/**
@@ -92,6 +95,18 @@ public class WriteCSVFile {
 		}
 	}
 
+	/**
+	 * Writes to file a block of lines, each of them ended by a new line.
+	 * @param lines - the lines to be output
+	 */
+	public void writeLines(CharSequence lines){
+		try {
+			bufferedWrite.append(lines);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
 	/**
 	 * Converts the elements of the list columns into fields separated by comma.
 	 * It supports quotes as string delimiters.
@@ -102,19 +117,30 @@ public class WriteCSVFile {
 		StringBuilder sb = new StringBuilder();
 		Iterator<String> iterator = columns.iterator();
 		while (iterator.hasNext()){
-			String column = iterator.next();
-			if (column != null){
-				column = column.replace("\"", "\\\"");
-				if (column.contains(","))
-					column = "\"" + column + "\"";
-				sb.append(column);
-			}
+			appendColumn(sb, iterator.next());
 				if (iterator.hasNext())
 					sb.append(",");
 		}
 		return sb.toString();
 	}
 
+	/**
+	 * Appends one column to a line of comma separated values, in the same
+	 * way as columns2line. The separator is not appended.
+	 * @param sb - the line being built
+	 * @param column - the value of the column; null is output as empty
+	 */
+	public static void appendColumn(StringBuilder sb, String column) {
+		if (column != null){
+			if (column.indexOf('"') != -1)
+				column = column.replace("\"", "\\\"");
+			if (column.indexOf(',') != -1)
+				sb.append('"').append(column).append('"');
+			else
+				sb.append(column);
+		}
+	}
+
 	/**
 	 * Flush the output buffer.
 	 */
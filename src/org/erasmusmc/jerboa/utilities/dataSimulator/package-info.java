@@ -27,6 +27,8 @@
  * generate the data files. There is a set of parameters that can be tweaked in order to manipulate
  * the population size, frequency of events, prescriptions, etc.
  * The simulated data is output into CSV format.
+ * The PopulationGenerator class drives the file writers in parallel in order to generate
+ * large, reproducible populations from the command line or from code.
  *
  * @since Jerboa v3.0b1
  *
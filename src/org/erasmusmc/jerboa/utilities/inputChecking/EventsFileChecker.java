@@ -60,6 +60,11 @@ public class EventsFileChecker extends InputFileChecker{
 		super(file);
 	}
 
+	@Override
+	protected InputFileChecker copy(){
+		return new EventsFileChecker(file);
+	}
+
 	@Override
 	public boolean attributesOK(String[] columns, long line) {
 
@@ -33,20 +33,34 @@
 package org.erasmusmc.jerboa.utilities.inputChecking;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import org.apache.commons.codec.binary.Hex;
 import org.erasmusmc.jerboa.Jerboa;
-import org.erasmusmc.jerboa.utilities.FileUtilities;
 import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
 import org.erasmusmc.jerboa.utilities.Logging;
 import org.erasmusmc.jerboa.utilities.DateUtilities;
 import org.erasmusmc.jerboa.utilities.Progress;
-import org.erasmusmc.jerboa.utilities.StringUtilities;
 import org.erasmusmc.jerboa.utilities.Timer;
 import org.erasmusmc.jerboa.config.DataDefinition;
 import org.erasmusmc.jerboa.config.Parameters;
@@ -61,11 +75,19 @@ import org.erasmusmc.jerboa.engine.InputFile;
  * the rest of the file is skipped and the current run is stopped.
  * If the data is not sorted and no errors were detected, the work flow is started.
  *
+ * The file is read once, in blocks of whole lines, which are checked in parallel by the
+ * threads of an executor. The MD5 checksum of the file can be calculated during the same read.
+ * The results of the blocks are merged in the order of the file, so that the errors and
+ * the sorted flag are the same as for a line by line scan.
+ *
  * @author MG
  *
  */
 public abstract class InputFileChecker{
 
+	//the size of the blocks of lines checked in parallel
+	public static final int BLOCK_SIZE = 4 * 1024 * 1024;
+
 	//data related
 	protected InputFile file;
 	protected short[] dataOrder;
@@ -74,11 +96,15 @@ public abstract class InputFileChecker{
 	//progress related
 	protected Progress progress;
 	protected Timer timer;
+	private boolean sharedProgress;
 
 	//error related
 	protected List<String> errorMessages;
 	protected Boolean showExecutionTime = false;
 
+	//the number of records checked
+	private long records;
+
 	/**
 	 * Constructor accepting an input file.
 	 * @param file - the input file to be checked
@@ -93,66 +119,110 @@ public abstract class InputFileChecker{
 	 * If an error is found, it is added to the list and the current line is skipped.
 	 * If a prior scan of the input file resulted in no errors and the data was found not
 	 * to be sorted, the input data is split into subsets in order to ease subsequent manipulation.
+	 * The counters of the file are updated at the end of the scan.
 	 * @param fileName - the name/type of the input file to be checked
 	 * @throws Exception - if the file could not be opened.
 	 */
 	public void scan(String fileName) throws Exception{
+		ExecutorService executor = newExecutor(Runtime.getRuntime().availableProcessors());
+		try{
+			check(fileName, executor, null, false);
+		}finally{
+			executor.shutdownNow();
+		}
+		updateCounters(records);
+	}
 
-		init(fileName);
-		long line = 1; //loop variable
+	/**
+	 * Performs the attribute checking on the input data, with the blocks of lines checked
+	 * by the threads of executor. The counters of the file are not updated, so that several
+	 * files can be checked at the same time; updateCounters(getRecords()) is to be called afterwards.
+	 * @param fileName - the name/type of the input file to be checked
+	 * @param executor - the executor checking the blocks of lines
+	 * @param progress - a progress shared by several checkers; null if the checker has its own progress
+	 * @param withChecksum - true if the MD5 checksum of the file is to be calculated and set on the file
+	 * @throws Exception - if the file could not be read or the date format changes in the file
+	 */
+	public void check(String fileName, ExecutorService executor, Progress progress, boolean withChecksum) throws Exception{
+
+		init(fileName, progress);
+		long line = 1;
 		boolean isSorted = true;
 
 		if (isHeaderOK(file.getHeader())){
 
-			BufferedReader br = FileUtilities.openFile(file.getName());
-			String strLine = br.readLine(); //header
-			String[] columns = null;
-
-			//date format and sorted related
-			byte referenceDateFormat = DateUtilities.DATE_INVALID;
-			String referenceID = "";
-			String referenceSubset = "";
-
-			//progress related
-			int eol = file.getEol() != null ? file.getEol().length() : 0;
-			progress.update(strLine.length()+eol);
 			Logging.addWithTimeStamp("Checking "+fileName+" file");
 
-			while ((strLine = br.readLine()) != null) {
-				if (errorMessages.size() < Parameters.MAX_ERRORS_INTEGRITY){
+			MessageDigest digest = withChecksum ? MessageDigest.getInstance("MD5") : null;
+			BlockReader reader = new BlockReader(new FileInputStream(file.getName()), digest);
 
-					line++;
-					progress.update(strLine.length()+eol);
+			//the sorted check carries over from one block to the next
+			String referenceID = "";
+			String referenceSubset = "";
+			boolean tooManyErrors = false;
+
+			try{
+				LinkedList<Future<BlockResult>> pending = new LinkedList<Future<BlockResult>>();
+				long nextLine = 1;
+				byte[] block;
+				while (!tooManyErrors && (block = reader.next()) != null){
+					final byte[] lines = block;
+					final long firstLine = nextLine;
+					nextLine += countLines(block);
+					updateProgress(block.length);
+
+					//the first lines set the date format, so they are checked in order
+					Callable<BlockResult> task = new Callable<BlockResult>() {
+						public BlockResult call() throws Exception {
+							return checkBlock(lines, firstLine);
+						}
+					};
+					if (firstLine < Parameters.MAX_ERRORS_INTEGRITY){
+						FutureTask<BlockResult> inOrder = new FutureTask<BlockResult>(task);
+						inOrder.run();
+						pending.add(inOrder);
+					}else{
+						pending.add(executor.submit(task));
+					}
 
-					if (!isLineEmpty(strLine, line)){
-						columns = StringUtilities.splitLine(strLine, file.getDelimiter());
-						if (isLineComplete(columns, line)){
-							//check date format if valid and does not change for a number of lines
-							if (line < Parameters.MAX_ERRORS_INTEGRITY){
-								checkDateFormat(columns, line, referenceDateFormat);
-								referenceDateFormat = file.getDateFormat();
-							}
-							if (columns.length != file.getHeader().length) {
-								errorMessages.add("["+line+"]   Number of columns (" + columns.length + ") is not the same as in the header (" + file.getHeader().length + ") -- " + Arrays.toString(columns));
-							}
-							else {
-								//check if all attributes are OK and if the file is sorted
-								if (attributesOK(columns, line)) {
-
-									if (line > 1 && isSorted)
-										isSorted = checkIfSorted(columns[file.getPatientIDIndex()].trim(),referenceID,
-												file.getSubsetIndex() != -1 ? columns[file.getSubsetIndex()].trim() : null, referenceSubset);
-									referenceID = columns[file.getPatientIDIndex()].trim();
-									referenceSubset = file.getSubsetIndex() != -1 ? columns[file.getSubsetIndex()].trim() : "";
-								}
-							}
+					//merge the blocks that are done, keeping a limited number in memory
+					while (!pending.isEmpty() && (pending.size() > 2 * Runtime.getRuntime().availableProcessors() ||
+							pending.getFirst().isDone())){
+						BlockResult result = get(pending.removeFirst());
+						tooManyErrors = merge(result);
+						if (isSorted)
+							isSorted = result.isSorted(this, referenceID, referenceSubset);
+						if (result.lastID != null){
+							referenceID = result.lastID;
+							referenceSubset = result.lastSubset;
 						}
+						line = result.lastLine;
+						if (tooManyErrors)
+							break;
 					}
-				}else{
-					Logging.add("Too many errors in the "+fileName+" file. Its integrity checking has stopped.", Logging.ERROR);
-					break;
 				}
-			}//end while
+				while (!tooManyErrors && !pending.isEmpty()){
+					BlockResult result = get(pending.removeFirst());
+					tooManyErrors = merge(result);
+					if (isSorted)
+						isSorted = result.isSorted(this, referenceID, referenceSubset);
+					if (result.lastID != null){
+						referenceID = result.lastID;
+						referenceSubset = result.lastSubset;
+					}
+					line = result.lastLine;
+				}
+				for (Future<BlockResult> future : pending)
+					future.cancel(true);
+			}finally{
+				reader.close();
+			}
+
+			if (tooManyErrors){
+				Logging.add("Too many errors in the "+fileName+" file. Its integrity checking has stopped.", Logging.ERROR);
+			}else if (digest != null){
+				file.setChecksum(Hex.encodeHexString(digest.digest()));
+			}
 
 			//check if the file contains only the header
 			file.setEmpty(line == 1);
@@ -173,14 +243,170 @@ public abstract class InputFileChecker{
 			if (errorMessages.size()==0){
 				Logging.add("\t\tNo errors found in the " +fileName+" file");
 			}
-			br.close();
-			br = null;
 
 		}//end check header
 
-		progress.close();
-		updateCounters(line-1); // -1 due to header
+		if (!sharedProgress)
+			this.progress.close();
+		records = line - 1; // -1 due to header
+	}
+
+	/**
+	 * Checks a block of whole lines of the input file with a copy of this checker,
+	 * which has its own list of errors.
+	 * @param block - the lines of the block
+	 * @param firstLine - the number of the first line of the block in the file
+	 * @return - the errors and the sorted state of the block
+	 * @throws Exception - if the date format changes in the block
+	 */
+	private BlockResult checkBlock(byte[] block, long firstLine) throws Exception{
+
+		InputFileChecker checker = copy();
+		checker.errorMessages = new ArrayList<String>();
+		checker.expectedColumns = expectedColumns;
+
+		BlockResult result = new BlockResult();
+		result.checker = checker;
+		result.errors = checker.errorMessages;
+
+		BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(block)));
+		LineTokenizer tokenizer = new LineTokenizer(file.getDelimiter());
+		String[] columns = null;
+		String strLine;
+		byte referenceDateFormat = firstLine == 1 ? DateUtilities.DATE_INVALID : file.getDateFormat();
+		String referenceID = null;
+		String referenceSubset = null;
+
+		long line = firstLine - 1;
+		if (firstLine == 1){
+			br.readLine(); //header
+			line++;
+		}
+
+		while ((strLine = br.readLine()) != null) {
+			if (checker.errorMessages.size() >= Parameters.MAX_ERRORS_INTEGRITY)
+				break;
+
+			line++;
+			if (!checker.isLineEmpty(strLine, line)){
+				columns = tokenizer.reset(strLine).toArray();
+				if (checker.isLineComplete(columns, line)){
+					//check date format if valid and does not change for a number of lines
+					if (line < Parameters.MAX_ERRORS_INTEGRITY){
+						checker.checkDateFormat(columns, line, referenceDateFormat);
+						referenceDateFormat = file.getDateFormat();
+					}
+					if (columns.length != file.getHeader().length) {
+						checker.errorMessages.add("["+line+"]   Number of columns (" + columns.length + ") is not the same as in the header (" + file.getHeader().length + ") -- " + Arrays.toString(columns));
+					}
+					else {
+						//check if all attributes are OK and if the block is sorted
+						if (checker.attributesOK(columns, line)) {
+							String patientID = columns[file.getPatientIDIndex()].trim();
+							String subset = file.getSubsetIndex() != -1 ? columns[file.getSubsetIndex()].trim() : "";
+							if (referenceID == null){
+								result.firstID = patientID;
+								result.firstSubset = subset;
+							}else if (result.sorted){
+								result.sorted = checker.checkIfSorted(patientID, referenceID,
+										file.getSubsetIndex() != -1 ? subset : null, referenceSubset);
+							}
+							referenceID = patientID;
+							referenceSubset = subset;
+						}
+					}
+				}
+			}
+		}
+
+		result.lastID = referenceID;
+		result.lastSubset = referenceSubset;
+		result.lastLine = line;
+
+		return result;
+	}
+
+	/**
+	 * Adds the errors of a block to the errors of the file, up to the limit of errors.
+	 * @param result - the result of the block
+	 * @return - true if the limit of errors is reached; false otherwise
+	 */
+	private boolean merge(BlockResult result){
+		mergeCounters(result.checker);
+		for (String error : result.errors){
+			if (errorMessages.size() >= Parameters.MAX_ERRORS_INTEGRITY)
+				break;
+			errorMessages.add(error);
+		}
+
+		return errorMessages.size() >= Parameters.MAX_ERRORS_INTEGRITY;
+	}
+
+	/**
+	 * Adds the counters kept by the copy of this checker used to check a block.
+	 * To be overridden by the checkers keeping their own counters.
+	 * @param block - the checker of a block of lines
+	 */
+	protected void mergeCounters(InputFileChecker block){}
 
+	/**
+	 * Waits for the result of a block.
+	 * @param future - the block being checked
+	 * @return - the result of the block
+	 * @throws Exception - the exception thrown while checking the block
+	 */
+	private static BlockResult get(Future<BlockResult> future) throws Exception{
+		try{
+			return future.get();
+		}catch (ExecutionException e){
+			if (e.getCause() instanceof Exception)
+				throw (Exception)e.getCause();
+			throw e;
+		}
+	}
+
+	/**
+	 * Counts the lines in a block the way a BufferedReader reads them: a line is ended
+	 * by a line feed, a carriage return or a carriage return followed by a line feed.
+	 * @param block - the lines of the block
+	 * @return - the number of lines in the block
+	 */
+	static int countLines(byte[] block){
+		int count = 0;
+		for (int i = 0; i < block.length; i++){
+			if (block[i] == '\n' || (block[i] == '\r' && (i + 1 == block.length || block[i + 1] != '\n')))
+				count++;
+		}
+		if (block.length > 0 && block[block.length - 1] != '\n' && block[block.length - 1] != '\r')
+			count++;
+
+		return count;
+	}
+
+	/**
+	 * Updates the progress, which can be shared with other checkers.
+	 * @param increment - the number of bytes read
+	 */
+	private void updateProgress(long increment){
+		synchronized (progress){
+			progress.update(increment);
+		}
+	}
+
+	/**
+	 * Creates an executor with a fixed number of daemon threads for checking the input files.
+	 * @param threads - the number of threads
+	 * @return - the executor
+	 */
+	public static ExecutorService newExecutor(int threads){
+		return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			private int count = 0;
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "Jerboa input checking " + (++count));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
 	}
 
 	//METHODS TO BE IMPLEMENTED
@@ -198,6 +424,13 @@ public abstract class InputFileChecker{
 	 */
 	public abstract void resetCounters();
 
+	/**
+	 * Creates a checker of the same type for the same input file,
+	 * used to check a block of lines in parallel with other blocks.
+	 * @return - a new checker of the same input file
+	 */
+	protected abstract InputFileChecker copy();
+
 	/**
 	 * Updates all the parameters that are used for statistics or other counters.
 	 * Normally used to monitor the progress during input checking.
@@ -209,10 +442,12 @@ public abstract class InputFileChecker{
 	/**
 	 * Initializes all the parameters used for progress, input errors and counters.
 	 * @param fileName - the name of the input file
+	 * @param progress - a progress shared with other checkers; null to create one
 	 */
-	protected void init(String fileName){
+	protected void init(String fileName, Progress progress){
 
 		errorMessages = new ArrayList<String>();
+		records = 0;
 
 		resetCounters();
 		setExpectedColumns();
@@ -220,8 +455,13 @@ public abstract class InputFileChecker{
 		timer = new Timer();
 		timer.start();
 
-		progress = new Progress();
-		progress.init(file.getSize(), "Checking "+fileName+" file");
+		sharedProgress = progress != null;
+		if (sharedProgress){
+			this.progress = progress;
+		}else{
+			this.progress = new Progress();
+			this.progress.init(file.getSize(), "Checking "+fileName+" file");
+		}
 	}
 
 	/**
@@ -368,6 +608,9 @@ public abstract class InputFileChecker{
 	public InputFile getInputFile(){
 		return file;
 	}
+	public long getRecords(){
+		return records;
+	}
 
 	/**
 	 * Sets the number of expected columns on a line from the input file.
@@ -383,4 +626,93 @@ public abstract class InputFileChecker{
 				(file.hasSubset() ? 1 : 0));
 	}
 
+	//NESTED CLASSES
+	/**
+	 * The errors and the sorted state of a block of lines.
+	 */
+	private static class BlockResult{
+		private InputFileChecker checker;
+		private List<String> errors;
+		private boolean sorted = true;
+		private String firstID;
+		private String firstSubset;
+		private String lastID;
+		private String lastSubset;
+		private long lastLine;
+
+		/**
+		 * Checks if the block is sorted and follows the last record of the previous blocks.
+		 * @param checker - the checker of the file
+		 * @param referenceID - the patient ID of the last record of the previous blocks
+		 * @param referenceSubset - the subset of the last record of the previous blocks
+		 * @return - true if the file is still sorted; false otherwise
+		 */
+		public boolean isSorted(InputFileChecker checker, String referenceID, String referenceSubset){
+			if (!sorted)
+				return false;
+			return firstID == null || checker.checkIfSorted(firstID, referenceID,
+					checker.file.getSubsetIndex() != -1 ? firstSubset : null, referenceSubset);
+		}
+	}
+
+	/**
+	 * Reads a file in blocks of whole lines and updates the checksum with all bytes read.
+	 */
+	private static class BlockReader{
+		private InputStream in;
+		private MessageDigest digest;
+		private byte[] rest = new byte[0];
+
+		public BlockReader(InputStream in, MessageDigest digest){
+			this.in = in;
+			this.digest = digest;
+		}
+
+		/**
+		 * Reads the next block of lines. The last block may end without line terminator.
+		 * @return - the next block; null at the end of the file
+		 * @throws IOException - if the file cannot be read
+		 */
+		public byte[] next() throws IOException{
+			int size = Math.max(BLOCK_SIZE, 2 * rest.length);
+			byte[] buffer = Arrays.copyOf(rest, size);
+			int length = rest.length;
+			int read;
+			while (length < size && (read = in.read(buffer, length, size - length)) != -1){
+				if (digest != null)
+					digest.update(buffer, length, read);
+				length += read;
+			}
+
+			//end of file
+			if (length < size){
+				rest = new byte[0];
+				return length == 0 ? null : Arrays.copyOf(buffer, length);
+			}
+
+			//split after the last line feed or, for files without, after the last carriage return
+			int split = length - 1;
+			while (split >= 0 && buffer[split] != '\n')
+				split--;
+			if (split < 0){
+				split = length - 2;
+				while (split >= 0 && buffer[split] != '\r')
+					split--;
+			}
+
+			//a line longer than the block is read with the next block
+			if (split < 0){
+				rest = buffer;
+				return next();
+			}
+
+			rest = Arrays.copyOfRange(buffer, split + 1, length);
+			return Arrays.copyOf(buffer, split + 1);
+		}
+
+		public void close() throws IOException{
+			in.close();
+		}
+	}
+
 }
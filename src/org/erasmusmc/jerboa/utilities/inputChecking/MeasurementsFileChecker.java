@@ -61,6 +61,11 @@ public class MeasurementsFileChecker extends InputFileChecker {
 		super(file);
 	}
 
+	@Override
+	protected InputFileChecker copy(){
+		return new MeasurementsFileChecker(file);
+	}
+
 	@Override
 	public boolean attributesOK(String[] columns, long line) {
 
@@ -116,6 +121,11 @@ public class MeasurementsFileChecker extends InputFileChecker {
 		emptyValuesCount = 0;
 	}
 
+	@Override
+	protected void mergeCounters(InputFileChecker block) {
+		emptyValuesCount += ((MeasurementsFileChecker)block).emptyValuesCount;
+	}
+
 	@Override
 	public void updateCounters(long value) {
 		Stats.nbMeasurements = value;
@@ -62,6 +62,11 @@ public class PatientsFileChecker extends InputFileChecker{
 		super(file);
 	}
 
+	@Override
+	protected InputFileChecker copy(){
+		return new PatientsFileChecker(file);
+	}
+
 	@Override
 	public boolean attributesOK(String[] columns, long line) {
 
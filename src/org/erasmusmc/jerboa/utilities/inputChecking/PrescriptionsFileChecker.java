@@ -60,6 +60,11 @@ public class PrescriptionsFileChecker extends InputFileChecker{
 		super(file);
 	}
 
+	@Override
+	protected InputFileChecker copy(){
+		return new PrescriptionsFileChecker(file);
+	}
+
 	@Override
 	public boolean attributesOK(String[] columns, long line) {
 
@@ -48,7 +48,27 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import test.java.core.ATCMatcherTest;
+import test.java.core.CompactMultiKeyBagTest;
+import test.java.core.ConcurrentModulesTest;
 import test.java.core.DateTest;
+import test.java.core.DenseCounterTest;
+import test.java.core.EpisodeIndexTest;
+import test.java.core.ExtendedDataTest;
+import test.java.core.FileSorterTest;
+import test.java.core.InputFileCheckerTest;
+import test.java.core.InputFileSplitterTest;
+import test.java.core.LineTokenizerTest;
+import test.java.core.MultiKeyBagTest;
+import test.java.core.OutputManagerTest;
+import test.java.core.PackTest;
+import test.java.core.ParallelProcessingTest;
+import test.java.core.PatientHistoryTest;
+import test.java.core.PatientObjectFileTest;
+import test.java.core.PopulationGeneratorTest;
+import test.java.core.RunSQLTest;
+import test.java.core.SharedScanTest;
+import test.java.core.SymbolTableTest;
 import test.java.modifiers.BMICalculation2Test;
 import test.java.modifiers.PrescriptionCohortDefinitionTest;
 import test.java.modifiers.EventMappingTest;
@@ -59,6 +79,7 @@ import test.java.modifiers.MeasurementCohortDefinition2Test;
 import test.java.modifiers.MeasurementCountCohortDefinitionTest;
 import test.java.modifiers.PopulationDefinitionTest;
 import test.java.modifiers.PrescriptionCombinationsTest;
+import test.java.modules.CaseControlTest;
 import test.java.modules.CodeCountingTest;
 
 /**
@@ -70,17 +91,38 @@ import test.java.modules.CodeCountingTest;
  */
 @RunWith(Suite.class)
 @SuiteClasses({ //Filters
+				ATCMatcherTest.class,
 				BMICalculation2Test.class,
+				CaseControlTest.class,
+				CompactMultiKeyBagTest.class,
+				ConcurrentModulesTest.class,
 				DateTest.class,
+				DenseCounterTest.class,
+				EpisodeIndexTest.class,
 				EventMappingTest.class,
+				ExtendedDataTest.class,
+				FileSorterTest.class,
 				FixedCohortDefinitionTest.class,
+				InputFileCheckerTest.class,
+				InputFileSplitterTest.class,
+				LineTokenizerTest.class,
 				MeasurementCategoriesTest.class,
 				MeasurementCleanerTest.class,
 				MeasurementCohortDefinition2Test.class,
 				MeasurementCountCohortDefinitionTest.class,
+				MultiKeyBagTest.class,
+				OutputManagerTest.class,
+				PackTest.class,
+				ParallelProcessingTest.class,
+				PatientHistoryTest.class,
+				PatientObjectFileTest.class,
 				PopulationDefinitionTest.class,
+				PopulationGeneratorTest.class,
 				PrescriptionCohortDefinitionTest.class,
 				PrescriptionCombinationsTest.class,
+				RunSQLTest.class,
+				SharedScanTest.class,
+				SymbolTableTest.class,
 				//Modules
 				CodeCountingTest.class
 				})
@@ -0,0 +1,117 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.dataClasses.ATCMatcher;
+import org.erasmusmc.jerboa.dataClasses.Prescription;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the matching of ATC codes against ATC groups.
+ */
+public class ATCMatcherTest {
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+	}
+
+	/**
+	 * Checks the higher level ATC codes, ignoring case.
+	 */
+	@Test
+	public void testGroups() {
+		ATCMatcher matcher = new ATCMatcher("A10", "c07ab");
+		assertTrue(matcher.matches(prescription("A10BA02")));
+		assertTrue(matcher.matches(prescription("a10ba02")));
+		assertTrue(matcher.matches(prescription("C07AB02")));
+		assertFalse(matcher.matches(prescription("C07AA05")));
+		assertFalse(matcher.matches(prescription("A1")));
+		assertTrue(matcher.matches("A10"));
+		assertFalse(matcher.matches((String)null));
+	}
+
+	/**
+	 * Checks that a generated ATC code only matches itself.
+	 */
+	@Test
+	public void testGeneratedATC() {
+		ATCMatcher matcher = new ATCMatcher(Arrays.asList("_A10/C07"));
+		assertTrue(matcher.matches(prescription("_A10/C07")));
+		assertTrue(matcher.matches(prescription("_a10/c07")));
+		assertFalse(matcher.matches(prescription("_A10/C07/N02")));
+		assertFalse(matcher.matches(prescription("A10BA02")));
+	}
+
+	/**
+	 * Checks that ATC codes added to the look-up table after the first match are matched.
+	 */
+	@Test
+	public void testNewATCs() {
+		ATCMatcher matcher = new ATCMatcher("N02");
+		assertFalse(matcher.matches(prescription("M01AE01")));
+		assertTrue(matcher.matches(prescription("N02BE01")));
+		assertTrue(matcher.matches(prescription("N02BE51")));
+		assertFalse(matcher.matches(prescription("N06AB03")));
+	}
+
+	/**
+	 * Checks that Prescription.startsWith() uses the same rules.
+	 */
+	@Test
+	public void testStartsWith() {
+		Prescription prescription = prescription("R03AC02");
+		assertTrue(prescription.startsWith("R03"));
+		assertTrue(prescription.startsWith("r03ac"));
+		assertFalse(prescription.startsWith("_R03"));
+		assertTrue(prescription.startsWith(Arrays.asList("A10", "R")));
+		assertFalse(prescription.startsWith(new String[] {"A10", "R04"}));
+		assertTrue(prescription.startsWith(new ATCMatcher("B01", "R03AC02")));
+	}
+
+	/**
+	 * Checks that the matchers of single ATC groups are shared until they are cleared.
+	 */
+	@Test
+	public void testGroupMatchers() {
+		ATCMatcher matcher = ATCMatcher.of("A10");
+		assertSame(matcher, ATCMatcher.of("A10"));
+		ATCMatcher.clearGroupMatchers();
+		assertNotSame(matcher, ATCMatcher.of("A10"));
+		assertTrue(ATCMatcher.of("A10").matches(prescription("A10BA02")));
+	}
+
+	private static Prescription prescription(String atc) {
+		Prescription prescription = new Prescription();
+		prescription.setATC(atc);
+		return prescription;
+	}
+
+}
@@ -0,0 +1,116 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.TreeMap;
+
+import org.erasmusmc.jerboa.utilities.CompactMultiKeyBag;
+import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
+import org.erasmusmc.jerboa.utilities.MultiKeyBag;
+import org.erasmusmc.jerboa.utilities.Wildcard;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the compact multi key bag.
+ * The results are compared with the ones of the MultiKeyBag.
+ */
+public class CompactMultiKeyBagTest {
+
+	private static final String[] AGE_GROUPS = {"0-10", "10-20", "20-30"};
+
+	/**
+	 * Fills both bags with the same keys: gender, year, age group, patient time.
+	 * @param bag - the multi key bag
+	 * @param compactBag - the compact multi key bag
+	 */
+	private void fill(MultiKeyBag bag, CompactMultiKeyBag compactBag){
+		for (int i = 0; i < 50000; i++){
+			ExtendedMultiKey key = new ExtendedMultiKey((byte)(i % 2), 2000 + i % 7, AGE_GROUPS[i % 3], (i * 31) % 9000);
+			bag.add(key, 1 + i % 3);
+			compactBag.add(key, 1 + i % 3);
+		}
+	}
+
+	/**
+	 * Checks the counts with and without wild cards.
+	 */
+	@Test
+	public void testCount(){
+		MultiKeyBag bag = new MultiKeyBag();
+		CompactMultiKeyBag compactBag = new CompactMultiKeyBag();
+		fill(bag, compactBag);
+
+		assertEquals(bag.getSize(), compactBag.getSize());
+		assertEquals(bag.getSortedKeySet().toString(), compactBag.getSortedKeySet().toString());
+		assertEquals(bag.getKeyValuesAsObject(1), compactBag.getKeyValuesAsObject(1));
+
+		for (Object year : bag.getKeyValuesAsObject(1)){
+			ExtendedMultiKey key = new ExtendedMultiKey(Wildcard.BYTE(), year, "10-20", Wildcard.INTEGER());
+			assertEquals(bag.getCount(key), compactBag.getCount(key));
+			key = new ExtendedMultiKey((byte)1, year, Wildcard.STRING(), 62);
+			assertEquals(bag.getCount(key), compactBag.getCount(key));
+			assertEquals(bag.contains(key), compactBag.contains(key));
+		}
+		assertEquals(0, compactBag.getCount(new ExtendedMultiKey((byte)1, 1990, Wildcard.STRING(), Wildcard.INTEGER())));
+	}
+
+	/**
+	 * Checks the histograms and sub bags.
+	 */
+	@Test
+	public void testHistogram(){
+		MultiKeyBag bag = new MultiKeyBag();
+		CompactMultiKeyBag compactBag = new CompactMultiKeyBag();
+		fill(bag, compactBag);
+
+		for (Object year : bag.getKeyValuesAsObject(1)){
+			ExtendedMultiKey key = new ExtendedMultiKey((byte)0, year, Wildcard.STRING());
+			TreeMap<Object, Integer> histogram = compactBag.getHistogramRec(key);
+			assertEquals(bag.getHistogramRec(key), histogram);
+			assertEquals(bag.getHistogramStats(key).getMean(), compactBag.getHistogramStats(key).getMean(), 0);
+			key = new ExtendedMultiKey(Wildcard.BYTE(), year, "0-10", Wildcard.INTEGER());
+			assertEquals(bag.getSubBagAsMap(1, key), compactBag.getSubBagAsMap(1, key));
+		}
+		assertEquals(bag.getSubBag(2, "20-30").toString(), compactBag.getSubBag(2, "20-30").toString());
+		assertTrue(Double.isNaN(compactBag.getHistogramStats(new ExtendedMultiKey((byte)3, 2000, "0-10")).getMean()));
+	}
+
+	/**
+	 * Checks that merging keeps the counts.
+	 */
+	@Test
+	public void testMerge(){
+		CompactMultiKeyBag compactBag = new CompactMultiKeyBag();
+		fill(new MultiKeyBag(), compactBag);
+		CompactMultiKeyBag merged = new CompactMultiKeyBag();
+		merged.merge(compactBag);
+		merged.merge(compactBag);
+
+		ExtendedMultiKey key = new ExtendedMultiKey((byte)1, 2003, Wildcard.STRING(), Wildcard.INTEGER());
+		assertEquals(2 * compactBag.getCount(key), merged.getCount(key));
+		assertEquals(2 * compactBag.getSize(), merged.getSize());
+	}
+
+}
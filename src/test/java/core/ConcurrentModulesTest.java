@@ -0,0 +1,102 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Module;
+import org.erasmusmc.jerboa.modifiers.EventMapping;
+import org.erasmusmc.jerboa.modifiers.PopulationDefinition;
+import org.erasmusmc.jerboa.modifiers.PrescriptionCohortDefinition;
+import org.erasmusmc.jerboa.modules.IncidenceRate;
+import org.erasmusmc.jerboa.modules.Prevalence;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.java.core.ParallelProcessingTest.EventCounter;
+import test.java.core.ParallelProcessingTest.StrokeRemover;
+
+/**
+ * This class represents a unit testing for the selection of the modules
+ * of a work flow that can run at the same time as other modules.
+ */
+public class ConcurrentModulesTest {
+
+	@Before
+	public void setUp() {
+		Jerboa.unitTest = true;
+	}
+
+	/**
+	 * Checks that workers which do not declare otherwise are assumed to change shared data.
+	 */
+	@Test
+	public void testNotAudited() {
+		Module module = new EventCounter();
+		assertTrue(module.changesSharedData());
+		assertFalse(module.canRunConcurrently());
+
+		Module prevalence = new Prevalence();
+		assertTrue(prevalence.canRunConcurrently());
+		prevalence.setModifiers(modifiers(new PopulationDefinition(), new StrokeRemover()));
+		assertFalse(prevalence.canRunConcurrently());
+	}
+
+	/**
+	 * Checks the modules with the modifiers that only set the population or cohort
+	 * of the patients, and with the ones that extend the look-up tables.
+	 */
+	@Test
+	public void testAudited() {
+		Module prevalence = new Prevalence();
+		prevalence.setModifiers(modifiers(new PopulationDefinition(), new PrescriptionCohortDefinition()));
+		assertTrue(prevalence.canRunConcurrently());
+
+		EventMapping eventMapping = new EventMapping();
+		prevalence.setModifiers(modifiers(new PopulationDefinition(), eventMapping));
+		assertFalse(prevalence.canRunConcurrently());
+
+		//inactive modifiers are not applied
+		eventMapping.setActive(false);
+		assertTrue(prevalence.canRunConcurrently());
+
+		//the result set is shared by all modules
+		prevalence.resultSetActive = true;
+		assertFalse(prevalence.canRunConcurrently());
+
+		//the incidence rate module adds the event types it maps to
+		assertFalse(new IncidenceRate().canRunConcurrently());
+	}
+
+	private List<Modifier> modifiers(Modifier... modifiers) {
+		List<Modifier> list = new ArrayList<Modifier>();
+		for (Modifier modifier : modifiers)
+			list.add(modifier);
+		return list;
+	}
+
+}
@@ -0,0 +1,225 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.erasmusmc.jerboa.utilities.DenseCounter;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the dense counter.
+ * The counts are compared with the ones kept in a map on the joined labels.
+ */
+public class DenseCounterTest {
+
+	private static final int MEASURES = 2;
+	private static final String ALL = "ALL";
+
+	/**
+	 * Checks the encoding of the labels and the cells.
+	 */
+	@Test
+	public void testCodes() {
+		DenseCounter counter = new DenseCounter(1, 2, 3);
+		assertEquals(2, counter.getDimensions());
+		assertEquals(0, counter.encode(0, "A"));
+		assertEquals(1, counter.encode(0, "B"));
+		assertEquals(0, counter.encode(0, "A"));
+		assertEquals(-1, counter.findCode(0, "C"));
+		assertEquals(2, counter.getSize(0));
+		assertEquals("B", counter.getLabel(0, 1));
+
+		int cell = counter.getCell(counter.encode(0, "B"), counter.encode(1, "X"));
+		assertEquals(cell, counter.findCell("B", "X"));
+		assertEquals(1, counter.getCodeInCell(cell, 0));
+		assertEquals(0, counter.getCodeInCell(cell, 1));
+		assertEquals(-1, counter.findCell("B", "Y"));
+		assertEquals(-1, counter.findCell("B"));
+		assertEquals(-1, counter.getCell(1, -1));
+		assertEquals(0, counter.get(-1, 0));
+
+		int otherCell = counter.getCellWithCode(cell, 0, counter.encode(0, "A"));
+		assertEquals(counter.findCell("A", "X"), otherCell);
+	}
+
+	/**
+	 * Checks the counts while the dimensions grow beyond their initial capacity.
+	 */
+	@Test
+	public void testGrowth() {
+		DenseCounter counter = new DenseCounter(MEASURES, 1, 2, 1);
+		checkCounts(counter);
+		assertFalse(counter.isSparse());
+	}
+
+	/**
+	 * Checks the counts when the dimensions grow beyond the dense limit.
+	 */
+	@Test
+	public void testSparse() {
+		DenseCounter counter = new DenseCounter(MEASURES, 1, 2, 1);
+		counter.setDenseLimit(100);
+		checkCounts(counter);
+		assertTrue(counter.isSparse());
+		assertEquals(-1, counter.findCell("E0", "1999", "G0"));
+	}
+
+	/**
+	 * Checks that the cells used before the switch to sparse cells keep their counts and marks.
+	 */
+	@Test
+	public void testSwitchToSparse() {
+		DenseCounter counter = new DenseCounter(1, 2, 2);
+		int cell = counter.getCell(counter.encode(0, "A"), counter.encode(1, "X"));
+		counter.add(cell, 0, 5);
+		assertTrue(counter.mark(cell, 1));
+		counter.setDenseLimit(2);
+		assertTrue(counter.isSparse());
+
+		cell = counter.findCell("A", "X");
+		assertEquals(5, counter.get(cell, 0));
+		assertFalse(counter.mark(cell, 1));
+		assertEquals(0, counter.getCodeInCell(cell, 0));
+		assertEquals(-1, counter.findCell("A", "Y"));
+
+		// New cells do not move the cells retrieved before
+		int otherCell = counter.getCellWithCode(cell, 0, counter.encode(0, "B"));
+		counter.add(otherCell, 0, 2);
+		assertEquals(otherCell, counter.findCell("B", "X"));
+		assertEquals(5, counter.get(cell, 0));
+		assertEquals(2, counter.get(otherCell, 0));
+	}
+
+	/**
+	 * Adds random counts to counter and compares them with the ones kept in a map.
+	 * @param counter - a counter with three dimensions
+	 */
+	private void checkCounts(DenseCounter counter) {
+		Map<String, long[]> expected = new HashMap<String, long[]>();
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			String[] labels = {"E" + random.nextInt(7), Integer.toString(2000 + random.nextInt(20)), "G" + random.nextInt(3)};
+			int cell = counter.getCell(counter.encode(0, labels[0]), counter.encode(1, labels[1]), counter.encode(2, labels[2]));
+			int measure = random.nextInt(MEASURES);
+			long value = random.nextInt(100);
+			counter.add(cell, measure, value);
+
+			String key = labels[0] + "_" + labels[1] + "_" + labels[2];
+			if (!expected.containsKey(key)) {
+				expected.put(key, new long[MEASURES]);
+			}
+			expected.get(key)[measure] += value;
+		}
+
+		for (String key : expected.keySet()) {
+			int cell = counter.findCell(key.split("_"));
+			for (int measure = 0; measure < MEASURES; measure++) {
+				assertEquals(key, expected.get(key)[measure], counter.get(cell, measure));
+			}
+		}
+	}
+
+	/**
+	 * Checks that a cell is marked once per stamp, also after the dimensions grew.
+	 */
+	@Test
+	public void testMark() {
+		DenseCounter counter = new DenseCounter(1, 2);
+		int cell = counter.getCell(counter.encode(0, "A"));
+		assertTrue(counter.mark(cell, 1));
+		assertFalse(counter.mark(cell, 1));
+		counter.encode(0, "B");
+		counter.encode(0, "C");
+		cell = counter.getCell(counter.encode(0, "A"));
+		assertFalse(counter.mark(cell, 1));
+		assertTrue(counter.mark(cell, 2));
+		assertTrue(counter.mark(counter.getCell(counter.encode(0, "C")), 2));
+	}
+
+	/**
+	 * Checks the sums over a dimension.
+	 */
+	@Test
+	public void testMarginalize() {
+		checkMarginalize(new DenseCounter(MEASURES, 2, 2));
+	}
+
+	/**
+	 * Checks the sums over a dimension of sparse cells.
+	 */
+	@Test
+	public void testSparseMarginalize() {
+		DenseCounter counter = new DenseCounter(MEASURES, 2, 2);
+		counter.setDenseLimit(10);
+		checkMarginalize(counter);
+		assertTrue(counter.isSparse());
+	}
+
+	/**
+	 * Adds random counts to counter and checks their sums over the years.
+	 * @param counter - a counter with two dimensions
+	 */
+	private void checkMarginalize(DenseCounter counter) {
+		int all = counter.encode(1, ALL);
+		Map<String, long[]> expected = new HashMap<String, long[]>();
+		Random random = new Random(5);
+		for (int i = 0; i < 5000; i++) {
+			String event = "E" + random.nextInt(5);
+			int cell = counter.getCell(counter.encode(0, event), counter.encode(1, Integer.toString(2000 + random.nextInt(10))));
+			for (int measure = 0; measure < MEASURES; measure++) {
+				long value = random.nextInt(10);
+				counter.add(cell, measure, value);
+				if (!expected.containsKey(event)) {
+					expected.put(event, new long[MEASURES]);
+				}
+				expected.get(event)[measure] += value;
+			}
+		}
+
+		// Marginalizing twice gives the same sums
+		for (int run = 0; run < 2; run++) {
+			counter.marginalize(1, all, 0);
+			for (String event : expected.keySet()) {
+				int cell = counter.findCell(event, ALL);
+				assertEquals(event, expected.get(event)[0], counter.get(cell, 0));
+				assertEquals(event, 0, counter.get(cell, 1));
+			}
+		}
+		// The other measures were not changed
+		for (String event : expected.keySet()) {
+			long sum = 0;
+			for (int code = 0; code < counter.getSize(1); code++) {
+				if (code != all) {
+					sum += counter.get(counter.findCell(event, counter.getLabel(1, code)), 1);
+				}
+			}
+			assertEquals(event, expected.get(event)[1], sum);
+		}
+	}
+
+}
@@ -0,0 +1,143 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.dataClasses.EpisodeIndex;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.utilities.IndexDateUtilities;
+import org.erasmusmc.jerboa.utilities.ItemList;
+import org.erasmusmc.jerboa.utilities.MultiKeyBag;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.java.TestAll;
+
+/**
+ * This class represents a unit testing for the episode index of a patient
+ * and the window queries of the IndexDateUtilities using it.
+ */
+public class EpisodeIndexTest {
+
+	private Patient patient;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		patient = TestAll.createPatient("1", "19500101", "M", "20000101", "20101231", "20000101", "20101231", "20020101", "20081231");
+		TestAll.createEvent(patient, "20010101", "MI", "");
+		TestAll.createEvent(patient, "20030101", "MI", "");
+		TestAll.createEvent(patient, "20030101", "STROKE", "");
+		TestAll.createEvent(patient, "20050101", "mi", "");
+		TestAll.createEvent(patient, "20090101", "MI", "");
+	}
+
+	/**
+	 * Checks the window counts and the nearest episodes on a posting.
+	 */
+	@Test
+	public void testPosting() {
+		EpisodeIndex index = patient.getEpisodeIndex();
+		EpisodeIndex.Posting mi = index.getEvents("MI");
+		assertEquals(3, mi.size());
+		assertEquals(4, index.getEventsIgnoreCase("Mi").size());
+		assertEquals(0, index.getEvents("DEATH").size());
+
+		int date2003 = patient.getEvents().get(1).getDate();
+		int date2009 = patient.getEvents().get(4).getDate();
+		assertEquals(3, mi.count(Long.MIN_VALUE, Long.MAX_VALUE));
+		assertEquals(2, mi.count(date2003, date2009));
+		assertEquals(1, mi.count(date2003 + 1, date2009));
+		assertEquals(0, mi.count(date2009, date2003));
+		assertTrue(mi.exists(date2003, date2003));
+		assertFalse(mi.exists(date2003 + 1, date2009 - 1));
+		assertEquals(date2003, mi.getDate(mi.first(date2003, Long.MAX_VALUE)));
+		assertEquals(date2003, mi.getDate(mi.last(Long.MIN_VALUE, date2009 - 1)));
+		assertEquals(-1, mi.last(Long.MIN_VALUE, mi.getDate(0) - 1));
+	}
+
+	/**
+	 * Checks that the index follows changes of the history of the patient.
+	 */
+	@Test
+	public void testRebuild() {
+		EpisodeIndex index = patient.getEpisodeIndex();
+		assertSame(index, patient.getEpisodeIndex());
+		TestAll.createEvent(patient, "20070101", "MI", "");
+		assertEquals(4, patient.getEpisodeIndex().getEvents("MI").size());
+
+		List<Event> events = new ArrayList<Event>(patient.getEvents());
+		events.remove(0);
+		patient.setEvents(events);
+		assertEquals(3, patient.getEpisodeIndex().getEvents("MI").size());
+	}
+
+	/**
+	 * Checks the window queries of the IndexDateUtilities on the index.
+	 */
+	@Test
+	public void testIndexDateQueries() {
+		int indexDate = patient.getEvents().get(1).getDate();
+		List<String> labels = Arrays.asList("mi", "STROKE");
+
+		assertEquals(patient.getEvents().get(0).getDate(), IndexDateUtilities.getFirstEventDate(patient, "MI", false));
+		assertEquals(indexDate, IndexDateUtilities.getFirstEventDate(patient, "MI", true));
+		assertEquals("MI", IndexDateUtilities.getFirstEventType(patient, labels, true));
+		assertEquals(0, IndexDateUtilities.getTimeToNextEvent(patient, indexDate, "MI", false, true));
+		assertEquals(patient.getEvents().get(3).getDate() - indexDate, IndexDateUtilities.getTimeToNextEvent(patient, indexDate, labels, false, false));
+		assertEquals(-1, IndexDateUtilities.getTimeToNextEvent(patient, patient.getEvents().get(3).getDate(), "MI", true, false));
+		assertEquals(indexDate - patient.getEvents().get(0).getDate(), IndexDateUtilities.getTimeToPreviousEvent(patient, indexDate, "MI", false, false));
+		assertEquals(-1, IndexDateUtilities.getTimeToPreviousEvent(patient, indexDate, "MI", true, false));
+		assertEquals(3, IndexDateUtilities.getEventCount(patient, indexDate, "MI", false, null, null));
+		assertEquals(1, IndexDateUtilities.getEventCount(patient, indexDate, "MI", true, null, null));
+		assertEquals(2, IndexDateUtilities.getEventCount(patient, indexDate, "MI", false, -365 * 3, 1));
+	}
+
+	/**
+	 * Checks that the counts of an item take over the value or age limits of the previous item
+	 * when it does not specify them, as the counts did before the patient history was indexed.
+	 */
+	@Test
+	public void testLimitsCarriedOver() {
+		TestAll.createMeasurement(patient, "20020101", "BMI", "22");
+		TestAll.createMeasurement(patient, "20040101", "BMI", "31");
+		TestAll.createMeasurement(patient, "20060101", "BMI", "27");
+		int indexDate = patient.getEvents().get(4).getDate();
+
+		ItemList eventsList = new ItemList(true, 0);
+		eventsList.parse(Arrays.asList("MI;MI 50-54;;50;54", "MI;MI;all ages"));
+		assertEquals("2,2", IndexDateUtilities.processEventCounts(patient, indexDate, eventsList, -365 * 20, new MultiKeyBag()));
+
+		ItemList measurementsList = new ItemList(true, 0);
+		measurementsList.parse(Arrays.asList("BMI;BMI 30-40;;30;40", "BMI;BMI;all values"));
+		assertEquals("1,1", IndexDateUtilities.processMeasurementCounts(patient, indexDate, measurementsList, -365 * 20, new MultiKeyBag()));
+	}
+
+}
@@ -0,0 +1,150 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.utilities.ExtendedData;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the storage of the extended data.
+ * The patients file has two extended columns, region (index 5) and practice (index 6).
+ */
+public class ExtendedDataTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+		folder = Files.createTempDirectory("jerboa-extended").toFile();
+		File patients = new File(folder, "Patients.txt");
+		FileUtils.writeStringToFile(patients, "PatientID,Birthdate,Gender,Startdate,Enddate,Region,Practice\n"
+				+ "P1,19500101,M,20000101,20101231,North,A\n");
+		Jerboa.setInputFileSet(new InputFileSet(Arrays.asList(patients.getPath())));
+	}
+
+	@After
+	public void tearDown() {
+		Jerboa.setInputFileSet(null);
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testSharedSchema() {
+		ExtendedData first = new ExtendedData(DataDefinition.PATIENT);
+		ExtendedData second = new ExtendedData(DataDefinition.PATIENT);
+		assertNotNull(first.dataOrder);
+		assertSame(first.dataOrder, second.dataOrder);
+		assertEquals(2, first.dataOrder.size());
+	}
+
+	@Test
+	public void testEmpty() {
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		assertEquals(0, extended.size());
+		assertTrue(extended.getKeySet().isEmpty());
+		assertTrue(extended.getData().isEmpty());
+		assertNull(extended.get(5));
+		assertFalse(extended.hasAttribute(5));
+	}
+
+	@Test
+	public void testPutAndGet() {
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		assertNull(extended.put(6, 3));
+		assertNull(extended.put(5, ExtendedData.NO_DATA));
+		assertEquals(Integer.valueOf(3), extended.put(6, 4));
+
+		assertEquals(Integer.valueOf(4), extended.get(6));
+		assertEquals(Integer.valueOf(ExtendedData.NO_DATA), extended.get(5));
+		assertTrue(extended.hasAttribute(6));
+		assertFalse(extended.hasAttribute(5));
+		assertEquals(2, extended.size());
+		assertEquals(Arrays.asList(5, 6), Arrays.asList(extended.getKeySet().toArray()));
+	}
+
+	@Test
+	public void testColumnNotInSchema() {
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		extended.put(9, 1);
+		extended.put(5, 2);
+		assertEquals(Integer.valueOf(1), extended.get(9));
+		assertEquals(2, extended.size());
+		assertEquals(Arrays.asList(5, 9), Arrays.asList(extended.getKeySet().toArray()));
+	}
+
+	@Test
+	public void testIndexedAccess() {
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		extended.put(9, 1);
+		extended.put(6, 3);
+		extended.put(5, ExtendedData.NO_DATA);
+		HashMap<Integer, Integer> data = new HashMap<Integer, Integer>();
+		for (int i = 0; i < extended.size(); i++)
+			data.put(extended.getKeyAt(i), extended.getValueAt(i));
+		assertEquals(extended.getData(), data);
+		assertEquals(Integer.valueOf(5), extended.getKeyAt(0));
+		assertEquals(Integer.valueOf(9), extended.getKeyAt(2));
+	}
+
+	@Test(expected = IndexOutOfBoundsException.class)
+	public void testIndexOutOfBounds() {
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		extended.put(6, 3);
+		extended.getKeyAt(1);
+	}
+
+	@Test
+	public void testSetDataAndCopy() {
+		HashMap<Integer, Integer> data = new HashMap<Integer, Integer>();
+		data.put(5, 7);
+		data.put(6, 8);
+		ExtendedData extended = new ExtendedData(DataDefinition.PATIENT);
+		extended.setData(data);
+		assertEquals(data, extended.getData());
+
+		ExtendedData copy = new ExtendedData(extended);
+		copy.put(5, 1);
+		assertEquals(Integer.valueOf(7), extended.get(5));
+		assertEquals(Integer.valueOf(1), copy.get(5));
+
+		extended.setData(null);
+		assertEquals(0, extended.size());
+	}
+
+}
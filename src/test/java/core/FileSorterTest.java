@@ -0,0 +1,154 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.utilities.FileSorter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the external sorting of the input files.
+ * The files are written to a temporary folder.
+ */
+public class FileSorterTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws IOException {
+		folder = Files.createTempDirectory("jerboa-sort").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Checks that the rows are ordered by patient identifier, shorter identifiers
+	 * first, and then by date, whatever the format of the dates.
+	 */
+	@Test
+	public void testOrdering() throws IOException {
+		List<String> sorted = sort(new FileSorter(), "PatientID,EventType,Date",
+				"10,MI,20010101",
+				"B,MI,20030101",
+				"2,MI,20020101",
+				"A,MI,20010101",
+				"2,STROKE,20010101",
+				"1,MI,20050101");
+		assertEquals(Arrays.asList("PatientID,EventType,Date",
+				"1,MI,20050101",
+				"2,STROKE,20010101",
+				"2,MI,20020101",
+				"A,MI,20010101",
+				"B,MI,20030101",
+				"10,MI,20010101"), sorted);
+
+		//the dates are compared as dates and not as strings
+		sorted = sort(new FileSorter(), "PatientID;Date;MeasurementType;Value",
+				"1;01-02-2002;BMI;25",
+				"1;15-01-2003;BMI;26",
+				"1;20-12-2001;BMI;24");
+		assertEquals(Arrays.asList("PatientID;Date;MeasurementType;Value",
+				"1;20-12-2001;BMI;24",
+				"1;01-02-2002;BMI;25",
+				"1;15-01-2003;BMI;26"), sorted);
+	}
+
+	/**
+	 * Checks that the rows with the same patient identifier and date keep their
+	 * order in the input file when the input is sorted in several runs, which are
+	 * merged in several passes.
+	 */
+	@Test
+	public void testStableMultiPassMerge() throws IOException {
+		Random random = new Random(1);
+		List<String> rows = new ArrayList<String>();
+		for (int i = 0; i < 20000; i++)
+			rows.add("P" + random.nextInt(500) + ",EVENT,2001010" + random.nextInt(3) + "," + i);
+
+		FileSorter sorter = new FileSorter(1, 2);
+		sorter.setMaxMergedRuns(2);
+		List<String> sorted = sort(sorter, "PatientID,EventType,Date,Sequence", rows.toArray(new String[rows.size()]));
+
+		//the sorting of the collections is stable
+		List<String> expected = new ArrayList<String>(rows);
+		Collections.sort(expected, new Comparator<String>() {
+			public int compare(String row1, String row2) {
+				String[] columns1 = row1.split(",");
+				String[] columns2 = row2.split(",");
+				int result = FileSorter.compareIDs(columns1[0], columns2[0]);
+				return result != 0 ? result : columns1[2].compareTo(columns2[2]);
+			}
+		});
+		expected.add(0, "PatientID,EventType,Date,Sequence");
+		assertEquals(expected, sorted);
+		//the run files were deleted
+		assertEquals(2, folder.list().length);
+	}
+
+	/**
+	 * Checks that the header is kept as first line, also for an empty
+	 * file, and that the whole rows are compared without identifier column.
+	 */
+	@Test
+	public void testHeader() throws IOException {
+		assertEquals(Arrays.asList("PatientID,EventType,Date"), sort(new FileSorter(), "PatientID,EventType,Date"));
+		assertEquals(Arrays.asList("Code,Description", "A1,First", "B2,Other", "B3,Third"),
+				sort(new FileSorter(), "Code,Description", "B3,Third", "A1,First", "B2,Other"));
+	}
+
+	/**
+	 * Writes the lines to an input file, sorts it and returns the lines of the sorted file.
+	 * @param sorter - the sorter to be used
+	 * @param header - the first line of the input file
+	 * @param rows - the rest of the lines of the input file
+	 * @return - the lines of the sorted file
+	 */
+	private List<String> sort(FileSorter sorter, String header, String... rows) throws IOException {
+		File input = new File(folder, "input.csv");
+		File output = new File(folder, "sorted.csv");
+		List<String> lines = new ArrayList<String>();
+		lines.add(header);
+		lines.addAll(Arrays.asList(rows));
+		FileUtils.writeLines(input, lines);
+		sorter.sort(input.getPath(), output.getPath());
+		return FileUtils.readLines(output);
+	}
+
+}
@@ -0,0 +1,151 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.engine.InputFile;
+import org.erasmusmc.jerboa.utilities.FileUtilities;
+import org.erasmusmc.jerboa.utilities.inputChecking.InputFileChecker;
+import org.erasmusmc.jerboa.utilities.inputChecking.PatientsFileChecker;
+import org.erasmusmc.jerboa.utilities.stats.Stats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the checking of the input files in blocks.
+ * The patients file is large enough to be split in several blocks.
+ */
+public class InputFileCheckerTest {
+
+	private static final int PATIENTS = 150000;
+
+	private File folder;
+	private String patientsFile;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+		folder = Files.createTempDirectory("jerboa-checker").toFile();
+		patientsFile = new File(folder, "Patients.txt").getPath();
+
+		//sorted patients with the same length of ID
+		List<String> lines = new ArrayList<String>();
+		lines.add("PatientID,Birthdate,Gender,Startdate,Enddate");
+		for (int i = 0; i < PATIENTS; i++)
+			lines.add("P" + (1000000 + i) + ",19" + (10 + i % 90) + "0101," + (i % 2 == 0 ? "M" : "F") + ",20000101,20101231");
+		write(lines);
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testSortedFile() throws Exception {
+		assertTrue(new File(patientsFile).length() > InputFileChecker.BLOCK_SIZE);
+
+		InputFile file = new InputFile(patientsFile);
+		PatientsFileChecker checker = new PatientsFileChecker(file);
+		checker.scan("patient");
+
+		assertTrue(checker.getErrorMessages().isEmpty());
+		assertTrue(file.isSorted());
+		assertFalse(file.isEmpty());
+		assertEquals(PATIENTS, Stats.nbPatients);
+	}
+
+	@Test
+	public void testUnsortedFile() throws Exception {
+		List<String> lines = read();
+		String line = lines.get(PATIENTS - 10);
+		lines.set(PATIENTS - 10, lines.get(PATIENTS - 9));
+		lines.set(PATIENTS - 9, line);
+		write(lines);
+
+		InputFile file = new InputFile(patientsFile);
+		PatientsFileChecker checker = new PatientsFileChecker(file);
+		checker.scan("patient");
+
+		assertTrue(checker.getErrorMessages().isEmpty());
+		assertFalse(file.isSorted());
+	}
+
+	@Test
+	public void testErrorsInFileOrder() throws Exception {
+		List<String> lines = read();
+		int[] wrong = {PATIENTS - 5, 5, PATIENTS / 2};
+		for (int index : wrong)
+			lines.set(index, lines.get(index).replaceFirst(",[MF],", ",X,"));
+		write(lines);
+
+		InputFile file = new InputFile(patientsFile);
+		PatientsFileChecker checker = new PatientsFileChecker(file);
+		checker.scan("patient");
+
+		//the line numbers are one based
+		List<String> errors = checker.getErrorMessages();
+		assertEquals(3, errors.size());
+		assertTrue(errors.get(0).startsWith("[6]   Invalid gender"));
+		assertTrue(errors.get(1).startsWith("[" + (PATIENTS / 2 + 1) + "]   Invalid gender"));
+		assertTrue(errors.get(2).startsWith("[" + (PATIENTS - 4) + "]   Invalid gender"));
+		assertEquals(PATIENTS, Stats.nbPatients);
+	}
+
+	@Test
+	public void testChecksumInTheSamePass() throws Exception {
+		InputFile file = new InputFile(patientsFile);
+		PatientsFileChecker checker = new PatientsFileChecker(file);
+		ExecutorService executor = InputFileChecker.newExecutor(2);
+		try {
+			checker.check("patient", executor, null, true);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(PATIENTS, checker.getRecords());
+		assertEquals(FileUtilities.checksumMD5(patientsFile), file.getChecksum());
+	}
+
+	private List<String> read() throws IOException {
+		return new ArrayList<String>(Files.readAllLines(new File(patientsFile).toPath(), StandardCharsets.UTF_8));
+	}
+
+	private void write(List<String> lines) throws IOException {
+		Files.write(new File(patientsFile).toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+}
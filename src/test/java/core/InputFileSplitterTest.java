@@ -0,0 +1,165 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.text.StrBuilder;
+import org.apache.commons.lang3.text.StrTokenizer;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.engine.InputFile;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.engine.InputFileSplitter;
+import org.erasmusmc.jerboa.engine.ScriptParser;
+import org.erasmusmc.jerboa.utilities.FileUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the splitting of the input files in subsets.
+ * The subset files are compared with the ones created by the sequential splitting
+ * of the previous versions, which assigned the lines one by one to their subset.
+ * The files are written to a temporary folder.
+ */
+public class InputFileSplitterTest {
+
+	private File folder;
+	private HashMap<String, String> properties;
+	private boolean inConsoleMode;
+	private String splitPath;
+
+	@Before
+	public void setUp() throws IOException {
+		Jerboa.unitTest = true;
+		inConsoleMode = Jerboa.inConsoleMode;
+		Jerboa.inConsoleMode = true;
+		//the subsets are created in the split path, which depends on the application properties
+		properties = PropertiesManager.listProperties;
+		if (properties == null) {
+			PropertiesManager.listProperties = new HashMap<String, String>();
+			PropertiesManager.listProperties.put("lastWorkspace", System.getProperty("java.io.tmpdir"));
+			PropertiesManager.listProperties.put("lastRun", "20170101");
+			PropertiesManager.listProperties.put("runIndex", "1");
+		}
+		folder = Files.createTempDirectory("jerboa-split").toFile();
+		splitPath = FilePaths.SPLIT_PATH;
+		FilePaths.SPLIT_PATH = folder.getPath().replace("\\", "/") + "/split/";
+
+		//a split chunk size of 1 MB and several threads
+		ScriptParser scriptParser = new ScriptParser(null);
+		scriptParser.setParsedSettings(scriptParser.new ParsedSettings());
+		scriptParser.getParsedSettings().metaData.splitSize = "1";
+		scriptParser.getParsedSettings().metaData.threads = "3";
+		Jerboa.setScriptParser(scriptParser);
+	}
+
+	@After
+	public void tearDown() {
+		Jerboa.setScriptParser(null);
+		FilePaths.SPLIT_PATH = splitPath;
+		PropertiesManager.listProperties = properties;
+		Jerboa.inConsoleMode = inConsoleMode;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Checks that each subset file contains the lines of its patients
+	 * in the order of the input file and that the input subsets are counted.
+	 */
+	@Test
+	public void testSameSubsets() throws IOException {
+		Random random = new Random(1);
+		List<String> patients = new ArrayList<String>();
+		patients.add("PatientID,Birthdate,Gender,Startdate,Enddate,SubsetID");
+		for (int i = 0; i < 5000; i++)
+			patients.add("P" + i + ",19600101," + (i % 2 == 0 ? "M" : "F") + ",20000101,20101231,S" + (i % 3));
+		List<String> events = new ArrayList<String>();
+		events.add("PatientID,EventType,Date,Code");
+		for (int i = 0; i < 150000; i++)
+			events.add("P" + random.nextInt(5000) + ",EVENT" + random.nextInt(100) + ",2001" + (10 + random.nextInt(3)) + "1" + random.nextInt(10) + "," + i);
+
+		List<String> files = new ArrayList<String>();
+		files.add(write("Patients.txt", patients));
+		files.add(write("Events.txt", events));
+		InputFileSet inputSet = new InputFileSet(files);
+		InputFileSplitter splitter = new InputFileSplitter(inputSet);
+		List<InputFile> inputFiles = new ArrayList<InputFile>();
+		inputFiles.add(inputSet.getPatientsFile());
+		inputFiles.add(inputSet.getEventsFile());
+		splitter.split(inputFiles);
+		//the input files are larger than the split chunk size
+		assertTrue(splitter.getSubsetFolderNames().size() > 1);
+
+		assertSubsets(splitter, inputSet.getPatientsFile(), patients, FilePaths.FILE_PATIENTS);
+		assertSubsets(splitter, inputSet.getEventsFile(), events, FilePaths.FILE_EVENTS);
+		assertEquals(3, splitter.patientSubsetIDs.size());
+		assertEquals(1667, (int)splitter.patientSubsetIDs.get("S0"));
+		assertEquals(1666, (int)splitter.patientSubsetIDs.get("S2"));
+	}
+
+	/**
+	 * Compares the subset files of an input file with the ones
+	 * created by assigning the lines one by one to their subset.
+	 * @param splitter - the splitter used
+	 * @param inputFile - the input file that was split
+	 * @param lines - the lines of the input file
+	 * @param fileName - the name of the subset files
+	 */
+	private void assertSubsets(InputFileSplitter splitter, InputFile inputFile, List<String> lines, String fileName) throws IOException {
+		List<StrBuilder> expected = new ArrayList<StrBuilder>();
+		for (int s = 0; s < splitter.getSubsetFolderNames().size(); s++)
+			expected.add(new StrBuilder());
+		for (String line : lines.subList(1, lines.size())) {
+			StrTokenizer tokenizer = new StrTokenizer(line, inputFile.getDelimiter());
+			tokenizer.setIgnoreEmptyTokens(false);
+			expected.get(splitter.subset(tokenizer.getTokenArray()[inputFile.getPatientIDIndex()])).appendln(line);
+		}
+		for (int s = 0; s < expected.size(); s++)
+			assertEquals(expected.get(s).toString(), FileUtilities.readFileToString(new File(FilePaths.SPLIT_PATH + s + "/" + fileName)));
+	}
+
+	/**
+	 * Writes the lines to a file in the temporary folder.
+	 * @param name - the name of the file
+	 * @param lines - the lines of the file
+	 * @return - the path of the file
+	 */
+	private String write(String name, List<String> lines) throws IOException {
+		File file = new File(folder, name);
+		FileUtils.writeLines(file, lines);
+		return file.getPath();
+	}
+
+}
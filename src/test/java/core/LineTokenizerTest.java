@@ -0,0 +1,115 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import org.apache.commons.lang3.text.StrMatcher;
+import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the splitting of input file lines.
+ */
+public class LineTokenizerTest {
+
+	private LineTokenizer tokenizer = new LineTokenizer(StrMatcher.charMatcher(','));
+
+	/**
+	 * Checks that empty columns are kept, including a trailing one.
+	 */
+	@Test
+	public void testEmptyColumns(){
+		assertArrayEquals(new String[]{"1", "", "A", ""}, tokenizer.reset("1,,A,").toArray());
+		assertArrayEquals(new String[]{}, tokenizer.reset("").toArray());
+		assertArrayEquals(new String[]{"", ""}, tokenizer.reset(",").toArray());
+	}
+
+	/**
+	 * Checks that quoted columns may contain the delimiter and escaped quotes.
+	 */
+	@Test
+	public void testQuotedColumns(){
+		assertArrayEquals(new String[]{"1", "a,b", "say \"hi\"", "x"},
+				tokenizer.reset("1,\"a,b\",\"say \"\"hi\"\"\",x").toArray());
+		assertArrayEquals(new String[]{"a,b"}, tokenizer.reset("'a,b'").toArray());
+		//quotes inside a column which does not start with a quote are kept
+		assertArrayEquals(new String[]{"ab\"c", "d\""}, tokenizer.reset("ab\"c,d\"").toArray());
+	}
+
+	/**
+	 * Checks the parsing of integer and date columns without creating strings.
+	 */
+	@Test
+	public void testParsing(){
+		tokenizer.reset(" 42 ,-7,20120229,2012-02-29,29022012, ");
+		assertEquals(42, tokenizer.getInt(0));
+		assertEquals(-7, tokenizer.getInt(1));
+		Integer days = DateUtilities.dateToDays("20120229", DateUtilities.DATE_ON_YYYYMMDD);
+		assertEquals(days, tokenizer.getDays(2, DateUtilities.DATE_ON_YYYYMMDD));
+		assertEquals(days, tokenizer.getDays(3, DateUtilities.DATE_ON_YYYYMMDD_WITH_SEPARATOR));
+		assertEquals(days, tokenizer.getDays(4, DateUtilities.DATE_ON_DDMMYYYY));
+		assertNull(tokenizer.getDays(5, DateUtilities.DATE_ON_YYYYMMDD));
+		assertTrue(tokenizer.isEmpty(5));
+		assertTrue(tokenizer.equals(0, "42"));
+		assertTrue(tokenizer.isInt(0));
+		assertTrue(tokenizer.isInt(1));
+		assertFalse(tokenizer.isInt(5));
+	}
+
+	/**
+	 * Checks that the values which cannot be parsed directly give the same result
+	 * as their conversion from strings and that no stale column is returned.
+	 */
+	@Test
+	public void testParsingFallback(){
+		tokenizer.reset("20120230,2012022,12.5,\"20120229\",1234567890");
+		assertNull(tokenizer.getDays(0, DateUtilities.DATE_ON_YYYYMMDD));
+		assertNull(tokenizer.getDays(1, DateUtilities.DATE_ON_YYYYMMDD));
+		assertEquals(DateUtilities.dateToDays("20120229", DateUtilities.DATE_ON_YYYYMMDD),
+				tokenizer.getDays(3, DateUtilities.DATE_ON_YYYYMMDD));
+		assertFalse(tokenizer.isInt(2));
+		assertFalse(tokenizer.isInt(4));
+		assertEquals(1234567890, tokenizer.getInt(4));
+
+		tokenizer.reset("1");
+		try {
+			tokenizer.getString(3);
+			fail("A column of the previous line was returned");
+		} catch (ArrayIndexOutOfBoundsException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Checks that the columns which are not needed are not retrieved.
+	 */
+	@Test
+	public void testNeededColumns(){
+		tokenizer.setNeededColumns(new boolean[]{true, false, true});
+		assertArrayEquals(new String[]{"1", "", "3"}, tokenizer.reset("1,2,3").toArray());
+		tokenizer.setNeededColumns(null);
+	}
+
+}
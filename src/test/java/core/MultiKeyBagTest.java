@@ -0,0 +1,147 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.apache.commons.collections.bag.HashBag;
+import org.erasmusmc.jerboa.utilities.ExtendedMultiKey;
+import org.erasmusmc.jerboa.utilities.MultiKeyBag;
+import org.erasmusmc.jerboa.utilities.Wildcard;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the wild card look-ups of the multi key bag.
+ * The counts and histograms are compared with a scan over all the keys in the bag.
+ */
+public class MultiKeyBagTest {
+
+	private static final String[] GENDERS = {"F", "M"};
+	private static final String[] AGE_GROUPS = {"0-10", "10-20", "20-30", "30-40"};
+
+	/**
+	 * Fills the bag with random keys: gender, year, age group, patient time.
+	 * @param bag - the multi key bag
+	 * @param random - the random generator
+	 */
+	private void fill(MultiKeyBag bag, Random random){
+		for (int i = 0; i < 20000; i++)
+			bag.add(new ExtendedMultiKey(GENDERS[random.nextInt(2)], 2000 + random.nextInt(5),
+					AGE_GROUPS[random.nextInt(4)], random.nextInt(300)), 1 + random.nextInt(3));
+	}
+
+	/**
+	 * Checks if the key matches the multi key. The multi key can contain wild cards.
+	 * @param key - the key in the bag
+	 * @param multiKey - the multi key of interest
+	 * @return - true if all the components of multiKey match the key
+	 */
+	private boolean matches(ExtendedMultiKey key, ExtendedMultiKey multiKey){
+		for (int i = 0; i < multiKey.size(); i++)
+			if (!(multiKey.getKey(i) instanceof Wildcard) && !multiKey.getKey(i).equals(key.getKey(i)))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Counts the keys matching the multi key by scanning the whole bag.
+	 * @param bag - the multi key bag
+	 * @param multiKey - the multi key of interest
+	 * @return - the sum of the counts of the matching keys
+	 */
+	private long scanCount(MultiKeyBag bag, ExtendedMultiKey multiKey){
+		long count = 0;
+		for (ExtendedMultiKey key : bag.getUniqueSet())
+			if (key.size() == multiKey.size() && matches(key, multiKey))
+				count += bag.getMasterBag().getCount(key);
+		return count;
+	}
+
+	/**
+	 * Builds the histogram of the last key component by scanning the whole bag.
+	 * @param bag - the multi key bag
+	 * @param multiSubKey - the sub key of interest
+	 * @return - the histogram; null if no key matches
+	 */
+	private HashBag scanHistogram(MultiKeyBag bag, ExtendedMultiKey multiSubKey){
+		HashBag histogram = new HashBag();
+		for (ExtendedMultiKey key : bag.getUniqueSet())
+			if (key.size() >= multiSubKey.size() && matches(key, multiSubKey))
+				histogram.add(key.getKey(key.size() - 1), bag.getMasterBag().getCount(key));
+		return histogram.isEmpty() ? null : histogram;
+	}
+
+	/**
+	 * Compares the wild card counts and histograms with the scan of the bag.
+	 * @param bag - the multi key bag
+	 */
+	private void compare(MultiKeyBag bag){
+		for (Object gender : new Object[] {Wildcard.STRING(), "F", "M", "X"}) {
+			for (Object year : new Object[] {Wildcard.INTEGER(), 2000, 2003, 1990}) {
+				for (Object ageGroup : new Object[] {Wildcard.STRING(), "10-20", "30-40"}) {
+					ExtendedMultiKey subKey = new ExtendedMultiKey(gender, year, ageGroup);
+					assertEquals(subKey.toString(), scanHistogram(bag, subKey), bag.getHistogram(subKey));
+					for (Object time : new Object[] {Wildcard.INTEGER(), 0, 150}) {
+						ExtendedMultiKey key = new ExtendedMultiKey(gender, year, ageGroup, time);
+						assertEquals(key.toString(), scanCount(bag, key), bag.getCount(key));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Checks the counts and histograms with wild cards.
+	 */
+	@Test
+	public void testWildcards(){
+		MultiKeyBag bag = new MultiKeyBag();
+		fill(bag, new Random(42));
+		compare(bag);
+	}
+
+	/**
+	 * Checks the counts and histograms after changing the master bag directly
+	 * without changing its number of unique keys.
+	 */
+	@Test
+	public void testModifiedMasterBag(){
+		MultiKeyBag bag = new MultiKeyBag();
+		fill(bag, new Random(7));
+		compare(bag);
+
+		ExtendedMultiKey removed = bag.getSortedKeySet().first();
+		int uniqueKeys = bag.getUniqueSet().size();
+		bag.getMasterBag().remove(removed);
+		bag.getMasterBag().add(new ExtendedMultiKey("X", 1990, "10-20", 0), 5);
+		assertEquals(uniqueKeys, bag.getUniqueSet().size());
+		assertEquals(5, bag.getCount(new ExtendedMultiKey("X", Wildcard.INTEGER(), Wildcard.STRING(), 0)));
+		compare(bag);
+
+		bag.add(new ExtendedMultiKey("F", 1990, "30-40", 150), 2);
+		compare(bag);
+	}
+
+}
@@ -0,0 +1,167 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.utilities.OutputManager;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the asynchronous output of the output manager.
+ * The files are written to a temporary folder.
+ */
+public class OutputManagerTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = false;
+		folder = new File(System.getProperty("java.io.tmpdir"), "jerboa-output-" + System.nanoTime());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Jerboa.unitTest = true;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Writes the same lines with a synchronous and an asynchronous output manager.
+	 */
+	@Test
+	public void testSameOutput() throws Exception {
+		String syncFile = new File(folder, "sync/output.csv").getPath();
+		String asyncFile = new File(folder, "async/output.csv").getPath();
+		OutputManager sync = new OutputManager(false);
+		OutputManager async = new OutputManager(true);
+		sync.addFile(syncFile, 0);
+		async.addFile(asyncFile, 0);
+		for (int i = 0; i < 1000; i++) {
+			sync.writeln(syncFile, "line " + i + ",\u00e9\u00e8", true);
+			async.writeln(asyncFile, "line " + i + ",\u00e9\u00e8", true);
+		}
+		sync.writeln(syncFile, "header", false);
+		async.writeln(asyncFile, "header", false);
+		sync.write(syncFile, "last", true);
+		async.write(asyncFile, "last", true);
+		assertTrue(sync.closeFile(syncFile));
+		assertTrue(async.closeFile(asyncFile));
+
+		assertEquals(FileUtils.readFileToString(new File(syncFile)), FileUtils.readFileToString(new File(asyncFile)));
+		assertEquals("header" + System.lineSeparator() + "last", FileUtils.readFileToString(new File(asyncFile)));
+	}
+
+	/**
+	 * Writes to the output manager from several threads.
+	 */
+	@Test
+	public void testParallelWrites() throws Exception {
+		final String fileName = new File(folder, "parallel.csv").getPath();
+		final OutputManager outputManager = new OutputManager(true);
+		outputManager.addFile(fileName, 0);
+		List<Thread> threads = new ArrayList<Thread>();
+		for (int t = 0; t < 4; t++) {
+			final int threadNr = t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < 5000; i++) {
+						outputManager.writeln(fileName, threadNr + "," + i, true);
+					}
+				}
+			});
+			threads.add(thread);
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		outputManager.flush(fileName);
+
+		List<String> lines = FileUtils.readLines(new File(fileName));
+		assertEquals(4 * 5000, lines.size());
+		int[] next = new int[4];
+		for (String line : lines) {
+			String[] values = line.split(",");
+			int threadNr = Integer.parseInt(values[0]);
+			assertEquals(next[threadNr]++, Integer.parseInt(values[1]));
+		}
+		outputManager.closeAll();
+	}
+
+	/**
+	 * Checks that closing the output manager stops its writer thread.
+	 */
+	@Test
+	public void testWriterStopped() throws Exception {
+		String fileName = new File(folder, "stopped.csv").getPath();
+		int writers = countWriters();
+		OutputManager outputManager = new OutputManager(true);
+		outputManager.addFile(fileName, 0);
+		outputManager.writeln(fileName, "line", true);
+		outputManager.flush(fileName);
+		assertEquals(writers + 1, countWriters());
+		outputManager.closeAll();
+		assertEquals(writers, countWriters());
+		assertEquals("line", FileUtils.readFileToString(new File(fileName)).trim());
+	}
+
+	/**
+	 * Checks that flushing an empty buffer does not write to its file.
+	 */
+	@Test
+	public void testEmptyBufferSkipped() throws Exception {
+		File file = new File(folder, "empty.csv");
+		OutputManager outputManager = new OutputManager(true);
+		outputManager.addFile(file.getPath(), 0);
+		outputManager.flush(file.getPath());
+		assertTrue(file.delete());
+		outputManager.flushAll();
+		assertFalse(file.exists());
+		outputManager.closeAll();
+		assertFalse(file.exists());
+	}
+
+	/**
+	 * Counts the running writer threads of all output managers.
+	 * @return - the number of live writer threads
+	 */
+	private int countWriters() {
+		int count = 0;
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.isAlive() && thread.getName().equals("Jerboa output writer"))
+				count++;
+		}
+		return count;
+	}
+
+}
@@ -0,0 +1,258 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.ZipFile;
+
+import javax.crypto.Cipher;
+import javax.crypto.CipherOutputStream;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.encryption.Encrypt;
+import org.erasmusmc.jerboa.utilities.Zip;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the parallel zipping and the
+ * encryption in authenticated frames used when packing the results.
+ * The files are written to a temporary folder.
+ */
+public class PackTest {
+
+	private File folder;
+	private static KeyPair keyPair;
+
+	//the global settings to be restored after each test
+	private boolean unitTest;
+	private boolean inConsoleMode;
+	private HashMap<String, String> listProperties;
+
+	@Before
+	public void setUp() throws Exception {
+		unitTest = Jerboa.unitTest;
+		inConsoleMode = Jerboa.inConsoleMode;
+		listProperties = PropertiesManager.listProperties;
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+		//the zipping looks up the workflow path, which depends on the application properties
+		if (PropertiesManager.listProperties == null) {
+			PropertiesManager.listProperties = new HashMap<String, String>();
+			PropertiesManager.listProperties.put("lastWorkspace", System.getProperty("java.io.tmpdir"));
+			PropertiesManager.listProperties.put("lastRun", "20170101");
+			PropertiesManager.listProperties.put("runIndex", "1");
+		}
+		folder = new File(System.getProperty("java.io.tmpdir"), "jerboa-pack-" + System.nanoTime());
+		folder.mkdirs();
+		if (keyPair == null) {
+			KeyPairGenerator keygen = KeyPairGenerator.getInstance("RSA");
+			keygen.initialize(2048);
+			keyPair = keygen.generateKeyPair();
+		}
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Jerboa.unitTest = unitTest;
+		Jerboa.inConsoleMode = inConsoleMode;
+		PropertiesManager.listProperties = listProperties;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Zips files, one of them compressing to more than what is held in memory, and unzips them again.
+	 */
+	@Test
+	public void testZipAndUnzip() throws Exception {
+		List<String> inputFiles = new ArrayList<String>();
+		List<byte[]> contents = new ArrayList<byte[]>();
+		int[] sizes = {0, 10, 100000, 6 * 1024 * 1024};
+		for (int i = 0; i < sizes.length; i++) {
+			File file = new File(folder, "input/file" + i + ".csv");
+			byte[] data = i < 3 ? data(sizes[i], i) : new byte[sizes[i]];
+			if (i == 3)
+				new Random(i).nextBytes(data);
+			FileUtils.writeByteArrayToFile(file, data);
+			inputFiles.add(file.getPath());
+			contents.add(data);
+		}
+
+		File zipFile = new File(folder, "packed.zip");
+		OutputStream out = new FileOutputStream(zipFile);
+		assertTrue(new Zip(false, 3).zip(inputFiles, out));
+		out.close();
+
+		//the central directory is valid
+		ZipFile archive = new ZipFile(zipFile);
+		assertEquals(sizes.length, archive.size());
+		assertEquals(sizes[3], archive.getEntry("file3.csv").getSize());
+		archive.close();
+
+		List<String> extracted = new Zip().unzip(new FileInputStream(zipFile), new File(folder, "output").getPath());
+		assertEquals(sizes.length, extracted.size());
+		for (int i = 0; i < sizes.length; i++)
+			assertTrue(Arrays.equals(contents.get(i),
+					FileUtils.readFileToByteArray(new File(folder, "output/file" + i + ".csv"))));
+	}
+
+	/**
+	 * Encrypts data over several frames and decrypts it again.
+	 */
+	@Test
+	public void testEncryptAndDecrypt() throws Exception {
+		byte[] data = data(300000, 7);
+		File encrypted = new File(folder, "packed.enc");
+		OutputStream out = new Encrypt().getEncryptedStream(encrypted.getPath(), keyPair.getPublic());
+		out.write(data, 0, 1000);
+		out.write(data[1000]);
+		out.write(data, 1001, data.length - 1001);
+		out.close();
+
+		assertTrue(Arrays.equals(data, readAll(new Encrypt().getDecryptedStream(encrypted.getPath(), keyPair.getPrivate()))));
+	}
+
+	/**
+	 * Decrypts a file encrypted in the format of the previous versions.
+	 */
+	@Test
+	public void testDecryptPreviousFormat() throws Exception {
+		byte[] data = data(50000, 3);
+		KeyGenerator kgen = KeyGenerator.getInstance("AES");
+		kgen.init(128);
+		File encrypted = encryptPreviousFormat(data, kgen.generateKey());
+
+		assertTrue(Arrays.equals(data, readAll(new Encrypt().getDecryptedStream(encrypted.getPath(), keyPair.getPrivate()))));
+	}
+
+	/**
+	 * Decrypts a file encrypted in the format of the previous versions with
+	 * a 192 bits key that happens to end with the marker of the framed format.
+	 */
+	@Test
+	public void testDecryptPreviousFormatWithMarker() throws Exception {
+		byte[] data = data(50000, 4);
+		byte[] keyData = data(24, 9);
+		System.arraycopy("GCM1".getBytes("US-ASCII"), 0, keyData, 20, 4);
+		File encrypted = encryptPreviousFormat(data, new SecretKeySpec(keyData, "AES"));
+
+		assertTrue(Arrays.equals(data, readAll(new Encrypt().getDecryptedStream(encrypted.getPath(), keyPair.getPrivate()))));
+	}
+
+	private File encryptPreviousFormat(byte[] data, SecretKey aesKey) throws Exception {
+		File encrypted = new File(folder, "previous.enc");
+		Cipher rsaCipher = Cipher.getInstance("RSA/ECB/PKCS1Padding");
+		rsaCipher.init(Cipher.ENCRYPT_MODE, keyPair.getPublic());
+		FileOutputStream file = new FileOutputStream(encrypted);
+		file.write(rsaCipher.doFinal(aesKey.getEncoded()));
+		Cipher cipher = Cipher.getInstance("AES");
+		cipher.init(Cipher.ENCRYPT_MODE, aesKey);
+		OutputStream out = new CipherOutputStream(file, cipher);
+		out.write(data);
+		out.close();
+		return encrypted;
+	}
+
+	/**
+	 * Modifies an encrypted file; the decryption should fail.
+	 */
+	@Test(expected = IOException.class)
+	public void testModifiedFrame() throws Exception {
+		File encrypted = encrypt(data(100000, 5));
+		RandomAccessFile file = new RandomAccessFile(encrypted, "rw");
+		file.seek(file.length() / 2);
+		int b = file.read();
+		file.seek(file.length() / 2);
+		file.write(b ^ 1);
+		file.close();
+
+		readAll(new Encrypt().getDecryptedStream(encrypted.getPath(), keyPair.getPrivate()));
+	}
+
+	/**
+	 * Truncates an encrypted file after a complete frame; the decryption should fail.
+	 */
+	@Test(expected = IOException.class)
+	public void testTruncatedStream() throws Exception {
+		File encrypted = encrypt(data(100000, 5));
+		RandomAccessFile file = new RandomAccessFile(encrypted, "rw");
+		file.setLength(256 + 4 + 64 * 1024 + 16);
+		file.close();
+
+		readAll(new Encrypt().getDecryptedStream(encrypted.getPath(), keyPair.getPrivate()));
+	}
+
+	private File encrypt(byte[] data) throws IOException {
+		File encrypted = new File(folder, "packed.enc");
+		OutputStream out = new Encrypt().getEncryptedStream(encrypted.getPath(), keyPair.getPublic());
+		out.write(data);
+		out.close();
+		return encrypted;
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[4096];
+			int bytes;
+			while ((bytes = in.read(buffer)) != -1)
+				out.write(buffer, 0, bytes);
+		} finally {
+			in.close();
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] data(int size, int seed) {
+		//compressible text with some random content
+		Random random = new Random(seed);
+		StringBuilder sb = new StringBuilder(size + 32);
+		while (sb.length() < size)
+			sb.append("patient").append(random.nextInt(100000)).append(",20170101,EVENT").append(random.nextInt(50)).append('\n');
+		sb.setLength(size);
+		return sb.toString().getBytes();
+	}
+
+}
@@ -0,0 +1,387 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Module;
+import org.erasmusmc.jerboa.engine.ScriptParser;
+import org.erasmusmc.jerboa.engine.Worker;
+import org.erasmusmc.jerboa.modifiers.FixedCohortDefinition;
+import org.erasmusmc.jerboa.modifiers.PopulationDefinition;
+import org.erasmusmc.jerboa.modules.Prevalence;
+import org.erasmusmc.jerboa.utilities.FileUtilities;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.PatientObjectWriter;
+import org.erasmusmc.jerboa.utilities.ResultSet;
+import org.erasmusmc.jerboa.utilities.SymbolTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.java.TestAll;
+
+/**
+ * This class represents a unit testing for the parallel processing of the patients.
+ * The same patient object files are processed by a module with its modifiers using
+ * one thread and several threads and the output of both runs is compared.
+ */
+public class ParallelProcessingTest {
+
+	private File folder;
+	private HashMap<String, String> properties;
+	private boolean inConsoleMode;
+	private String patientsPath;
+	private String lookupsPath;
+	private SymbolTable eventTypes;
+	private ResultSet resultSet;
+
+	@Before
+	public void setUp() throws IOException {
+		Jerboa.unitTest = true;
+		inConsoleMode = Jerboa.inConsoleMode;
+		Jerboa.inConsoleMode = true;
+		//the patient object files are looked up in the patients path, which depends on the application properties
+		properties = PropertiesManager.listProperties;
+		if (properties == null) {
+			PropertiesManager.listProperties = new HashMap<String, String>();
+			PropertiesManager.listProperties.put("lastWorkspace", System.getProperty("java.io.tmpdir"));
+			PropertiesManager.listProperties.put("lastRun", "20170101");
+			PropertiesManager.listProperties.put("runIndex", "1");
+		}
+		folder = Files.createTempDirectory("jerboa-parallel").toFile();
+		patientsPath = FilePaths.PATIENTS_PATH;
+		FilePaths.PATIENTS_PATH = folder.getPath().replace("\\", "/") + "/patients/";
+		lookupsPath = FilePaths.LOOKUPS_PATH;
+		FilePaths.LOOKUPS_PATH = folder.getPath().replace("\\", "/") + "/lookups/";
+		eventTypes = InputFileUtilities.eventTypes;
+		resultSet = Jerboa.getResultSet();
+		Jerboa.setResultSet(new ResultSet());
+
+		//four patient object files with three patients each
+		PatientObjectWriter writer = new PatientObjectWriter(FilePaths.PATIENTS_PATH);
+		for (int file = 1; file <= 4; file++) {
+			for (int i = 1; i <= 3; i++) {
+				Patient patient = TestAll.createPatient(file + "_" + i, "19600101", i % 2 == 0 ? "F" : "M", "20000101", "20101231");
+				for (int j = 0; j < file + i; j++)
+					TestAll.createEvent(patient, "2001010" + j, j % 2 == 0 ? "MI" : "STROKE", "");
+				writer.write(patient, "Subset" + file);
+			}
+		}
+		writer.close();
+
+		//the look-up tables are reloaded from file before the patients are processed
+		new File(FilePaths.LOOKUPS_PATH).mkdirs();
+		FileUtilities.outputData(FilePaths.LOOKUPS_PATH + FilePaths.FILE_EVENT_TYPES, InputFileUtilities.getEventTypes(), true);
+	}
+
+	@After
+	public void tearDown() {
+		Jerboa.setScriptParser(null);
+		FilePaths.PATIENTS_PATH = patientsPath;
+		FilePaths.LOOKUPS_PATH = lookupsPath;
+		InputFileUtilities.eventTypes = eventTypes;
+		InputFileUtilities.lookupsExtended = null;
+		Jerboa.setResultSet(resultSet);
+		PropertiesManager.listProperties = properties;
+		Jerboa.inConsoleMode = inConsoleMode;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Checks that the output of the module and its modifier is the same
+	 * when the patients are processed sequentially and in parallel.
+	 */
+	@Test
+	public void testSameOutput() {
+		List<String> sequential = run("1");
+		List<String> parallel = run("3");
+		assertEquals(12, sequential.size());
+		//the stroke events were removed by the modifier
+		assertTrue(sequential.contains("4_3,4"));
+		assertEquals(sequential, parallel);
+	}
+
+	/**
+	 * Checks that a file added while processing the patients gets its header
+	 * once and before the data, as when the patients are processed sequentially.
+	 * The patient object file that should add the file is processed last.
+	 */
+	@Test
+	public void testFileAddedWhileProcessing() {
+		run("1");
+		List<String> sequential = new ArrayList<String>(Jerboa.getOutputManager().getFile(EventCounter.LONG_HISTORIES));
+		assertEquals(0, sequential.lastIndexOf("PatientID"));
+		assertTrue(sequential.size() > 3);
+
+		EventCounter.delayed = sequential.get(1).substring(0, 2);
+		try {
+			run("4");
+		}
+		finally {
+			EventCounter.delayed = null;
+		}
+		List<String> parallel = new ArrayList<String>(Jerboa.getOutputManager().getFile(EventCounter.LONG_HISTORIES));
+		assertEquals(sequential, parallel);
+	}
+
+	/**
+	 * Checks that the output of a module and modifiers that are not thread-safe is the same
+	 * when the patients are processed sequentially and by partitions that are merged afterwards.
+	 */
+	@Test
+	public void testPartitionsSameOutput() {
+		PartitionedPrevalence sequential = runPrevalence("1");
+		List<String> sequentialPrevalence = new ArrayList<String>(Jerboa.getOutputManager().getFile("Output.csv"));
+		List<String> sequentialPatientTime = new ArrayList<String>(Jerboa.getOutputManager().getFile("Output_patientTime.csv"));
+		assertEquals(0, sequential.merged);
+		assertTrue(sequentialPrevalence.size() > 2);
+
+		PartitionedPrevalence parallel = runPrevalence("3");
+		assertEquals(3, parallel.merged);
+		assertEquals(sequentialPrevalence, Jerboa.getOutputManager().getFile("Output.csv"));
+		assertEquals(sequentialPatientTime, Jerboa.getOutputManager().getFile("Output_patientTime.csv"));
+		assertEquals(sequential.population.getOriginalCount(), parallel.population.getOriginalCount());
+		assertEquals(sequential.population.getCountRemoved(), parallel.population.getCountRemoved());
+	}
+
+	/**
+	 * Runs the test module on the patient object files.
+	 * @param threads - the number of threads to be used
+	 * @return - the output lines of the module
+	 */
+	private List<String> run(String threads) {
+		EventCounter module = new EventCounter();
+		run(threads, module, new StrokeRemover());
+
+		List<String> output = new ArrayList<String>(Jerboa.getOutputManager().getFile("Output"));
+		output.remove(output.size() - 1);
+		return output;
+	}
+
+	/**
+	 * Runs the prevalence module with a population and a cohort definition on the patient object files.
+	 * @param threads - the number of threads to be used
+	 * @return - the module after its run
+	 */
+	private PartitionedPrevalence runPrevalence(String threads) {
+		PartitionedPrevalence module = new PartitionedPrevalence();
+		module.ageGroups.add("0;45;00-44");
+		module.ageGroups.add("45;999;45-");
+		module.minSubjectsPerRow = 0;
+
+		module.population.runInPeriod.add("OTHER;365");
+		module.population.studyStart = "";
+		module.population.studyEnd = "";
+		module.population.maxAge = 999;
+
+		FixedCohortDefinition cohort = new FixedCohort();
+		cohort.cohortStartDate = "20010101";
+		cohort.cohortEndDate = "20080101";
+
+		run(threads, module, module.population, cohort);
+		return module;
+	}
+
+	/**
+	 * Runs a module with its modifiers on the patient object files.
+	 * @param threads - the number of threads to be used
+	 * @param module - the module to be run
+	 * @param modifiers - the modifiers of the module
+	 */
+	private void run(String threads, Module module, Modifier... modifiers) {
+		ScriptParser scriptParser = new ScriptParser(null);
+		scriptParser.setParsedSettings(scriptParser.new ParsedSettings());
+		scriptParser.getParsedSettings().metaData.threads = threads;
+		Jerboa.setScriptParser(scriptParser);
+
+		module.setModifiers(new ArrayList<Modifier>(Arrays.asList(modifiers)));
+		module.getNeededFilesIncludingModifiers();
+		module.runModule();
+	}
+
+	/**
+	 * Prevalence module counting the partitions merged into it.
+	 */
+	public static class PartitionedPrevalence extends Prevalence {
+
+		PopulationDefinition population = new Population();
+		int merged;
+
+		public PartitionedPrevalence() {
+			settingsOK = true;
+		}
+
+		@Override
+		public void mergePartition(Worker partition) {
+			super.mergePartition(partition);
+			merged++;
+		}
+	}
+
+	/**
+	 * Population definition with the settings of the test.
+	 */
+	public static class Population extends PopulationDefinition {
+
+		public Population() {
+			settingsOK = true;
+		}
+	}
+
+	/**
+	 * Fixed cohort definition with the settings of the test.
+	 */
+	public static class FixedCohort extends FixedCohortDefinition {
+
+		public FixedCohort() {
+			settingsOK = true;
+		}
+	}
+
+	/**
+	 * Thread-safe module writing the number of events of each patient.
+	 */
+	public static class EventCounter extends Module {
+
+		//the file listing the patients with at least three events, added when the first one is found
+		public static final String LONG_HISTORIES = "LongHistories";
+
+		//the patients of the file with this prefix wait before looking for the file
+		static volatile String delayed;
+
+		public EventCounter() {
+			settingsOK = true;
+		}
+
+		@Override
+		public boolean init() {
+			return Jerboa.getOutputManager().addFile(outputFileName);
+		}
+
+		@Override
+		public Patient process(Patient patient) {
+			Jerboa.getOutputManager().writeln(outputFileName, patient.ID + "," + patient.getEvents().size(), true);
+			if (patient.getEvents().size() >= 3) {
+				if ((delayed != null) && patient.ID.startsWith(delayed)) {
+					try {
+						Thread.sleep(500);
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				if (!Jerboa.getOutputManager().hasFile(LONG_HISTORIES)) {
+					Jerboa.getOutputManager().addFile(LONG_HISTORIES);
+					Jerboa.getOutputManager().writeln(LONG_HISTORIES, "PatientID", true);
+				}
+				Jerboa.getOutputManager().writeln(LONG_HISTORIES, patient.ID, true);
+			}
+			return patient;
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+
+		@Override
+		public void outputResults() {}
+
+		@Override
+		public void setNeededFiles() {
+			setRequiredFile(DataDefinition.EVENTS_FILE);
+		}
+
+		@Override
+		public void setNeededExtendedColumns() {}
+
+		@Override
+		public void setNeededNumericColumns() {}
+	}
+
+	/**
+	 * Thread-safe modifier removing the stroke events of each patient.
+	 */
+	public static class StrokeRemover extends Modifier {
+
+		public StrokeRemover() {
+			settingsOK = true;
+			//the flag should be reset before the patients are processed
+			inPostProcessing = true;
+		}
+
+		@Override
+		public boolean init() {
+			return true;
+		}
+
+		@Override
+		public Patient process(Patient patient) {
+			if (!inPostProcessing) {
+				List<Event> events = new ArrayList<Event>();
+				for (Event event : patient.getEvents())
+					if (!event.getType().equals("STROKE"))
+						events.add(event);
+				patient.setEvents(events);
+			}
+			return patient;
+		}
+
+		@Override
+		public boolean isThreadSafe() {
+			return true;
+		}
+
+		@Override
+		public void outputResults() {}
+
+		@Override
+		public void setNeededFiles() {
+			setRequiredFile(DataDefinition.EVENTS_FILE);
+		}
+
+		@Override
+		public void setNeededExtendedColumns() {}
+
+		@Override
+		public void setNeededNumericColumns() {}
+	}
+
+}
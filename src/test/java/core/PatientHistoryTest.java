@@ -0,0 +1,133 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Measurement;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.PatientHistory;
+import org.erasmusmc.jerboa.dataClasses.Prescription;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.java.TestAll;
+
+/**
+ * This class represents a unit testing for the columnar view on the history of a patient.
+ */
+public class PatientHistoryTest {
+
+	private Patient patient;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		patient = TestAll.createPatient("1", "19500101", "M", "20000101", "20101231", "20000101", "20101231", "20020101", "20081231");
+		TestAll.createEvent(patient, "20010101", "MI", "");
+		TestAll.createEvent(patient, "20030101", "STROKE", "");
+		TestAll.createPrescription(patient, "A10BA02", "20020101", 30, "", "");
+		TestAll.createPrescription(patient, "C09AA01", "20040101", -1, "", "");
+		TestAll.createMeasurement(patient, "20050101", "BMI", "25");
+	}
+
+	/**
+	 * Checks that the columns hold the same data as the episode objects.
+	 */
+	@Test
+	public void testColumns() {
+		PatientHistory history = patient.getHistory();
+
+		assertEquals(2, history.getEventCount());
+		for (int position = 0; position < history.getEventCount(); position++) {
+			Event event = patient.getEvents().get(position);
+			assertSame(event, history.getEvent(position));
+			assertEquals(event.getDate(), history.getEventDate(position));
+			assertEquals(event.type, history.getEventType(position));
+		}
+
+		assertEquals(2, history.getPrescriptionCount());
+		for (int position = 0; position < history.getPrescriptionCount(); position++) {
+			Prescription prescription = patient.getPrescriptions().get(position);
+			assertSame(prescription, history.getPrescription(position));
+			assertEquals(prescription.getDate(), history.getPrescriptionDate(position));
+			assertEquals(prescription.type, history.getPrescriptionType(position));
+			assertEquals(prescription.getDuration(), history.getPrescriptionDuration(position));
+			assertEquals(prescription.getEndDate(), history.getPrescriptionEndDate(position));
+		}
+
+		assertEquals(1, history.getMeasurementCount());
+		Measurement measurement = patient.getMeasurements().get(0);
+		assertEquals(measurement.getDate(), history.getMeasurementDate(0));
+		assertEquals(measurement.type, history.getMeasurementType(0));
+		assertEquals(measurement.getValueCompressed(), history.getMeasurementValue(0));
+	}
+
+	/**
+	 * Checks that the view follows changes of the history of the patient.
+	 */
+	@Test
+	public void testRebuild() {
+		PatientHistory history = patient.getHistory();
+		assertSame(history, patient.getHistory());
+		TestAll.createEvent(patient, "20070101", "MI", "");
+		assertNotSame(history, patient.getHistory());
+		assertEquals(3, patient.getHistory().getEventCount());
+
+		List<Event> events = new ArrayList<Event>(patient.getEvents());
+		events.remove(0);
+		patient.setEvents(events);
+		assertEquals(2, patient.getHistory().getEventCount());
+		assertEquals(events.get(0).getDate(), patient.getHistory().getEventDate(0));
+
+		history = patient.getHistory();
+		patient.getEvents().get(0).date++;
+		patient.clearHistory();
+		assertEquals(events.get(0).getDate(), patient.getHistory().getEventDate(0));
+	}
+
+	/**
+	 * Checks the binary search on the event dates.
+	 */
+	@Test
+	public void testFirstEventFrom() {
+		TestAll.createEvent(patient, "20030101", "MI", "");
+		PatientHistory history = patient.getHistory();
+		assertTrue(history.areEventsSorted());
+		int stroke = patient.getEvents().get(1).getDate();
+		assertEquals(0, history.getFirstEventFrom(0));
+		assertEquals(1, history.getFirstEventFrom(patient.getEvents().get(0).getDate() + 1));
+		assertEquals(1, history.getFirstEventFrom(stroke));
+		assertEquals(3, history.getFirstEventFrom(stroke + 1));
+
+		patient.getEvents().get(0).date = stroke + 1;
+		patient.clearHistory();
+		assertFalse(patient.getHistory().areEventsSorted());
+	}
+
+}
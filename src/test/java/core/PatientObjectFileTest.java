@@ -0,0 +1,288 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.text.StrMatcher;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.dataClasses.Episode;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Measurement;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.dataClasses.Prescription;
+import org.erasmusmc.jerboa.engine.InputFileSet;
+import org.erasmusmc.jerboa.engine.PatientObjectCreator;
+import org.erasmusmc.jerboa.utilities.DateUtilities;
+import org.erasmusmc.jerboa.utilities.ExtendedData;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.LineTokenizer;
+import org.erasmusmc.jerboa.utilities.PatientObjectReader;
+import org.erasmusmc.jerboa.utilities.PatientObjectWriter;
+import org.erasmusmc.jerboa.utilities.PatientUtilities;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the binary patient object files.
+ * The same patients are written to a text and to a binary patient object file
+ * and both are read back. The input files contain extended data columns with
+ * empty values and one of the patients has no history.
+ */
+public class PatientObjectFileTest {
+
+	private File folder;
+	private InputFileSet inputSet;
+	private List<Patient> patients;
+
+	@Before
+	public void setUp() throws IOException {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+		folder = Files.createTempDirectory("jerboa-pof").toFile();
+
+		List<String> files = new ArrayList<String>();
+		files.add(write("Patients.txt", "PatientID,Birthdate,Gender,Startdate,Enddate,Region",
+				"P1,19500101,M,20000101,20101231,North",
+				"P2,19600101,F,20010101,20111231,",
+				"P3,19700101,M,20020101,20121231,South"));
+		files.add(write("Events.txt", "PatientID,EventType,Date,Code",
+				"P1,MI,20030101,I21",
+				"P1,STROKE,20040101,",
+				"P2,MI,19990101,I21"));
+		files.add(write("Prescriptions.txt", "PatientID,ATC,Date,Duration,Dose",
+				"P1,A10BA02,20020101,30,1",
+				"P1,A10BA02,20020301,0,2",
+				"P2,C09AA01,20030101,60,"));
+		files.add(write("Measurements.txt", "PatientID,MeasurementType,Date,Value,Unit",
+				"P1,BMI,20050101,25,KG/M2",
+				"P2,BMI,20060101,,"));
+		inputSet = new InputFileSet(files);
+		inputSet.getPatientsFile().setDateFormat(DateUtilities.DATE_ON_YYYYMMDD);
+		inputSet.getEventsFile().setDateFormat(DateUtilities.DATE_ON_YYYYMMDD);
+		inputSet.getPrescriptionsFile().setDateFormat(DateUtilities.DATE_ON_YYYYMMDD);
+		inputSet.getMeasurementsFile().setDateFormat(DateUtilities.DATE_ON_YYYYMMDD);
+		Jerboa.setInputFileSet(inputSet);
+		InputFileUtilities.loadPatientCodeLists(folder.getPath() + "/lookups/");
+
+		patients = new ArrayList<Patient>();
+		for (LineTokenizer columns : read("Patients.txt"))
+			patients.add(new Patient(columns, inputSet.getPatientsFile()));
+		for (LineTokenizer columns : read("Events.txt"))
+			find(columns.getString(0)).getEvents().add(new Event(columns, inputSet.getEventsFile()));
+		for (LineTokenizer columns : read("Prescriptions.txt"))
+			find(columns.getString(0)).getPrescriptions().add(new Prescription(columns, inputSet.getPrescriptionsFile()));
+		for (LineTokenizer columns : read("Measurements.txt"))
+			find(columns.getString(0)).getMeasurements().add(new Measurement(columns, inputSet.getMeasurementsFile()));
+
+		//a prescription without duration
+		find("P1").getPrescriptions().get(1).setDuration(ExtendedData.NO_DATA);
+	}
+
+	@After
+	public void tearDown() {
+		Jerboa.setInputFileSet(null);
+		InputFileUtilities.lookupsExtended = null;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Checks that the patients read from a binary patient object file
+	 * are the same as the ones read from a text patient object file.
+	 */
+	@Test
+	public void testRoundTrip() throws IOException {
+		String textFile = PatientObjectWriter.getFileName(folder.getPath() + "/text/", "1", 1);
+		List<String> lines = new ArrayList<String>();
+		for (Patient patient : patients)
+			lines.addAll(toLines(patient));
+		FileUtils.writeLines(new File(textFile), lines);
+
+		PatientObjectWriter writer = new PatientObjectWriter(folder.getPath() + "/binary/");
+		for (Patient patient : patients)
+			assertTrue(writer.write(patient, "1"));
+		writer.close();
+		String binaryFile = PatientObjectWriter.getFileName(folder.getPath() + "/binary/", "1", 1);
+
+		assertFalse(PatientObjectReader.isBinary(textFile));
+		assertTrue(PatientObjectReader.isBinary(binaryFile));
+		assertEquals(patients.size(), PatientUtilities.countPatients(textFile));
+		assertEquals(patients.size(), PatientUtilities.countPatients(binaryFile));
+
+		List<Patient> fromText = load(textFile);
+		List<Patient> fromBinary = load(binaryFile);
+		assertEquals(patients.size(), fromText.size());
+		assertEquals(patients.size(), fromBinary.size());
+		for (int i = 0; i < patients.size(); i++) {
+			assertEquals(toLines(patients.get(i)), toLines(fromText.get(i)));
+			assertEquals(toLines(fromText.get(i)), toLines(fromBinary.get(i)));
+			assertEquals(patients.get(i).getExtendedData(), fromBinary.get(i).getExtendedData());
+		}
+
+		//extended data with and without value
+		Patient first = fromBinary.get(0);
+		assertEquals("NORTH", first.extended.getAttributeAsString("region"));
+		assertEquals("I21", first.getEvents().get(0).getCode());
+		assertFalse(first.getEvents().get(1).hasCode());
+		assertEquals(ExtendedData.NO_DATA, first.getPrescriptions().get(1).getDuration());
+		assertEquals("KG/M2", first.getMeasurements().get(0).getUnit());
+
+		//no data values
+		Patient second = fromBinary.get(1);
+		assertFalse(second.extended.hasAttribute("region"));
+		assertEquals(Integer.valueOf(ExtendedData.NO_DATA), second.extended.getAttribute("region"));
+		assertEquals(ExtendedData.NO_DATA, second.getMeasurements().get(0).getValueCompressed());
+		assertFalse(second.getMeasurements().get(0).hasUnit());
+		assertTrue(second.getEvents().get(0).getDate() < second.startDate);
+
+		//empty history
+		Patient third = fromBinary.get(2);
+		assertFalse(third.hasEvents());
+		assertFalse(third.hasPrescriptions());
+		assertFalse(third.hasMeasurements());
+		assertNotNull(third.getEvents());
+	}
+
+	/**
+	 * Checks that the history can be skipped when reading a binary patient object file.
+	 */
+	@Test
+	public void testWithoutHistory() {
+		PatientObjectWriter writer = new PatientObjectWriter(folder.getPath() + "/binary/");
+		for (Patient patient : patients)
+			writer.write(patient, "1");
+		writer.close();
+
+		PatientObjectReader reader = new PatientObjectReader(PatientObjectWriter.getFileName(folder.getPath() + "/binary/", "1", 1));
+		Patient patient = reader.next(false, true, false);
+		assertEquals("P1", patient.ID);
+		assertFalse(patient.hasEvents());
+		assertEquals(2, patient.getPrescriptions().size());
+		assertFalse(patient.hasMeasurements());
+		assertTrue(reader.skip());
+		patient = reader.next(true, true, true);
+		assertEquals("P3", patient.ID);
+		assertNull(reader.next(true, true, true));
+		reader.close();
+	}
+
+	/**
+	 * Checks that the episodes reference the ID of their patient, both when the patients
+	 * are created from the input files and when they are read from a text patient object file.
+	 */
+	@Test
+	public void testSharedIDs() throws IOException {
+		HashMap<String, String> properties = PropertiesManager.listProperties;
+		List<Patient> created;
+		try {
+			//the properties are not read from file when they are already loaded
+			if (properties == null)
+				PropertiesManager.listProperties = new HashMap<String, String>();
+			created = new PatientObjectCreator().createPatients(new File(folder, "Patients.txt").getPath(),
+					new File(folder, "Events.txt").getPath(), new File(folder, "Prescriptions.txt").getPath(),
+					new File(folder, "Measurements.txt").getPath(), false);
+		} finally {
+			PropertiesManager.listProperties = properties;
+		}
+		assertEquals(patients.size(), created.size());
+		assertSharedIDs(created);
+
+		String textFile = PatientObjectWriter.getFileName(folder.getPath() + "/text/", "1", 1);
+		List<String> lines = new ArrayList<String>();
+		for (Patient patient : patients)
+			lines.addAll(toLines(patient));
+		FileUtils.writeLines(new File(textFile), lines);
+		List<Patient> loaded = load(textFile);
+		assertEquals(patients.size(), loaded.size());
+		assertSharedIDs(loaded);
+	}
+
+	private static void assertSharedIDs(List<Patient> patients) {
+		int episodes = 0;
+		for (Patient patient : patients) {
+			List<Episode> history = new ArrayList<Episode>();
+			history.addAll(patient.getEvents());
+			history.addAll(patient.getPrescriptions());
+			history.addAll(patient.getMeasurements());
+			for (Episode episode : history)
+				assertSame(patient.ID, episode.patientID);
+			episodes += history.size();
+		}
+		assertEquals(8, episodes);
+	}
+
+	private List<Patient> load(String fileName) {
+		List<Patient> list = new ArrayList<Patient>();
+		Iterator<Patient> iterator = new PatientUtilities().iteratePatientsFromFile(fileName, true, true, true);
+		while (iterator.hasNext())
+			list.add(iterator.next());
+		return list;
+	}
+
+	private static List<String> toLines(Patient patient) {
+		List<String> lines = new ArrayList<String>();
+		lines.add(patient.toStringWithFlag(DataDefinition.PATIENT_DETAILS_FLAG));
+		for (Event event : patient.getEvents())
+			lines.add(event.toStringWithFlag(DataDefinition.EVENT_FLAG));
+		for (Prescription prescription : patient.getPrescriptions())
+			lines.add(prescription.toStringWithFlag(DataDefinition.PRESCRIPTION_FLAG));
+		for (Measurement measurement : patient.getMeasurements())
+			lines.add(measurement.toStringWithFlag(DataDefinition.MEASUREMENT_FLAG));
+		return lines;
+	}
+
+	private Patient find(String patientID) {
+		for (Patient patient : patients)
+			if (patient.ID.equals(patientID))
+				return patient;
+		return null;
+	}
+
+	private String write(String name, String... lines) throws IOException {
+		File file = new File(folder, name);
+		FileUtils.writeLines(file, Arrays.asList(lines));
+		return file.getPath();
+	}
+
+	private List<LineTokenizer> read(String name) throws IOException {
+		List<LineTokenizer> rows = new ArrayList<LineTokenizer>();
+		List<String> lines = FileUtils.readLines(new File(folder, name));
+		for (String line : lines.subList(1, lines.size()))
+			rows.add(new LineTokenizer(StrMatcher.commaMatcher()).reset(line));
+		return rows;
+	}
+
+}
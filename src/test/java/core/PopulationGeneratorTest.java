@@ -0,0 +1,159 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.utilities.dataSimulator.PopulationGenerator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the population generator of the data simulator.
+ * The input files are written to a temporary folder.
+ */
+public class PopulationGeneratorTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+		folder = Files.createTempDirectory("jerboa-generator").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testSameOutputForAnyNumberOfThreads() throws IOException {
+		PopulationGenerator single = generate("single", 25000, 1, true, false);
+		PopulationGenerator parallel = generate("parallel", 25000, 4, true, false);
+
+		assertEquals(read(single.getPatientsFile()), read(parallel.getPatientsFile()));
+		assertEquals(read(single.getEventsFile()), read(parallel.getEventsFile()));
+		assertEquals(read(single.getPrescriptionsFile()), read(parallel.getPrescriptionsFile()));
+		assertEquals(read(single.getMeasurementsFile()), read(parallel.getMeasurementsFile()));
+	}
+
+	@Test
+	public void testSortedOutput() throws IOException {
+		PopulationGenerator generator = generate("sorted", 12000, 3, true, false);
+
+		List<String> patients = read(generator.getPatientsFile());
+		assertEquals("SubsetID,PatientID,Birthdate,Gender,Startdate,Enddate", patients.get(0));
+		assertEquals(12001, patients.size());
+		assertEquals("P00000", patients.get(1).split(",")[1]);
+		assertEquals("P11999", patients.get(12000).split(",")[1]);
+		for (int i = 1; i < patients.size(); i++) {
+			String[] columns = patients.get(i).split(",");
+			assertTrue(columns[2].compareTo(columns[4]) <= 0);
+			assertTrue(columns[4].compareTo(columns[5]) < 0);
+		}
+
+		//the history is sorted on patient ID and date
+		List<String> events = read(generator.getEventsFile());
+		assertEquals(generator.getNbEvents() + 1, events.size());
+		for (int i = 2; i < events.size(); i++) {
+			String[] previous = events.get(i - 1).split(",");
+			String[] current = events.get(i).split(",");
+			int order = previous[1].compareTo(current[1]);
+			assertTrue(order < 0 || (order == 0 && previous[3].compareTo(current[3]) <= 0));
+		}
+		assertEquals(generator.getNbPrescriptions() + 1, read(generator.getPrescriptionsFile()).size());
+		assertEquals(generator.getNbMeasurements() + 1, read(generator.getMeasurementsFile()).size());
+	}
+
+	@Test
+	public void testUnsortedOutputHasTheSameLines() throws IOException {
+		PopulationGenerator sorted = generate("sorted", 15000, 2, true, false);
+		PopulationGenerator unsorted = generate("unsorted", 15000, 2, false, false);
+
+		List<String> sortedEvents = read(sorted.getEventsFile());
+		List<String> unsortedEvents = read(unsorted.getEventsFile());
+		assertFalse(sortedEvents.equals(unsortedEvents));
+
+		Collections.sort(sortedEvents);
+		Collections.sort(unsortedEvents);
+		assertEquals(sortedEvents, unsortedEvents);
+	}
+
+	@Test
+	public void testExtendedColumns() throws IOException {
+		PopulationGenerator generator = generate("extended", 100, 1, true, true);
+
+		List<String> patients = read(generator.getPatientsFile());
+		assertEquals("SubsetID,PatientID,Birthdate,Gender,Startdate,Enddate,PracticeID", patients.get(0));
+		assertEquals(7, patients.get(1).split(",").length);
+
+		List<String> events = read(generator.getEventsFile());
+		assertEquals("SubsetID,PatientID,EventType,Date,Code,Source", events.get(0));
+		for (String line : events.subList(1, events.size()))
+			assertEquals(6, line.split(",", -1).length);
+
+		assertTrue(read(generator.getPrescriptionsFile()).get(0).endsWith(",Indication,Prescriber"));
+		assertTrue(read(generator.getMeasurementsFile()).get(0).endsWith(",Value,Unit"));
+	}
+
+	/**
+	 * Generates a population in a sub folder of the temporary folder.
+	 * @param name - the name of the sub folder
+	 * @param patients - the number of patients
+	 * @param threads - the number of threads
+	 * @param sorted - true if the input files are sorted
+	 * @param extended - true if the extended columns are generated
+	 * @return - the generator
+	 * @throws IOException - if the generation failed
+	 */
+	private PopulationGenerator generate(String name, int patients, int threads, boolean sorted, boolean extended) throws IOException {
+		PopulationGenerator generator = new PopulationGenerator.Builder()
+				.folder(new File(folder, name).getPath())
+				.patients(patients)
+				.seed(42)
+				.threads(threads)
+				.sorted(sorted)
+				.extendedColumns(extended)
+				.build();
+		generator.generate();
+		return generator;
+	}
+
+	private static List<String> read(String fileName) throws IOException {
+		return new ArrayList<String>(Files.readAllLines(new File(fileName).toPath(), StandardCharsets.UTF_8));
+	}
+
+}
@@ -0,0 +1,156 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.utilities.RunSQL;
+import org.erasmusmc.jerboa.utilities.dataSimulator.WriteCSVFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the partitioned data extraction
+ * and the streaming CSV output of the data extraction.
+ */
+public class RunSQLTest {
+
+	private File folder;
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		folder = new File(System.getProperty("java.io.tmpdir"), "jerboa-sql-" + System.nanoTime());
+		folder.mkdirs();
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		FileUtils.deleteQuietly(folder);
+	}
+
+	@Test
+	public void testPartitionQuery() {
+		assertEquals("SELECT * FROM (SELECT PatientID, Gender FROM Patients) jerboa_partition WHERE MOD(ABS(PatientID), 4) = 3",
+				RunSQL.partitionQuery("SELECT PatientID, Gender FROM Patients", "PatientID", 4, 3, "POSTGRESQL"));
+		assertEquals("SELECT * FROM (SELECT PatientID FROM Patients) jerboa_partition WHERE (ABS(PatientID) % 2 = 0 OR PatientID IS NULL)",
+				RunSQL.partitionQuery("SELECT PatientID FROM Patients", "PatientID", 2, 0, "MSSQL"));
+	}
+
+	/**
+	 * Extracts the same query with and without partitioning from an embedded
+	 * database, including rows without a value in the partition column.
+	 */
+	@Test
+	public void testPartitionedExtraction() throws Exception {
+		HashMap<String, String> listProperties = PropertiesManager.listProperties;
+		if (PropertiesManager.listProperties == null) {
+			//the file paths look up the workspace, which depends on the application properties
+			PropertiesManager.listProperties = new HashMap<String, String>();
+			PropertiesManager.listProperties.put("lastWorkspace", folder.getPath());
+		}
+		String workingPath = FilePaths.WORKING_PATH;
+		try {
+			FilePaths.WORKING_PATH = folder.getPath();
+			File settings = new File(folder, "dbSettings.txt");
+			FileUtils.writeStringToFile(settings, "connectionType: JDBC\n" +
+					"url: jdbc:h2:mem:jerboa" + System.nanoTime() + ";DB_CLOSE_DELAY=-1\n" +
+					"user: sa\npassword: \n");
+
+			StringBuilder prepare = new StringBuilder();
+			prepare.append("CREATE TABLE Patients (PatientID INT, Gender VARCHAR(1));\n");
+			Random random = new Random(11);
+			for (int i = 0; i < 200; i++) {
+				String patientID = i % 7 == 0 ? "NULL" : String.valueOf(random.nextInt(1000) - 500);
+				prepare.append("INSERT INTO Patients VALUES (" + patientID + ", '" + (random.nextBoolean() ? "M" : "F") + "');\n");
+			}
+			File prepareFile = new File(folder, "Prepare.sql");
+			FileUtils.writeStringToFile(prepareFile, prepare.toString());
+			String query = "SELECT PatientID, Gender FROM Patients;\n";
+			FileUtils.writeStringToFile(new File(folder, "Fetch.sql"), query);
+			FileUtils.writeStringToFile(new File(folder, "FetchPartitioned.sql"), query);
+			//results of a previous extraction
+			FileUtils.writeStringToFile(new File(folder, "Partitioned.txt"), "previous content");
+
+			RunSQL runSQL = new RunSQL(settings.getPath(), Arrays.asList(prepareFile.getPath()),
+					Arrays.asList(new File(folder, "Fetch.sql").getPath() + ";Patients.txt",
+							new File(folder, "FetchPartitioned.sql").getPath() + ";Partitioned.txt;PatientID;3"));
+			runSQL.noGUI = true;
+			runSQL.extract();
+
+			List<String> expected = FileUtils.readLines(new File(folder, "Patients.txt"));
+			List<String> partitioned = FileUtils.readLines(new File(folder, "Partitioned.txt"));
+			assertEquals(201, expected.size());
+			assertEquals(expected.get(0), partitioned.get(0));
+			Collections.sort(expected);
+			Collections.sort(partitioned);
+			assertEquals(expected, partitioned);
+		} finally {
+			FilePaths.WORKING_PATH = workingPath;
+			PropertiesManager.listProperties = listProperties;
+		}
+	}
+
+	@Test
+	public void testConcatenate() throws Exception {
+		List<String> partitionFiles = new ArrayList<String>();
+		String[] contents = {"PatientID,Gender\n1,M\n", "", "2,F\n3,M\n"};
+		for (int i = 0; i < contents.length; i++) {
+			File partitionFile = new File(folder, "Patients.txt.part" + i);
+			FileUtils.writeStringToFile(partitionFile, contents[i]);
+			partitionFiles.add(partitionFile.getPath());
+		}
+		File output = new File(folder, "Patients.txt");
+		FileUtils.writeStringToFile(output, "previous content that is longer than the result");
+
+		RunSQL.concatenate(partitionFiles, output.getPath());
+		assertEquals("PatientID,Gender\n1,M\n2,F\n3,M\n", FileUtils.readFileToString(output));
+	}
+
+	@Test
+	public void testAppendColumn() {
+		List<String> columns = Arrays.asList("1", null, "a,b", "say \"hi\"", "", "x");
+		StringBuilder line = new StringBuilder();
+		for (int i = 0; i < columns.size(); i++) {
+			if (i > 0)
+				line.append(',');
+			WriteCSVFile.appendColumn(line, columns.get(i));
+		}
+		assertEquals(WriteCSVFile.columns2line(columns), line.toString());
+		assertEquals("1,,\"a,b\",say \\\"hi\\\",,x", line.toString());
+	}
+
+}
@@ -0,0 +1,192 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.FilePaths;
+import org.erasmusmc.jerboa.config.PropertiesManager;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.engine.Modifier;
+import org.erasmusmc.jerboa.engine.Module;
+import org.erasmusmc.jerboa.engine.ScriptParser;
+import org.erasmusmc.jerboa.engine.SharedScan;
+import org.erasmusmc.jerboa.modifiers.FixedCohortDefinition;
+import org.erasmusmc.jerboa.utilities.FileUtilities;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.PatientObjectWriter;
+import org.erasmusmc.jerboa.utilities.ResultSet;
+import org.erasmusmc.jerboa.utilities.SymbolTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import test.java.TestAll;
+import test.java.core.ParallelProcessingTest.EventCounter;
+import test.java.core.ParallelProcessingTest.FixedCohort;
+import test.java.core.ParallelProcessingTest.PartitionedPrevalence;
+import test.java.core.ParallelProcessingTest.StrokeRemover;
+
+/**
+ * This class represents a unit testing for the shared scan of the patient object files.
+ * The same modules are run one after another and over a single pass through the
+ * patient object files and the output of both runs is compared.
+ */
+public class SharedScanTest {
+
+	private File folder;
+	private HashMap<String, String> properties;
+	private boolean inConsoleMode;
+	private String patientsPath;
+	private String lookupsPath;
+	private SymbolTable eventTypes;
+	private ResultSet resultSet;
+
+	@Before
+	public void setUp() throws IOException {
+		Jerboa.unitTest = true;
+		inConsoleMode = Jerboa.inConsoleMode;
+		Jerboa.inConsoleMode = true;
+		//the patient object files are looked up in the patients path, which depends on the application properties
+		properties = PropertiesManager.listProperties;
+		if (properties == null) {
+			PropertiesManager.listProperties = new HashMap<String, String>();
+			PropertiesManager.listProperties.put("lastWorkspace", System.getProperty("java.io.tmpdir"));
+			PropertiesManager.listProperties.put("lastRun", "20170101");
+			PropertiesManager.listProperties.put("runIndex", "1");
+		}
+		folder = Files.createTempDirectory("jerboa-shared").toFile();
+		patientsPath = FilePaths.PATIENTS_PATH;
+		FilePaths.PATIENTS_PATH = folder.getPath().replace("\\", "/") + "/patients/";
+		lookupsPath = FilePaths.LOOKUPS_PATH;
+		FilePaths.LOOKUPS_PATH = folder.getPath().replace("\\", "/") + "/lookups/";
+		eventTypes = InputFileUtilities.eventTypes;
+		resultSet = Jerboa.getResultSet();
+		Jerboa.setResultSet(new ResultSet());
+
+		ScriptParser scriptParser = new ScriptParser(null);
+		scriptParser.setParsedSettings(scriptParser.new ParsedSettings());
+		scriptParser.getParsedSettings().metaData.threads = "1";
+		Jerboa.setScriptParser(scriptParser);
+
+		//two patient object files with three patients each
+		PatientObjectWriter writer = new PatientObjectWriter(FilePaths.PATIENTS_PATH);
+		for (int file = 1; file <= 2; file++) {
+			for (int i = 1; i <= 3; i++) {
+				Patient patient = TestAll.createPatient(file + "_" + i, "19600101", i % 2 == 0 ? "F" : "M", "20000101", "20101231");
+				for (int j = 0; j < file + i; j++)
+					TestAll.createEvent(patient, "2001010" + j, j % 2 == 0 ? "MI" : "STROKE", "");
+				writer.write(patient, "Subset" + file);
+			}
+		}
+		writer.close();
+
+		//the look-up tables are reloaded from file before the patients are processed
+		new File(FilePaths.LOOKUPS_PATH).mkdirs();
+		FileUtilities.outputData(FilePaths.LOOKUPS_PATH + FilePaths.FILE_EVENT_TYPES, InputFileUtilities.getEventTypes(), true);
+	}
+
+	@After
+	public void tearDown() {
+		Jerboa.setScriptParser(null);
+		FilePaths.PATIENTS_PATH = patientsPath;
+		FilePaths.LOOKUPS_PATH = lookupsPath;
+		InputFileUtilities.eventTypes = eventTypes;
+		InputFileUtilities.lookupsExtended = null;
+		Jerboa.setResultSet(resultSet);
+		PropertiesManager.listProperties = properties;
+		Jerboa.inConsoleMode = inConsoleMode;
+		FileUtils.deleteQuietly(folder);
+	}
+
+	/**
+	 * Checks that the output of the modules is the same when they are run one after
+	 * another and over a shared scan. The modifier of the first module removes events,
+	 * which should not be seen by the second module.
+	 */
+	@Test
+	public void testSameOutput() {
+		for (Module module : modules())
+			module.runModule();
+		List<List<String>> separate = output();
+		assertTrue(separate.get(0).size() > 6);
+		assertTrue(separate.get(1).size() > 2);
+
+		new SharedScan(modules()).run();
+		assertEquals(separate, output());
+	}
+
+	/**
+	 * Creates the modules with their modifiers. A new output manager
+	 * is created along with the modules in unit test mode.
+	 * @return - the modules in the order they are to be run
+	 */
+	private List<Module> modules() {
+		EventCounter counter = new EventCounter();
+		counter.outputFileName = "Counts";
+		counter.setModifiers(new ArrayList<Modifier>(Arrays.asList((Modifier)new StrokeRemover())));
+		counter.getNeededFilesIncludingModifiers();
+
+		PartitionedPrevalence prevalence = new PartitionedPrevalence();
+		prevalence.outputFileName = "Prevalence";
+		prevalence.ageGroups.add("0;45;00-44");
+		prevalence.ageGroups.add("45;999;45-");
+		prevalence.minSubjectsPerRow = 0;
+		prevalence.population.runInPeriod.add("OTHER;365");
+		prevalence.population.studyStart = "";
+		prevalence.population.studyEnd = "";
+		prevalence.population.maxAge = 999;
+		FixedCohortDefinition cohort = new FixedCohort();
+		cohort.cohortStartDate = "20010101";
+		cohort.cohortEndDate = "20080101";
+		prevalence.setModifiers(new ArrayList<Modifier>(Arrays.asList(prevalence.population, cohort)));
+		prevalence.getNeededFilesIncludingModifiers();
+
+		List<Module> modules = new ArrayList<Module>();
+		modules.add(counter);
+		modules.add(prevalence);
+		return modules;
+	}
+
+	/**
+	 * Returns the output of the modules.
+	 * @return - the lines of the output files of the modules
+	 */
+	private List<List<String>> output() {
+		List<List<String>> output = new ArrayList<List<String>>();
+		output.add(new ArrayList<String>(Jerboa.getOutputManager().getFile("Counts")));
+		output.add(new ArrayList<String>(Jerboa.getOutputManager().getFile("Prevalence.csv")));
+		output.add(new ArrayList<String>(Jerboa.getOutputManager().getFile("Prevalence_patientTime.csv")));
+		return output;
+	}
+
+}
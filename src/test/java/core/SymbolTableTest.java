@@ -0,0 +1,86 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.core;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.utilities.InputFileUtilities;
+import org.erasmusmc.jerboa.utilities.SymbolSet;
+import org.erasmusmc.jerboa.utilities.SymbolTable;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the look-up tables of the data compression
+ * and the sets of codes resolved in them.
+ */
+public class SymbolTableTest {
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+		Jerboa.inConsoleMode = true;
+	}
+
+	@Test
+	public void testSymbols() {
+		SymbolTable table = new SymbolTable();
+		for (int i = 0; i < 100; i++)
+			assertEquals(i, InputFileUtilities.addToList(table, "T" + i));
+		assertEquals(100, table.size());
+		assertEquals("T0", table.getSymbol(0));
+		assertEquals("T99", table.getSymbol(99));
+		assertNull(table.getSymbol(100));
+		assertNull(table.getSymbol(-1));
+		assertEquals(42, table.getIndex("T42"));
+		assertEquals(-1, table.getIndex("X"));
+
+		table.remove(99);
+		assertNull(table.getSymbol(99));
+		table.put(5, "X");
+		assertEquals("X", table.getSymbol(5));
+		assertEquals(-1, table.getIndex("T5"));
+	}
+
+	@Test
+	public void testSymbolSet() {
+		SymbolTable table = new SymbolTable();
+		InputFileUtilities.addToList(table, "MI");
+		InputFileUtilities.addToList(table, "STROKE");
+
+		SymbolSet set = new SymbolSet(Arrays.asList("STROKE", "DEATH"));
+		assertTrue(set.contains(table, table.getIndex("STROKE")));
+		assertFalse(set.contains(table, table.getIndex("MI")));
+		assertTrue(set.matches(table, 0, table.getIndex("STROKE")));
+		assertFalse(set.matches(table, 1, table.getIndex("STROKE")));
+
+		//codes added later are resolved when the table grows
+		int death = InputFileUtilities.addToList(table, "DEATH");
+		assertTrue(set.contains(table, death));
+		assertTrue(set.matches(table, 1, death));
+	}
+
+}
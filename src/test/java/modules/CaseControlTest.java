@@ -0,0 +1,207 @@
+/***********************************************************************************
+ *                                                                                 *
+ * Copyright (C) 2017  Erasmus MC, Rotterdam, The Netherlands                      *
+ *                                                                                 *
+ * This file is part of Jerboa.                                                    *
+ *                                                                                 *
+ * This program is free software; you can redistribute it and/or                   *
+ * modify it under the terms of the GNU General Public License                     *
+ * as published by the Free Software Foundation; either version 2                  *
+ * of the License, or (at your option) any later version.                          *
+ *                                                                                 *
+ * This program is distributed in the hope that it will be useful,                 *
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of                  *
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the                   *
+ * GNU General Public License for more details.                                    *
+ *                                                                                 *
+ * You should have received a copy of the GNU General Public License               *
+ * along with this program; if not, write to the Free Software                     *
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA. *
+ *                                                                                 *
+ ***********************************************************************************/
+
+package test.java.modules;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.erasmusmc.jerboa.Jerboa;
+import org.erasmusmc.jerboa.config.DataDefinition;
+import org.erasmusmc.jerboa.dataClasses.Event;
+import org.erasmusmc.jerboa.dataClasses.Patient;
+import org.erasmusmc.jerboa.modules.CaseControl;
+import org.erasmusmc.jerboa.utilities.Item;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class represents a unit testing for the matching of controls in the CaseControl module.
+ * The controls matched through the case pattern index are compared with the ones
+ * found by checking all the case patterns of a random population.
+ */
+public class CaseControlTest {
+
+	private static final String EVENT_OF_INTEREST = "AMI";
+	private static final String[] CASE_SET_IDS = {"CASESET_A", "CASESET_B"};
+
+	private List<Patient> population;
+
+	/**
+	 * Case control module exposing the matching of the controls to the case patterns.
+	 */
+	private static class MatchingCaseControl extends CaseControl {
+
+		/**
+		 * Creates a case pattern for each event of interest in the population.
+		 * @param population - the patients
+		 * @return - the case patterns in the order they were found
+		 */
+		private List<CasePattern> getCasePatterns(List<Patient> population) {
+			List<CasePattern> casePatterns = new ArrayList<CasePattern>();
+			for (Patient patient : population) {
+				for (Event event : patient.getEvents()) {
+					if (event.getType().equals(EVENT_OF_INTEREST)) {
+						casePatterns.add(new CasePattern(event, patient, casePatterns.size()));
+					}
+				}
+			}
+			return casePatterns;
+		}
+
+		/**
+		 * Matches the controls by checking all remaining case patterns in reverse order.
+		 * @param population - the patients
+		 * @return - the matched control and case pattern ids in the order they were found
+		 */
+		public List<String> matchByScan(List<Patient> population) {
+			List<String> matches = new ArrayList<String>();
+			List<CasePattern> casePatterns = getCasePatterns(population);
+			for (Patient potentialControl : population) {
+				int casePatternNr = casePatterns.size() - 1;
+				while (casePatternNr >= 0) {
+					CasePattern casePattern = casePatterns.get(casePatternNr);
+					if (casePattern.matchControl(potentialControl, new HashMap<Item, Integer>())) {
+						matches.add(potentialControl.ID + ":" + casePattern.id);
+						if (casePattern.allControlsFound()) {
+							casePatterns.remove(casePatternNr);
+						}
+					}
+					casePatternNr--;
+				}
+			}
+			return matches;
+		}
+
+		/**
+		 * Matches the controls by checking the candidate case patterns of the index.
+		 * @param population - the patients
+		 * @return - the matched control and case pattern ids in the order they were found
+		 */
+		public List<String> matchByIndex(List<Patient> population) {
+			List<String> matches = new ArrayList<String>();
+			// the index has a protected constructor
+			CasePatternIndex casePatterns = new CasePatternIndex() {};
+			for (CasePattern casePattern : getCasePatterns(population)) {
+				casePatterns.add(casePattern);
+			}
+			for (Patient potentialControl : population) {
+				for (CasePattern casePattern : casePatterns.getCandidates(potentialControl)) {
+					if (casePattern.matchControl(potentialControl, new HashMap<Item, Integer>())) {
+						matches.add(potentialControl.ID + ":" + casePattern.id);
+						if (casePattern.allControlsFound()) {
+							casePatterns.remove(casePattern);
+						}
+					}
+				}
+			}
+			return matches;
+		}
+	}
+
+	@Before
+	public void setUp() throws Exception {
+		Jerboa.unitTest = true;
+
+		// Random population with cohort time, an external case set ID and cases of AMI
+		Random random = new Random(12345);
+		population = new ArrayList<Patient>();
+		for (int i = 0; i < 1000; i++) {
+			Patient patient = new Patient();
+			patient.ID = Integer.toString(i);
+			patient.birthDate = 7000 + random.nextInt(1500);
+			patient.gender = random.nextBoolean() ? DataDefinition.MALE_GENDER : DataDefinition.FEMALE_GENDER;
+			patient.startDate = 14000 + random.nextInt(1000);
+			patient.endDate = patient.startDate + 300 + random.nextInt(2000);
+			patient.populationStartDate = patient.startDate;
+			patient.populationEndDate = patient.endDate;
+			patient.inPopulation = true;
+			patient.cohortStartDate = patient.startDate + random.nextInt(100);
+			patient.cohortEndDate = patient.endDate - random.nextInt(100);
+			patient.inCohort = true;
+
+			List<Event> events = new ArrayList<Event>();
+			events.add(createEvent(patient, patient.startDate, CASE_SET_IDS[random.nextInt(CASE_SET_IDS.length)]));
+			if (random.nextInt(10) == 0) {
+				events.add(createEvent(patient, patient.cohortStartDate + random.nextInt(patient.cohortEndDate - patient.cohortStartDate), EVENT_OF_INTEREST));
+			}
+			patient.setEvents(events);
+			population.add(patient);
+		}
+	}
+
+	private Event createEvent(Patient patient, int date, String type) {
+		Event event = new Event();
+		event.setPatientID(patient.ID);
+		event.setDate(date);
+		event.setType(type);
+		event.setCode("");
+		return event;
+	}
+
+	/**
+	 * Compares the controls matched through the index with the ones matched by the scan.
+	 */
+	private void compare(int maxDifferenceBetweenBirthDates, boolean matchOnGender, String matchOnExternalCaseSetId, int controlsPerCase) {
+		List<List<String>> matches = new ArrayList<List<String>>();
+		for (int run = 0; run < 2; run++) {
+			MatchingCaseControl caseControl = new MatchingCaseControl();
+			caseControl.maxDifferenceBetweenBirthDates = maxDifferenceBetweenBirthDates;
+			caseControl.matchOnGender = matchOnGender;
+			caseControl.matchOnPracticeID = false;
+			caseControl.matchOnExternalCaseSetId = matchOnExternalCaseSetId;
+			caseControl.matchOnDrugCount = "";
+			caseControl.matchOnATCClass = "";
+			caseControl.controlsPerCase = controlsPerCase;
+			matches.add(run == 0 ? caseControl.matchByScan(population) : caseControl.matchByIndex(population));
+		}
+
+		String settings = maxDifferenceBetweenBirthDates + "," + matchOnGender + "," + matchOnExternalCaseSetId + "," + controlsPerCase;
+		assertFalse(settings, matches.get(0).isEmpty());
+		assertEquals(settings, matches.get(0), matches.get(1));
+	}
+
+	@Test
+	public void testMatchOnBirthDate() {
+		compare(365, true, "", 2);
+		compare(30, false, "", -1);
+		compare(1, true, "", -1);
+	}
+
+	@Test
+	public void testMatchOnBirthYearAndMonth() {
+		compare(-2, true, "", 3);
+		compare(-3, false, "", -1);
+		compare(-1, true, "", 4);
+	}
+
+	@Test
+	public void testMatchOnExternalCaseSetId() {
+		compare(365, true, "CASESET", 2);
+		compare(-2, false, "CASESET", -1);
+	}
+
+}